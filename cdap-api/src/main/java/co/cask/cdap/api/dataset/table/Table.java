@@ -49,6 +49,14 @@ public interface Table extends BatchReadable<byte[], Row>, BatchWritable<byte[],
    */
   String PROPERTY_READLESS_INCREMENT = "dataset.table.readless.increment";
 
+  /**
+   * Property set to configure the maximum size in bytes of uncommitted writes that a transaction buffers in memory.
+   * Once the buffer grows beyond this size, buffered writes are persisted before the transaction commits, and are
+   * rolled back if the transaction fails. This property only applies to implementations that support it,
+   * and it has no effect if read-less increments are enabled. When not set, writes are buffered until commit.
+   */
+  String PROPERTY_WRITE_BUFFER_MAX_BYTES = "dataset.table.write.buffer.max.bytes";
+
   /**
    * Property set to configure name of the column family. This property only applies to implementations that support
    * it. If not set, a default column family will be used.
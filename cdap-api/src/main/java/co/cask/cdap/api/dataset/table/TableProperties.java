@@ -1,5 +1,5 @@
 /*
- * Copyright © 2017 Cask Data, Inc.
+ * Copyright © 2017-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -105,6 +105,29 @@ public class TableProperties {
     return "true".equalsIgnoreCase(props.get(Table.PROPERTY_READLESS_INCREMENT));
   }
 
+  /**
+   * Set the maximum size in bytes of uncommitted writes buffered in memory in dataset properties.
+   * A zero or negative value means no limit.
+   */
+  public static void setWriteBufferMaxBytes(DatasetProperties.Builder builder, long maxBytes) {
+    builder.add(Table.PROPERTY_WRITE_BUFFER_MAX_BYTES, maxBytes);
+  }
+
+  /**
+   * @return the maximum size in bytes of uncommitted writes buffered in memory, or null if there is no limit.
+   *
+   * @throws NumberFormatException if the value is not a valid long.
+   */
+  @Nullable
+  public static Long getWriteBufferMaxBytes(Map<String, String> props) {
+    String stringValue = props.get(Table.PROPERTY_WRITE_BUFFER_MAX_BYTES);
+    if (stringValue == null) {
+      return null;
+    }
+    long maxBytes = Long.parseLong(stringValue);
+    return maxBytes > 0L ? maxBytes : null;
+  }
+
   /**
    * Set the table TTL, in seconds, in dataset properties. A zero or negative value means no TTL.
    */
@@ -320,6 +343,15 @@ public class TableProperties {
       return (B) this;
     }
 
+    /**
+     * Set the maximum size in bytes of uncommitted writes buffered in memory. A zero or negative value means no limit.
+     */
+    @SuppressWarnings("unchecked")
+    public B setWriteBufferMaxBytes(long maxBytes) {
+      TableProperties.setWriteBufferMaxBytes(this, maxBytes);
+      return (B) this;
+    }
+
     /**
      * Set the schema of a table.
      */
@@ -27,7 +27,7 @@ import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.id.Id;
 import co.cask.cdap.common.io.Locations;
-import co.cask.cdap.common.lang.jar.BundleJarUtil;
+import co.cask.cdap.common.lang.jar.UnpackedJarCache;
 import co.cask.cdap.common.utils.DirUtils;
 import co.cask.cdap.internal.app.runtime.AbstractListener;
 import co.cask.cdap.internal.app.runtime.BasicArguments;
@@ -51,7 +51,6 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Table;
 import com.google.common.io.Closeables;
-import com.google.common.io.Files;
 import com.google.common.util.concurrent.AbstractIdleService;
 import org.apache.twill.api.RunId;
 import org.apache.twill.common.Threads;
@@ -126,7 +125,10 @@ public abstract class AbstractProgramRuntimeService extends AbstractIdleService
                                                                programDescriptor.getApplicationSpecification());
 
       // Create and run the program
-      Program executableProgram = createProgram(cConf, runner, programDescriptor, artifactDetail, tempDir);
+      UnpackedJarCache.Lease programLease = unpackProgram(artifactDetail);
+      cleanUpTask = createCleanupTask(cleanUpTask, programLease);
+      Program executableProgram = createProgram(cConf, runner, programDescriptor, artifactDetail,
+                                                programLease.getDirectory());
       cleanUpTask = createCleanupTask(cleanUpTask, executableProgram);
 
 
@@ -149,29 +151,25 @@ public abstract class AbstractProgramRuntimeService extends AbstractIdleService
 
   /**
    * Creates a {@link Program} for the given {@link ProgramRunner} from the given program jar {@link Location}.
+   *
+   * @param unpackedDir the directory containing the unpacked program jar. It is shared and must not be modified.
    */
   protected Program createProgram(CConfiguration cConf, ProgramRunner programRunner,
                                   ProgramDescriptor programDescriptor,
-                                  ArtifactDetail artifactDetail, final File tempDir) throws IOException {
-
-    final Location programJarLocation = artifactDetail.getDescriptor().getLocation();
-
-    // Take a snapshot of the JAR file to avoid program mutation
-    final File unpackedDir = new File(tempDir, "unpacked");
-    unpackedDir.mkdirs();
-    try {
-      File programJar = Locations.linkOrCopy(programJarLocation, new File(tempDir, "program.jar"));
-      // Unpack the JAR file
-      BundleJarUtil.unJar(Files.newInputStreamSupplier(programJar), unpackedDir);
-    } catch (IOException ioe) {
-      throw ioe;
-    } catch (Exception e) {
-      // should not happen
-      throw Throwables.propagate(e);
-    }
+                                  ArtifactDetail artifactDetail, File unpackedDir) throws IOException {
+    Location programJarLocation = artifactDetail.getDescriptor().getLocation();
     return Programs.create(cConf, programRunner, programDescriptor, programJarLocation, unpackedDir);
   }
 
+  /**
+   * Unpacks the program jar through the {@link UnpackedJarCache}, so that runs of the same program share the
+   * unpacked directory. The cache directory is content addressed and not modified, which gives the run a snapshot
+   * of the program.
+   */
+  private UnpackedJarCache.Lease unpackProgram(ArtifactDetail artifactDetail) throws IOException {
+    return UnpackedJarCache.get(cConf).acquire(artifactDetail.getDescriptor().getLocation());
+  }
+
   private Runnable createCleanupTask(final Object... resources) {
     return new Runnable() {
       @Override
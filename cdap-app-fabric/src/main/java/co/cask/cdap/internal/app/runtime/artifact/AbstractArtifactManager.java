@@ -20,17 +20,12 @@ import co.cask.cdap.api.artifact.ArtifactInfo;
 import co.cask.cdap.api.artifact.ArtifactManager;
 import co.cask.cdap.api.artifact.CloseableClassLoader;
 import co.cask.cdap.common.conf.CConfiguration;
-import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.lang.DirectoryClassLoader;
-import co.cask.cdap.common.lang.jar.BundleJarUtil;
-import co.cask.cdap.common.utils.DirUtils;
+import co.cask.cdap.common.lang.jar.UnpackedJarCache;
 import com.google.common.io.Closeables;
 import org.apache.twill.filesystem.Location;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
-import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -41,15 +36,11 @@ import javax.annotation.Nullable;
  */
 public abstract class AbstractArtifactManager implements ArtifactManager {
 
-  private static final Logger LOG = LoggerFactory.getLogger(AbstractArtifactManager.class);
-
-  private final File tmpDir;
+  private final UnpackedJarCache unpackedJarCache;
   private final ClassLoader bootstrapClassLoader;
 
   protected AbstractArtifactManager(CConfiguration cConf) {
-    File tmpDir = new File(cConf.get(Constants.CFG_LOCAL_DATA_DIR),
-                           cConf.get(Constants.AppFabric.TEMP_DIR)).getAbsoluteFile();
-    this.tmpDir = DirUtils.createTempDir(tmpDir);
+    this.unpackedJarCache = UnpackedJarCache.get(cConf);
     this.bootstrapClassLoader = new URLClassLoader(new URL[0], null);
   }
 
@@ -65,8 +56,8 @@ public abstract class AbstractArtifactManager implements ArtifactManager {
   /**
    * Create a class loader with artifact jar unpacked contents and parent for this classloader is the supplied
    * parentClassLoader, if that parent classloader is null, bootstrap classloader is used as parent.
-   * This is a closeable classloader, caller should call close when he is done using it, during close directory
-   * cleanup will be performed.
+   * This is a closeable classloader, caller should call close when he is done using it, during close the unpacked
+   * artifact directory will be released.
    *
    * @param artifactInfo artifact info whose artifact will be unpacked to create classloader
    * @param parentClassLoader  optional parent classloader, if null bootstrap classloader will be used
@@ -76,34 +67,29 @@ public abstract class AbstractArtifactManager implements ArtifactManager {
   @Override
   public CloseableClassLoader createClassLoader(ArtifactInfo artifactInfo,
                                                 @Nullable ClassLoader parentClassLoader) throws IOException {
-    File unpackedDir = DirUtils.createTempDir(tmpDir);
-    BundleJarUtil.unJar(getArtifactLocation(artifactInfo), unpackedDir);
+    UnpackedJarCache.Lease lease = unpackedJarCache.acquire(getArtifactLocation(artifactInfo));
     DirectoryClassLoader directoryClassLoader =
-      new DirectoryClassLoader(unpackedDir,
+      new DirectoryClassLoader(lease.getDirectory(),
                                parentClassLoader == null ? bootstrapClassLoader : parentClassLoader, "lib");
-    return new CloseableClassLoader(directoryClassLoader, new ClassLoaderCleanup(directoryClassLoader, unpackedDir));
+    return new CloseableClassLoader(directoryClassLoader, new ClassLoaderCleanup(directoryClassLoader, lease));
   }
 
   /**
-   * Helper class to cleanup temporary directory created for artifact classloader.
+   * Helper class to release the unpacked artifact directory used by an artifact classloader.
    */
   private static final class ClassLoaderCleanup implements Closeable {
-    private final File directory;
+    private final UnpackedJarCache.Lease lease;
     private final DirectoryClassLoader directoryClassLoader;
 
-    private ClassLoaderCleanup(DirectoryClassLoader directoryClassLoader, File directory) {
+    private ClassLoaderCleanup(DirectoryClassLoader directoryClassLoader, UnpackedJarCache.Lease lease) {
       this.directoryClassLoader = directoryClassLoader;
-      this.directory = directory;
+      this.lease = lease;
     }
 
     @Override
     public void close() throws IOException {
-      try {
-        Closeables.closeQuietly(directoryClassLoader);
-        DirUtils.deleteDirectoryContents(directory);
-      } catch (IOException e) {
-        LOG.warn("Failed to delete directory {}", directory, e);
-      }
+      Closeables.closeQuietly(directoryClassLoader);
+      lease.close();
     }
   }
 }
@@ -70,6 +70,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import javax.annotation.Nullable;
@@ -108,6 +110,13 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
   private static final String TYPE_WORKFLOW_TOKEN = "wft";
   private static final String TYPE_NAMESPACE = "namespace";
   private static final String TYPE_MESSAGE = "msg";
+  private static final String TYPE_RUN_RECORD_TIME_INDEX = "runRecordTimeIdx";
+  private static final String TYPE_RUN_RECORD_TIME_INDEX_UPGRADE = "runRecordTimeIdxUpgrade";
+  private static final String TYPE_RUN_RECORD_TIME_INDEX_COMPLETE = "runRecordTimeIdxComplete";
+  // Size of the smallest bucket of the run record time index
+  private static final long RUN_TIME_INDEX_BUCKET_SECS = TimeUnit.HOURS.toSeconds(1);
+  // Buckets at level n of the run record time index span 2^n smallest buckets
+  private static final int RUN_TIME_INDEX_MAX_LEVEL = 16;
   private static final Map<ProgramRunStatus, String> STATUS_TYPE_MAP = ImmutableMap.<ProgramRunStatus, String>builder()
     .put(ProgramRunStatus.STARTING, TYPE_RUN_RECORD_STARTING)
     .put(ProgramRunStatus.RUNNING, TYPE_RUN_RECORD_STARTED)
@@ -119,11 +128,22 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
 
   private final CConfiguration cConf;
   private final AtomicBoolean upgradeComplete;
+  private final ApplicationMetaCache appMetaCache;
 
   public AppMetadataStore(Table table, CConfiguration cConf, AtomicBoolean upgradeComplete) {
+    this(table, cConf, upgradeComplete, null);
+  }
+
+  /**
+   * Creates an instance that uses the given {@link ApplicationMetaCache} to avoid deserializing application
+   * specifications that didn't change.
+   */
+  AppMetadataStore(Table table, CConfiguration cConf, AtomicBoolean upgradeComplete,
+                   @Nullable ApplicationMetaCache appMetaCache) {
     super(table);
     this.cConf = cConf;
     this.upgradeComplete = upgradeComplete;
+    this.appMetaCache = appMetaCache;
   }
 
   @Override
@@ -140,6 +160,10 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
         .build();
       //noinspection unchecked
       return (T) meta;
+    } else if (appMetaCache != null && ApplicationMeta.class.equals(typeOfT)) {
+      //noinspection unchecked
+      return (T) appMetaCache.get(key, serialized,
+                                  value -> GSON.fromJson(Bytes.toString(value), ApplicationMeta.class));
     } else {
       return GSON.fromJson(Bytes.toString(serialized), typeOfT);
     }
@@ -191,8 +215,9 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
         delete(mdsKey);
       }
     }
-    write(new MDSKey.Builder().add(TYPE_APP_META, namespaceId, appId, versionId).build(),
-          new ApplicationMeta(appId, spec));
+    MDSKey key = new MDSKey.Builder().add(TYPE_APP_META, namespaceId, appId, versionId).build();
+    write(key, new ApplicationMeta(appId, spec));
+    invalidateAppMeta(key);
   }
 
   public void deleteApplication(String namespaceId, String appId, String versionId) {
@@ -204,11 +229,16 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
         delete(mdsKey);
       }
     }
-    deleteAll(new MDSKey.Builder().add(TYPE_APP_META, namespaceId, appId, versionId).build());
+    MDSKey key = new MDSKey.Builder().add(TYPE_APP_META, namespaceId, appId, versionId).build();
+    deleteAll(key);
+    invalidateAppMeta(key);
   }
 
   public void deleteApplications(String namespaceId) {
     deleteAll(new MDSKey.Builder().add(TYPE_APP_META, namespaceId).build());
+    if (appMetaCache != null) {
+      appMetaCache.invalidateAll();
+    }
   }
 
   // todo: do we need appId? may be use from appSpec?
@@ -239,6 +269,13 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
       delete(versionLessKey);
     }
     write(key, updated);
+    invalidateAppMeta(key);
+  }
+
+  private void invalidateAppMeta(MDSKey key) {
+    if (appMetaCache != null) {
+      appMetaCache.invalidate(key);
+    }
   }
 
   /**
@@ -753,6 +790,7 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
 
     MDSKey key = builder.add(getInvertedTsKeyPart(existing.getStartTs())).add(programRunId.getRun()).build();
     write(key, RunRecordMeta.builder(existing).setStopTime(stopTs).setStatus(runStatus).setSourceId(sourceId).build());
+    addToRunTimeIndex(programRunId.getRun(), existing.getStartTs(), stopTs);
     return runStatus;
   }
 
@@ -1113,12 +1151,14 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
       Predicate<MDSKey> keyPredicate = new AppVersionPredicate(ApplicationId.DEFAULT_VERSION);
       deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_STARTING, namespaceId, appId).build(), keyPredicate);
       deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_STARTED, namespaceId, appId).build(), keyPredicate);
-      deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED, namespaceId, appId).build(), keyPredicate);
+      deleteCompletedRuns(new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED, namespaceId, appId).build(),
+                          keyPredicate);
       deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_SUSPENDED, namespaceId, appId).build(), keyPredicate);
     } else {
       deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_STARTING, namespaceId, appId, versionId).build());
       deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_STARTED, namespaceId, appId, versionId).build());
-      deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED, namespaceId, appId, versionId).build());
+      deleteCompletedRuns(new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED, namespaceId, appId, versionId).build(),
+                          null);
       deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_SUSPENDED, namespaceId, appId, versionId).build());
     }
   }
@@ -1126,10 +1166,26 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
   public void deleteProgramHistory(String namespaceId) {
     deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_STARTING, namespaceId).build());
     deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_STARTED, namespaceId).build());
-    deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED, namespaceId).build());
+    deleteCompletedRuns(new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED, namespaceId).build(), null);
     deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_SUSPENDED, namespaceId).build());
   }
 
+  /**
+   * Deletes the completed run records with the given key prefix, together with their run record time index entries.
+   */
+  private void deleteCompletedRuns(MDSKey prefix, @Nullable Predicate<MDSKey> keyFilter) {
+    scan(prefix, null, RunRecordMeta.class, (MetadataStoreDataset.KeyValue<RunRecordMeta> keyValue) -> {
+      RunRecordMeta record = keyValue.getValue();
+      if ((keyFilter == null || keyFilter.test(keyValue.getKey())) && record.getStopTs() != null) {
+        for (MDSKey key : getRunTimeIndexKeys(record.getPid(), record.getStartTs(), record.getStopTs())) {
+          delete(key);
+        }
+      }
+      return true;
+    });
+    deleteAll(prefix, keyFilter);
+  }
+
   public void createNamespace(NamespaceMeta metadata) {
     write(getNamespaceKey(metadata.getName()), metadata);
   }
@@ -1183,8 +1239,13 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
     LOG.trace("Scan timeout = {}ms", scanTimeoutMills);
 
     Set<RunId> runIds = new HashSet<>();
-    Iterables.addAll(runIds, getRunningInRangeForStatus(TYPE_RUN_RECORD_COMPLETED, startTimeInSecs, endTimeInSecs,
-                                                        scanTimeoutMills));
+    // Completed runs are looked up in the run record time index once all of them are indexed by the upgrade
+    if (isRunTimeIndexComplete()) {
+      runIds.addAll(getCompletedInRange(startTimeInSecs, endTimeInSecs));
+    } else {
+      Iterables.addAll(runIds, getRunningInRangeForStatus(TYPE_RUN_RECORD_COMPLETED, startTimeInSecs, endTimeInSecs,
+                                                          scanTimeoutMills));
+    }
     Iterables.addAll(runIds, getRunningInRangeForStatus(TYPE_RUN_RECORD_SUSPENDED, startTimeInSecs, endTimeInSecs,
                                                         scanTimeoutMills));
     Iterables.addAll(runIds, getRunningInRangeForStatus(TYPE_RUN_RECORD_STARTED, startTimeInSecs, endTimeInSecs,
@@ -1194,6 +1255,73 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
     return runIds;
   }
 
+  /**
+   * Returns the completed runs that were running between the given start and end time, using the run record time
+   * index. A run that overlaps the range is either running at the start time or started within the range, hence it
+   * is indexed in a bucket between the start time and the last second of the range. Each level of the index is
+   * scanned for these buckets, and the runs found are filtered by their exact start and stop time.
+   */
+  @VisibleForTesting
+  Set<RunId> getCompletedInRange(long startTimeInSecs, long endTimeInSecs) {
+    long firstBucket = startTimeInSecs / RUN_TIME_INDEX_BUCKET_SECS;
+    long lastBucket = Math.max(startTimeInSecs, endTimeInSecs - 1) / RUN_TIME_INDEX_BUCKET_SECS;
+
+    Set<RunId> runIds = new HashSet<>();
+    for (int level = 0; level <= RUN_TIME_INDEX_MAX_LEVEL; level++) {
+      MDSKey startKey = new MDSKey.Builder().add(TYPE_RUN_RECORD_TIME_INDEX).add(level)
+        .add(firstBucket >> level).build();
+      MDSKey stopKey = new MDSKey.Builder().add(TYPE_RUN_RECORD_TIME_INDEX).add(level)
+        .add((lastBucket >> level) + 1).build();
+      scan(startKey, stopKey, RunTimeRange.class, (MetadataStoreDataset.KeyValue<RunTimeRange> keyValue) -> {
+        RunTimeRange range = keyValue.getValue();
+        if (range.startTs < endTimeInSecs && range.stopTs >= startTimeInSecs) {
+          runIds.add(RunIds.fromString(range.runId));
+        }
+        return true;
+      });
+    }
+    return runIds;
+  }
+
+  /**
+   * Adds a completed run to the run record time index.
+   */
+  private void addToRunTimeIndex(String runId, long startTs, long stopTs) {
+    RunTimeRange range = new RunTimeRange(runId, startTs, stopTs);
+    for (MDSKey key : getRunTimeIndexKeys(runId, startTs, stopTs)) {
+      write(key, range);
+    }
+  }
+
+  /**
+   * Returns the run record time index keys of a run. The hour buckets between the start and stop time are covered
+   * by the smallest number of aligned buckets of size 2^level, so that long running programs only need a few
+   * index entries instead of one per hour.
+   */
+  private static List<MDSKey> getRunTimeIndexKeys(String runId, long startTs, long stopTs) {
+    List<MDSKey> keys = new ArrayList<>();
+    long bucket = startTs / RUN_TIME_INDEX_BUCKET_SECS;
+    long endBucket = Math.max(startTs, stopTs) / RUN_TIME_INDEX_BUCKET_SECS + 1;
+    while (bucket < endBucket) {
+      int level = 0;
+      while (level < RUN_TIME_INDEX_MAX_LEVEL && (bucket & ((1L << (level + 1)) - 1)) == 0
+        && bucket + (1L << (level + 1)) <= endBucket) {
+        level++;
+      }
+      keys.add(new MDSKey.Builder().add(TYPE_RUN_RECORD_TIME_INDEX).add(level).add(bucket >> level).add(runId).build());
+      bucket += 1L << level;
+    }
+    return keys;
+  }
+
+  /**
+   * @return true if the completed run records written before the run record time index existed have been added
+   *         to the index
+   */
+  public boolean isRunTimeIndexComplete() {
+    return get(new MDSKey.Builder().add(TYPE_RUN_RECORD_TIME_INDEX_COMPLETE).build(), String.class) != null;
+  }
+
   /**
    * @return true if the row key is value is greater or than or equal to the expected version
    */
@@ -1279,6 +1407,47 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
     return upgradeDone;
   }
 
+  /**
+   * Adds the completed run records written before the run record time index existed to the index. The key to
+   * resume from is persisted, so that each call continues where the previous one stopped. Once all run records
+   * are indexed, a marker is written, after which {@link #getRunningInRange(long, long)} uses the index. This must
+   * only be called after the version keys are upgraded, since the run record keys change during that upgrade.
+   *
+   * @param maxRows maximum number of run records to be indexed in this call
+   * @return true if all run records are indexed
+   */
+  boolean upgradeRunTimeIndex(int maxRows) {
+    if (isRunTimeIndexComplete()) {
+      return true;
+    }
+
+    MDSKey progressKey = new MDSKey.Builder().add(TYPE_RUN_RECORD_TIME_INDEX_UPGRADE).build();
+    MDSKey prefix = new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED).build();
+    byte[] resumeKey = get(progressKey, BYTE_TYPE);
+    MDSKey startKey = resumeKey == null ? prefix : new MDSKey(resumeKey);
+    MDSKey stopKey = new MDSKey(Bytes.stopKeyForPrefix(prefix.getKey()));
+
+    AtomicInteger count = new AtomicInteger();
+    AtomicReference<MDSKey> lastKey = new AtomicReference<>();
+    scan(startKey, stopKey, RunRecordMeta.class, (MetadataStoreDataset.KeyValue<RunRecordMeta> keyValue) -> {
+      RunRecordMeta record = keyValue.getValue();
+      if (record.getStopTs() != null) {
+        addToRunTimeIndex(record.getPid(), record.getStartTs(), record.getStopTs());
+      }
+      lastKey.set(keyValue.getKey());
+      return count.incrementAndGet() < maxRows;
+    });
+
+    if (lastKey.get() == null) {
+      delete(progressKey);
+      write(new MDSKey.Builder().add(TYPE_RUN_RECORD_TIME_INDEX_COMPLETE).build(), ProjectInfo.getVersion().toString());
+      return true;
+    }
+    LOG.info("Added {} entries of {} to the run record time index", count.get(), TYPE_RUN_RECORD_COMPLETED);
+    write(progressKey, Bytes.stopKeyForPrefix(lastKey.get().getKey()));
+    return false;
+  }
+
   /**
    * Upgrades the rowkeys for the given record type.
    *
@@ -1511,6 +1680,21 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
     }
   }
 
+  /**
+   * Value of the run record time index, which has the start and stop time of a completed run.
+   */
+  private static final class RunTimeRange {
+    private final String runId;
+    private final long startTs;
+    private final long stopTs;
+
+    RunTimeRange(String runId, long startTs, long stopTs) {
+      this.runId = runId;
+      this.startTs = startTs;
+      this.stopTs = stopTs;
+    }
+  }
+
   private static class ScanFunction implements Function<MetadataStoreDataset.KeyValue<RunRecordMeta>, Boolean> {
     private final Predicate<RunRecordMeta> filter;
     private final Stopwatch stopwatch;
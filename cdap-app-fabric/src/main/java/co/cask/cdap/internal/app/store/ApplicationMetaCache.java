@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.internal.app.store;
+
+import co.cask.cdap.data2.dataset2.lib.table.MDSKey;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import java.util.function.Function;
+
+/**
+ * A cache of deserialized {@link ApplicationMeta}, keyed by the row key of the application. Each entry is
+ * versioned by the digest of the serialized value it was deserialized from, and is only used for the same
+ * serialized value. Reads still go to the table, hence always see the latest value, even if it was written by
+ * another process, but large application specifications don't need to be parsed again if they didn't change.
+ */
+final class ApplicationMetaCache {
+
+  private final Cache<MDSKey, Entry> cache;
+
+  ApplicationMetaCache(int maxSize) {
+    this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+  }
+
+  /**
+   * Returns the {@link ApplicationMeta} for the given serialized value, deserializing it only if the cached value
+   * for the given key was not deserialized from the same serialized value.
+   *
+   * @param key the row key of the application
+   * @param serialized the serialized value read from the row
+   * @param deserializer function to deserialize the value
+   * @return the deserialized {@link ApplicationMeta}
+   */
+  ApplicationMeta get(MDSKey key, byte[] serialized, Function<byte[], ApplicationMeta> deserializer) {
+    HashCode digest = Hashing.sha256().hashBytes(serialized);
+    Entry entry = cache.getIfPresent(key);
+    if (entry != null && entry.digest.equals(digest)) {
+      return entry.meta;
+    }
+    ApplicationMeta meta = deserializer.apply(serialized);
+    cache.put(key, new Entry(digest, meta));
+    return meta;
+  }
+
+  /**
+   * Removes the cached value for the given key. This is not needed for correctness, since entries are versioned,
+   * but releases applications that are updated or deleted.
+   */
+  void invalidate(MDSKey key) {
+    cache.invalidate(key);
+  }
+
+  /**
+   * Removes all cached values.
+   */
+  void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  /**
+   * A deserialized {@link ApplicationMeta} and the digest of the value it was deserialized from.
+   */
+  private static final class Entry {
+    private final HashCode digest;
+    private final ApplicationMeta meta;
+
+    Entry(HashCode digest, ApplicationMeta meta) {
+      this.digest = digest;
+      this.meta = meta;
+    }
+  }
+}
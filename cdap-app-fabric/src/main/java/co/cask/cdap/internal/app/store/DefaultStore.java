@@ -120,6 +120,7 @@ public class DefaultStore implements Store {
   private Transactional transactional;
   private AtomicBoolean upgradeComplete;
   private LoadingCache<byte[], Boolean> upgradeCacheLoader;
+  private ApplicationMetaCache appMetaCache;
 
   @Inject
   public DefaultStore(CConfiguration conf, DatasetFramework framework, TransactionSystemClient txClient) {
@@ -136,6 +137,7 @@ public class DefaultStore implements Store {
     this.upgradeCacheLoader = CacheBuilder.newBuilder()
       .expireAfterWrite(1, TimeUnit.MINUTES)
       .build(new DefaultStoreUpgradeCacheLoader(transactional, dsFramework, configuration, upgradeComplete));
+    this.appMetaCache = new ApplicationMetaCache(conf.getInt(Constants.AppFabric.APP_SPEC_CACHE_SIZE));
   }
 
   // Returns true if the upgrade flag is set. Upgrade could have completed earlier than this since this flag is
@@ -144,6 +146,12 @@ public class DefaultStore implements Store {
     return upgradeCacheLoader.getUnchecked(APP_VERSION_UPGRADE_KEY);
   }
 
+  private boolean isRunTimeIndexComplete() {
+    return Transactionals.execute(transactional, context -> {
+      return getAppMetadataStore(context).isRunTimeIndexComplete();
+    });
+  }
+
   /**
    * Adds datasets and types to the given {@link DatasetFramework} used by app mds.
    *
@@ -158,7 +166,7 @@ public class DefaultStore implements Store {
                                                                                      DatasetManagementException {
     Table table = DatasetsUtil.getOrCreateDataset(datasetContext, dsFramework, APP_META_INSTANCE_ID,
                                                   Table.class.getName(), DatasetProperties.EMPTY);
-    return new AppMetadataStore(table, configuration, upgradeComplete);
+    return new AppMetadataStore(table, configuration, upgradeComplete, appMetaCache);
   }
 
   private WorkflowDataset getWorkflowDataset(DatasetContext datasetContext) throws IOException,
@@ -732,7 +740,8 @@ public class DefaultStore implements Store {
    */
   public void upgrade() throws InterruptedException, IOException, DatasetManagementException {
     // If upgrade is already complete, then simply return.
-    if (isUpgradeComplete()) {
+    AtomicBoolean runTimeIndexComplete = new AtomicBoolean(isRunTimeIndexComplete());
+    if (isUpgradeComplete() && runTimeIndexComplete.get()) {
       LOG.info("{} is already upgraded.", NAME);
       return;
     }
@@ -744,14 +753,20 @@ public class DefaultStore implements Store {
     // Repeated calls to upgradeComplete are necessary since it will trigger the cache to load the value from the table
     // and that will eventually set the upgradeComplete flag to true, which is used by the methods in AppMetadataStore
     // to check whether they need to do additional scans to accommodate old data formats.
-    while (!isUpgradeComplete()) {
+    while (!isUpgradeComplete() || !runTimeIndexComplete.get()) {
       sleepTimeInSecs.set(60);
       try {
         transactional.execute(context -> {
           AppMetadataStore store = getAppMetadataStore(context);
-          boolean upgradeComplete = store.upgradeVersionKeys(maxRows.get());
-          if (upgradeComplete) {
-            store.setUpgradeComplete(APP_VERSION_UPGRADE_KEY);
+          // The run record time index is only backfilled once the run record keys no longer change. It is tracked
+          // separately, since it may be missing on a store whose version keys were upgraded before it existed.
+          if (!store.isUpgradeComplete(APP_VERSION_UPGRADE_KEY)) {
+            boolean upgradeComplete = store.upgradeVersionKeys(maxRows.get());
+            if (upgradeComplete) {
+              store.setUpgradeComplete(APP_VERSION_UPGRADE_KEY);
+            }
+          } else {
+            runTimeIndexComplete.set(store.upgradeRunTimeIndex(maxRows.get()));
           }
         });
       } catch (TransactionFailureException e) {
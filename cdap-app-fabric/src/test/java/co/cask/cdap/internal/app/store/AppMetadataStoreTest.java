@@ -44,6 +44,7 @@ import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -355,6 +356,130 @@ public class AppMetadataStoreTest {
             TimeUnit.MILLISECONDS.toSeconds(1000), TimeUnit.MILLISECONDS.toSeconds(10000));
   }
 
+  @Test
+  public void testRunningInRangeFromTimeIndex() throws Exception {
+    DatasetId storeTable = NamespaceId.DEFAULT.dataset("testRunningInRangeFromTimeIndex");
+    datasetFramework.addInstance(Table.class.getName(), storeTable, DatasetProperties.EMPTY);
+    Table table = datasetFramework.getDataset(storeTable, ImmutableMap.of(), null);
+    Assert.assertNotNull(table);
+    AppMetadataStore metadataStoreDataset = new AppMetadataStore(table, cConf, new AtomicBoolean(true));
+    TransactionExecutor txnl = getTxExecutor(metadataStoreDataset);
+
+    // Runs of different lengths, from zero seconds to more than a year, with start and stop time in seconds
+    long base = TimeUnit.DAYS.toSeconds(17000) + 1234;
+    long[][] times = {
+      {base, base},
+      {base + 10, base + 1800},
+      {base + 100, base + TimeUnit.HOURS.toSeconds(5)},
+      {base - TimeUnit.DAYS.toSeconds(3), base + TimeUnit.DAYS.toSeconds(3)},
+      {base - TimeUnit.DAYS.toSeconds(200), base - TimeUnit.DAYS.toSeconds(100)},
+      {base + TimeUnit.DAYS.toSeconds(1), base + TimeUnit.DAYS.toSeconds(400)},
+      {base + TimeUnit.HOURS.toSeconds(7), base + TimeUnit.HOURS.toSeconds(7) + 1}
+    };
+    Map<RunId, long[]> runs = new HashMap<>();
+    Set<RunId> app1Runs = new HashSet<>();
+    for (int i = 0; i < times.length; i++) {
+      ProgramId program = NamespaceId.DEFAULT.app("app" + (i % 2)).program(ProgramType.WORKFLOW, "program");
+      RunId runId = RunIds.generate(TimeUnit.SECONDS.toMillis(times[i][0]));
+      ProgramRunId programRunId = program.run(runId);
+      long stopTs = times[i][1];
+      txnl.execute(() -> {
+        recordProvisionAndStart(programRunId, metadataStoreDataset);
+        metadataStoreDataset.recordProgramRunning(programRunId, RunIds.getTime(runId, TimeUnit.SECONDS), null,
+                                                  AppFabricTestHelper.createSourceId(sourceId.incrementAndGet()));
+        metadataStoreDataset.recordProgramStop(programRunId, stopTs, ProgramRunStatus.COMPLETED, null,
+                                               AppFabricTestHelper.createSourceId(sourceId.incrementAndGet()));
+      });
+      runs.put(runId, times[i]);
+      if (i % 2 == 1) {
+        app1Runs.add(runId);
+      }
+    }
+
+    // Query ranges around the start and stop times of the runs
+    List<Long> points = new ArrayList<>();
+    for (long[] time : times) {
+      for (long t : time) {
+        points.add(t - 1);
+        points.add(t);
+        points.add(t + 1);
+        points.add(t + TimeUnit.DAYS.toSeconds(2));
+      }
+    }
+    points.add(0L);
+    points.add(Long.MAX_VALUE);
+    txnl.execute(() -> {
+      for (long start : points) {
+        for (long end : points) {
+          Set<RunId> expected = new HashSet<>();
+          for (Map.Entry<RunId, long[]> entry : runs.entrySet()) {
+            if (entry.getValue()[0] < end && entry.getValue()[1] >= start) {
+              expected.add(entry.getKey());
+            }
+          }
+          Assert.assertEquals(expected, metadataStoreDataset.getCompletedInRange(start, end));
+          Assert.assertEquals(expected, metadataStoreDataset.getRunningInRange(start, end));
+        }
+      }
+    });
+
+    // Index entries are removed with the program history
+    txnl.execute(() -> {
+      metadataStoreDataset.deleteProgramHistory(NamespaceId.DEFAULT.getNamespace(), "app0",
+                                                ApplicationId.DEFAULT_VERSION);
+      Assert.assertEquals(app1Runs, metadataStoreDataset.getCompletedInRange(0, Long.MAX_VALUE));
+      metadataStoreDataset.deleteProgramHistory(NamespaceId.DEFAULT.getNamespace());
+      Assert.assertTrue(metadataStoreDataset.getCompletedInRange(0, Long.MAX_VALUE).isEmpty());
+    });
+  }
+
+  @Test
+  public void testRunTimeIndexUpgrade() throws Exception {
+    DatasetId storeTable = NamespaceId.DEFAULT.dataset("testRunTimeIndexUpgrade");
+    datasetFramework.addInstance(Table.class.getName(), storeTable, DatasetProperties.EMPTY);
+    Table table = datasetFramework.getDataset(storeTable, ImmutableMap.of(), null);
+    Assert.assertNotNull(table);
+    // the version keys are already upgraded, which does not mean that the run record time index is complete
+    AppMetadataStore metadataStoreDataset = new AppMetadataStore(table, cConf, new AtomicBoolean(true));
+    TransactionExecutor txnl = getTxExecutor(metadataStoreDataset);
+
+    ProgramId program = NamespaceId.DEFAULT.app("app").program(ProgramType.WORKFLOW, "program");
+    Set<RunId> runIds = new HashSet<>();
+    for (int i = 0; i < 5; i++) {
+      RunId runId = RunIds.generate(TimeUnit.SECONDS.toMillis(1000 + i * 100));
+      ProgramRunId programRunId = program.run(runId);
+      txnl.execute(() -> {
+        recordProvisionAndStart(programRunId, metadataStoreDataset);
+        metadataStoreDataset.recordProgramRunning(programRunId, RunIds.getTime(runId, TimeUnit.SECONDS), null,
+                                                  AppFabricTestHelper.createSourceId(sourceId.incrementAndGet()));
+        metadataStoreDataset.recordProgramStop(programRunId, RunIds.getTime(runId, TimeUnit.SECONDS) + 10,
+                                               ProgramRunStatus.COMPLETED, null,
+                                               AppFabricTestHelper.createSourceId(sourceId.incrementAndGet()));
+      });
+      runIds.add(runId);
+    }
+
+    // completed runs are found without the index until the backfill is done
+    txnl.execute(() -> {
+      Assert.assertFalse(metadataStoreDataset.isRunTimeIndexComplete());
+      Assert.assertEquals(runIds, metadataStoreDataset.getRunningInRange(0, Long.MAX_VALUE));
+    });
+
+    // the backfill resumes where the previous call stopped, and sets the marker once all run records are indexed
+    AtomicInteger calls = new AtomicInteger();
+    AtomicBoolean complete = new AtomicBoolean();
+    while (!complete.get()) {
+      txnl.execute(() -> complete.set(metadataStoreDataset.upgradeRunTimeIndex(2)));
+      Assert.assertTrue(calls.incrementAndGet() <= 4);
+    }
+    txnl.execute(() -> {
+      Assert.assertTrue(metadataStoreDataset.isRunTimeIndexComplete());
+      Assert.assertTrue(metadataStoreDataset.upgradeRunTimeIndex(2));
+      Assert.assertEquals(runIds, metadataStoreDataset.getRunningInRange(0, Long.MAX_VALUE));
+      Assert.assertEquals(runIds, metadataStoreDataset.getCompletedInRange(0, Long.MAX_VALUE));
+    });
+  }
+
   private void runScan(TransactionExecutor txnl, final AppMetadataStore metadataStoreDataset,
                        final Set<Long> expected, final long startTime, final long stopTime)
     throws InterruptedException, TransactionFailureException {
@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.internal.app.store;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.data2.dataset2.lib.table.MDSKey;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Unit tests for {@link ApplicationMetaCache}.
+ */
+public class ApplicationMetaCacheTest {
+
+  @Test
+  public void testVersioning() {
+    ApplicationMetaCache cache = new ApplicationMetaCache(10);
+    AtomicInteger deserialized = new AtomicInteger();
+    Function<byte[], ApplicationMeta> deserializer = value -> {
+      deserialized.incrementAndGet();
+      return new ApplicationMeta(Bytes.toString(value), null);
+    };
+    MDSKey key1 = new MDSKey.Builder().add("appMeta", "ns", "app1", "1.0").build();
+    MDSKey key2 = new MDSKey.Builder().add("appMeta", "ns", "app2", "1.0").build();
+
+    // The same serialized value is only deserialized once
+    ApplicationMeta meta = cache.get(key1, Bytes.toBytes("v1"), deserializer);
+    Assert.assertSame(meta, cache.get(key1, Bytes.toBytes("v1"), deserializer));
+    Assert.assertEquals(1, deserialized.get());
+
+    // A changed value is deserialized again
+    meta = cache.get(key1, Bytes.toBytes("v2"), deserializer);
+    Assert.assertEquals("v2", meta.getId());
+    Assert.assertEquals(2, deserialized.get());
+
+    // Values are cached per key
+    Assert.assertEquals("v2", cache.get(key2, Bytes.toBytes("v2"), deserializer).getId());
+    Assert.assertEquals(3, deserialized.get());
+
+    // Invalidated values are deserialized again
+    cache.invalidate(key1);
+    Assert.assertNotSame(meta, cache.get(key1, Bytes.toBytes("v2"), deserializer));
+    Assert.assertEquals(4, deserialized.get());
+  }
+}
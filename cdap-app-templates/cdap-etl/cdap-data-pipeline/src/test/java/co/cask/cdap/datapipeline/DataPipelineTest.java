@@ -56,6 +56,7 @@ import co.cask.cdap.etl.mock.batch.MockSink;
 import co.cask.cdap.etl.mock.batch.MockSource;
 import co.cask.cdap.etl.mock.batch.NodeStatesAction;
 import co.cask.cdap.etl.mock.batch.aggregator.FieldCountAggregator;
+import co.cask.cdap.etl.mock.batch.aggregator.FieldSumAggregator;
 import co.cask.cdap.etl.mock.batch.aggregator.GroupFilterAggregator;
 import co.cask.cdap.etl.mock.batch.aggregator.IdentityAggregator;
 import co.cask.cdap.etl.mock.batch.joiner.MockJoiner;
@@ -1865,6 +1866,78 @@ public class DataPipelineTest extends HydratorTestBase {
     validateMetric(5, appId, "sink2.records.in");
   }
 
+  @Test
+  public void testMapRedCombinableAggregator() throws Exception {
+    testCombinableAggregator(Engine.MAPREDUCE);
+  }
+
+  @Test
+  public void testSparkCombinableAggregator() throws Exception {
+    testCombinableAggregator(Engine.SPARK);
+  }
+
+  private void testCombinableAggregator(Engine engine) throws Exception {
+    String sourceName = "combineAggInput-" + engine.name();
+    String sinkName = "combineAggOutput-" + engine.name();
+    Schema inputSchema = Schema.recordOf(
+      "testRecord",
+      Schema.Field.of("user", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("item", Schema.of(Schema.Type.LONG))
+    );
+    /*
+     * source --> agg --> sink
+     */
+    ETLBatchConfig etlConfig = ETLBatchConfig.builder("* * * * *")
+      .setEngine(engine)
+      .addStage(new ETLStage("source", MockSource.getPlugin(sourceName, inputSchema)))
+      .addStage(new ETLStage("agg", FieldSumAggregator.getPlugin("user", "item")))
+      .addStage(new ETLStage("sink", MockSink.getPlugin(sinkName)))
+      .addConnection("source", "agg")
+      .addConnection("agg", "sink")
+      .build();
+
+    AppRequest<ETLBatchConfig> appRequest = new AppRequest<>(APP_ARTIFACT, etlConfig);
+    ApplicationId appId = NamespaceId.DEFAULT.app("CombineAggApp-" + engine);
+    ApplicationManager appManager = deployApplication(appId, appRequest);
+
+    // use more groups than a mapper keeps partial aggregates for, so that partial aggregates are emitted
+    // both while records are processed and when the mapper finishes. Groups are spread over the input,
+    // so the same group gets multiple partial aggregates that are merged after the shuffle.
+    int numGroups = 12000;
+    int numRecords = 30000;
+    List<StructuredRecord> input = new ArrayList<>();
+    Map<String, Long> expectedSums = new HashMap<>();
+    long total = 0L;
+    for (int i = 0; i < numRecords; i++) {
+      String user = "u" + (i % numGroups);
+      long item = i % 7;
+      input.add(StructuredRecord.builder(inputSchema).set("user", user).set("item", item).build());
+      Long sum = expectedSums.get(user);
+      expectedSums.put(user, sum == null ? item : sum + item);
+      total += item;
+    }
+    expectedSums.put("all", total);
+    DataSetManager<Table> inputManager = getDataset(NamespaceId.DEFAULT.dataset(sourceName));
+    MockSource.writeInput(inputManager, input);
+
+    WorkflowManager workflowManager = appManager.getWorkflowManager(SmartWorkflow.NAME);
+    workflowManager.start();
+    workflowManager.waitForRun(ProgramRunStatus.COMPLETED, 5, TimeUnit.MINUTES);
+
+    // check output
+    DataSetManager<Table> sinkManager = getDataset(sinkName);
+    Map<String, Long> actualSums = new HashMap<>();
+    for (StructuredRecord record : MockSink.readOutput(sinkManager)) {
+      Assert.assertNull(actualSums.put((String) record.get("user"), (Long) record.get("sum")));
+    }
+    Assert.assertEquals(expectedSums, actualSums);
+
+    validateMetric(numRecords, appId, "source.records.out");
+    validateMetric(numRecords, appId, "agg.records.in");
+    validateMetric(numGroups + 1, appId, "agg.records.out");
+    validateMetric(numGroups + 1, appId, "sink.records.in");
+  }
+
   @Test
   public void testSparkSinkAndCompute() throws Exception {
     // use the SparkSink to train a model
@@ -2311,6 +2384,124 @@ public class DataPipelineTest extends HydratorTestBase {
     validateMetric(4, appId, sinkName + ".records.in");
   }
 
+  @Test
+  public void testBroadcastJoinMR() throws Exception {
+    // broadcast hints are ignored by MapReduce, which must give the same result
+    testBroadcastJoin(Engine.MAPREDUCE);
+  }
+
+  @Test
+  public void testBroadcastJoinSpark() throws Exception {
+    testBroadcastJoin(Engine.SPARK);
+  }
+
+  private void testBroadcastJoin(Engine engine) throws Exception {
+    Schema customerSchema = Schema.recordOf(
+      "customerRecord",
+      Schema.Field.of("customer_id", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("customer_name", Schema.of(Schema.Type.STRING))
+    );
+
+    Schema itemSchema = Schema.recordOf(
+      "itemRecord",
+      Schema.Field.of("item_id", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("cust_id", Schema.of(Schema.Type.STRING))
+    );
+
+    Schema transactionSchema = Schema.recordOf(
+      "transactionRecord",
+      Schema.Field.of("t_id", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("c_id", Schema.of(Schema.Type.STRING))
+    );
+
+    String input1Name = "source1BroadcastJoinInput-" + engine;
+    String input2Name = "source2BroadcastJoinInput-" + engine;
+    String input3Name = "source3BroadcastJoinInput-" + engine;
+    String outputName = "broadcastJoinOutput-" + engine;
+    String joinerName = "broadcastJoiner-" + engine;
+    String sinkName = "broadcastJoinSink-" + engine;
+    /*
+     * t1 (customers) is the large input. t2 (items) is required and broadcast, and is listed before t1 so that
+     * it must be moved after t1 to be joined. t3 (transactions) is not required and broadcast.
+     */
+    ETLBatchConfig etlConfig = ETLBatchConfig.builder("* * * * *")
+      .addStage(new ETLStage("source1", MockSource.getPlugin(input1Name, customerSchema)))
+      .addStage(new ETLStage("source2", MockSource.getPlugin(input2Name, itemSchema)))
+      .addStage(new ETLStage("source3", MockSource.getPlugin(input3Name, transactionSchema)))
+      .addStage(new ETLStage("t1", IdentityTransform.getPlugin()))
+      .addStage(new ETLStage("t2", IdentityTransform.getPlugin()))
+      .addStage(new ETLStage("t3", IdentityTransform.getPlugin()))
+      .addStage(new ETLStage(joinerName, MockJoiner.getPlugin("t1.customer_id=t2.cust_id=t3.c_id",
+                                                              "t2,t1", "", "t2,t3")))
+      .addStage(new ETLStage(sinkName, MockSink.getPlugin(outputName)))
+      .addConnection("source1", "t1")
+      .addConnection("source2", "t2")
+      .addConnection("source3", "t3")
+      .addConnection("t1", joinerName)
+      .addConnection("t2", joinerName)
+      .addConnection("t3", joinerName)
+      .addConnection(joinerName, sinkName)
+      .setEngine(engine)
+      .build();
+
+    AppRequest<ETLBatchConfig> appRequest = new AppRequest<>(APP_ARTIFACT, etlConfig);
+    ApplicationId appId = NamespaceId.DEFAULT.app("BroadcastJoinApp-" + engine);
+    ApplicationManager appManager = deployApplication(appId, appRequest);
+
+    Schema outSchema = Schema.recordOf(
+      "join.output",
+      Schema.Field.of("customer_id", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("customer_name", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("item_id", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("cust_id", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("t_id", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("c_id", Schema.nullableOf(Schema.of(Schema.Type.STRING)))
+    );
+
+    DataSetManager<Table> inputManager = getDataset(NamespaceId.DEFAULT.dataset(input1Name));
+    MockSource.writeInput(inputManager, ImmutableList.of(
+      StructuredRecord.builder(customerSchema).set("customer_id", "1").set("customer_name", "samuel").build(),
+      StructuredRecord.builder(customerSchema).set("customer_id", "2").set("customer_name", "bob").build(),
+      StructuredRecord.builder(customerSchema).set("customer_id", "3").set("customer_name", "jane").build()));
+    // samuel has two items, bob has none
+    inputManager = getDataset(NamespaceId.DEFAULT.dataset(input2Name));
+    MockSource.writeInput(inputManager, ImmutableList.of(
+      StructuredRecord.builder(itemSchema).set("item_id", "11").set("cust_id", "1").build(),
+      StructuredRecord.builder(itemSchema).set("item_id", "12").set("cust_id", "1").build(),
+      StructuredRecord.builder(itemSchema).set("item_id", "22").set("cust_id", "3").build()));
+    // samuel has two transactions, jane has none
+    inputManager = getDataset(NamespaceId.DEFAULT.dataset(input3Name));
+    MockSource.writeInput(inputManager, ImmutableList.of(
+      StructuredRecord.builder(transactionSchema).set("t_id", "100").set("c_id", "1").build(),
+      StructuredRecord.builder(transactionSchema).set("t_id", "101").set("c_id", "1").build(),
+      StructuredRecord.builder(transactionSchema).set("t_id", "200").set("c_id", "2").build()));
+
+    WorkflowManager workflowManager = appManager.getWorkflowManager(SmartWorkflow.NAME);
+    workflowManager.start();
+    workflowManager.waitForRun(ProgramRunStatus.COMPLETED, 5, TimeUnit.MINUTES);
+
+    Set<StructuredRecord> expected = new HashSet<>();
+    for (String itemId : ImmutableList.of("11", "12")) {
+      for (String transactionId : ImmutableList.of("100", "101")) {
+        expected.add(StructuredRecord.builder(outSchema)
+                       .set("customer_id", "1").set("customer_name", "samuel")
+                       .set("item_id", itemId).set("cust_id", "1")
+                       .set("t_id", transactionId).set("c_id", "1").build());
+      }
+    }
+    expected.add(StructuredRecord.builder(outSchema)
+                   .set("customer_id", "3").set("customer_name", "jane")
+                   .set("item_id", "22").set("cust_id", "3").build());
+
+    DataSetManager<Table> sinkManager = getDataset(outputName);
+    List<StructuredRecord> actual = MockSink.readOutput(sinkManager);
+    Assert.assertEquals(expected.size(), actual.size());
+    Assert.assertEquals(expected, new HashSet<>(actual));
+
+    validateMetric(5, appId, joinerName + ".records.out");
+    validateMetric(5, appId, sinkName + ".records.in");
+  }
+
   @Test
   public void testMultiPhaseJoinerMR() throws Exception {
     testMultipleJoiner(Engine.MAPREDUCE);
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -19,6 +19,7 @@ package co.cask.cdap.datapipeline;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.etl.batch.StructuredRecordWritable;
+import org.apache.hadoop.io.WritableComparator;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -29,6 +30,12 @@ import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  */
@@ -52,4 +59,141 @@ public class StructuredRecordWritableTest {
 
     Assert.assertEquals(writableIn.get(), record);
   }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    Schema inner = Schema.recordOf("inner", Schema.Field.of("b", Schema.of(Schema.Type.BOOLEAN)));
+    Schema schema = Schema.recordOf(
+      "rec",
+      Schema.Field.of("i", Schema.of(Schema.Type.INT)),
+      Schema.Field.of("l", Schema.nullableOf(Schema.of(Schema.Type.LONG))),
+      Schema.Field.of("d", Schema.of(Schema.Type.DOUBLE)),
+      Schema.Field.of("s", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("a", Schema.arrayOf(Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("r", inner));
+    StructuredRecord record = StructuredRecord.builder(schema)
+      .set("i", 5)
+      .set("d", 3.5d)
+      .set("s", "abc")
+      .set("a", Arrays.asList("x", "y"))
+      .set("r", StructuredRecord.builder(inner).set("b", true).build())
+      .build();
+
+    StructuredRecord result = deserialize(serialize(record));
+    Assert.assertEquals(schema, result.getSchema());
+    Assert.assertEquals(5, (int) result.get("i"));
+    Assert.assertNull(result.get("l"));
+    Assert.assertEquals(3.5d, (double) result.get("d"), 0.0d);
+    Assert.assertEquals("abc", result.get("s"));
+    Assert.assertEquals(Arrays.asList("x", "y"), result.get("a"));
+    Assert.assertEquals(true, ((StructuredRecord) result.get("r")).get("b"));
+  }
+
+  @Test
+  public void testRawComparator() throws IOException {
+    Schema schema = Schema.recordOf("rec",
+                                    Schema.Field.of("x", Schema.of(Schema.Type.STRING)),
+                                    Schema.Field.of("y", Schema.of(Schema.Type.INT)));
+    Schema otherSchema = Schema.recordOf("other", Schema.Field.of("x", Schema.of(Schema.Type.STRING)));
+
+    List<StructuredRecordWritable> writables = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      writables.add(new StructuredRecordWritable(
+        StructuredRecord.builder(schema).set("x", "key" + (i % 3)).set("y", i % 2).build()));
+      writables.add(new StructuredRecordWritable(
+        StructuredRecord.builder(otherSchema).set("x", "key" + (i % 3)).build()));
+    }
+
+    WritableComparator comparator = WritableComparator.get(StructuredRecordWritable.class);
+    for (StructuredRecordWritable first : writables) {
+      byte[] firstBytes = serialize(first.get());
+      for (StructuredRecordWritable second : writables) {
+        byte[] secondBytes = serialize(second.get());
+        int rawResult = comparator.compare(firstBytes, 0, firstBytes.length, secondBytes, 0, secondBytes.length);
+        // The raw comparator must agree with compareTo, and only equal records compare equal
+        Assert.assertEquals(Integer.signum(first.compareTo(second)), Integer.signum(rawResult));
+        Assert.assertEquals(first.equals(second), rawResult == 0);
+      }
+    }
+
+    // Sorting puts equal records next to each other
+    Collections.sort(writables);
+    for (int i = 1; i < writables.size(); i++) {
+      for (int j = i + 1; j < writables.size(); j++) {
+        if (writables.get(i - 1).equals(writables.get(j))) {
+          Assert.assertEquals(writables.get(i - 1), writables.get(i));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testRegisteredSchema() throws IOException {
+    Schema schema = Schema.recordOf("registered",
+                                    Schema.Field.of("x", Schema.of(Schema.Type.STRING)),
+                                    Schema.Field.of("y", Schema.of(Schema.Type.INT)));
+    StructuredRecord record = StructuredRecord.builder(schema).set("x", "abc").set("y", 1).build();
+
+    byte[] inlineBytes = serialize(record);
+    StructuredRecordWritable.registerSchemas(Collections.singleton(schema));
+    byte[] registeredBytes = serialize(record);
+
+    // length, schema type, schema hash and the record only
+    Assert.assertEquals(4 + 1 + 16 + 5, registeredBytes.length);
+    Assert.assertTrue(registeredBytes.length < inlineBytes.length);
+    Assert.assertEquals(record, deserialize(registeredBytes));
+    // records written before the registration can still be read
+    Assert.assertEquals(record, deserialize(inlineBytes));
+  }
+
+  @Test
+  public void testMapOrder() throws IOException {
+    Schema schema = Schema.recordOf(
+      "maps",
+      Schema.Field.of("m", Schema.mapOf(Schema.of(Schema.Type.STRING), Schema.of(Schema.Type.INT))),
+      Schema.Field.of("n", Schema.mapOf(Schema.of(Schema.Type.INT),
+                                        Schema.mapOf(Schema.of(Schema.Type.STRING), Schema.of(Schema.Type.LONG)))));
+
+    Map<String, Integer> ascending = new LinkedHashMap<>();
+    Map<String, Integer> descending = new LinkedHashMap<>();
+    Map<Integer, Map<String, Long>> nestedAscending = new LinkedHashMap<>();
+    Map<Integer, Map<String, Long>> nestedDescending = new LinkedHashMap<>();
+    for (int i = 0; i < 20; i++) {
+      ascending.put("k" + i, i);
+      descending.put("k" + (19 - i), 19 - i);
+      Map<String, Long> inner = new LinkedHashMap<>();
+      Map<String, Long> innerReversed = new LinkedHashMap<>();
+      for (int j = 0; j < 5; j++) {
+        inner.put("i" + j, (long) j);
+        innerReversed.put("i" + (4 - j), (long) (4 - j));
+      }
+      nestedAscending.put(i, inner);
+      nestedDescending.put(19 - i, innerReversed);
+    }
+
+    StructuredRecord record1 = StructuredRecord.builder(schema).set("m", ascending).set("n", nestedAscending).build();
+    StructuredRecord record2 = StructuredRecord.builder(schema).set("m", descending).set("n", nestedDescending).build();
+    Assert.assertEquals(record1, record2);
+
+    // equal records must have the same bytes, otherwise the shuffle would not group them together
+    byte[] bytes1 = serialize(record1);
+    byte[] bytes2 = serialize(record2);
+    Assert.assertArrayEquals(bytes1, bytes2);
+    WritableComparator comparator = WritableComparator.get(StructuredRecordWritable.class);
+    Assert.assertEquals(0, comparator.compare(bytes1, 0, bytes1.length, bytes2, 0, bytes2.length));
+    Assert.assertEquals(0, new StructuredRecordWritable(record1).compareTo(new StructuredRecordWritable(record2)));
+    Assert.assertEquals(record1, deserialize(bytes2));
+  }
+
+  private byte[] serialize(StructuredRecord record) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    new StructuredRecordWritable(record).write(new DataOutputStream(os));
+    return os.toByteArray();
+  }
+
+  private StructuredRecord deserialize(byte[] bytes) throws IOException {
+    StructuredRecordWritable writable = new StructuredRecordWritable();
+    writable.readFields(new DataInputStream(new ByteArrayInputStream(bytes)));
+    return writable.get();
+  }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,11 +16,15 @@
 
 package co.cask.cdap.etl.api;
 
+import java.util.Collections;
+import javax.annotation.Nullable;
+
 /**
  * Join configuration to hold information about join to be performed
  */
 public class JoinConfig {
   private Iterable<String> requiredInputs;
+  private Iterable<String> broadcastInputs;
 
   /**
    * Creates new instance of {@link JoinConfig}
@@ -30,7 +34,19 @@ public class JoinConfig {
    * meet join criteria.
    */
   public JoinConfig(Iterable<String> requiredInputs) {
+    this(requiredInputs, Collections.<String>emptyList());
+  }
+
+  /**
+   * Creates new instance of {@link JoinConfig}
+   * @param requiredInputs iterable of input stage names. This will be used to find out type of the join.
+   * @param broadcastInputs iterable of input stage names that are small enough to fit in memory. Execution engines
+   * that support it will send these inputs to every partition of the other inputs and join them there, instead of
+   * shuffling all inputs. Hints for inputs that are full outer joined are ignored. If null, no input is broadcast.
+   */
+  public JoinConfig(Iterable<String> requiredInputs, @Nullable Iterable<String> broadcastInputs) {
     this.requiredInputs = requiredInputs;
+    this.broadcastInputs = broadcastInputs == null ? Collections.<String>emptySet() : broadcastInputs;
   }
 
   /**
@@ -40,4 +56,12 @@ public class JoinConfig {
   public Iterable<String> getRequiredInputs() {
     return requiredInputs;
   }
+
+  /**
+   * Returns inputs that should be broadcast to the other inputs instead of being shuffled.
+   * @return iterable of broadcast inputs
+   */
+  public Iterable<String> getBroadcastInputs() {
+    return broadcastInputs;
+  }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -29,4 +29,18 @@ public interface LookupProvider {
    * @return a {@link Lookup} instance
    */
   <T> Lookup<T> provide(String table, Map<String, String> arguments);
+
+  /**
+   * Provides a {@link Lookup} for the table as described by the given {@link LookupTableConfig}. If caching is
+   * enabled in the config, values are cached as described by its {@link CacheConfig}. By default, the config is
+   * used only for the dataset properties.
+   *
+   * @param table the name of the {@link Lookup} table
+   * @param config configuration of the {@link Lookup} table
+   * @param <T> the type of value returned by the {@link Lookup}
+   * @return a {@link Lookup} instance
+   */
+  default <T> Lookup<T> provide(String table, LookupTableConfig config) {
+    return provide(table, config.getDatasetProperties());
+  }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -51,4 +51,15 @@ public interface BatchAggregatorContext extends BatchContext {
    */
   void setGroupValueClass(Class<?> groupValueClass);
 
+  /**
+   * Set the aggregate value class of a {@link BatchCombinableAggregator}. This is not required if the aggregator
+   * is parameterized with a concrete class for the aggregate value. This method is required if the aggregate value
+   * class is only known at configure time versus compile time. By default, the class is ignored.
+   *
+   * @param aggregateValueClass the aggregate value class
+   */
+  default void setAggregateValueClass(Class<?> aggregateValueClass) {
+    // no-op
+  }
+
 }
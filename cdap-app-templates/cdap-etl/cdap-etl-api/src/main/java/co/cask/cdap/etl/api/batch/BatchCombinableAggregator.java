@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.api.batch;
+
+import co.cask.cdap.api.annotation.Beta;
+import co.cask.cdap.etl.api.Emitter;
+
+import java.util.Iterator;
+
+/**
+ * A {@link BatchAggregator} whose aggregation can be computed from partial aggregates. Instead of shuffling every
+ * group value, the execution engine aggregates the values of a group on each partition before the shuffle and
+ * merges the partial aggregates after the shuffle. This greatly reduces the amount of data shuffled for
+ * aggregations like counts and sums.
+ *
+ * The aggregate value has the same requirements as the group value of a {@link BatchAggregator}. If its class
+ * is only known at configure time, it must be set with
+ * {@link BatchAggregatorContext#setAggregateValueClass(Class)}.
+ *
+ * @param <GROUP_KEY> group key type. Must be a supported type
+ * @param <GROUP_VALUE> group value type
+ * @param <AGG_VALUE> partial aggregate type. Must be a supported type
+ * @param <OUT> output object type
+ */
+@Beta
+public abstract class BatchCombinableAggregator<GROUP_KEY, GROUP_VALUE, AGG_VALUE, OUT>
+  extends BatchAggregator<GROUP_KEY, GROUP_VALUE, OUT> {
+
+  /**
+   * Creates the partial aggregate of a group from its first value.
+   *
+   * @param groupValue the first value of the group
+   * @return the partial aggregate of the group
+   * @throws Exception if there is some error creating the aggregate
+   */
+  public abstract AGG_VALUE initializeAggregateValue(GROUP_VALUE groupValue) throws Exception;
+
+  /**
+   * Adds a value to the partial aggregate of a group.
+   *
+   * @param aggValue the partial aggregate of the group. It may be modified and returned.
+   * @param groupValue the value to add
+   * @return the partial aggregate with the value added
+   * @throws Exception if there is some error merging the value
+   */
+  public abstract AGG_VALUE mergeValues(AGG_VALUE aggValue, GROUP_VALUE groupValue) throws Exception;
+
+  /**
+   * Merges two partial aggregates of the same group, computed from different partitions.
+   *
+   * @param aggValue1 a partial aggregate of the group. It may be modified and returned.
+   * @param aggValue2 another partial aggregate of the group
+   * @return the merged partial aggregate
+   * @throws Exception if there is some error merging the aggregates
+   */
+  public abstract AGG_VALUE mergePartitions(AGG_VALUE aggValue1, AGG_VALUE aggValue2) throws Exception;
+
+  /**
+   * Emits zero or more output objects from the complete aggregate of a group.
+   *
+   * @param groupKey the key for the group
+   * @param aggValue the aggregate of all values of the group
+   * @param emitter the emitter to emit aggregate values for the group
+   * @throws Exception if there is some error emitting the output
+   */
+  public abstract void finalizeAggregate(GROUP_KEY groupKey, AGG_VALUE aggValue,
+                                         Emitter<OUT> emitter) throws Exception;
+
+  /**
+   * Aggregates the values of a group with {@link #initializeAggregateValue(Object)} and
+   * {@link #mergeValues(Object, Object)}, then emits the output with
+   * {@link #finalizeAggregate(Object, Object, Emitter)}. This is used by execution engines that don't compute
+   * partial aggregates.
+   */
+  @Override
+  public final void aggregate(GROUP_KEY groupKey, Iterator<GROUP_VALUE> groupValues,
+                              Emitter<OUT> emitter) throws Exception {
+    if (!groupValues.hasNext()) {
+      return;
+    }
+    AGG_VALUE aggValue = initializeAggregateValue(groupValues.next());
+    while (groupValues.hasNext()) {
+      aggValue = mergeValues(aggValue, groupValues.next());
+    }
+    finalizeAggregate(groupKey, aggValue, emitter);
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2017 Cask Data, Inc.
+ * Copyright © 2017-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -17,12 +17,16 @@
 package co.cask.cdap.etl.api.lookup;
 
 import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.table.Get;
 import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.etl.api.Lookup;
 import com.google.common.collect.ImmutableSet;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -49,9 +53,17 @@ public class TableLookup implements Lookup<Row> {
 
   @Override
   public Map<String, Row> lookup(Set<String> keys) {
+    // Fetch all keys with a single multi-get
+    List<Get> gets = new ArrayList<>(keys.size());
+    for (String key : keys) {
+      gets.add(new Get(key));
+    }
+    List<Row> rows = table.get(gets);
+
     Map<String, Row> results = new HashMap<>();
+    Iterator<Row> rowIterator = rows.iterator();
     for (String key : keys) {
-      results.put(key, lookup(key));
+      results.put(key, rowIterator.next());
     }
     return results;
   }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,27 +16,104 @@
 
 package co.cask.cdap.etl.batch;
 
-import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
-import co.cask.cdap.format.StructuredRecordStringConverter;
+import co.cask.cdap.api.data.schema.SchemaHash;
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.common.io.Encoder;
+import co.cask.cdap.format.io.StructuredRecordDatumReader;
+import co.cask.cdap.format.io.StructuredRecordDatumWriter;
+import com.google.common.base.Charsets;
 import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Wrapper around a {@link StructuredRecord} so that it can be used as the output key and/or value of a mapper.
- * This is not very performant and must be improved soon (CDAP-5347).
+ *
+ * The serialized form is:
+ *
+ * <pre>
+ * {@code
+ *
+ * writable = <length> <schema_ref> <record>
+ * length = 4 bytes int for the number of bytes after it
+ * schema_ref = <registered> <schema_hash> | <inline> <schema_hash> <schema_length> <schema>
+ * registered = 1 byte 0, the schema was registered with {@link #registerSchemas(Iterable)}
+ * inline = 1 byte 1, the schema is not registered and is written with the record
+ * schema_hash = 16 bytes MD5 hash of the schema
+ * schema_length = vint for the length of the schema JSON
+ * schema = UTF-8 schema JSON
+ * record = record encoded with the binary encoding of the schema, with map entries sorted by their encoded key
+ *
+ * }
+ * </pre>
+ *
+ * Schemas known from the pipeline spec are registered by every task of a pipeline phase before any record is
+ * written or read, so only their hash is shuffled. Since the same record always has the same serialized form,
+ * records are compared on their serialized bytes, which allows the shuffle to sort and group records without
+ * deserializing them.
  */
 public class StructuredRecordWritable implements WritableComparable<StructuredRecordWritable> {
-  // schema cache so that we do not parse schema string for each incoming record
-  private static final Map<byte[], Schema> schemaCache = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+
+  private static final int HASH_SIZE = 16;
+  private static final byte REGISTERED_SCHEMA = 0;
+  private static final byte INLINE_SCHEMA = 1;
+  private static final StructuredRecordDatumReader DATUM_READER = new StructuredRecordDatumReader();
+  private static final ThreadLocal<CanonicalDatumWriter> DATUM_WRITER = new ThreadLocal<CanonicalDatumWriter>() {
+    @Override
+    protected CanonicalDatumWriter initialValue() {
+      return new CanonicalDatumWriter();
+    }
+  };
+
+  // schemas registered for the task, which are referred by hash only
+  private static final ConcurrentMap<SchemaHash, Schema> REGISTERED_SCHEMAS = new ConcurrentHashMap<>();
+  // caches so that we do not serialize nor parse the schema for each record
+  private static final ConcurrentMap<Schema, byte[]> SCHEMA_REFS = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<SchemaHash, Schema> INLINE_SCHEMAS = new ConcurrentHashMap<>();
+
+  static {
+    WritableComparator.define(StructuredRecordWritable.class, new Comparator());
+  }
+
   private StructuredRecord record;
+  private RecordOutputStream buffer;
+  private DataOutputStream bufferOutput;
+
+  /**
+   * Registers the schemas of the records that will be written or read by this task, so that records of those schemas
+   * are serialized with the schema hash only. Every task that writes or reads the same records must register the
+   * same schemas before writing or reading any record.
+   *
+   * @param schemas the schemas to register
+   */
+  public static void registerSchemas(Iterable<Schema> schemas) {
+    for (Schema schema : schemas) {
+      REGISTERED_SCHEMAS.putIfAbsent(schema.getSchemaHash(), schema);
+    }
+    // schema references computed before the registration may now be wrong
+    SCHEMA_REFS.clear();
+  }
 
   // required by Hadoop
   @SuppressWarnings("unused")
@@ -58,40 +135,60 @@ public class StructuredRecordWritable implements WritableComparable<StructuredRe
   @SuppressWarnings("ConstantConditions")
   @Override
   public void write(DataOutput out) throws IOException {
-    byte[] schemaBytes = Bytes.toBytes(record.getSchema().toString());
-    out.writeInt(schemaBytes.length);
-    out.write(schemaBytes);
-
-    byte[] recordBytes = Bytes.toBytes(StructuredRecordStringConverter.toJsonString(record));
-    out.writeInt(recordBytes.length);
-    out.write(recordBytes);
+    RecordOutputStream buffer = serialize();
+    out.writeInt(buffer.size());
+    out.write(buffer.getBuffer(), 0, buffer.size());
   }
 
   @Override
   public void readFields(DataInput in) throws IOException {
-    int schemaLen = in.readInt();
-    byte[] schemaBytes = new byte[schemaLen];
-    in.readFully(schemaBytes, 0, schemaLen);
+    int length = in.readInt();
+
+    byte schemaType = in.readByte();
+    byte[] hashBytes = new byte[HASH_SIZE];
+    in.readFully(hashBytes);
+    SchemaHash hash = new SchemaHash(ByteBuffer.wrap(hashBytes));
+    int recordLength = length - 1 - HASH_SIZE;
 
     Schema schema;
-    if (schemaCache.containsKey(schemaBytes)) {
-      schema = schemaCache.get(schemaBytes);
+    if (schemaType == REGISTERED_SCHEMA) {
+      schema = REGISTERED_SCHEMAS.get(hash);
+      if (schema == null) {
+        throw new IOException("Schema with hash " + hash + " is not registered. " +
+                                "The schemas must be registered before reading any record.");
+      }
     } else {
-      String schemaStr = Bytes.toString(schemaBytes);
-      schema = Schema.parseJson(schemaStr);
-      schemaCache.put(schemaBytes, schema);
+      int schemaLength = WritableUtils.readVInt(in);
+      recordLength -= WritableUtils.getVIntSize(schemaLength) + schemaLength;
+      schema = INLINE_SCHEMAS.get(hash);
+      if (schema == null) {
+        byte[] schemaBytes = new byte[schemaLength];
+        in.readFully(schemaBytes);
+        schema = Schema.parseJson(new String(schemaBytes, Charsets.UTF_8));
+        INLINE_SCHEMAS.putIfAbsent(hash, schema);
+      } else {
+        in.skipBytes(schemaLength);
+      }
     }
 
-    int recordLen = in.readInt();
-    byte[] recordBytes = new byte[recordLen];
-    in.readFully(recordBytes, 0, recordLen);
-    String recordStr = Bytes.toString(recordBytes);
-    this.record = StructuredRecordStringConverter.fromJsonString(recordStr, schema);
+    byte[] recordBytes = new byte[recordLength];
+    in.readFully(recordBytes);
+    this.record = DATUM_READER.read(new BinaryDecoder(new ByteArrayInputStream(recordBytes)), schema);
   }
 
   @Override
   public int compareTo(StructuredRecordWritable o) {
-    return Integer.compare(hashCode(), o.hashCode());
+    if (this == o) {
+      return 0;
+    }
+    try {
+      RecordOutputStream thisBytes = serialize();
+      RecordOutputStream otherBytes = o.serialize();
+      return WritableComparator.compareBytes(thisBytes.getBuffer(), 0, thisBytes.size(),
+                                             otherBytes.getBuffer(), 0, otherBytes.size());
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to serialize record for comparison", e);
+    }
   }
 
   @Override
@@ -112,4 +209,146 @@ public class StructuredRecordWritable implements WritableComparable<StructuredRe
   public int hashCode() {
     return record != null ? record.hashCode() : 0;
   }
+
+  /**
+   * Serializes the record, without the leading length, into the buffer of this writable.
+   */
+  private RecordOutputStream serialize() throws IOException {
+    Schema schema = record.getSchema();
+    byte[] schemaRef = SCHEMA_REFS.get(schema);
+    if (schemaRef == null) {
+      schemaRef = createSchemaRef(schema);
+      SCHEMA_REFS.putIfAbsent(schema, schemaRef);
+    }
+
+    if (buffer == null) {
+      buffer = new RecordOutputStream();
+      bufferOutput = new DataOutputStream(buffer);
+    }
+    buffer.reset();
+    bufferOutput.write(schemaRef);
+    DATUM_WRITER.get().encode(record, bufferOutput);
+    bufferOutput.flush();
+    return buffer;
+  }
+
+  private static byte[] createSchemaRef(Schema schema) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(os);
+    SchemaHash hash = schema.getSchemaHash();
+    if (REGISTERED_SCHEMAS.containsKey(hash)) {
+      output.writeByte(REGISTERED_SCHEMA);
+      output.write(hash.toByteArray());
+    } else {
+      byte[] schemaBytes = schema.toString().getBytes(Charsets.UTF_8);
+      output.writeByte(INLINE_SCHEMA);
+      output.write(hash.toByteArray());
+      WritableUtils.writeVInt(output, schemaBytes.length);
+      output.write(schemaBytes);
+    }
+    output.flush();
+    return os.toByteArray();
+  }
+
+  /**
+   * A {@link ByteArrayOutputStream} that exposes its buffer to avoid copying.
+   */
+  private static final class RecordOutputStream extends ByteArrayOutputStream {
+
+    byte[] getBuffer() {
+      return buf;
+    }
+  }
+
+  /**
+   * A {@link StructuredRecordDatumWriter} that writes map entries in the order of their encoded keys, so that equal
+   * maps are always encoded to the same bytes regardless of their iteration order. This is needed for the raw
+   * comparator to group equal records. It keeps state while encoding and must not be shared by multiple threads.
+   */
+  private static final class CanonicalDatumWriter extends StructuredRecordDatumWriter {
+
+    // the stream that the current encoder writes to, one per level of map nesting
+    private final Deque<OutputStream> outputs = new ArrayDeque<>();
+    // entries of the maps being encoded, one list per level of map nesting
+    private final Deque<List<MapEntryBytes>> mapEntries = new ArrayDeque<>();
+
+    void encode(StructuredRecord record, OutputStream output) throws IOException {
+      outputs.push(output);
+      try {
+        encode(record, new BinaryEncoder(output));
+      } finally {
+        outputs.clear();
+        mapEntries.clear();
+      }
+    }
+
+    @Override
+    protected void encodeMapBegin(Encoder encoder, Schema keySchema, Schema valueSchema, int size) throws IOException {
+      super.encodeMapBegin(encoder, keySchema, valueSchema, size);
+      mapEntries.push(new ArrayList<MapEntryBytes>(size));
+    }
+
+    @Override
+    protected void encodeMapEntry(Encoder encoder, Schema keySchema,
+                                  Schema valueSchema, Map.Entry<?, ?> entry) throws IOException {
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      Encoder entryEncoder = new BinaryEncoder(os);
+      outputs.push(os);
+      try {
+        encode(entryEncoder, keySchema, entry.getKey());
+        int keyLength = os.size();
+        encode(entryEncoder, valueSchema, entry.getValue());
+        mapEntries.peek().add(new MapEntryBytes(os.toByteArray(), keyLength));
+      } finally {
+        outputs.pop();
+      }
+    }
+
+    @Override
+    protected void encodeMapEnd(Encoder encoder, Schema keySchema, Schema valueSchema, int size) throws IOException {
+      List<MapEntryBytes> entries = mapEntries.pop();
+      Collections.sort(entries);
+      // the binary encoder writes through to the stream, so the entries can be written to it directly
+      OutputStream output = outputs.peek();
+      for (MapEntryBytes entry : entries) {
+        output.write(entry.bytes);
+      }
+      super.encodeMapEnd(encoder, keySchema, valueSchema, size);
+    }
+  }
+
+  /**
+   * The encoded bytes of a map entry, ordered by the encoded key.
+   */
+  private static final class MapEntryBytes implements Comparable<MapEntryBytes> {
+    private final byte[] bytes;
+    private final int keyLength;
+
+    MapEntryBytes(byte[] bytes, int keyLength) {
+      this.bytes = bytes;
+      this.keyLength = keyLength;
+    }
+
+    @Override
+    public int compareTo(MapEntryBytes other) {
+      return WritableComparator.compareBytes(bytes, 0, keyLength, other.bytes, 0, other.keyLength);
+    }
+  }
+
+  /**
+   * A raw comparator for {@link StructuredRecordWritable}, which compares the serialized bytes after the length.
+   * Records with different schemas are ordered by schema reference, and records of the same schema are ordered by
+   * their binary encoding, which gives equal records next to each other.
+   */
+  public static final class Comparator extends WritableComparator {
+
+    public Comparator() {
+      super(StructuredRecordWritable.class);
+    }
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      return compareBytes(b1, s1 + 4, l1 - 4, b2, s2 + 4, l2 - 4);
+    }
+  }
 }
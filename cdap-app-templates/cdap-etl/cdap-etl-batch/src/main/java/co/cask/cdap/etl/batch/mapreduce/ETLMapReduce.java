@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015-2016 Cask Data, Inc.
+ * Copyright © 2015-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -281,7 +281,9 @@ public class ETLMapReduce extends AbstractMapReduce {
                 job.setNumReduceTasks(aggregatorContext.getNumPartitions());
               }
               Class<?> outputKeyClass = aggregatorContext.getGroupKeyClass();
-              Class<?> outputValClass = aggregatorContext.getGroupValueClass();
+              // combinable aggregators shuffle partial aggregates instead of group values
+              Class<?> outputValClass = aggregatorContext.getAggregateValueClass() == null
+                ? aggregatorContext.getGroupValueClass() : aggregatorContext.getAggregateValueClass();
 
               if (outputKeyClass == null) {
                 outputKeyClass = TypeChecker.getGroupKeyClass(aggregator);
@@ -445,6 +447,19 @@ public class ETLMapReduce extends AbstractMapReduce {
       }
     }
 
+    @Override
+    protected void cleanup(Mapper.Context context) throws IOException, InterruptedException {
+      // emit the partial aggregates that are still buffered, while the output is still open
+      try {
+        transformRunner.flush();
+      } catch (StageFailureException e) {
+        PIPELINE_LOG.error("{}", e.getMessage(), e.getCause());
+        Throwables.propagate(e.getCause());
+      } catch (Exception e) {
+        Throwables.propagate(e);
+      }
+    }
+
     @Override
     public void destroy() {
       transformRunner.destroy();
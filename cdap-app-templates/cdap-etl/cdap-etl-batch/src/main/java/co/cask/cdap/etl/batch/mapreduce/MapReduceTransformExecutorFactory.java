@@ -1,5 +1,5 @@
 /*
- * Copyright © 2017 Cask Data, Inc.
+ * Copyright © 2017-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -33,6 +33,7 @@ import co.cask.cdap.etl.api.StageMetrics;
 import co.cask.cdap.etl.api.TransformContext;
 import co.cask.cdap.etl.api.Transformation;
 import co.cask.cdap.etl.api.batch.BatchAggregator;
+import co.cask.cdap.etl.api.batch.BatchCombinableAggregator;
 import co.cask.cdap.etl.api.batch.BatchJoiner;
 import co.cask.cdap.etl.api.batch.BatchJoinerRuntimeContext;
 import co.cask.cdap.etl.api.batch.BatchRuntimeContext;
@@ -69,10 +70,12 @@ import com.google.common.collect.Sets;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -87,6 +90,9 @@ import javax.annotation.Nullable;
  * @param <T> the type of input for the created transform executors
  */
 public class MapReduceTransformExecutorFactory<T> {
+  // maximum number of groups a mapper keeps partial aggregates for before emitting them
+  private static final int MAX_PARTIAL_AGGREGATES = 10000;
+
   private final String sourceStageName;
   private final MacroEvaluator macroEvaluator;
   private final PipelinePluginInstantiator pluginInstantiator;
@@ -97,6 +103,7 @@ public class MapReduceTransformExecutorFactory<T> {
   private final int numberOfRecordsPreview;
   private final BasicArguments arguments;
   private final boolean isPipelineContainsCondition;
+  private final List<CombiningMapperAggregatorTransformation<?, ?, ?, ?, ?>> combiningTransformations;
   private boolean isMapPhase;
 
   public MapReduceTransformExecutorFactory(MapReduceTaskContext taskContext,
@@ -120,6 +127,7 @@ public class MapReduceTransformExecutorFactory<T> {
     this.isMapPhase = hadoopContext instanceof Mapper.Context;
     this.arguments = arguments;
     this.isPipelineContainsCondition = isPipelineContainsCondition;
+    this.combiningTransformations = new ArrayList<>();
   }
 
   private MapReduceRuntimeContext createRuntimeContext(StageSpec stageInfo) {
@@ -160,6 +168,23 @@ public class MapReduceTransformExecutorFactory<T> {
       BatchAggregator<?, ?, ?> batchAggregator = pluginInstantiator.newPluginInstance(stageName, macroEvaluator);
       BatchRuntimeContext runtimeContext = createRuntimeContext(stageSpec);
       batchAggregator.initialize(runtimeContext);
+      if (batchAggregator instanceof BatchCombinableAggregator) {
+        // the map output value is the partial aggregate instead of the group value
+        BatchCombinableAggregator<?, ?, ?, ?> combinableAggregator = (BatchCombinableAggregator) batchAggregator;
+        if (isMapPhase) {
+          CombiningMapperAggregatorTransformation transformation =
+            new CombiningMapperAggregatorTransformation(combinableAggregator, mapOutputKeyClassName,
+                                                        mapOutputValClassName, MAX_PARTIAL_AGGREGATES);
+          combiningTransformations.add(transformation);
+          return getTrackedEmitKeyStep(transformation, stageMetrics, taskContext.getDataTracer(stageName), collector);
+        }
+        Configuration hConf = ((JobContext) taskContext.getHadoopContext()).getConfiguration();
+        return getTrackedAggregateStep(new CombiningReducerAggregatorTransformation(combinableAggregator,
+                                                                                    mapOutputKeyClassName,
+                                                                                    mapOutputValClassName,
+                                                                                    hConf),
+                                       stageMetrics, taskContext.getDataTracer(stageName), collector);
+      }
       if (isMapPhase) {
         return getTrackedEmitKeyStep(new MapperAggregatorTransformation(batchAggregator, mapOutputKeyClassName,
                                                                         mapOutputValClassName),
@@ -225,6 +250,18 @@ public class MapReduceTransformExecutorFactory<T> {
     return new PipeTransformExecutor<>(pipeStages, startingPoints);
   }
 
+  /**
+   * Emits the partial aggregates buffered by the combinable aggregators in the map phase. Must be called after
+   * all input has been sent to the executors created by this factory.
+   *
+   * @throws Exception if there was an error emitting the partial aggregates
+   */
+  public void flush() throws Exception {
+    for (CombiningMapperAggregatorTransformation<?, ?, ?, ?, ?> transformation : combiningTransformations) {
+      transformation.flush();
+    }
+  }
+
   private PipeStage getPipeStage(PipelinePhase pipeline, String stageName, Map<String, PipeStage> pipeStages,
                                  OutputWriter<?, ?> outputWriter) throws Exception {
     StageSpec stageSpec = pipeline.getStage(stageName);
@@ -513,6 +550,115 @@ public class MapReduceTransformExecutorFactory<T> {
     }
   }
 
+  /**
+   * A Transformation that computes partial aggregates in the mapper using a {@link BatchCombinableAggregator}.
+   * Partial aggregates are kept in memory for up to a fixed number of groups. When that number is exceeded,
+   * and when {@link #flush()} is called, they are emitted as map output and the buffer is cleared. This reduces
+   * the amount of data shuffled without relying on a Hadoop combiner, which wouldn't have access to the plugin.
+   *
+   * @param <GROUP_KEY> type of group key output by the aggregator
+   * @param <GROUP_VAL> type of group value used by the aggregator
+   * @param <AGG_VAL>   type of partial aggregate used by the aggregator
+   * @param <OUT_KEY>   type of output key for mapreduce. Must implement WritableComparable
+   * @param <OUT_VAL>   type of output value for mapreduce. Must implement Writable
+   */
+  private static class CombiningMapperAggregatorTransformation<GROUP_KEY, GROUP_VAL, AGG_VAL,
+    OUT_KEY extends Writable, OUT_VAL extends Writable> implements Transformation<GROUP_VAL, KeyValue<OUT_KEY, OUT_VAL>> {
+    private final BatchCombinableAggregator<GROUP_KEY, GROUP_VAL, AGG_VAL, ?> aggregator;
+    private final NoErrorEmitter<GROUP_KEY> groupKeyEmitter;
+    private final WritableConversion<GROUP_KEY, OUT_KEY> keyConversion;
+    private final WritableConversion<AGG_VAL, OUT_VAL> valConversion;
+    private final int maxGroups;
+    // keyed by the writable group key, since it has value based equals and hashCode for all supported types
+    private final Map<OUT_KEY, AGG_VAL> partialAggregates;
+    private Emitter<KeyValue<OUT_KEY, OUT_VAL>> emitter;
+
+    CombiningMapperAggregatorTransformation(BatchCombinableAggregator<GROUP_KEY, GROUP_VAL, AGG_VAL, ?> aggregator,
+                                            String groupKeyClassName, String aggValClassName, int maxGroups) {
+      this.aggregator = aggregator;
+      this.groupKeyEmitter =
+        new NoErrorEmitter<>("Errors and Alerts cannot be emitted from the groupBy method of an aggregator");
+      WritableConversion<GROUP_KEY, OUT_KEY> keyConversion = WritableConversions.getConversion(groupKeyClassName);
+      WritableConversion<AGG_VAL, OUT_VAL> valConversion = WritableConversions.getConversion(aggValClassName);
+      this.keyConversion = keyConversion == null ? new CastConversion<GROUP_KEY, OUT_KEY>() : keyConversion;
+      this.valConversion = valConversion == null ? new CastConversion<AGG_VAL, OUT_VAL>() : valConversion;
+      this.maxGroups = maxGroups;
+      this.partialAggregates = new HashMap<>();
+    }
+
+    @Override
+    public void transform(GROUP_VAL input, Emitter<KeyValue<OUT_KEY, OUT_VAL>> emitter) throws Exception {
+      this.emitter = emitter;
+      groupKeyEmitter.reset();
+      aggregator.groupBy(input, groupKeyEmitter);
+      for (GROUP_KEY groupKey : groupKeyEmitter.getEntries()) {
+        OUT_KEY key = keyConversion.toWritable(groupKey);
+        AGG_VAL aggValue = partialAggregates.get(key);
+        partialAggregates.put(key, aggValue == null ? aggregator.initializeAggregateValue(input)
+                                                    : aggregator.mergeValues(aggValue, input));
+      }
+      if (partialAggregates.size() > maxGroups) {
+        flush();
+      }
+    }
+
+    void flush() throws Exception {
+      if (emitter != null) {
+        for (Map.Entry<OUT_KEY, AGG_VAL> entry : partialAggregates.entrySet()) {
+          emitter.emit(new KeyValue<>(entry.getKey(), valConversion.toWritable(entry.getValue())));
+        }
+      }
+      partialAggregates.clear();
+    }
+  }
+
+  /**
+   * A Transformation that merges the partial aggregates computed by {@link CombiningMapperAggregatorTransformation}
+   * and emits the output of a {@link BatchCombinableAggregator} for each group.
+   *
+   * @param <GROUP_KEY>  type of group key output by the aggregator
+   * @param <AGG_VAL>    type of partial aggregate used by the aggregator
+   * @param <OUT>        type of output of the aggregator
+   * @param <REDUCE_KEY> type of reduce key for mapreduce. Must implement WritableComparable
+   * @param <REDUCE_VAL> type of reduce value for mapreduce. Must implement Writable
+   */
+  private static class CombiningReducerAggregatorTransformation<GROUP_KEY, AGG_VAL, OUT,
+    REDUCE_KEY extends WritableComparable, REDUCE_VAL extends Writable>
+    implements Transformation<KeyValue<REDUCE_KEY, Iterator<REDUCE_VAL>>, OUT> {
+    private final BatchCombinableAggregator<GROUP_KEY, ?, AGG_VAL, OUT> aggregator;
+    private final WritableConversion<GROUP_KEY, REDUCE_KEY> keyConversion;
+    private final WritableConversion<AGG_VAL, REDUCE_VAL> valConversion;
+    private final Configuration hConf;
+    private final boolean isWritableAggregate;
+
+    CombiningReducerAggregatorTransformation(BatchCombinableAggregator<GROUP_KEY, ?, AGG_VAL, OUT> aggregator,
+                                             String groupKeyClassName, String aggValClassName,
+                                             Configuration hConf) {
+      this.aggregator = aggregator;
+      WritableConversion<GROUP_KEY, REDUCE_KEY> keyConversion = WritableConversions.getConversion(groupKeyClassName);
+      WritableConversion<AGG_VAL, REDUCE_VAL> valConversion = WritableConversions.getConversion(aggValClassName);
+      this.keyConversion = keyConversion == null ? new CastConversion<GROUP_KEY, REDUCE_KEY>() : keyConversion;
+      this.valConversion = valConversion == null ? new CastConversion<AGG_VAL, REDUCE_VAL>() : valConversion;
+      this.hConf = hConf;
+      this.isWritableAggregate = valConversion == null;
+    }
+
+    @Override
+    public void transform(KeyValue<REDUCE_KEY, Iterator<REDUCE_VAL>> input, Emitter<OUT> emitter) throws Exception {
+      Iterator<REDUCE_VAL> iter = input.getValue();
+      if (!iter.hasNext()) {
+        return;
+      }
+      // the reduce value iterator reuses the same instance, which can't be kept as the merged aggregate
+      REDUCE_VAL first = iter.next();
+      AGG_VAL aggValue = valConversion.fromWritable(isWritableAggregate ? WritableUtils.clone(first, hConf) : first);
+      while (iter.hasNext()) {
+        aggValue = aggregator.mergePartitions(aggValue, valConversion.fromWritable(iter.next()));
+      }
+      aggregator.finalizeAggregate(keyConversion.fromWritable(input.getKey()), aggValue, emitter);
+    }
+  }
+
   /**
    * Conversion that doesn't do anything but cast types to each other.
    * This is used in the MapperAggregatorTransformation and ReducerAggregatorTransformation when the user is already
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -26,6 +26,7 @@ import co.cask.cdap.etl.api.batch.BatchJoiner;
 import co.cask.cdap.etl.batch.BatchPhaseSpec;
 import co.cask.cdap.etl.batch.PipeTransformExecutor;
 import co.cask.cdap.etl.batch.PipelinePluginInstantiator;
+import co.cask.cdap.etl.batch.StructuredRecordWritable;
 import co.cask.cdap.etl.batch.connector.MultiConnectorFactory;
 import co.cask.cdap.etl.common.BasicArguments;
 import co.cask.cdap.etl.common.Constants;
@@ -60,6 +61,7 @@ public class TransformRunner<KEY, VALUE> {
     .registerTypeAdapter(Schema.class, new SchemaTypeAdapter())
     .registerTypeAdapter(SetMultimap.class, new SetMultimapCodec<>())
     .create();
+  private final MapReduceTransformExecutorFactory<KeyValue<KEY, VALUE>> transformExecutorFactory;
   private final PipeTransformExecutor<KeyValue<KEY, VALUE>> transformExecutor;
   private final OutputWriter<Object, Object> outputWriter;
 
@@ -88,6 +90,10 @@ public class TransformRunner<KEY, VALUE> {
     String sourceStage = (inputContext != null) ? inputAliasToStage.get(inputContext.getInputName()) : null;
 
     PipelinePhase phase = phaseSpec.getPhase();
+    // register the schemas of the whole phase, so that mappers and reducers agree on the schemas that are
+    // shuffled by hash only
+    StructuredRecordWritable.registerSchemas(getSchemas(phase));
+
     Set<StageSpec> reducers = phase.getStagesOfType(BatchAggregator.PLUGIN_TYPE, BatchJoiner.PLUGIN_TYPE);
     if (!reducers.isEmpty()) {
       String reducerName = reducers.iterator().next().getName();
@@ -100,14 +106,31 @@ public class TransformRunner<KEY, VALUE> {
       }
     }
 
-    MapReduceTransformExecutorFactory<KeyValue<KEY, VALUE>> transformExecutorFactory =
-      new MapReduceTransformExecutorFactory<>(context, pluginInstantiator, metrics,
+    this.transformExecutorFactory = new MapReduceTransformExecutorFactory<>(context, pluginInstantiator, metrics,
                                               new BasicArguments(context.getWorkflowToken(), runtimeArgs),
                                               sourceStage, phaseSpec.getNumOfRecordsPreview(),
                                               phaseSpec.pipelineContainsCondition());
     this.transformExecutor = transformExecutorFactory.create(phase, outputWriter);
   }
 
+  /**
+   * Returns all the schemas known from the specs of the stages in the given phase.
+   */
+  private Set<Schema> getSchemas(PipelinePhase phase) {
+    Set<Schema> schemas = new HashSet<>();
+    for (StageSpec stageSpec : phase) {
+      schemas.addAll(stageSpec.getInputSchemas().values());
+      schemas.add(stageSpec.getOutputSchema());
+      for (StageSpec.Port port : stageSpec.getOutputPorts().values()) {
+        schemas.add(port.getSchema());
+      }
+      schemas.add(stageSpec.getErrorSchema());
+    }
+    // schemas are null if they are variable or unknown
+    schemas.remove(null);
+    return schemas;
+  }
+
   // this is needed because we need to write to the context differently depending on the number of outputs
   private OutputWriter<Object, Object> getSinkWriter(MapReduceTaskContext<Object, Object> context,
                                                      PipelinePhase pipelinePhase,
@@ -142,6 +165,14 @@ public class TransformRunner<KEY, VALUE> {
     transformExecutor.runOneIteration(input);
   }
 
+  /**
+   * Emits any output buffered by the transformations. Must be called after the last call to
+   * {@link #transform(Object, Object)}, while the task output is still open.
+   */
+  public void flush() throws Exception {
+    transformExecutorFactory.flush();
+  }
+
   public void destroy() {
     Destroyables.destroyQuietly(transformExecutor);
   }
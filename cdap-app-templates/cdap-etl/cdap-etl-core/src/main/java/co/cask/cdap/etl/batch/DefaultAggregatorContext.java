@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -33,6 +33,7 @@ public class DefaultAggregatorContext extends AbstractBatchContext implements Ba
   private Integer numPartitions;
   private Class<?> groupKeyClass;
   private Class<?> groupValueClass;
+  private Class<?> aggregateValueClass;
 
   public DefaultAggregatorContext(PipelineRuntime pipelineRuntime, StageSpec stageSpec,
                                   DatasetContext datasetContext, Admin admin) {
@@ -58,6 +59,11 @@ public class DefaultAggregatorContext extends AbstractBatchContext implements Ba
     this.groupValueClass = groupValueClass;
   }
 
+  @Override
+  public void setAggregateValueClass(Class<?> aggregateValueClass) {
+    this.aggregateValueClass = aggregateValueClass;
+  }
+
   public Integer getNumPartitions() {
     return numPartitions;
   }
@@ -69,4 +75,8 @@ public class DefaultAggregatorContext extends AbstractBatchContext implements Ba
   public Class<?> getGroupValueClass() {
     return groupValueClass;
   }
+
+  public Class<?> getAggregateValueClass() {
+    return aggregateValueClass;
+  }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -18,6 +18,7 @@ package co.cask.cdap.etl.common;
 
 import co.cask.cdap.etl.api.Lookup;
 import co.cask.cdap.etl.api.LookupProvider;
+import co.cask.cdap.etl.api.LookupTableConfig;
 import co.cask.cdap.etl.api.TransformContext;
 import co.cask.cdap.etl.spec.StageSpec;
 
@@ -41,4 +42,11 @@ public abstract class AbstractTransformContext extends AbstractStageContext impl
   public <T> Lookup<T> provide(String table, Map<String, String> arguments) {
     return lookup.provide(table, arguments);
   }
+
+  @Override
+  public <T> Lookup<T> provide(String table, LookupTableConfig config) {
+    Lookup<T> tableLookup = provide(table, config.getDatasetProperties());
+    return config.isCacheEnabled() ? new CachingLookup<>(tableLookup, config.getCacheConfig(), getMetrics())
+                                   : tableLookup;
+  }
 }
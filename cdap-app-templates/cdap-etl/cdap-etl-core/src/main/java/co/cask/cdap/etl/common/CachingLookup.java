@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.common;
+
+import co.cask.cdap.etl.api.CacheConfig;
+import co.cask.cdap.etl.api.Lookup;
+import co.cask.cdap.etl.api.StageMetrics;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Lookup} that caches values returned by another {@link Lookup} as described by a {@link CacheConfig}.
+ * Keys that are not in the cache are looked up in a single batch lookup, and the number of cache hits and misses
+ * are emitted as stage metrics. Keys without value are cached as well.
+ *
+ * @param <T> the type of object that will be returned for a lookup
+ */
+public class CachingLookup<T> implements Lookup<T> {
+
+  private final Lookup<T> delegate;
+  private final Cache<String, Optional<T>> cache;
+  private final StageMetrics metrics;
+
+  public CachingLookup(Lookup<T> delegate, CacheConfig cacheConfig, StageMetrics metrics) {
+    this.delegate = delegate;
+    this.metrics = metrics;
+
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+    if (cacheConfig.getMaxSize() > 0) {
+      builder.maximumSize(cacheConfig.getMaxSize());
+    }
+    if (cacheConfig.getExpirySeconds() > 0) {
+      builder.expireAfterWrite(cacheConfig.getExpirySeconds(), TimeUnit.SECONDS);
+    }
+    this.cache = builder.build();
+  }
+
+  @Nullable
+  @Override
+  public T lookup(String key) {
+    Optional<T> cached = cache.getIfPresent(key);
+    if (cached != null) {
+      metrics.count(Constants.Metrics.LOOKUP_CACHE_HITS, 1);
+      return cached.orNull();
+    }
+
+    metrics.count(Constants.Metrics.LOOKUP_CACHE_MISSES, 1);
+    T value = delegate.lookup(key);
+    cache.put(key, Optional.fromNullable(value));
+    return value;
+  }
+
+  @Override
+  public Map<String, T> lookup(String... keys) {
+    return lookup(ImmutableSet.copyOf(keys));
+  }
+
+  @Override
+  public Map<String, T> lookup(Set<String> keys) {
+    Map<String, T> results = new HashMap<>();
+    Set<String> missingKeys = new HashSet<>();
+    for (String key : keys) {
+      Optional<T> cached = cache.getIfPresent(key);
+      if (cached == null) {
+        missingKeys.add(key);
+      } else if (cached.isPresent()) {
+        results.put(key, cached.get());
+      }
+    }
+
+    if (keys.size() > missingKeys.size()) {
+      metrics.count(Constants.Metrics.LOOKUP_CACHE_HITS, keys.size() - missingKeys.size());
+    }
+    if (missingKeys.isEmpty()) {
+      return results;
+    }
+
+    metrics.count(Constants.Metrics.LOOKUP_CACHE_MISSES, missingKeys.size());
+    Map<String, T> values = delegate.lookup(missingKeys);
+    for (String key : missingKeys) {
+      T value = values.get(key);
+      cache.put(key, Optional.fromNullable(value));
+      if (value != null) {
+        results.put(key, value);
+      }
+    }
+    return results;
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -19,6 +19,7 @@ package co.cask.cdap.etl.common;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.etl.api.Aggregator;
 import co.cask.cdap.etl.api.Joiner;
+import co.cask.cdap.etl.api.batch.BatchCombinableAggregator;
 import com.google.common.reflect.TypeToken;
 
 /**
@@ -37,6 +38,10 @@ public class TypeChecker {
     return getParameterClass(aggregator, Aggregator.class, 1);
   }
 
+  public static Class<?> getAggregateValueClass(BatchCombinableAggregator aggregator) {
+    return getParameterClass(aggregator, BatchCombinableAggregator.class, 2);
+  }
+
   public static Class<?> getJoinKeyClass(Joiner joiner) {
     return getParameterClass(joiner, Joiner.class, 0);
   }
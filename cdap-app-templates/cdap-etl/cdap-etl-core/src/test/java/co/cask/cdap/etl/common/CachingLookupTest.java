@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.common;
+
+import co.cask.cdap.etl.api.CacheConfig;
+import co.cask.cdap.etl.api.Lookup;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tests for {@link CachingLookup}.
+ */
+public class CachingLookupTest {
+
+  @Test
+  public void testCaching() {
+    MockMetrics metrics = new MockMetrics();
+    RecordingLookup delegate = new RecordingLookup(ImmutableMap.of("k1", "v1", "k2", "v2", "k3", "v3"));
+    Lookup<String> lookup = new CachingLookup<>(delegate, new CacheConfig(0, 10),
+                                                new DefaultStageMetrics(metrics, "stage"));
+
+    Assert.assertEquals("v1", lookup.lookup("k1"));
+    Assert.assertEquals("v1", lookup.lookup("k1"));
+    Assert.assertNull(lookup.lookup("missing"));
+    Assert.assertNull(lookup.lookup("missing"));
+    Assert.assertEquals(2, delegate.lookups.size());
+
+    // Only keys not in the cache are looked up, in a single batch
+    Assert.assertEquals(ImmutableMap.of("k1", "v1", "k2", "v2", "k3", "v3"),
+                        lookup.lookup("k1", "k2", "k3", "missing"));
+    Assert.assertEquals(3, delegate.lookups.size());
+    Assert.assertEquals(ImmutableSet.of("k2", "k3"), delegate.lookups.get(2));
+
+    Assert.assertEquals(ImmutableMap.of("k2", "v2", "k3", "v3"), lookup.lookup(ImmutableSet.of("k2", "k3")));
+    Assert.assertEquals(3, delegate.lookups.size());
+
+    Assert.assertEquals(6, metrics.getCount("stage." + Constants.Metrics.LOOKUP_CACHE_HITS));
+    Assert.assertEquals(4, metrics.getCount("stage." + Constants.Metrics.LOOKUP_CACHE_MISSES));
+  }
+
+  @Test
+  public void testMaxSize() {
+    MockMetrics metrics = new MockMetrics();
+    RecordingLookup delegate = new RecordingLookup(ImmutableMap.of("k1", "v1", "k2", "v2"));
+    Lookup<String> lookup = new CachingLookup<>(delegate, new CacheConfig(0, 1),
+                                                new DefaultStageMetrics(metrics, "stage"));
+
+    Assert.assertEquals("v1", lookup.lookup("k1"));
+    Assert.assertEquals("v2", lookup.lookup("k2"));
+    // k1 is evicted by k2
+    Assert.assertEquals("v1", lookup.lookup("k1"));
+    Assert.assertEquals(3, delegate.lookups.size());
+    Assert.assertEquals(3, metrics.getCount("stage." + Constants.Metrics.LOOKUP_CACHE_MISSES));
+  }
+
+  /**
+   * A {@link Lookup} backed by a map that records the keys of each lookup.
+   */
+  private static final class RecordingLookup implements Lookup<String> {
+
+    private final Map<String, String> values;
+    private final List<Set<String>> lookups = new ArrayList<>();
+
+    RecordingLookup(Map<String, String> values) {
+      this.values = values;
+    }
+
+    @Override
+    public String lookup(String key) {
+      lookups.add(ImmutableSet.of(key));
+      return values.get(key);
+    }
+
+    @Override
+    public Map<String, String> lookup(String... keys) {
+      return lookup(ImmutableSet.copyOf(keys));
+    }
+
+    @Override
+    public Map<String, String> lookup(Set<String> keys) {
+      lookups.add(ImmutableSet.copyOf(keys));
+      Map<String, String> result = new HashMap<>();
+      for (String key : keys) {
+        if (values.containsKey(key)) {
+          result.put(key, values.get(key));
+        }
+      }
+      return result;
+    }
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -49,6 +49,18 @@ public interface SparkPairCollection<K, V> {
 
   <T> SparkPairCollection<K, Tuple2<Optional<V>, Optional<T>>> fullOuterJoin(SparkPairCollection<K, T> other);
 
+  /**
+   * Inner joins with another collection that is small enough to be sent to every partition of this collection.
+   * Collections that can't be broadcast perform a regular join.
+   */
+  <T> SparkPairCollection<K, Tuple2<V, T>> broadcastJoin(SparkPairCollection<K, T> other);
+
+  /**
+   * Left outer joins with another collection that is small enough to be sent to every partition of this collection.
+   * Collections that can't be broadcast perform a regular left outer join.
+   */
+  <T> SparkPairCollection<K, Tuple2<V, Optional<T>>> broadcastLeftOuterJoin(SparkPairCollection<K, T> other);
+
   <T> SparkPairCollection<K, Tuple2<Optional<V>, Optional<T>>> fullOuterJoin(SparkPairCollection<K, T> other,
                                                                              int numPartitions);
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -23,6 +23,7 @@ import co.cask.cdap.etl.api.Alert;
 import co.cask.cdap.etl.api.AlertPublisher;
 import co.cask.cdap.etl.api.ErrorRecord;
 import co.cask.cdap.etl.api.ErrorTransform;
+import co.cask.cdap.etl.api.JoinConfig;
 import co.cask.cdap.etl.api.JoinElement;
 import co.cask.cdap.etl.api.SplitterTransform;
 import co.cask.cdap.etl.api.Transform;
@@ -52,6 +53,7 @@ import co.cask.cdap.etl.spark.function.OutputPassFilter;
 import co.cask.cdap.etl.spark.function.PluginFunctionContext;
 import co.cask.cdap.etl.spec.StageSpec;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -250,18 +252,40 @@ public abstract class SparkPipelineRunner {
 
         Integer numPartitions = stagePartitions.get(stageName);
 
+        JoinConfig joinConfig = joiner.getJoinConfig();
+        Set<String> broadcastInputs = new HashSet<>();
+        for (String inputStageName : joinConfig.getBroadcastInputs()) {
+          broadcastInputs.add(inputStageName);
+        }
+        // join broadcast inputs last, so that they are joined to an input that is not broadcast
+        List<String> requiredInputs = new ArrayList<>();
+        for (String inputStageName : joinConfig.getRequiredInputs()) {
+          if (!broadcastInputs.contains(inputStageName)) {
+            requiredInputs.add(inputStageName);
+          }
+        }
+        for (String inputStageName : joinConfig.getRequiredInputs()) {
+          if (broadcastInputs.contains(inputStageName)) {
+            requiredInputs.add(inputStageName);
+          }
+        }
+
         SparkPairCollection<Object, List<JoinElement<Object>>> joinedInputs = null;
         // inner join on required inputs
-        for (final String inputStageName : joiner.getJoinConfig().getRequiredInputs()) {
+        for (final String inputStageName : requiredInputs) {
           SparkPairCollection<Object, Object> preJoinCollection = preJoinStreams.get(inputStageName);
 
           if (joinedInputs == null) {
             joinedInputs = preJoinCollection.mapValues(new InitialJoinFunction<>(inputStageName));
           } else {
             JoinFlattenFunction<Object> joinFlattenFunction = new JoinFlattenFunction<>(inputStageName);
-            joinedInputs = numPartitions == null ?
-              joinedInputs.join(preJoinCollection).mapValues(joinFlattenFunction) :
-              joinedInputs.join(preJoinCollection, numPartitions).mapValues(joinFlattenFunction);
+            if (broadcastInputs.contains(inputStageName)) {
+              joinedInputs = joinedInputs.broadcastJoin(preJoinCollection).mapValues(joinFlattenFunction);
+            } else {
+              joinedInputs = numPartitions == null ?
+                joinedInputs.join(preJoinCollection).mapValues(joinFlattenFunction) :
+                joinedInputs.join(preJoinCollection, numPartitions).mapValues(joinFlattenFunction);
+            }
           }
           remainingInputs.remove(inputStageName);
         }
@@ -280,6 +304,9 @@ public abstract class SparkPipelineRunner {
               joinedInputs = numPartitions == null ?
                 joinedInputs.fullOuterJoin(preJoinStream).mapValues(flattenFunction) :
                 joinedInputs.fullOuterJoin(preJoinStream, numPartitions).mapValues(flattenFunction);
+            } else if (broadcastInputs.contains(inputStageName)) {
+              LeftJoinFlattenFunction<Object> flattenFunction = new LeftJoinFlattenFunction<>(inputStageName);
+              joinedInputs = joinedInputs.broadcastLeftOuterJoin(preJoinStream).mapValues(flattenFunction);
             } else {
               LeftJoinFlattenFunction<Object> flattenFunction = new LeftJoinFlattenFunction<>(inputStageName);
 
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -21,13 +21,21 @@ import co.cask.cdap.api.spark.JavaSparkExecutionContext;
 import co.cask.cdap.etl.spark.Compat;
 import co.cask.cdap.etl.spark.SparkCollection;
 import co.cask.cdap.etl.spark.SparkPairCollection;
+import co.cask.cdap.etl.spark.function.BroadcastJoinFunction;
+import co.cask.cdap.etl.spark.function.BroadcastLeftJoinFunction;
 import com.google.common.base.Optional;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.FlatMapFunction;
 import org.apache.spark.api.java.function.Function;
+import org.apache.spark.broadcast.Broadcast;
 import scala.Tuple2;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Implementation of {@link SparkCollection} that is backed by a JavaPairRDD.
  *
@@ -104,6 +112,35 @@ public class PairRDDCollection<K, V> implements SparkPairCollection<K, V> {
     return wrap(Compat.fullOuterJoin(pairRDD, (JavaPairRDD<K, T>) other.getUnderlying(), numPartitions));
   }
 
+  @Override
+  public <T> SparkPairCollection<K, Tuple2<V, T>> broadcastJoin(SparkPairCollection<K, T> other) {
+    Broadcast<Map<K, List<T>>> broadcast = broadcast(other);
+    return wrap(pairRDD.flatMapToPair(Compat.convert(new BroadcastJoinFunction<K, V, T>(broadcast))));
+  }
+
+  @Override
+  public <T> SparkPairCollection<K, Tuple2<V, Optional<T>>> broadcastLeftOuterJoin(SparkPairCollection<K, T> other) {
+    Broadcast<Map<K, List<T>>> broadcast = broadcast(other);
+    return wrap(pairRDD.flatMapToPair(Compat.convert(new BroadcastLeftJoinFunction<K, V, T>(broadcast))));
+  }
+
+  /**
+   * Collects the given collection into a map from key to all values with that key, and broadcasts it.
+   */
+  @SuppressWarnings("unchecked")
+  private <T> Broadcast<Map<K, List<T>>> broadcast(SparkPairCollection<K, T> other) {
+    Map<K, List<T>> values = new HashMap<>();
+    for (Tuple2<K, T> entry : ((JavaPairRDD<K, T>) other.getUnderlying()).collect()) {
+      List<T> keyValues = values.get(entry._1());
+      if (keyValues == null) {
+        keyValues = new ArrayList<>();
+        values.put(entry._1(), keyValues);
+      }
+      keyValues.add(entry._2());
+    }
+    return jsc.broadcast(values);
+  }
+
   private <X, Y> SparkPairCollection<X, Y> wrap(JavaPairRDD<X, Y> javaPairRDD) {
     return new PairRDDCollection<>(sec, jsc, datasetContext, sinkFactory, javaPairRDD);
   }
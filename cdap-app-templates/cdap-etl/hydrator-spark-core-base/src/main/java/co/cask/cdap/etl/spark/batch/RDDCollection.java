@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -22,6 +22,7 @@ import co.cask.cdap.etl.api.Alert;
 import co.cask.cdap.etl.api.AlertPublisher;
 import co.cask.cdap.etl.api.AlertPublisherContext;
 import co.cask.cdap.etl.api.StageMetrics;
+import co.cask.cdap.etl.api.batch.BatchCombinableAggregator;
 import co.cask.cdap.etl.api.batch.SparkCompute;
 import co.cask.cdap.etl.api.batch.SparkExecutionPluginContext;
 import co.cask.cdap.etl.api.batch.SparkSink;
@@ -38,7 +39,11 @@ import co.cask.cdap.etl.spark.SparkCollection;
 import co.cask.cdap.etl.spark.SparkPairCollection;
 import co.cask.cdap.etl.spark.SparkPipelineRuntime;
 import co.cask.cdap.etl.spark.function.AggregatorAggregateFunction;
+import co.cask.cdap.etl.spark.function.AggregatorFinalizeFunction;
 import co.cask.cdap.etl.spark.function.AggregatorGroupByFunction;
+import co.cask.cdap.etl.spark.function.AggregatorInitializeFunction;
+import co.cask.cdap.etl.spark.function.AggregatorMergePartitionFunction;
+import co.cask.cdap.etl.spark.function.AggregatorMergeValueFunction;
 import co.cask.cdap.etl.spark.function.CountingFunction;
 import co.cask.cdap.etl.spark.function.FlatMapFunc;
 import co.cask.cdap.etl.spark.function.MultiOutputTransformFunction;
@@ -46,6 +51,7 @@ import co.cask.cdap.etl.spark.function.PairFlatMapFunc;
 import co.cask.cdap.etl.spark.function.PluginFunctionContext;
 import co.cask.cdap.etl.spark.function.TransformFunction;
 import co.cask.cdap.etl.spec.StageSpec;
+import com.google.common.base.Throwables;
 import com.google.gson.Gson;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
@@ -123,6 +129,23 @@ public class RDDCollection<T> implements SparkCollection<T> {
 
     JavaPairRDD<Object, T> keyedCollection = rdd.flatMapToPair(sparkGroupByFunction);
 
+    if (isCombinable(pluginFunctionContext)) {
+      // aggregate each group within a partition before the shuffle, then merge the partial aggregates
+      JavaPairRDD<Object, Object> combinedCollection = partitions == null ?
+        keyedCollection.combineByKey(new AggregatorInitializeFunction<T, Object>(pluginFunctionContext),
+                                     new AggregatorMergeValueFunction<T, Object>(pluginFunctionContext),
+                                     new AggregatorMergePartitionFunction<>(pluginFunctionContext)) :
+        keyedCollection.combineByKey(new AggregatorInitializeFunction<T, Object>(pluginFunctionContext),
+                                     new AggregatorMergeValueFunction<T, Object>(pluginFunctionContext),
+                                     new AggregatorMergePartitionFunction<>(pluginFunctionContext), partitions);
+
+      FlatMapFunc<Tuple2<Object, Object>, RecordInfo<Object>> finalizeFunction =
+        new AggregatorFinalizeFunction<>(pluginFunctionContext);
+      FlatMapFunction<Tuple2<Object, Object>, RecordInfo<Object>> sparkFinalizeFunction =
+        Compat.convert(finalizeFunction);
+      return wrap(combinedCollection.flatMap(sparkFinalizeFunction));
+    }
+
     JavaPairRDD<Object, Iterable<T>> groupedCollection = partitions == null ?
       keyedCollection.groupByKey() : keyedCollection.groupByKey(partitions);
 
@@ -192,6 +215,14 @@ public class RDDCollection<T> implements SparkCollection<T> {
     throw new UnsupportedOperationException("Windowing is not supported on RDDs.");
   }
 
+  private boolean isCombinable(PluginFunctionContext pluginFunctionContext) {
+    try {
+      return pluginFunctionContext.createPlugin() instanceof BatchCombinableAggregator;
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
   private <U> RDDCollection<U> wrap(JavaRDD<U> rdd) {
     return new RDDCollection<>(sec, jsc, datasetContext, sinkFactory, rdd);
   }
@@ -0,0 +1,54 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.spark.function;
+
+import org.apache.spark.broadcast.Broadcast;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inner joins each record with the values of a broadcast input that have the same key.
+ * The output is the same as the output of an inner join of the two inputs.
+ *
+ * @param <K> type of join key
+ * @param <V> type of value in the joined collection
+ * @param <T> type of value in the broadcast input
+ */
+public class BroadcastJoinFunction<K, V, T> implements PairFlatMapFunc<Tuple2<K, V>, K, Tuple2<V, T>> {
+  private final Broadcast<Map<K, List<T>>> broadcast;
+
+  public BroadcastJoinFunction(Broadcast<Map<K, List<T>>> broadcast) {
+    this.broadcast = broadcast;
+  }
+
+  @Override
+  public Iterable<Tuple2<K, Tuple2<V, T>>> call(Tuple2<K, V> input) throws Exception {
+    List<T> matches = broadcast.value().get(input._1());
+    if (matches == null) {
+      return Collections.emptyList();
+    }
+    List<Tuple2<K, Tuple2<V, T>>> output = new ArrayList<>(matches.size());
+    for (T match : matches) {
+      output.add(new Tuple2<>(input._1(), new Tuple2<>(input._2(), match)));
+    }
+    return output;
+  }
+}
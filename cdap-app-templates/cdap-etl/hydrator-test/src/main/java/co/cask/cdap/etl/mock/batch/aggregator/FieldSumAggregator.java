@@ -0,0 +1,166 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.mock.batch.aggregator;
+
+import co.cask.cdap.api.annotation.Name;
+import co.cask.cdap.api.annotation.Plugin;
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.plugin.PluginClass;
+import co.cask.cdap.api.plugin.PluginConfig;
+import co.cask.cdap.api.plugin.PluginPropertyField;
+import co.cask.cdap.etl.api.Emitter;
+import co.cask.cdap.etl.api.PipelineConfigurer;
+import co.cask.cdap.etl.api.batch.BatchAggregator;
+import co.cask.cdap.etl.api.batch.BatchAggregatorContext;
+import co.cask.cdap.etl.api.batch.BatchCombinableAggregator;
+import co.cask.cdap.etl.api.batch.BatchRuntimeContext;
+import co.cask.cdap.etl.proto.v2.ETLPlugin;
+import org.apache.hadoop.io.Writable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Groups on a string field and sums a long field, with partial aggregates. Every record is also added to an 'all'
+ * group. Used to test combinable aggregators, with the aggregate value class set at runtime, and with a mutable
+ * aggregate value that is modified in place when partial aggregates are merged.
+ */
+@Plugin(type = BatchAggregator.PLUGIN_TYPE)
+@Name("FieldSum")
+public class FieldSumAggregator extends BatchCombinableAggregator<String, StructuredRecord, Object, StructuredRecord> {
+  public static final PluginClass PLUGIN_CLASS = getPluginClass();
+  private final Config config;
+  private Schema schema;
+
+  public FieldSumAggregator(Config config) {
+    this.config = config;
+  }
+
+  @Override
+  public void configurePipeline(PipelineConfigurer pipelineConfigurer) throws IllegalArgumentException {
+    pipelineConfigurer.getStageConfigurer().setOutputSchema(config.getSchema());
+  }
+
+  @Override
+  public void prepareRun(BatchAggregatorContext context) throws Exception {
+    context.setAggregateValueClass(Sum.class);
+  }
+
+  @Override
+  public void initialize(BatchRuntimeContext context) throws Exception {
+    schema = config.getSchema();
+  }
+
+  @Override
+  public void groupBy(StructuredRecord input, Emitter<String> emitter) throws Exception {
+    emitter.emit(input.get(config.groupField).toString());
+    emitter.emit("all");
+  }
+
+  @Override
+  public Object initializeAggregateValue(StructuredRecord groupValue) throws Exception {
+    return new Sum((Long) groupValue.get(config.sumField));
+  }
+
+  @Override
+  public Object mergeValues(Object aggValue, StructuredRecord groupValue) throws Exception {
+    Sum sum = (Sum) aggValue;
+    sum.value += (Long) groupValue.get(config.sumField);
+    return sum;
+  }
+
+  @Override
+  public Object mergePartitions(Object aggValue1, Object aggValue2) throws Exception {
+    Sum sum = (Sum) aggValue1;
+    sum.value += ((Sum) aggValue2).value;
+    return sum;
+  }
+
+  @Override
+  public void finalizeAggregate(String groupKey, Object aggValue, Emitter<StructuredRecord> emitter) throws Exception {
+    emitter.emit(StructuredRecord.builder(schema)
+                   .set(config.groupField, groupKey)
+                   .set("sum", ((Sum) aggValue).value)
+                   .build());
+  }
+
+  /**
+   * A mutable partial sum.
+   */
+  public static class Sum implements Writable, Serializable {
+    private long value;
+
+    // required by Hadoop
+    @SuppressWarnings("unused")
+    public Sum() {
+    }
+
+    Sum(long value) {
+      this.value = value;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+      out.writeLong(value);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+      value = in.readLong();
+    }
+  }
+
+  /**
+   * Conf for the aggregator.
+   */
+  public static class Config extends PluginConfig {
+    private final String groupField;
+
+    private final String sumField;
+
+    public Config() {
+      this.groupField = "group";
+      this.sumField = "value";
+    }
+
+    private Schema getSchema() {
+      return Schema.recordOf(groupField + ".sum",
+                             Schema.Field.of(groupField, Schema.of(Schema.Type.STRING)),
+                             Schema.Field.of("sum", Schema.of(Schema.Type.LONG)));
+    }
+  }
+
+  public static ETLPlugin getPlugin(String groupField, String sumField) {
+    Map<String, String> properties = new HashMap<>();
+    properties.put("groupField", groupField);
+    properties.put("sumField", sumField);
+    return new ETLPlugin("FieldSum", BatchAggregator.PLUGIN_TYPE, properties, null);
+  }
+
+  private static PluginClass getPluginClass() {
+    Map<String, PluginPropertyField> properties = new HashMap<>();
+    properties.put("groupField", new PluginPropertyField("groupField", "", "string", true, false));
+    properties.put("sumField", new PluginPropertyField("sumField", "", "string", true, false));
+    return new PluginClass(BatchAggregator.PLUGIN_TYPE, "FieldSum", "", FieldSumAggregator.class.getName(),
+                           "config", properties);
+  }
+}
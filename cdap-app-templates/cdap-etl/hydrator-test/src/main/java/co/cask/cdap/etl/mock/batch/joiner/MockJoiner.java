@@ -94,7 +94,7 @@ public class MockJoiner extends BatchJoiner<StructuredRecord, StructuredRecord,
 
   @Override
   public JoinConfig getJoinConfig() {
-    return new JoinConfig(config.getRequiredInputs());
+    return new JoinConfig(config.getRequiredInputs(), config.getBroadcastInputs());
   }
 
   @Override
@@ -142,12 +142,15 @@ public class MockJoiner extends BatchJoiner<StructuredRecord, StructuredRecord,
     private final String selectedFields;
     @Nullable
     private final String requiredInputs;
+    @Nullable
+    private final String broadcastInputs;
 
 
     public Config() {
       this.joinKeys = "joinKeys";
       this.selectedFields = "selectedFields";
       this.requiredInputs = "requiredInputs";
+      this.broadcastInputs = null;
     }
 
     private void validateConfig() {
@@ -199,6 +202,12 @@ public class MockJoiner extends BatchJoiner<StructuredRecord, StructuredRecord,
     private Iterable<String> getRequiredInputs() {
       return Splitter.on(',').trimResults().omitEmptyStrings().split(requiredInputs);
     }
+
+    @Nullable
+    private Iterable<String> getBroadcastInputs() {
+      // null if not set, to test that the join config handles it
+      return broadcastInputs == null ? null : Splitter.on(',').trimResults().omitEmptyStrings().split(broadcastInputs);
+    }
   }
 
   public static ETLPlugin getPlugin(String joinKeys, String requiredInputs, String selectedFields) {
@@ -209,11 +218,22 @@ public class MockJoiner extends BatchJoiner<StructuredRecord, StructuredRecord,
     return new ETLPlugin("MockJoiner", BatchJoiner.PLUGIN_TYPE, properties, null);
   }
 
+  public static ETLPlugin getPlugin(String joinKeys, String requiredInputs, String selectedFields,
+                                    String broadcastInputs) {
+    Map<String, String> properties = new HashMap<>();
+    properties.put("joinKeys", joinKeys);
+    properties.put("requiredInputs", requiredInputs);
+    properties.put("selectedFields", selectedFields);
+    properties.put("broadcastInputs", broadcastInputs);
+    return new ETLPlugin("MockJoiner", BatchJoiner.PLUGIN_TYPE, properties, null);
+  }
+
   private static PluginClass getPluginClass() {
     Map<String, PluginPropertyField> properties = new HashMap<>();
     properties.put("joinKeys", new PluginPropertyField("joinKeys", "", "string", true, false));
     properties.put("requiredInputs", new PluginPropertyField("requiredInputs", "", "string", true, false));
     properties.put("selectedFields", new PluginPropertyField("selectedFields", "", "string", true, false));
+    properties.put("broadcastInputs", new PluginPropertyField("broadcastInputs", "", "string", false, false));
     return new PluginClass(BatchJoiner.PLUGIN_TYPE, "MockJoiner", "", MockJoiner.class.getName(),
                            "config", properties);
   }
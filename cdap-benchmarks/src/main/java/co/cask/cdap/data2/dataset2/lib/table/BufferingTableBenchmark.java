@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.DatasetContext;
+import co.cask.cdap.api.dataset.DatasetProperties;
+import co.cask.cdap.api.dataset.DatasetSpecification;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.utils.DirUtils;
+import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryTable;
+import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryTableAdmin;
+import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryTableService;
+import co.cask.cdap.data2.dataset2.lib.table.leveldb.LevelDBTable;
+import co.cask.cdap.data2.dataset2.lib.table.leveldb.LevelDBTableAdmin;
+import co.cask.cdap.data2.dataset2.lib.table.leveldb.LevelDBTableDefinition;
+import co.cask.cdap.data2.dataset2.lib.table.leveldb.LevelDBTableService;
+import co.cask.cdap.proto.id.NamespaceId;
+import com.google.common.io.Files;
+import org.apache.tephra.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for a full transaction cycle on a {@link BufferingTable}, which consists of
+ * buffering puts, reading them back through the buffer, then commit and post commit.
+ * It is run against both the LevelDB and the in-memory table implementations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class BufferingTableBenchmark {
+
+  private static final DatasetContext CONTEXT = DatasetContext.from(NamespaceId.DEFAULT.getNamespace());
+  private static final byte[] COLUMN = Bytes.toBytes("c");
+  private static final String TABLE_NAME = "benchmark";
+
+  @Param({"inmemory", "leveldb"})
+  private String tableType;
+
+  @Param({"10", "1000"})
+  private int putsPerTx;
+
+  private File baseDir;
+  private BufferingTable table;
+  private byte[][] rows;
+  private byte[] value;
+  private long writePointer;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    baseDir = Files.createTempDir();
+
+    CConfiguration cConf = CConfiguration.create();
+    cConf.set(Constants.CFG_LOCAL_DATA_DIR, baseDir.getAbsolutePath());
+    cConf.set(Constants.CFG_DATA_LEVELDB_DIR, baseDir.getAbsolutePath());
+
+    if ("leveldb".equals(tableType)) {
+      LevelDBTableService service = new LevelDBTableService();
+      service.setConfiguration(cConf);
+      DatasetSpecification spec = new LevelDBTableDefinition("table").configure(TABLE_NAME, DatasetProperties.EMPTY);
+      new LevelDBTableAdmin(CONTEXT, spec, service, cConf).create();
+      table = new LevelDBTable(CONTEXT, TABLE_NAME, service, cConf, spec);
+    } else {
+      new InMemoryTableAdmin(CONTEXT, TABLE_NAME, cConf).create();
+      table = new InMemoryTable(CONTEXT, TABLE_NAME, cConf);
+    }
+
+    rows = new byte[putsPerTx][];
+    for (int i = 0; i < rows.length; i++) {
+      rows[i] = Bytes.toBytes(String.format("row%08d", i));
+    }
+    value = new byte[100];
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() throws Exception {
+    table.close();
+    InMemoryTableService.reset();
+    DirUtils.deleteDirectoryContents(baseDir);
+  }
+
+  @Benchmark
+  public void putGetCommit(Blackhole blackhole) throws Exception {
+    writePointer++;
+    table.startTx(new Transaction(writePointer - 1, writePointer, new long[0], new long[0],
+                                  Transaction.NO_TX_IN_PROGRESS));
+    for (byte[] row : rows) {
+      table.put(row, COLUMN, value);
+    }
+    for (byte[] row : rows) {
+      blackhole.consume(table.get(row, COLUMN));
+    }
+    blackhole.consume(table.getTxChanges());
+    table.commitTx();
+    table.postTxCommit();
+  }
+}
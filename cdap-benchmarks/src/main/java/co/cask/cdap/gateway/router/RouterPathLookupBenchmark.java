@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.gateway.router;
+
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for the per request cost of finding the destination service of a request with {@link RouterPathLookup}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RouterPathLookupBenchmark {
+
+  private static final String FALLBACK_SERVICE = "gateway";
+
+  // A mix of requests to different services, with the ones matched by the last rules at the end
+  private static final String[][] REQUESTS = {
+    {"GET", "/v3/namespaces/default/apps/PurchaseHistory/services/CatalogLookup/methods/v1/product/1234"},
+    {"GET", "/v3/namespaces/default/apps/PurchaseHistory/versions/1.0/services/CatalogLookup/methods/product"},
+    {"GET", "/v3/namespaces/default/apps/PurchaseHistory/metadata/tags"},
+    {"POST", "/v3/namespaces/default/metadata/search"},
+    {"GET", "/v3/namespaces/default/streams/purchases/programs"},
+    {"POST", "/v3/namespaces/default/streams/purchases"},
+    {"GET", "/v3/namespaces/default/apps/PurchaseHistory/flows/PurchaseFlow/runs/1234/logs"},
+    {"POST", "/v3/metrics/query"},
+    {"POST", "/v3/namespaces/default/data/explore/queries"},
+    {"GET", "/v3/system/services/appfabric/status"},
+    {"GET", "/v3/namespaces/default/data/datasets/purchases/properties"},
+    {"GET", "/v3/namespaces/default/apps/PurchaseHistory/workflows/PurchaseHistoryWorkflow/runs"},
+    {"POST", "/v3/namespaces/default/apps/PurchaseHistory/flows/PurchaseFlow/start"},
+    {"GET", "/v3/namespaces"},
+  };
+
+  private RouterPathLookup pathLookup;
+  private String[] paths;
+  private HttpRequest[] requests;
+
+  @Setup
+  public void setup() {
+    pathLookup = new RouterPathLookup();
+    paths = new String[REQUESTS.length];
+    requests = new HttpRequest[REQUESTS.length];
+    for (int i = 0; i < REQUESTS.length; i++) {
+      paths[i] = REQUESTS[i][1];
+      requests[i] = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.valueOf(REQUESTS[i][0]), paths[i]);
+    }
+  }
+
+  @Benchmark
+  // Reports the time per request, which must be the number of REQUESTS
+  @OperationsPerInvocation(14)
+  public void getRoutingService(Blackhole blackhole) {
+    for (int i = 0; i < paths.length; i++) {
+      blackhole.consume(pathLookup.getRoutingService(FALLBACK_SERVICE, paths[i], requests[i]));
+    }
+  }
+}
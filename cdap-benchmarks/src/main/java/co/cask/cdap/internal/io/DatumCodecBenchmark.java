@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.io;
+
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.common.io.DatumReader;
+import co.cask.cdap.common.io.DatumWriter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.reflect.TypeToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for encoding objects with the ASM generated {@link DatumWriter} from {@link DatumWriterGenerator}
+ * and the {@link ReflectionDatumWriter}, and decoding with the ASM generated {@link DatumReader} from
+ * {@link DatumReaderGenerator} and the {@link ReflectionDatumReader}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class DatumCodecBenchmark {
+
+  private static final TypeToken<Record> RECORD_TYPE = TypeToken.of(Record.class);
+
+  private Record record;
+  private Schema schema;
+  private DatumWriter<Record> asmWriter;
+  private DatumWriter<Record> reflectionWriter;
+  private DatumReader<Record> asmReader;
+  private ReflectionDatumReader<Record> reflectionReader;
+  private ByteArrayOutputStream output;
+  private byte[] encoded;
+
+  @Setup
+  public void setup() throws Exception {
+    schema = new ReflectionSchemaGenerator().generate(RECORD_TYPE.getType());
+    asmWriter = new ASMDatumWriterFactory(new ASMFieldAccessorFactory()).create(RECORD_TYPE, schema);
+    reflectionWriter = new ReflectionDatumWriter<>(schema);
+    asmReader = new ASMDatumReaderFactory(new ASMFieldAccessorFactory()).create(RECORD_TYPE, schema);
+    reflectionReader = new ReflectionDatumReader<>(schema, RECORD_TYPE);
+
+    record = new Record(1234, 5678901234L, 3.14d, true, "program_run_12345",
+                        ImmutableList.of("tag1", "tag2", "tag3", "tag4"),
+                        ImmutableMap.of("namespace", "default", "app", "PurchaseHistory", "program", "Flow"));
+    output = new ByteArrayOutputStream(1024);
+    asmWriter.encode(record, new BinaryEncoder(output));
+    encoded = output.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] asmWrite() throws IOException {
+    output.reset();
+    asmWriter.encode(record, new BinaryEncoder(output));
+    return output.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] reflectionWrite() throws IOException {
+    output.reset();
+    reflectionWriter.encode(record, new BinaryEncoder(output));
+    return output.toByteArray();
+  }
+
+  @Benchmark
+  public Record asmRead() throws IOException {
+    return asmReader.read(new BinaryDecoder(new ByteArrayInputStream(encoded)), schema);
+  }
+
+  @Benchmark
+  public Record reflectionRead() throws IOException {
+    return reflectionReader.read(new BinaryDecoder(new ByteArrayInputStream(encoded)), schema);
+  }
+
+  /**
+   * A record class with a mix of field types that are commonly used in CDAP system messages.
+   */
+  public static final class Record {
+    private final int intValue;
+    private final long longValue;
+    private final double doubleValue;
+    private final boolean booleanValue;
+    private final String stringValue;
+    private final List<String> listValue;
+    private final Map<String, String> mapValue;
+
+    public Record(int intValue, long longValue, double doubleValue, boolean booleanValue, String stringValue,
+                  List<String> listValue, Map<String, String> mapValue) {
+      this.intValue = intValue;
+      this.longValue = longValue;
+      this.doubleValue = doubleValue;
+      this.booleanValue = booleanValue;
+      this.stringValue = stringValue;
+      this.listValue = listValue;
+      this.mapValue = mapValue;
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.service;
+
+import co.cask.cdap.api.metrics.NoopMetricsContext;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.utils.DirUtils;
+import co.cask.cdap.common.utils.TimeProvider;
+import co.cask.cdap.messaging.MessagingUtils;
+import co.cask.cdap.messaging.StoreRequest;
+import co.cask.cdap.messaging.TopicMetadata;
+import co.cask.cdap.messaging.client.StoreRequestBuilder;
+import co.cask.cdap.messaging.store.leveldb.LevelDBTableFactory;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.TopicId;
+import com.google.common.io.Files;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for {@link ConcurrentMessageWriter#persist(StoreRequest, TopicMetadata)} on top of the
+ * LevelDB message table, which is the publish path used by the TMS in standalone.
+ * It is run with multiple threads to capture the cost of the writer flag contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class ConcurrentMessageWriterBenchmark {
+
+  @Param({"1", "10"})
+  private int payloadsPerRequest;
+
+  @Param({"100", "1024"})
+  private int payloadSize;
+
+  @Param({"false", "true"})
+  private boolean groupCommit;
+
+  private File baseDir;
+  private ConcurrentMessageWriter writer;
+  private TopicMetadata metadata;
+  private byte[][] payloads;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    baseDir = Files.createTempDir();
+
+    CConfiguration cConf = CConfiguration.create();
+    cConf.set(Constants.MessagingSystem.LOCAL_DATA_DIR, baseDir.getAbsolutePath());
+    LevelDBTableFactory tableFactory = new LevelDBTableFactory(cConf);
+
+    TopicId topicId = NamespaceId.SYSTEM.topic("benchmark");
+    metadata = new TopicMetadata(topicId, TopicMetadata.TTL_KEY, 3600,
+                                 TopicMetadata.GENERATION_KEY, MessagingUtils.Constants.DEFAULT_GENERATION);
+    writer = new ConcurrentMessageWriter(
+      new MessageTableStoreRequestWriter(tableFactory.createMessageTable("message"), TimeProvider.SYSTEM_TIME),
+      new NoopMetricsContext(), groupCommit,
+      cConf.getInt(Constants.MessagingSystem.GROUP_COMMIT_MAX_BATCH_SIZE),
+      cConf.getLong(Constants.MessagingSystem.GROUP_COMMIT_MAX_DELAY_MS));
+
+    Random random = new Random();
+    payloads = new byte[payloadsPerRequest][];
+    for (int i = 0; i < payloads.length; i++) {
+      payloads[i] = new byte[payloadSize];
+      random.nextBytes(payloads[i]);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() throws IOException {
+    writer.close();
+    DirUtils.deleteDirectoryContents(baseDir);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void persistSingleThread() throws IOException {
+    writer.persist(StoreRequestBuilder.of(metadata.getTopicId()).addPayloads(payloads).build(), metadata);
+  }
+
+  @Benchmark
+  @Threads(16)
+  public void persistConcurrent() throws IOException {
+    writer.persist(StoreRequestBuilder.of(metadata.getTopicId()).addPayloads(payloads).build(), metadata);
+  }
+}
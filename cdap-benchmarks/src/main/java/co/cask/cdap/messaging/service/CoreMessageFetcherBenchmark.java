@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.service;
+
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.utils.DirUtils;
+import co.cask.cdap.common.utils.TimeProvider;
+import co.cask.cdap.messaging.MessagingUtils;
+import co.cask.cdap.messaging.TopicMetadata;
+import co.cask.cdap.messaging.client.StoreRequestBuilder;
+import co.cask.cdap.messaging.data.RawMessage;
+import co.cask.cdap.messaging.store.MessageTable;
+import co.cask.cdap.messaging.store.PayloadTable;
+import co.cask.cdap.messaging.store.leveldb.LevelDBTableFactory;
+import co.cask.cdap.proto.id.NamespaceId;
+import com.google.common.io.Files;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for scanning messages through {@link CoreMessageFetcher} over the LevelDB message table.
+ * This is the fetch path used by subscribers such as the metrics processor and the scheduler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class CoreMessageFetcherBenchmark {
+
+  private static final int MESSAGE_COUNT = 100000;
+  private static final int BATCH_SIZE = 1000;
+
+  @Param({"100", "1024"})
+  private int payloadSize;
+
+  @Param({"100", "1000"})
+  private int fetchLimit;
+
+  private File baseDir;
+  private TopicMetadata metadata;
+  private MessageTable messageTable;
+  private PayloadTable payloadTable;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    baseDir = Files.createTempDir();
+
+    CConfiguration cConf = CConfiguration.create();
+    cConf.set(Constants.MessagingSystem.LOCAL_DATA_DIR, baseDir.getAbsolutePath());
+    LevelDBTableFactory tableFactory = new LevelDBTableFactory(cConf);
+    messageTable = tableFactory.createMessageTable("message");
+    payloadTable = tableFactory.createPayloadTable("payload");
+
+    metadata = new TopicMetadata(NamespaceId.SYSTEM.topic("benchmark"), TopicMetadata.TTL_KEY, 86400,
+                                 TopicMetadata.GENERATION_KEY, MessagingUtils.Constants.DEFAULT_GENERATION);
+
+    // Populate the message table through the same writer used by the messaging service
+    Random random = new Random();
+    byte[][] payloads = new byte[BATCH_SIZE][];
+    for (int i = 0; i < payloads.length; i++) {
+      payloads[i] = new byte[payloadSize];
+      random.nextBytes(payloads[i]);
+    }
+    ConcurrentMessageWriter writer = new ConcurrentMessageWriter(
+      new MessageTableStoreRequestWriter(messageTable, TimeProvider.SYSTEM_TIME));
+    for (int i = 0; i < MESSAGE_COUNT / BATCH_SIZE; i++) {
+      writer.persist(StoreRequestBuilder.of(metadata.getTopicId()).addPayloads(payloads).build(), metadata);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() throws IOException {
+    DirUtils.deleteDirectoryContents(baseDir);
+  }
+
+  @Benchmark
+  public void fetch(Blackhole blackhole) throws Exception {
+    CoreMessageFetcher fetcher = new CoreMessageFetcher(metadata, new TableProvider<MessageTable>() {
+      @Override
+      public MessageTable get() {
+        return messageTable;
+      }
+    }, new TableProvider<PayloadTable>() {
+      @Override
+      public PayloadTable get() {
+        return payloadTable;
+      }
+    });
+    fetcher.setLimit(fetchLimit);
+
+    try (CloseableIterator<RawMessage> iterator = fetcher.fetch()) {
+      while (iterator.hasNext()) {
+        blackhole.consume(iterator.next());
+      }
+    }
+  }
+}
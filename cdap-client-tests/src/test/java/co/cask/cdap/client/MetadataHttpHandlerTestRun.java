@@ -81,6 +81,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -1176,15 +1177,7 @@ public class MetadataHttpHandlerTestRun extends MetadataTestBase {
       // expected
     }
 
-    // search with numCursors for relevance sort
-    try {
-      searchMetadata(NamespaceId.DEFAULT, "search*", targets, null, 0, Integer.MAX_VALUE, 1, null);
-      Assert.fail();
-    } catch (BadRequestException e) {
-      // expected
-    }
-
-    // search with cursor for relevance sort
+    // search with malformed cursor for relevance sort
     try {
       searchMetadata(NamespaceId.DEFAULT, "search*", targets, null, 0, Integer.MAX_VALUE, 0, "cursor");
       Assert.fail();
@@ -1402,6 +1395,62 @@ public class MetadataHttpHandlerTestRun extends MetadataTestBase {
     namespaceClient.delete(namespace);
   }
 
+  @Test
+  public void testSearchResultPaginationWithRelevance() throws Exception {
+    NamespaceId namespace = new NamespaceId("pagination_with_relevance");
+    namespaceClient.create(new NamespaceMeta.Builder().setName(namespace).build());
+
+    // the more tags match the search query, the more relevant the dataset
+    List<MetadataSearchResultRecord> expectedResults = new ArrayList<>();
+    for (int i = 4; i > 0; i--) {
+      DatasetId dataset = namespace.dataset("dataset" + i);
+      datasetClient.create(
+        dataset,
+        new DatasetInstanceConfiguration(Table.class.getName(), Collections.<String, String>emptyMap())
+      );
+      Set<String> tags = new HashSet<>();
+      for (int j = 0; j < i; j++) {
+        tags.add("rtag" + j);
+      }
+      addTags(dataset, tags);
+      expectedResults.add(new MetadataSearchResultRecord(dataset));
+    }
+
+    EnumSet<EntityTypeSimpleName> targets = EnumSet.allOf(EntityTypeSimpleName.class);
+    MetadataSearchResponse searchResponse = searchMetadata(namespace, "rtag*", targets, null, 0, Integer.MAX_VALUE,
+                                                           0, null);
+    Assert.assertEquals(4, searchResponse.getTotal());
+    Assert.assertEquals(expectedResults, new ArrayList<>(searchResponse.getResults()));
+
+    // no offset, limit 1, 3 cursors, should return the most relevant result, with cursors for the next 3 pages
+    searchResponse = searchMetadata(namespace, "rtag*", targets, null, 0, 1, 3, null);
+    Assert.assertEquals(expectedResults.subList(0, 1), new ArrayList<>(searchResponse.getResults()));
+    Assert.assertEquals(ImmutableList.of("1", "2", "3"), searchResponse.getCursors());
+
+    // paging through the cursors should return disjoint pages, in order of relevance
+    List<MetadataSearchResultRecord> pagedResults = new ArrayList<>(searchResponse.getResults());
+    for (String cursor : searchResponse.getCursors()) {
+      MetadataSearchResponse page = searchMetadata(namespace, "rtag*", targets, null, 0, 1, 1, cursor);
+      Assert.assertEquals(1, page.getResults().size());
+      Assert.assertTrue(Collections.disjoint(pagedResults, page.getResults()));
+      pagedResults.addAll(page.getResults());
+    }
+    Assert.assertEquals(expectedResults, pagedResults);
+
+    // offset is applied starting at the cursor
+    searchResponse = searchMetadata(namespace, "rtag*", targets, null, 1, 2, 1, "1");
+    Assert.assertEquals(expectedResults.subList(2, 4), new ArrayList<>(searchResponse.getResults()));
+    Assert.assertTrue(searchResponse.getCursors().isEmpty());
+
+    // cursor past the end of the results
+    searchResponse = searchMetadata(namespace, "rtag*", targets, null, 0, 1, 1, "4");
+    Assert.assertTrue(searchResponse.getResults().isEmpty());
+    Assert.assertTrue(searchResponse.getCursors().isEmpty());
+
+    // cleanup
+    namespaceClient.delete(namespace);
+  }
+
   private Set<NamespacedEntityId> getEntities(Set<MetadataSearchResultRecord> results) {
     return Sets.newHashSet(
       Iterables.transform(results, new Function<MetadataSearchResultRecord, NamespacedEntityId>() {
@@ -182,6 +182,8 @@ public final class Constants {
     public static final String LOCAL_DATASET_DELETER_INITIAL_DELAY_SECONDS
       = "app.program.local.dataset.deleter.initial.delay";
     public static final String SYSTEM_ARTIFACTS_DIR = "app.artifact.dir";
+    public static final String UNPACKED_ARTIFACT_CACHE_DIR = "app.artifact.unpacked.cache.dir";
+    public static final String UNPACKED_ARTIFACT_CACHE_MAX_SIZE_MB = "app.artifact.unpacked.cache.max.size.mb";
     public static final String PROGRAM_EXTRA_CLASSPATH = "app.program.extra.classpath";
     public static final String SPARK_YARN_CLIENT_REWRITE = "app.program.spark.yarn.client.rewrite.enabled";
     public static final String SPARK_COMPAT = "app.program.spark.compat";
@@ -190,6 +192,7 @@ public final class Constants {
     public static final String PROGRAM_MAX_STOP_SECONDS = "app.program.max.stop.seconds";
     public static final String YARN_ATTEMPT_FAILURES_VALIDITY_INTERVAL =
       "app.program.yarn.attempt.failures.validity.interval";
+    public static final String APP_SPEC_CACHE_SIZE = "app.meta.spec.cache.size";
 
     /**
      * Guice named bindings.
@@ -373,6 +376,10 @@ public final class Constants {
 
     public static final String DATA_EVENT_TOPIC = "data.event.topic";
 
+    public static final String CLIENT_CACHE_MAX_SIZE = "dataset.client.cache.max.size";
+    public static final String CLIENT_CACHE_EXPIRY_SECS = "dataset.client.cache.expiry.secs";
+    public static final String CLIENT_CACHE_POLL_INTERVAL_MS = "dataset.client.cache.change.poll.interval.ms";
+
     /**
      * Constants for PartitionedFileSet's DynamicPartitioner
      */
@@ -453,6 +460,7 @@ public final class Constants {
     public static final String TTL = "stream.event.ttl";
     public static final String PARTITION_DURATION = "stream.partition.duration";
     public static final String INDEX_INTERVAL = "stream.index.interval";
+    public static final String FILE_COMPRESSION = "stream.file.compression";
     public static final String FILE_PREFIX = "stream.file.prefix";
     public static final String INSTANCE_FILE_PREFIX = "stream.instance.file.prefix";
     public static final String CONSUMER_TABLE_PRESPLITS = "stream.consumer.table.presplits";
@@ -542,6 +550,8 @@ public final class Constants {
     public static final String SERVER_WORKER_THREADS = "router.server.worker.threads";
     public static final String CLIENT_BOSS_THREADS = "router.client.boss.threads";
     public static final String CLIENT_WORKER_THREADS = "router.client.worker.threads";
+    public static final String CLIENT_POOL_MAX_IDLE_CONNECTIONS = "router.client.pool.max.idle.connections";
+    public static final String CLIENT_POOL_STATS_LOG_INTERVAL_SECS = "router.client.pool.stats.log.interval.secs";
     public static final String CONNECTION_TIMEOUT_SECS = "router.connection.idle.timeout.secs";
     public static final String ROUTER_USERSERVICE_FALLBACK_STRAGEY = "router.userservice.fallback.strategy";
     public static final String ROUTER_AUDIT_PATH_CHECK_ENABLED = "router.audit.path.check.enabled";
@@ -583,10 +593,14 @@ public final class Constants {
     public static final String SERVICE_DESCRIPTION = "Service to handle metrics requests.";
     public static final String PROCESSOR_MAX_DELAY_MS = "metrics.processor.max.delay.ms";
     public static final String QUEUE_SIZE = "metrics.processor.queue.size";
+    public static final String PROCESSOR_PERSIST_PARTITIONS = "metrics.processor.persist.partitions";
 
     public static final String ENTITY_TABLE_NAME = "metrics.data.entity.tableName";
     public static final String METRICS_TABLE_PREFIX = "metrics.data.table.prefix";
     public static final String TIME_SERIES_TABLE_ROLL_TIME = "metrics.data.table.ts.rollTime";
+    public static final String METRICS_TABLE_WRITE_BUFFER_SIZE = "metrics.data.table.write.buffer.size";
+    public static final String METRICS_TABLE_WRITE_BUFFER_FLUSH_INTERVAL_MS =
+      "metrics.data.table.write.buffer.flush.interval.ms";
 
     // Key prefix for retention seconds. The actual key is suffixed by the table resolution.
     public static final String RETENTION_SECONDS = "metrics.data.table.retention.resolution";
@@ -806,6 +820,8 @@ public final class Constants {
     public static final String KAFKA_TOPIC = "log.kafka.topic";
     public static final String NUM_PARTITIONS = "log.publish.num.partitions";
     public static final String LOG_PUBLISH_PARTITION_KEY = "log.publish.partition.key";
+    public static final String READER_PREFETCH_FILES = "log.reader.prefetch.files";
+    public static final String READER_THREADS = "log.reader.threads";
 
     public static final String PIPELINE_CONFIG_DIR = "log.process.pipeline.config.dir";
     public static final String PIPELINE_LIBRARY_DIR = "log.process.pipeline.lib.dir";
@@ -1277,8 +1293,13 @@ public final class Constants {
     public static final String LOCAL_DATA_DIR = "messaging.local.data.dir";
     public static final String LOCAL_DATA_CLEANUP_FREQUENCY = "messaging.local.data.cleanup.frequency.secs";
 
+    public static final String CACHE_RESIZE_INTERVAL_SECONDS = "messaging.cache.resize.interval.seconds";
     public static final String CACHE_SIZE_MB = "messaging.cache.size.mb";
 
+    public static final String GROUP_COMMIT_ENABLED = "messaging.group.commit.enabled";
+    public static final String GROUP_COMMIT_MAX_BATCH_SIZE = "messaging.group.commit.max.batch.size";
+    public static final String GROUP_COMMIT_MAX_DELAY_MS = "messaging.group.commit.max.delay.ms";
+
     public static final String HBASE_MAX_SCAN_THREADS = "messaging.hbase.max.scan.threads";
     public static final String HBASE_SCAN_CACHE_ROWS = "messaging.hbase.scan.cache.rows";
     public static final String METADATA_TABLE_NAME = "messaging.metadata.table.name";
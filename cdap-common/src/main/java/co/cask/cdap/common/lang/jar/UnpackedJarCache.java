@@ -0,0 +1,407 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.common.lang.jar;
+
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.io.Locations;
+import co.cask.cdap.common.utils.DirUtils;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A local cache of unpacked jar files, keyed by the SHA-256 checksum of the jar content. Callers that unpack the
+ * same jar share a single directory instead of each unpacking it to a temporary directory. Each user of a directory
+ * holds a {@link Lease} on it. Directories without lease are kept for later use and are evicted in least recently
+ * used order when the total size of the cache exceeds the maximum size.
+ *
+ * Directories returned by this class are shared, hence must not be modified. Directories are only created by
+ * atomic rename, so the content of a cache directory left by a previous process is complete and gets reused.
+ * Directories are touched whenever they are used, so that they are loaded in least recently used order.
+ *
+ * The cache directory is locked by the process that uses it. If it is locked by another process, a private
+ * directory is used instead, which is deleted when the process exits.
+ */
+@ThreadSafe
+public final class UnpackedJarCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(UnpackedJarCache.class);
+  private static final String TEMP_PREFIX = ".tmp-";
+  private static final ConcurrentMap<File, UnpackedJarCache> INSTANCES = new ConcurrentHashMap<>();
+
+  private final File cacheDir;
+  private final long maxSizeBytes;
+  // lock on the cache directory, null if a private directory is used
+  private final FileLock lock;
+  // from jar location, size and modification time to checksum, to avoid hashing the same jar repeatedly
+  private final Cache<String, String> checksums;
+  // entries in least recently used order. Guarded by this.
+  private final LinkedHashMap<String, Entry> entries;
+
+  /**
+   * Returns the {@link UnpackedJarCache} for the cache directory specified in the given configuration.
+   * The same instance is returned for the same directory within a process.
+   */
+  public static UnpackedJarCache get(CConfiguration cConf) {
+    File cacheDir = new File(cConf.get(Constants.CFG_LOCAL_DATA_DIR),
+                             cConf.get(Constants.AppFabric.UNPACKED_ARTIFACT_CACHE_DIR)).getAbsoluteFile();
+    UnpackedJarCache cache = INSTANCES.get(cacheDir);
+    if (cache != null) {
+      return cache;
+    }
+    long maxSizeBytes = cConf.getLong(Constants.AppFabric.UNPACKED_ARTIFACT_CACHE_MAX_SIZE_MB) * 1024L * 1024L;
+    cache = new UnpackedJarCache(cacheDir, maxSizeBytes);
+    UnpackedJarCache existing = INSTANCES.putIfAbsent(cacheDir, cache);
+    return existing == null ? cache : existing;
+  }
+
+  /**
+   * Creates a cache in the given directory. Content left in the directory is loaded into the cache.
+   *
+   * @param cacheDir the directory to unpack jars into
+   * @param maxSizeBytes maximum total size of the directories without lease. If it is {@code 0}, directories
+   *                     are deleted as soon as they have no lease.
+   */
+  UnpackedJarCache(File cacheDir, long maxSizeBytes) {
+    Preconditions.checkArgument(maxSizeBytes >= 0, "Maximum cache size must not be negative: %s", maxSizeBytes);
+    this.lock = lock(cacheDir);
+    if (lock == null) {
+      File privateDir = new File(cacheDir.getParentFile(), cacheDir.getName() + "-" + UUID.randomUUID());
+      LOG.warn("Unpacked jar cache directory {} is used by another process. Using {} instead.", cacheDir, privateDir);
+      deleteOnExit(privateDir);
+      cacheDir = privateDir;
+    }
+    if (!DirUtils.mkdirs(cacheDir)) {
+      throw new IllegalStateException("Failed to create unpacked jar cache directory " + cacheDir);
+    }
+    this.cacheDir = cacheDir;
+    this.maxSizeBytes = maxSizeBytes;
+    this.checksums = CacheBuilder.newBuilder().maximumSize(1000).build();
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    loadExisting();
+  }
+
+  /**
+   * Returns a {@link Lease} on the directory that contains the unpacked content of the given jar. The jar is
+   * unpacked if it is not in the cache.
+   *
+   * @param jarLocation location of the jar file
+   * @return a {@link Lease} that must be closed when the directory is no longer used
+   * @throws IOException if failed to read or unpack the jar
+   */
+  public Lease acquire(Location jarLocation) throws IOException {
+    String checksum = getChecksum(jarLocation);
+    Entry entry;
+    synchronized (this) {
+      entry = entries.get(checksum);
+      if (entry == null) {
+        entry = new Entry(new File(cacheDir, checksum));
+        entries.put(checksum, entry);
+      }
+      entry.references++;
+    }
+
+    try {
+      entry.unpack(jarLocation);
+    } catch (IOException | RuntimeException e) {
+      release(entry);
+      throw e;
+    }
+    // touch the directory, so that the least recently used order is known after a restart
+    if (!entry.dir.setLastModified(System.currentTimeMillis())) {
+      LOG.debug("Failed to update the modification time of {}", entry.dir);
+    }
+    evict();
+    return new Lease(entry);
+  }
+
+  /**
+   * Returns a {@link Lease} on the directory that contains the unpacked content of the given jar file.
+   *
+   * @see #acquire(Location)
+   */
+  public Lease acquire(File jarFile) throws IOException {
+    return acquire(Locations.toLocation(jarFile));
+  }
+
+  /**
+   * Returns the directory that jars are unpacked into.
+   */
+  File getCacheDir() {
+    return cacheDir;
+  }
+
+  /**
+   * Releases the lock on the cache directory. This is only used by tests to simulate a process restart, since
+   * caches returned by {@link #get(CConfiguration)} are used for the lifetime of the process.
+   */
+  void close() throws IOException {
+    if (lock != null) {
+      lock.release();
+      lock.channel().close();
+    }
+  }
+
+  /**
+   * Returns the total size in bytes of the unpacked jars in the cache.
+   */
+  synchronized long getSize() {
+    long size = 0L;
+    for (Entry entry : entries.values()) {
+      size += entry.size;
+    }
+    return size;
+  }
+
+  private String getChecksum(Location jarLocation) throws IOException {
+    String key = jarLocation.toURI() + ":" + jarLocation.length() + ":" + jarLocation.lastModified();
+    String checksum = checksums.getIfPresent(key);
+    if (checksum == null) {
+      checksum = ByteStreams.hash(Locations.newInputSupplier(jarLocation), Hashing.sha256()).toString();
+      checksums.put(key, checksum);
+    }
+    return checksum;
+  }
+
+  private void release(Entry entry) {
+    synchronized (this) {
+      entry.references--;
+    }
+    evict();
+  }
+
+  /**
+   * Removes directories without lease, in least recently used order, until the cache is within the maximum size.
+   */
+  private void evict() {
+    List<File> evicted = new ArrayList<>();
+    synchronized (this) {
+      long size = 0L;
+      for (Entry entry : entries.values()) {
+        size += entry.size;
+      }
+      Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+      while (size > maxSizeBytes && iterator.hasNext()) {
+        Entry entry = iterator.next().getValue();
+        if (entry.references > 0) {
+          continue;
+        }
+        iterator.remove();
+        size -= entry.size;
+        // Rename before deleting, so that the directory is not seen as complete by a new entry for the same jar
+        File evictedDir = new File(cacheDir, TEMP_PREFIX + UUID.randomUUID());
+        if (entry.dir.renameTo(evictedDir)) {
+          evicted.add(evictedDir);
+        } else if (entry.dir.exists()) {
+          LOG.warn("Failed to evict unpacked jar directory {}", entry.dir);
+        }
+      }
+    }
+
+    for (File dir : evicted) {
+      deleteQuietly(dir);
+    }
+  }
+
+  /**
+   * Loads directories left by a previous process, in order of last modification, and removes incomplete ones.
+   */
+  private void loadExisting() {
+    File[] files = cacheDir.listFiles();
+    if (files == null) {
+      return;
+    }
+    Arrays.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File file1, File file2) {
+        return Long.compare(file1.lastModified(), file2.lastModified());
+      }
+    });
+    for (File file : files) {
+      if (file.getName().startsWith(TEMP_PREFIX)) {
+        deleteQuietly(file);
+      } else if (file.isDirectory()) {
+        try {
+          Entry entry = new Entry(file);
+          entry.size = getDirectorySize(file.toPath());
+          entry.unpacked = true;
+          entries.put(file.getName(), entry);
+        } catch (IOException e) {
+          LOG.warn("Failed to load unpacked jar directory {}", file, e);
+        }
+      }
+    }
+    evict();
+  }
+
+  /**
+   * Locks the given cache directory through a lock file next to it.
+   *
+   * @return the lock, or {@code null} if the directory is locked by another process
+   */
+  @Nullable
+  private static FileLock lock(File cacheDir) {
+    File parentDir = cacheDir.getParentFile();
+    if (!DirUtils.mkdirs(parentDir)) {
+      throw new IllegalStateException("Failed to create directory " + parentDir);
+    }
+    File lockFile = new File(parentDir, cacheDir.getName() + ".lock");
+    FileChannel channel = null;
+    try {
+      channel = new RandomAccessFile(lockFile, "rw").getChannel();
+      FileLock lock = channel.tryLock();
+      if (lock != null) {
+        return lock;
+      }
+    } catch (OverlappingFileLockException e) {
+      // locked by another cache in this process
+    } catch (IOException e) {
+      LOG.warn("Failed to lock unpacked jar cache directory {}", cacheDir, e);
+    }
+    Closeables.closeQuietly(channel);
+    return null;
+  }
+
+  private static void deleteOnExit(final File dir) {
+    Runtime.getRuntime().addShutdownHook(new Thread("unpacked-jar-cache-cleanup") {
+      @Override
+      public void run() {
+        if (dir.isDirectory()) {
+          deleteQuietly(dir);
+        }
+      }
+    });
+  }
+
+  private static long getDirectorySize(Path dir) throws IOException {
+    final long[] size = {0L};
+    Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        size[0] += attrs.size();
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return size[0];
+  }
+
+  private static void deleteQuietly(File dir) {
+    try {
+      DirUtils.deleteDirectoryContents(dir);
+    } catch (IOException e) {
+      LOG.warn("Failed to delete directory {}", dir, e);
+    }
+  }
+
+  /**
+   * A cache entry for the unpacked content of a jar.
+   */
+  private final class Entry {
+    private final File dir;
+    // guarded by UnpackedJarCache.this
+    private int references;
+    // written while holding the lock on this entry, read by eviction
+    private volatile long size;
+    // guarded by this entry
+    private boolean unpacked;
+
+    Entry(File dir) {
+      this.dir = dir;
+    }
+
+    synchronized void unpack(Location jarLocation) throws IOException {
+      if (unpacked) {
+        return;
+      }
+      if (!dir.isDirectory()) {
+        File tempDir = new File(cacheDir, TEMP_PREFIX + UUID.randomUUID());
+        try {
+          BundleJarUtil.unJar(jarLocation, tempDir);
+          Files.move(tempDir.toPath(), dir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+          if (tempDir.exists()) {
+            deleteQuietly(tempDir);
+          }
+        }
+        LOG.debug("Unpacked {} to {}", jarLocation, dir);
+      }
+      size = getDirectorySize(dir.toPath());
+      unpacked = true;
+    }
+  }
+
+  /**
+   * A lease on an unpacked jar directory. The directory is not evicted until all leases on it are closed.
+   */
+  public final class Lease implements Closeable {
+    private final Entry entry;
+    private final AtomicBoolean closed;
+
+    private Lease(Entry entry) {
+      this.entry = entry;
+      this.closed = new AtomicBoolean();
+    }
+
+    /**
+     * Returns the directory that contains the unpacked jar content. It must not be modified.
+     */
+    public File getDirectory() {
+      return entry.dir;
+    }
+
+    @Override
+    public void close() {
+      if (closed.compareAndSet(false, true)) {
+        release(entry);
+      }
+    }
+  }
+}
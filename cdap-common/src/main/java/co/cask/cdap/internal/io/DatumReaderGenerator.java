@@ -0,0 +1,1190 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.io;
+
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.data.schema.SchemaHash;
+import co.cask.cdap.common.io.ByteBuffers;
+import co.cask.cdap.common.io.DatumReader;
+import co.cask.cdap.common.io.Decoder;
+import co.cask.cdap.common.lang.Instantiator;
+import co.cask.cdap.common.lang.InstantiatorFactory;
+import co.cask.cdap.internal.asm.ClassDefinition;
+import co.cask.cdap.internal.asm.Methods;
+import co.cask.cdap.internal.asm.Signatures;
+import co.cask.cdap.internal.lang.Fields;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Longs;
+import com.google.common.primitives.Primitives;
+import com.google.common.reflect.TypeParameter;
+import com.google.common.reflect.TypeToken;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
+import org.objectweb.asm.commons.TableSwitchGenerator;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.ParameterizedType;
+import java.net.URI;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Class for generating {@link DatumReader} bytecodes using ASM. A generated class reads data written with one
+ * source schema into the given type with the given target schema. Schema resolution follows the same rules as
+ * {@link ReflectionReader}, but is done once when the class is generated instead of on every read. The class
+ * generated will have a skeleton looks like the following:
+ * <pre>
+ * {@code
+ *
+ *  public final class generatedClassName implements DatumReader<InputType> {
+ *    private static final String SOURCE_SCHEMA_HASH = "source_schema_hash_as_hex_string";
+ *    private static final String TARGET_SCHEMA_HASH = "target_schema_hash_as_hex_string";
+ *
+ *    // Instantiators, FieldAccessors and enum tables used by the read methods
+ *    private final Instantiator recordTypeName$instantiator;
+ *    private final FieldAccessor recordTypeName$fieldName;
+ *
+ *    public generatedClassName(Schema sourceSchema, Schema targetSchema, FieldAccessorFactory accessorFactory) {
+ *      // Verifies the schema hashes and initializes the fields.
+ *    }
+ *
+ *    @Override
+ *    public Object read(Decoder decoder, Schema sourceSchema) throws IOException {
+ *      return generatedReadMethod(decoder);
+ *    }
+ *
+ *    private Object generatedReadMethod(Decoder decoder) throws IOException {
+ *      // Do actual decoding by calling methods on decoder based on the source schema,
+ *      // and converts the value to the target schema and type.
+ *    }
+ *
+ *    // Could have more generatedReadMethods and generatedSkipMethods...
+ *  }
+ * }
+ * </pre>
+ *
+ * A read method returns a primitive value if the type it reads is primitive, otherwise it returns {@link Object},
+ * so that the generated class doesn't need access to private classes.
+ */
+@NotThreadSafe
+final class DatumReaderGenerator {
+
+  private final Map<String, Method> readMethods = Maps.newHashMap();
+  private final Map<String, Method> skipMethods = Maps.newHashMap();
+  // From class field name to the field initialization, for fields needed by the read methods
+  private final Map<String, ClassField> classFields = Maps.newLinkedHashMap();
+  private ClassWriter classWriter;
+  private Type classType;
+  private List<Class<?>> preservedClasses;
+
+  /**
+   * Generates a {@link DatumReader} class for decoding data written with the given source schema into the given
+   * input type with the given target schema.
+   *
+   * @param inputType Type information of the data type to read.
+   * @param sourceSchema Schema of the data to read.
+   * @param targetSchema Schema of the input data type.
+   * @return A {@link ClassDefinition} that contains generated class information.
+   */
+  ClassDefinition generate(TypeToken<?> inputType, Schema sourceSchema, Schema targetSchema) {
+    classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+    preservedClasses = Lists.newArrayList();
+
+    // Primitive type cannot be used as type parameter, hence use the wrapper type for the interface
+    TypeToken<?> interfaceType = inputType.getRawType().isPrimitive()
+      ? getInterfaceType(TypeToken.of(Primitives.wrap(inputType.getRawType())))
+      : getInterfaceType(inputType);
+
+    // Generate the class
+    String className = getClassName(interfaceType, sourceSchema, targetSchema);
+    classType = Type.getObjectType(className);
+    classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC + Opcodes.ACC_FINAL,
+                      className, Signatures.getClassSignature(interfaceType),
+                      Type.getInternalName(Object.class),
+                      new String[]{Type.getInternalName(interfaceType.getRawType())});
+
+    // Static schema hash fields, for verification
+    classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_STATIC + Opcodes.ACC_FINAL, "SOURCE_SCHEMA_HASH",
+                           Type.getDescriptor(String.class), null,
+                           sourceSchema.getSchemaHash().toString()).visitEnd();
+    classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_STATIC + Opcodes.ACC_FINAL, "TARGET_SCHEMA_HASH",
+                           Type.getDescriptor(String.class), null,
+                           targetSchema.getSchemaHash().toString()).visitEnd();
+
+    // Read method
+    generateRead(inputType, sourceSchema, targetSchema);
+
+    // Constructor
+    generateConstructor();
+
+    ClassDefinition classDefinition = new ClassDefinition(classWriter.toByteArray(), className, preservedClasses);
+    // DEBUG block. Uncomment for debug
+//    co.cask.cdap.internal.asm.Debugs.debugByteCode(classDefinition, new java.io.PrintWriter(System.out));
+    // End DEBUG block
+    return classDefinition;
+  }
+
+  /**
+   * Generates the constructor. The constructor generated has signature
+   * {@code (Schema sourceSchema, Schema targetSchema, FieldAccessorFactory)}.
+   */
+  private void generateConstructor() {
+    Method constructor = getMethod(void.class, "<init>", Schema.class, Schema.class, FieldAccessorFactory.class);
+
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, constructor, null, null, classWriter);
+
+    // super(); // Calling Object constructor
+    mg.loadThis();
+    mg.invokeConstructor(Type.getType(Object.class), getMethod(void.class, "<init>"));
+
+    verifySchemaHash(mg, "SOURCE_SCHEMA_HASH", 0);
+    verifySchemaHash(mg, "TARGET_SCHEMA_HASH", 1);
+
+    // InstantiatorFactory instantiatorFactory = new InstantiatorFactory(true);
+    Type instantiatorFactoryType = Type.getType(InstantiatorFactory.class);
+    int instantiatorFactory = mg.newLocal(instantiatorFactoryType);
+    mg.newInstance(instantiatorFactoryType);
+    mg.dup();
+    mg.push(true);
+    mg.invokeConstructor(instantiatorFactoryType, getMethod(void.class, "<init>", boolean.class));
+    mg.storeLocal(instantiatorFactory);
+
+    // Initialize all fields requested by the read methods
+    for (Map.Entry<String, ClassField> entry : classFields.entrySet()) {
+      ClassField field = entry.getValue();
+      classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_FINAL, entry.getKey(),
+                             field.type.getDescriptor(), null, null).visitEnd();
+      mg.loadThis();
+      field.initializer.generate(mg, instantiatorFactory);
+      mg.putField(classType, entry.getKey(), field.type);
+    }
+
+    mg.returnValue();
+    mg.endMethod();
+  }
+
+  /**
+   * Generates code to throw {@link IllegalArgumentException} if the hash of the schema in the given argument
+   * doesn't match with the given static field.
+   */
+  private void verifySchemaHash(GeneratorAdapter mg, String hashField, int schemaArg) {
+    // if (!HASH_FIELD.equals(schema.getSchemaHash().toString())) { throw IllegalArgumentException }
+    mg.getStatic(classType, hashField, Type.getType(String.class));
+    mg.loadArg(schemaArg);
+    mg.invokeVirtual(Type.getType(Schema.class), getMethod(SchemaHash.class, "getSchemaHash"));
+    mg.invokeVirtual(Type.getType(SchemaHash.class), getMethod(String.class, "toString"));
+    mg.invokeVirtual(Type.getType(String.class), getMethod(boolean.class, "equals", Object.class));
+    Label hashEquals = mg.newLabel();
+    mg.ifZCmp(GeneratorAdapter.NE, hashEquals);
+    mg.throwException(Type.getType(IllegalArgumentException.class), "Schema not match.");
+    mg.mark(hashEquals);
+  }
+
+  /**
+   * Generates the {@link DatumReader#read(Decoder, Schema)} method.
+   */
+  private void generateRead(TypeToken<?> inputType, Schema sourceSchema, Schema targetSchema) {
+    Method method = getMethod(Object.class, "read", Decoder.class, Schema.class);
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, method, null,
+                                               new Type[] {Type.getType(IOException.class)}, classWriter);
+
+    // return readMethod(decoder);
+    invokeRead(mg, sourceSchema, targetSchema, inputType);
+    box(mg, inputType);
+    mg.returnValue();
+    mg.endMethod();
+  }
+
+  /**
+   * Generates code to call the read method for the given schemas and type, which leaves the value read
+   * on the stack.
+   */
+  private void invokeRead(GeneratorAdapter mg, Schema sourceSchema, Schema targetSchema, TypeToken<?> targetType) {
+    mg.loadThis();
+    mg.loadArg(0);
+    mg.invokeVirtual(classType, getReadMethod(sourceSchema, targetSchema, targetType));
+  }
+
+  /**
+   * Returns the read method for the given schemas and type. The same method will be returned if the same
+   * schemas and type have been passed to the method before.
+   */
+  private Method getReadMethod(Schema sourceSchema, Schema targetSchema, TypeToken<?> targetType) {
+    String key = String.format("%s%s%s", normalizeTypeName(targetType),
+                               sourceSchema.getSchemaHash(), targetSchema.getSchemaHash());
+
+    Method method = readMethods.get(key);
+    if (method != null) {
+      return method;
+    }
+
+    // Generate the read method (decoder)
+    method = getMethod(getCallType(targetType), "read" + key, Decoder.class);
+
+    // Put the method into map first before generating the body in order to support recursive data type.
+    readMethods.put(key, method);
+
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PRIVATE, method, null,
+                                               new Type[] {Type.getType(IOException.class)}, classWriter);
+    generateReadBody(mg, sourceSchema, targetSchema, targetType);
+    mg.returnValue();
+    mg.endMethod();
+
+    return method;
+  }
+
+  /**
+   * Generates the read method body. It follows {@link ReflectionReader#read(Object, Schema, Schema, TypeToken)},
+   * with the target union schema resolved at generation time.
+   */
+  private void generateReadBody(GeneratorAdapter mg, Schema sourceSchema,
+                                Schema targetSchema, TypeToken<?> targetType) {
+    if (sourceSchema.getType() != Schema.Type.UNION && targetSchema.getType() == Schema.Type.UNION) {
+      // Use the first target schema that the source schema resolves to
+      Schema resolvedSchema = null;
+      for (Schema schema : targetSchema.getUnionSchemas()) {
+        if (canResolve(sourceSchema, schema, targetType)) {
+          resolvedSchema = schema;
+          break;
+        }
+      }
+      if (resolvedSchema == null) {
+        throwResolveError(mg, sourceSchema, targetSchema, targetType);
+        return;
+      }
+      targetSchema = resolvedSchema;
+    }
+
+    if (!canResolve(sourceSchema, targetSchema, targetType)) {
+      throwResolveError(mg, sourceSchema, targetSchema, targetType);
+      return;
+    }
+
+    switch (sourceSchema.getType()) {
+      case NULL:
+        // decoder.readNull();
+        mg.loadArg(0);
+        mg.invokeInterface(Type.getType(Decoder.class), getMethod(Object.class, "readNull"));
+        break;
+      case BYTES:
+        readBytes(mg, targetType);
+        break;
+      case ENUM:
+        readEnum(mg, sourceSchema, targetSchema, targetType);
+        break;
+      case ARRAY:
+        readArray(mg, sourceSchema, targetSchema, targetType);
+        break;
+      case MAP:
+        readMap(mg, sourceSchema, targetSchema, targetType);
+        break;
+      case RECORD:
+        readRecord(mg, sourceSchema, targetSchema, targetType);
+        break;
+      case UNION:
+        readUnion(mg, sourceSchema, targetSchema, targetType);
+        break;
+      default:
+        readSimple(mg, sourceSchema.getType(), targetSchema.getType(), targetType);
+    }
+  }
+
+  /**
+   * Returns whether data of the source schema can be read into the target type with the target schema. Only
+   * the top level schema is checked, errors on nested schemas are raised when reading data.
+   */
+  private boolean canResolve(Schema sourceSchema, Schema targetSchema, TypeToken<?> targetType) {
+    Schema.Type sourceType = sourceSchema.getType();
+    Schema.Type targetSchemaType = targetSchema.getType();
+    Class<?> rawType = targetType.getRawType();
+
+    switch (sourceType) {
+      case UNION:
+        // Resolution is done per union branch
+        return true;
+      case NULL:
+      case BYTES:
+      case RECORD:
+        return sourceType == targetSchemaType && !rawType.isPrimitive();
+      case ENUM:
+        return sourceType == targetSchemaType && rawType.isEnum();
+      case ARRAY:
+        return sourceType == targetSchemaType
+          && (targetType.isArray()
+                || (Collection.class.isAssignableFrom(rawType) && targetType.getType() instanceof ParameterizedType));
+      case MAP:
+        return sourceType == targetSchemaType
+          && Map.class.isAssignableFrom(rawType) && targetType.getType() instanceof ParameterizedType;
+    }
+
+    if (!canPromote(sourceType, targetSchemaType)) {
+      return false;
+    }
+    // Primitive type can only be read with the matching schema type
+    return !rawType.isPrimitive() || targetSchemaType == getSchemaType(rawType);
+  }
+
+  /**
+   * Returns whether a value of the given simple source type can be promoted to the target type.
+   */
+  private boolean canPromote(Schema.Type sourceType, Schema.Type targetType) {
+    switch (sourceType) {
+      case BOOLEAN:
+        return targetType == Schema.Type.BOOLEAN || targetType == Schema.Type.STRING;
+      case INT:
+        return targetType == Schema.Type.INT || targetType == Schema.Type.LONG || targetType == Schema.Type.FLOAT
+          || targetType == Schema.Type.DOUBLE || targetType == Schema.Type.STRING;
+      case LONG:
+        return targetType == Schema.Type.LONG || targetType == Schema.Type.FLOAT
+          || targetType == Schema.Type.DOUBLE || targetType == Schema.Type.STRING;
+      case FLOAT:
+        return targetType == Schema.Type.FLOAT || targetType == Schema.Type.DOUBLE || targetType == Schema.Type.STRING;
+      case DOUBLE:
+        return targetType == Schema.Type.DOUBLE || targetType == Schema.Type.STRING;
+      case STRING:
+        return targetType == Schema.Type.STRING;
+    }
+    return false;
+  }
+
+  /**
+   * Generates method body for reading simple schema type other than {@code NULL} and {@code BYTES},
+   * with type promotion from the source type to the target type.
+   */
+  private void readSimple(GeneratorAdapter mg, Schema.Type sourceType,
+                          Schema.Type targetSchemaType, TypeToken<?> targetType) {
+    // value = decoder.readXXX();
+    String readMethod = "read" + sourceType.name().charAt(0) + sourceType.name().substring(1).toLowerCase();
+    if (sourceType == Schema.Type.BOOLEAN) {
+      readMethod = "readBool";
+    }
+    Class<?> sourceClass = getSchemaClass(sourceType);
+    mg.loadArg(0);
+    mg.invokeInterface(Type.getType(Decoder.class), getMethod(sourceClass, readMethod));
+
+    Class<?> rawType = targetType.getRawType();
+    Class<?> valueClass = getSchemaClass(targetSchemaType);
+    if (targetSchemaType == Schema.Type.STRING) {
+      if (sourceType != Schema.Type.STRING) {
+        // String.valueOf(value)
+        mg.invokeStatic(Type.getType(String.class), getMethod(String.class, "valueOf", sourceClass));
+      } else if (URI.class.equals(rawType)) {
+        // URI.create(value)
+        mg.invokeStatic(Type.getType(URI.class), getMethod(URI.class, "create", String.class));
+      } else if (URL.class.equals(rawType)) {
+        // new URL(value)
+        Type urlType = Type.getType(URL.class);
+        mg.newInstance(urlType);
+        mg.dupX1();
+        mg.swap();
+        mg.invokeConstructor(urlType, getMethod(void.class, "<init>", String.class));
+      }
+      return;
+    }
+
+    if (sourceType != targetSchemaType) {
+      mg.cast(Type.getType(sourceClass), Type.getType(valueClass));
+    }
+    if (targetSchemaType == Schema.Type.INT) {
+      // A special case since INT type represents (byte, char, short and int).
+      Class<?> intClass = Primitives.unwrap(rawType);
+      if (intClass.equals(byte.class) || intClass.equals(char.class) || intClass.equals(short.class)) {
+        mg.cast(Type.INT_TYPE, Type.getType(intClass));
+        valueClass = intClass;
+      }
+    }
+    if (!rawType.isPrimitive()) {
+      mg.valueOf(Type.getType(valueClass));
+    }
+  }
+
+  /**
+   * Generates method body for reading bytes. The bytes are converted to {@code byte[]} or {@link UUID}
+   * based on the target type.
+   */
+  private void readBytes(GeneratorAdapter mg, TypeToken<?> targetType) {
+    // ByteBuffer buffer = decoder.readBytes();
+    Type byteBufferType = Type.getType(ByteBuffer.class);
+    mg.loadArg(0);
+    mg.invokeInterface(Type.getType(Decoder.class), getMethod(ByteBuffer.class, "readBytes"));
+
+    Class<?> rawType = targetType.getRawType();
+    if (byte[].class.equals(rawType)) {
+      // ByteBuffers.getByteArray(buffer)
+      mg.invokeStatic(Type.getType(ByteBuffers.class), getMethod(byte[].class, "getByteArray", ByteBuffer.class));
+    } else if (UUID.class.equals(rawType)) {
+      // buffer.remaining() == Longs.BYTES * 2 ? new UUID(buffer.getLong(), buffer.getLong()) : buffer
+      int buffer = mg.newLocal(byteBufferType);
+      mg.storeLocal(buffer);
+      Label notUUID = mg.newLabel();
+      Label end = mg.newLabel();
+      mg.loadLocal(buffer);
+      mg.invokeVirtual(byteBufferType, getMethod(int.class, "remaining"));
+      mg.push(Longs.BYTES * 2);
+      mg.ifICmp(GeneratorAdapter.NE, notUUID);
+
+      Type uuidType = Type.getType(UUID.class);
+      mg.newInstance(uuidType);
+      mg.dup();
+      mg.loadLocal(buffer);
+      mg.invokeVirtual(byteBufferType, getMethod(long.class, "getLong"));
+      mg.loadLocal(buffer);
+      mg.invokeVirtual(byteBufferType, getMethod(long.class, "getLong"));
+      mg.invokeConstructor(uuidType, getMethod(void.class, "<init>", long.class, long.class));
+      mg.goTo(end);
+
+      mg.mark(notUUID);
+      mg.loadLocal(buffer);
+      mg.mark(end);
+    }
+  }
+
+  /**
+   * Generates method body for reading enum value. The enum constants are looked up from a table that maps
+   * the source enum index to the enum constant, which is built in the constructor.
+   *
+   * <pre>
+   * {@code
+   *
+   * Object value = enumTable[decoder.readInt()];
+   * if (value == null) {
+   *   throw new IOException(...);
+   * }
+   * }
+   * </pre>
+   */
+  private void readEnum(GeneratorAdapter mg, Schema sourceSchema, Schema targetSchema, TypeToken<?> targetType) {
+    // Enum type might be defined by the user, hence need to preserve class loading of it
+    final Class<?> enumClass = targetType.getRawType();
+    preservedClasses.add(enumClass);
+
+    // Source enum value to enum constant name. It is null if the value is missing in the target.
+    final String[] names = new String[sourceSchema.getEnumValues().size()];
+    for (int i = 0; i < names.length; i++) {
+      String value = sourceSchema.getEnumValue(i);
+      if (targetSchema.getEnumValues().contains(value)) {
+        for (Object constant : enumClass.getEnumConstants()) {
+          if (((Enum<?>) constant).name().equals(value)) {
+            names[i] = value;
+            break;
+          }
+        }
+      }
+    }
+
+    String fieldName = String.format("%s$enum%s%s", normalizeTypeName(targetType),
+                                     sourceSchema.getSchemaHash(), targetSchema.getSchemaHash());
+    if (!classFields.containsKey(fieldName)) {
+      classFields.put(fieldName, new ClassField(Type.getType(Object[].class), (cg, instantiatorFactory) -> {
+        // Object[] table = new Object[names.length]; table[i] = Enum.valueOf(Class.forName("className"), names[i]);
+        cg.push(names.length);
+        cg.newArray(Type.getType(Object.class));
+        for (int i = 0; i < names.length; i++) {
+          if (names[i] == null) {
+            continue;
+          }
+          cg.dup();
+          cg.push(i);
+          loadClass(cg, enumClass);
+          cg.push(names[i]);
+          cg.invokeStatic(Type.getType(Enum.class), getMethod(Enum.class, "valueOf", Class.class, String.class));
+          cg.arrayStore(Type.getType(Object.class));
+        }
+      }));
+    }
+
+    mg.loadThis();
+    mg.getField(classType, fieldName, Type.getType(Object[].class));
+    mg.loadArg(0);
+    mg.invokeInterface(Type.getType(Decoder.class), getMethod(int.class, "readInt"));
+    mg.arrayLoad(Type.getType(Object.class));
+    mg.dup();
+    Label found = mg.newLabel();
+    mg.ifNonNull(found);
+    mg.throwException(Type.getType(IOException.class), "Enum value missing in target.");
+    mg.mark(found);
+  }
+
+  /**
+   * Generates method body for reading array into a {@link Collection} or an array. The logic is like this:
+   *
+   * <pre>
+   * {@code
+   *
+   * Collection collection = (Collection) collectionInstantiator.create(); // new ArrayList() for array
+   * int len = decoder.readInt();
+   * while (len != 0) {
+   *   for (int i = 0; i < len; i++) {
+   *     collection.add(readElement(decoder));
+   *   }
+   *   len = decoder.readInt();
+   * }
+   * }
+   * </pre>
+   *
+   * For array, the collection is then converted to an array of the component type.
+   */
+  private void readArray(GeneratorAdapter mg, Schema sourceSchema, Schema targetSchema, TypeToken<?> targetType) {
+    TypeToken<?> componentType;
+    Type collectionType = Type.getType(Collection.class);
+    int collection = mg.newLocal(collectionType);
+    if (targetType.isArray()) {
+      componentType = targetType.getComponentType();
+      Type arrayListType = Type.getType(ArrayList.class);
+      mg.newInstance(arrayListType);
+      mg.dup();
+      mg.invokeConstructor(arrayListType, getMethod(void.class, "<init>"));
+    } else {
+      componentType = TypeToken.of(((ParameterizedType) targetType.getType()).getActualTypeArguments()[0]);
+      createInstance(mg, targetType);
+      mg.checkCast(collectionType);
+    }
+    mg.storeLocal(collection);
+
+    readBlocks(mg, () -> {
+      mg.loadLocal(collection);
+      invokeRead(mg, sourceSchema.getComponentSchema(), targetSchema.getComponentSchema(), componentType);
+      box(mg, componentType);
+      mg.invokeInterface(collectionType, getMethod(boolean.class, "add", Object.class));
+      mg.pop();
+    });
+
+    if (!targetType.isArray()) {
+      mg.loadLocal(collection);
+      return;
+    }
+
+    Class<?> componentClass = componentType.getRawType();
+    if (!componentClass.isPrimitive()) {
+      // collection.toArray((Object[]) Array.newInstance(componentClass, collection.size()))
+      mg.loadLocal(collection);
+      loadClassField(mg, componentClass);
+      mg.loadLocal(collection);
+      mg.invokeInterface(collectionType, getMethod(int.class, "size"));
+      mg.invokeStatic(Type.getType(Array.class), getMethod(Object.class, "newInstance", Class.class, int.class));
+      mg.checkCast(Type.getType(Object[].class));
+      mg.invokeInterface(collectionType, getMethod(Object[].class, "toArray", Object[].class));
+      return;
+    }
+
+    // For primitive array, copy the collection to the array with unboxing
+    Type componentAsmType = Type.getType(componentClass);
+    Type listType = Type.getType(List.class);
+    mg.loadLocal(collection);
+    mg.invokeInterface(collectionType, getMethod(int.class, "size"));
+    mg.newArray(componentAsmType);
+    int array = mg.newLocal(Type.getType(getArrayType(componentType).getRawType()));
+    mg.storeLocal(array);
+
+    // for (int idx = 0; idx < array.length; idx++)
+    mg.push(0);
+    int idx = mg.newLocal(Type.INT_TYPE);
+    mg.storeLocal(idx);
+    Label beginFor = mg.mark();
+    Label endFor = mg.newLabel();
+    mg.loadLocal(idx);
+    mg.loadLocal(array);
+    mg.arrayLength();
+    mg.ifICmp(GeneratorAdapter.GE, endFor);
+
+    // array[idx] = ((List) collection).get(idx)
+    mg.loadLocal(array);
+    mg.loadLocal(idx);
+    mg.loadLocal(collection);
+    mg.checkCast(listType);
+    mg.loadLocal(idx);
+    mg.invokeInterface(listType, getMethod(Object.class, "get", int.class));
+    mg.unbox(componentAsmType);
+    mg.arrayStore(componentAsmType);
+
+    mg.iinc(idx, 1);
+    mg.goTo(beginFor);
+    mg.mark(endFor);
+
+    mg.loadLocal(array);
+  }
+
+  /**
+   * Generates method body for reading map. The logic is like this:
+   *
+   * <pre>
+   * {@code
+   *
+   * Map map = (Map) mapInstantiator.create();
+   * int len = decoder.readInt();
+   * while (len != 0) {
+   *   for (int i = 0; i < len; i++) {
+   *     map.put(readKey(decoder), readValue(decoder));
+   *   }
+   *   len = decoder.readInt();
+   * }
+   * }
+   * </pre>
+   */
+  private void readMap(GeneratorAdapter mg, Schema sourceSchema, Schema targetSchema, TypeToken<?> targetType) {
+    java.lang.reflect.Type[] mapArgs = ((ParameterizedType) targetType.getType()).getActualTypeArguments();
+    TypeToken<?> keyType = TypeToken.of(mapArgs[0]);
+    TypeToken<?> valueType = TypeToken.of(mapArgs[1]);
+    Map.Entry<Schema, Schema> sourceMapSchema = sourceSchema.getMapSchema();
+    Map.Entry<Schema, Schema> targetMapSchema = targetSchema.getMapSchema();
+
+    Type mapType = Type.getType(Map.class);
+    int map = mg.newLocal(mapType);
+    createInstance(mg, targetType);
+    mg.checkCast(mapType);
+    mg.storeLocal(map);
+
+    readBlocks(mg, () -> {
+      mg.loadLocal(map);
+      invokeRead(mg, sourceMapSchema.getKey(), targetMapSchema.getKey(), keyType);
+      box(mg, keyType);
+      invokeRead(mg, sourceMapSchema.getValue(), targetMapSchema.getValue(), valueType);
+      box(mg, valueType);
+      mg.invokeInterface(mapType, getMethod(Object.class, "put", Object.class, Object.class));
+      mg.pop();
+    });
+
+    mg.loadLocal(map);
+  }
+
+  /**
+   * Generates method body for reading record. Fields that are in the source schema but not in the target schema
+   * are skipped. The logic is like this:
+   *
+   * <pre>
+   * {@code
+   *
+   * Object record = recordInstantiator.create();
+   * fieldAccessor1.set(record, readField1(decoder));
+   * skipField2(decoder);
+   * ...
+   * }
+   * </pre>
+   */
+  private void readRecord(GeneratorAdapter mg, Schema sourceSchema, Schema targetSchema, TypeToken<?> targetType) {
+    Class<?> rawType = targetType.getRawType();
+
+    // Record type might be defined by the user, hence need to preserve class loading of it
+    preservedClasses.add(rawType);
+
+    int record = mg.newLocal(Type.getType(Object.class));
+    createInstance(mg, targetType);
+    mg.storeLocal(record);
+
+    for (Schema.Field sourceField : sourceSchema.getFields()) {
+      Schema.Field targetField = targetSchema.getField(sourceField.getName());
+      if (targetField == null) {
+        invokeSkip(mg, sourceField.getSchema());
+        continue;
+      }
+
+      String fieldName = sourceField.getName();
+      TypeToken<?> fieldType;
+      try {
+        fieldType = targetType.resolveType(Fields.findField(targetType.getType(), fieldName).getGenericType());
+      } catch (NoSuchFieldException e) {
+        throw Throwables.propagate(e);
+      }
+
+      // fieldAccessor.set(record, readField(decoder));
+      String accessorName = getFieldAccessorName(targetType, fieldName);
+      if (!classFields.containsKey(accessorName)) {
+        classFields.put(accessorName, new ClassField(Type.getType(FieldAccessor.class), (cg, instantiatorFactory) -> {
+          // accessorFactory.getFieldAccessor(TypeToken.of(Class.forName("className")), "fieldName");
+          cg.loadArg(2);
+          loadClass(cg, rawType);
+          cg.invokeStatic(Type.getType(TypeToken.class), getMethod(TypeToken.class, "of", Class.class));
+          cg.push(fieldName);
+          cg.invokeInterface(Type.getType(FieldAccessorFactory.class),
+                             getMethod(FieldAccessor.class, "getFieldAccessor", TypeToken.class, String.class));
+        }));
+      }
+      mg.loadThis();
+      mg.getField(classType, accessorName, Type.getType(FieldAccessor.class));
+      mg.loadLocal(record);
+      invokeRead(mg, sourceField.getSchema(), targetField.getSchema(), fieldType);
+      mg.invokeInterface(Type.getType(FieldAccessor.class), getAccessorMethod(fieldType));
+    }
+
+    mg.loadLocal(record);
+  }
+
+  /**
+   * Generates method body for reading union. For each source union branch, the target schema is resolved when
+   * generating the code, similar to {@link ReflectionDatumReader}. The logic is like this:
+   *
+   * <pre>
+   * {@code
+   *
+   * switch (decoder.readInt()) {
+   *   case 0:
+   *     return readBranch0(decoder);
+   *   case 1:
+   *     return readBranch1(decoder);
+   *   ...
+   *   default:
+   *     throw new IOException(...);
+   * }
+   * }
+   * </pre>
+   */
+  private void readUnion(GeneratorAdapter mg, Schema sourceSchema, Schema targetSchema, TypeToken<?> targetType) {
+    List<Schema> sourceSchemas = sourceSchema.getUnionSchemas();
+
+    mg.loadArg(0);
+    mg.invokeInterface(Type.getType(Decoder.class), getMethod(int.class, "readInt"));
+    mg.tableSwitch(getIndices(sourceSchemas.size()), new TableSwitchGenerator() {
+      @Override
+      public void generateCase(int key, Label end) {
+        Schema sourceValueSchema = sourceSchemas.get(key);
+        Schema targetValueSchema = resolveUnion(sourceValueSchema, key, targetSchema, targetType);
+        if (targetValueSchema == null) {
+          throwResolveError(mg, sourceValueSchema, targetSchema, targetType);
+          return;
+        }
+        invokeRead(mg, sourceValueSchema, targetValueSchema, targetType);
+        mg.goTo(end);
+      }
+
+      @Override
+      public void generateDefault() {
+        mg.throwException(Type.getType(IOException.class), "Union index out of range.");
+      }
+    });
+  }
+
+  /**
+   * Returns the target schema for reading the source union branch of the given index, or {@code null} if there
+   * is no matching target schema.
+   */
+  @Nullable
+  private Schema resolveUnion(Schema sourceValueSchema, int index, Schema targetSchema, TypeToken<?> targetType) {
+    if (targetSchema.getType() != Schema.Type.UNION) {
+      return canResolve(sourceValueSchema, targetSchema, targetType) ? targetSchema : null;
+    }
+
+    // Try the target schema of the same index before resorting to linearly try the union schema.
+    List<Schema> targetSchemas = targetSchema.getUnionSchemas();
+    if (index < targetSchemas.size()) {
+      Schema targetValueSchema = targetSchemas.get(index);
+      if (targetValueSchema.getType() == sourceValueSchema.getType()
+        && canResolve(sourceValueSchema, targetValueSchema, targetType)) {
+        return targetValueSchema;
+      }
+    }
+    for (Schema targetValueSchema : targetSchemas) {
+      if (canResolve(sourceValueSchema, targetValueSchema, targetType)) {
+        return targetValueSchema;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Generates code to call the skip method for the given schema.
+   */
+  private void invokeSkip(GeneratorAdapter mg, Schema schema) {
+    mg.loadThis();
+    mg.loadArg(0);
+    mg.invokeVirtual(classType, getSkipMethod(schema));
+  }
+
+  /**
+   * Returns the method for skipping data of the given schema. The same method will be returned if the same
+   * schema has been passed to the method before.
+   */
+  private Method getSkipMethod(Schema schema) {
+    String key = schema.getSchemaHash().toString();
+    Method method = skipMethods.get(key);
+    if (method != null) {
+      return method;
+    }
+
+    method = getMethod(void.class, "skip" + key, Decoder.class);
+
+    // Put the method into map first before generating the body in order to support recursive data type.
+    skipMethods.put(key, method);
+
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PRIVATE, method, null,
+                                               new Type[] {Type.getType(IOException.class)}, classWriter);
+    generateSkipBody(mg, schema);
+    mg.returnValue();
+    mg.endMethod();
+
+    return method;
+  }
+
+  /**
+   * Generates the skip method body.
+   */
+  private void generateSkipBody(GeneratorAdapter mg, Schema schema) {
+    Type decoderType = Type.getType(Decoder.class);
+    switch (schema.getType()) {
+      case NULL:
+        break;
+      case BOOLEAN:
+        mg.loadArg(0);
+        mg.invokeInterface(decoderType, getMethod(boolean.class, "readBool"));
+        mg.pop();
+        break;
+      case INT:
+      case ENUM:
+        mg.loadArg(0);
+        mg.invokeInterface(decoderType, getMethod(int.class, "readInt"));
+        mg.pop();
+        break;
+      case LONG:
+        mg.loadArg(0);
+        mg.invokeInterface(decoderType, getMethod(long.class, "readLong"));
+        mg.pop2();
+        break;
+      case FLOAT:
+      case DOUBLE:
+      case BYTES:
+      case STRING:
+        String skipMethod = "skip" + schema.getType().name().charAt(0)
+          + schema.getType().name().substring(1).toLowerCase();
+        mg.loadArg(0);
+        mg.invokeInterface(decoderType, getMethod(void.class, skipMethod));
+        break;
+      case ARRAY:
+        readBlocks(mg, () -> invokeSkip(mg, schema.getComponentSchema()));
+        break;
+      case MAP:
+        readBlocks(mg, () -> {
+          invokeSkip(mg, schema.getMapSchema().getKey());
+          invokeSkip(mg, schema.getMapSchema().getValue());
+        });
+        break;
+      case RECORD:
+        for (Schema.Field field : schema.getFields()) {
+          invokeSkip(mg, field.getSchema());
+        }
+        break;
+      case UNION:
+        List<Schema> unionSchemas = schema.getUnionSchemas();
+        mg.loadArg(0);
+        mg.invokeInterface(decoderType, getMethod(int.class, "readInt"));
+        mg.tableSwitch(getIndices(unionSchemas.size()), new TableSwitchGenerator() {
+          @Override
+          public void generateCase(int key, Label end) {
+            invokeSkip(mg, unionSchemas.get(key));
+            mg.goTo(end);
+          }
+
+          @Override
+          public void generateDefault() {
+            mg.throwException(Type.getType(IOException.class), "Union index out of range.");
+          }
+        });
+        break;
+    }
+  }
+
+  /**
+   * Generates code for reading blocks of array or map items. The given {@link Runnable} generates code for
+   * reading one item. The logic is like this:
+   *
+   * <pre>
+   * {@code
+   *
+   * int len = decoder.readInt();
+   * while (len != 0) {
+   *   for (int i = 0; i < len; i++) {
+   *     // read item
+   *   }
+   *   len = decoder.readInt();
+   * }
+   * }
+   * </pre>
+   */
+  private void readBlocks(GeneratorAdapter mg, Runnable readItem) {
+    Type decoderType = Type.getType(Decoder.class);
+    int len = mg.newLocal(Type.INT_TYPE);
+    int idx = mg.newLocal(Type.INT_TYPE);
+
+    mg.loadArg(0);
+    mg.invokeInterface(decoderType, getMethod(int.class, "readInt"));
+    mg.storeLocal(len);
+
+    Label beginWhile = mg.mark();
+    Label endWhile = mg.newLabel();
+    mg.loadLocal(len);
+    mg.ifZCmp(GeneratorAdapter.EQ, endWhile);
+
+    mg.push(0);
+    mg.storeLocal(idx);
+    Label beginFor = mg.mark();
+    Label endFor = mg.newLabel();
+    mg.loadLocal(idx);
+    mg.loadLocal(len);
+    mg.ifICmp(GeneratorAdapter.GE, endFor);
+
+    readItem.run();
+
+    mg.iinc(idx, 1);
+    mg.goTo(beginFor);
+    mg.mark(endFor);
+
+    mg.loadArg(0);
+    mg.invokeInterface(decoderType, getMethod(int.class, "readInt"));
+    mg.storeLocal(len);
+    mg.goTo(beginWhile);
+    mg.mark(endWhile);
+  }
+
+  /**
+   * Generates code to create a new instance of the given type, using an {@link Instantiator} stored in a
+   * class field.
+   */
+  private void createInstance(GeneratorAdapter mg, TypeToken<?> type) {
+    Class<?> rawType = type.getRawType();
+    String fieldName = String.format("%s$instantiator", normalizeTypeName(TypeToken.of(rawType)));
+    if (!classFields.containsKey(fieldName)) {
+      classFields.put(fieldName, new ClassField(Type.getType(Instantiator.class), (cg, instantiatorFactory) -> {
+        // instantiatorFactory.get(TypeToken.of(Class.forName("className")));
+        cg.loadLocal(instantiatorFactory);
+        loadClass(cg, rawType);
+        cg.invokeStatic(Type.getType(TypeToken.class), getMethod(TypeToken.class, "of", Class.class));
+        cg.invokeVirtual(Type.getType(InstantiatorFactory.class),
+                         getMethod(Instantiator.class, "get", TypeToken.class));
+      }));
+    }
+
+    mg.loadThis();
+    mg.getField(classType, fieldName, Type.getType(Instantiator.class));
+    mg.invokeInterface(Type.getType(Instantiator.class), getMethod(Object.class, "create"));
+  }
+
+  /**
+   * Generates code to load the given class from a class field.
+   */
+  private void loadClassField(GeneratorAdapter mg, Class<?> cls) {
+    String fieldName = String.format("%s$class", normalizeTypeName(TypeToken.of(cls)));
+    if (!classFields.containsKey(fieldName)) {
+      classFields.put(fieldName, new ClassField(Type.getType(Class.class),
+                                                (cg, instantiatorFactory) -> loadClass(cg, cls)));
+    }
+    mg.loadThis();
+    mg.getField(classType, fieldName, Type.getType(Class.class));
+  }
+
+  /**
+   * Generates code to load the given class with {@link Class#forName(String)}. This is needed to work with
+   * private classes that the generated DatumReader doesn't have access to.
+   */
+  private void loadClass(GeneratorAdapter mg, Class<?> cls) {
+    Class<?> elementClass = cls;
+    while (elementClass.isArray()) {
+      elementClass = elementClass.getComponentType();
+    }
+    if (!elementClass.isPrimitive()) {
+      // The class might be defined by the user, hence need to preserve class loading of it
+      preservedClasses.add(elementClass);
+    }
+    mg.push(cls.getName());
+    mg.invokeStatic(Type.getType(Class.class), getMethod(Class.class, "forName", String.class));
+  }
+
+  /**
+   * Generates code to throw {@link IOException} for failure in resolving the source schema to the target schema.
+   */
+  private void throwResolveError(GeneratorAdapter mg, Schema sourceSchema,
+                                 Schema targetSchema, TypeToken<?> targetType) {
+    mg.throwException(Type.getType(IOException.class),
+                      String.format("Fails to resolve %s to %s for type %s",
+                                    getSchemaName(sourceSchema), getSchemaName(targetSchema), targetType));
+  }
+
+  private String getSchemaName(Schema schema) {
+    return schema.getType() == Schema.Type.RECORD ? schema.getRecordName() : schema.getType().name();
+  }
+
+  /**
+   * Boxes the value on the stack if the given type is primitive.
+   */
+  private void box(GeneratorAdapter mg, TypeToken<?> type) {
+    if (type.getRawType().isPrimitive()) {
+      mg.valueOf(Type.getType(type.getRawType()));
+    }
+  }
+
+  /**
+   * Returns the schema type for the given primitive type.
+   */
+  private Schema.Type getSchemaType(Class<?> primitiveType) {
+    if (boolean.class.equals(primitiveType)) {
+      return Schema.Type.BOOLEAN;
+    }
+    if (long.class.equals(primitiveType)) {
+      return Schema.Type.LONG;
+    }
+    if (float.class.equals(primitiveType)) {
+      return Schema.Type.FLOAT;
+    }
+    if (double.class.equals(primitiveType)) {
+      return Schema.Type.DOUBLE;
+    }
+    // byte, char, short and int
+    return Schema.Type.INT;
+  }
+
+  /**
+   * Returns the java class of the value of the given simple schema type.
+   */
+  private Class<?> getSchemaClass(Schema.Type schemaType) {
+    switch (schemaType) {
+      case BOOLEAN:
+        return boolean.class;
+      case INT:
+        return int.class;
+      case LONG:
+        return long.class;
+      case FLOAT:
+        return float.class;
+      case DOUBLE:
+        return double.class;
+      case STRING:
+        return String.class;
+    }
+    throw new IllegalArgumentException("Not a simple schema type " + schemaType);
+  }
+
+  private int[] getIndices(int size) {
+    int[] indices = new int[size];
+    for (int i = 0; i < size; i++) {
+      indices[i] = i;
+    }
+    return indices;
+  }
+
+  private <T> TypeToken<DatumReader<T>> getInterfaceType(TypeToken<T> type) {
+    return new TypeToken<DatumReader<T>>() {
+    }.where(new TypeParameter<T>() {
+    }, type);
+  }
+
+  private <T> TypeToken<T[]> getArrayType(TypeToken<T> type) {
+    return new TypeToken<T[]>() {
+    }.where(new TypeParameter<T>() {
+    }, type);
+  }
+
+  private String getClassName(TypeToken<?> interfaceType, Schema sourceSchema, Schema targetSchema) {
+    return String.format("%s/%s%s%s%s",
+                         interfaceType.getRawType().getPackage().getName().replace('.', '/'),
+                         normalizeTypeName(TypeToken.of(((ParameterizedType) interfaceType.getType())
+                                                          .getActualTypeArguments()[0])),
+                         interfaceType.getRawType().getSimpleName(),
+                         sourceSchema.getSchemaHash(), targetSchema.getSchemaHash());
+  }
+
+  private String normalizeTypeName(TypeToken<?> type) {
+    String typeName = type.toString();
+    int dimension = 0;
+    while (type.isArray()) {
+      type = type.getComponentType();
+      typeName = type.toString();
+      dimension++;
+    }
+
+    typeName = typeName.replace(".", "")
+                        .replace("<", "Of")
+                        .replace(">", "")
+                        .replace(",", "To")
+                        .replace(" ", "")
+                        .replace("$", "");
+    if (dimension > 0) {
+      typeName = "Array" + dimension + typeName;
+    }
+    return typeName;
+  }
+
+  private Method getMethod(Class<?> returnType, String name, Class<?>...args) {
+    return Methods.getMethod(returnType, name, args);
+  }
+
+  /**
+   * Returns the type to be used on the read method. This is needed to work with private classes
+   * that the generated DatumReader doesn't have access to.
+   */
+  private Class<?> getCallType(TypeToken<?> type) {
+    return type.getRawType().isPrimitive() ? type.getRawType() : Object.class;
+  }
+
+  /**
+   * Returns the method for calling {@link FieldAccessor} to set a field based on the data type.
+   * @param type Data type.
+   * @return A {@link Method} for calling {@link FieldAccessor}.
+   */
+  private Method getAccessorMethod(TypeToken<?> type) {
+    Class<?> rawType = type.getRawType();
+    if (rawType.isPrimitive()) {
+      return getMethod(void.class,
+                       String.format("set%c%s",
+                                     Character.toUpperCase(rawType.getName().charAt(0)),
+                                     rawType.getName().substring(1)),
+                       Object.class, rawType);
+    } else {
+      return getMethod(void.class, "set", Object.class, Object.class);
+    }
+  }
+
+  /**
+   * Generates the name of the class field for storing {@link FieldAccessor} for the given record field.
+   * @param recordType Type of the record.
+   * @param fieldName name of the field.
+   * @return name of the class field.
+   */
+  private String getFieldAccessorName(TypeToken<?> recordType, String fieldName) {
+    return String.format("%s$%s", normalizeTypeName(recordType), fieldName);
+  }
+
+  /**
+   * Generates code that leaves the initial value of a class field on the stack in the constructor.
+   */
+  private interface FieldInitializer {
+    void generate(GeneratorAdapter mg, int instantiatorFactory);
+  }
+
+  /**
+   * A class field of the generated class.
+   */
+  private static final class ClassField {
+    private final Type type;
+    private final FieldInitializer initializer;
+
+    ClassField(Type type, FieldInitializer initializer) {
+      this.type = type;
+      this.initializer = initializer;
+    }
+  }
+}
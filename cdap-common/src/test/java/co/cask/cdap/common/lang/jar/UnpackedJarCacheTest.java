@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.common.lang.jar;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Unit tests for {@link UnpackedJarCache}.
+ */
+public class UnpackedJarCacheTest {
+
+  @ClassRule
+  public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+  @Test
+  public void testSharing() throws IOException {
+    File cacheDir = TEMP_FOLDER.newFolder();
+    UnpackedJarCache cache = new UnpackedJarCache(cacheDir, 0L);
+
+    // Jars with the same content share the same directory
+    File jar1 = createJar("content");
+    File jar2 = createJar("content");
+    File jar3 = createJar("other content");
+
+    try (
+      UnpackedJarCache.Lease lease1 = cache.acquire(jar1);
+      UnpackedJarCache.Lease lease2 = cache.acquire(jar2);
+      UnpackedJarCache.Lease lease3 = cache.acquire(jar3)
+    ) {
+      Assert.assertEquals(lease1.getDirectory(), lease2.getDirectory());
+      Assert.assertNotEquals(lease1.getDirectory(), lease3.getDirectory());
+      Assert.assertEquals("content", Files.toString(new File(lease1.getDirectory(), "file.txt"), Charsets.UTF_8));
+      Assert.assertEquals("other content",
+                          Files.toString(new File(lease3.getDirectory(), "file.txt"), Charsets.UTF_8));
+
+      // Closing one lease doesn't remove the directory while there is another one
+      lease1.close();
+      Assert.assertTrue(lease2.getDirectory().isDirectory());
+    }
+
+    // With a maximum size of zero, directories are removed once there is no lease
+    Assert.assertEquals(0L, cache.getSize());
+    File[] files = cacheDir.listFiles();
+    Assert.assertNotNull(files);
+    Assert.assertEquals(0, files.length);
+  }
+
+  @Test
+  public void testEviction() throws IOException {
+    File cacheDir = TEMP_FOLDER.newFolder();
+    File jar1 = createJar(Strings.repeat("1", 1000));
+    File jar2 = createJar(Strings.repeat("2", 1000));
+    File jar3 = createJar(Strings.repeat("3", 1000));
+
+    // Room for two unpacked jars
+    UnpackedJarCache cache = new UnpackedJarCache(cacheDir, 2500L);
+    File dir1;
+    File dir2;
+    try (UnpackedJarCache.Lease lease = cache.acquire(jar1)) {
+      dir1 = lease.getDirectory();
+    }
+    try (UnpackedJarCache.Lease lease = cache.acquire(jar2)) {
+      dir2 = lease.getDirectory();
+    }
+    // Use jar1, which makes jar2 the least recently used
+    cache.acquire(jar1).close();
+    cache.acquire(jar3).close();
+
+    Assert.assertTrue(dir1.isDirectory());
+    Assert.assertFalse(dir2.exists());
+    Assert.assertEquals(2000L, cache.getSize());
+
+    // A new cache reuses the directories left in the cache directory
+    cache.close();
+    cache = new UnpackedJarCache(cacheDir, 2500L);
+    Assert.assertEquals(2000L, cache.getSize());
+    try (UnpackedJarCache.Lease lease = cache.acquire(jar1)) {
+      Assert.assertEquals(dir1, lease.getDirectory());
+    }
+    cache.close();
+  }
+
+  @Test
+  public void testEvictionAfterRestart() throws IOException {
+    File cacheDir = TEMP_FOLDER.newFolder();
+    File jar1 = createJar(Strings.repeat("1", 1000));
+    File jar2 = createJar(Strings.repeat("2", 1000));
+    File jar3 = createJar(Strings.repeat("3", 1000));
+
+    // Room for two unpacked jars
+    UnpackedJarCache cache = new UnpackedJarCache(cacheDir, 2500L);
+    File dir1;
+    File dir2;
+    try (UnpackedJarCache.Lease lease = cache.acquire(jar1)) {
+      dir1 = lease.getDirectory();
+    }
+    try (UnpackedJarCache.Lease lease = cache.acquire(jar2)) {
+      dir2 = lease.getDirectory();
+    }
+    cache.close();
+
+    // Make jar1 the least recently used one, without depending on the file system time resolution
+    long now = System.currentTimeMillis();
+    Assert.assertTrue(dir1.setLastModified(now - 20000L));
+    Assert.assertTrue(dir2.setLastModified(now - 10000L));
+
+    // Using jar1 after a restart touches its directory, which makes jar2 the least recently used one
+    cache = new UnpackedJarCache(cacheDir, 2500L);
+    cache.acquire(jar1).close();
+    Assert.assertTrue(dir1.lastModified() > dir2.lastModified());
+    cache.close();
+
+    // After another restart, jar2 is evicted first
+    cache = new UnpackedJarCache(cacheDir, 2500L);
+    cache.acquire(jar3).close();
+    Assert.assertTrue(dir1.isDirectory());
+    Assert.assertFalse(dir2.exists());
+    cache.close();
+  }
+
+  @Test
+  public void testLocked() throws IOException {
+    File cacheDir = TEMP_FOLDER.newFolder();
+    File jar = createJar("content");
+
+    UnpackedJarCache cache = new UnpackedJarCache(cacheDir, 0L);
+    // A second cache for the same directory uses a private directory, since the directory is locked
+    UnpackedJarCache otherCache = new UnpackedJarCache(cacheDir, 0L);
+    try {
+      Assert.assertEquals(cacheDir, cache.getCacheDir());
+      Assert.assertNotEquals(cacheDir, otherCache.getCacheDir());
+      try (
+        UnpackedJarCache.Lease lease = cache.acquire(jar);
+        UnpackedJarCache.Lease otherLease = otherCache.acquire(jar)
+      ) {
+        Assert.assertEquals(cacheDir, lease.getDirectory().getParentFile());
+        Assert.assertEquals(otherCache.getCacheDir(), otherLease.getDirectory().getParentFile());
+      }
+    } finally {
+      otherCache.close();
+      cache.close();
+    }
+
+    // Once the lock is released, the directory can be used again
+    cache = new UnpackedJarCache(cacheDir, 0L);
+    Assert.assertEquals(cacheDir, cache.getCacheDir());
+    cache.close();
+  }
+
+  private File createJar(String content) throws IOException {
+    File jarFile = TEMP_FOLDER.newFile();
+    try (JarOutputStream output = new JarOutputStream(new FileOutputStream(jarFile))) {
+      // Use a fixed time, so that jars with the same content have the same checksum
+      JarEntry entry = new JarEntry("file.txt");
+      entry.setTime(1500000000000L);
+      output.putNextEntry(entry);
+      output.write(content.getBytes(Charsets.UTF_8));
+      output.closeEntry();
+    }
+    return jarFile;
+  }
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.io;
+
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.data.schema.UnsupportedTypeException;
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.common.io.DatumReader;
+import co.cask.cdap.internal.io.ASMDatumReaderFactory;
+import co.cask.cdap.internal.io.ASMDatumWriterFactory;
+import co.cask.cdap.internal.io.ASMFieldAccessorFactory;
+import co.cask.cdap.internal.io.ReflectionDatumReader;
+import co.cask.cdap.internal.io.ReflectionSchemaGenerator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.reflect.TypeToken;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Unit tests for {@link ASMDatumReaderFactory}.
+ */
+public class ASMDatumReaderTest {
+
+  private static final ASMDatumReaderFactory DATUM_READER_FACTORY
+    = new ASMDatumReaderFactory(new ASMFieldAccessorFactory());
+  private static final ASMDatumWriterFactory DATUM_WRITER_FACTORY
+    = new ASMDatumWriterFactory(new ASMFieldAccessorFactory());
+
+  /**
+   *
+   */
+  public enum Color {
+    RED, GREEN, BLUE
+  }
+
+  /**
+   *
+   */
+  public enum LessColor {
+    RED, BLUE
+  }
+
+  private static final class Inner {
+    private String name;
+    private Map<String, List<Long>> values;
+  }
+
+  private static final class Node {
+    private int value;
+    private Node next;
+  }
+
+  private static final class AllTypes {
+    private boolean bool;
+    private byte b;
+    private char c;
+    private short s;
+    private int i;
+    private long l;
+    private float f;
+    private double d;
+    private Integer boxedInt;
+    private String str;
+    private String nullStr;
+    private byte[] bytes;
+    private UUID uuid;
+    private URI uri;
+    private URL url;
+    private Color color;
+    private int[] ints;
+    private String[] strs;
+    private Inner[][] inners;
+    private List<String> list;
+    private Set<Integer> set;
+    private Map<String, Inner> map;
+    private Node node;
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    AllTypes value = new AllTypes();
+    value.bool = true;
+    value.b = (byte) -3;
+    value.c = 'c';
+    value.s = (short) 3000;
+    value.i = -12345;
+    value.l = Long.MAX_VALUE;
+    value.f = 3.14f;
+    value.d = 2.71828d;
+    value.boxedInt = 10;
+    value.str = "string";
+    value.bytes = new byte[] {1, 2, 3};
+    value.uuid = UUID.randomUUID();
+    value.uri = URI.create("http://www.cask.co");
+    value.url = new URL("http://www.cask.co");
+    value.color = Color.BLUE;
+    value.ints = new int[] {1, 2, 3};
+    value.strs = new String[] {"a", null, "c"};
+    value.inners = new Inner[][] {{createInner("1", 1L, 2L)}, {}, {createInner("2"), null}};
+    value.list = ImmutableList.of("x", "y", "z");
+    value.set = ImmutableSet.of(4, 5, 6);
+    value.map = ImmutableMap.of("k1", createInner("3", 3L), "k2", createInner("4"));
+    value.node = new Node();
+    value.node.value = 1;
+    value.node.next = new Node();
+    value.node.next.value = 2;
+
+    TypeToken<AllTypes> type = TypeToken.of(AllTypes.class);
+    Schema schema = getSchema(type);
+    byte[] encoded = encode(type, value);
+    AllTypes result = DATUM_READER_FACTORY.create(type, schema).read(createDecoder(encoded), schema);
+
+    Assert.assertEquals(value.bool, result.bool);
+    Assert.assertEquals(value.b, result.b);
+    Assert.assertEquals(value.c, result.c);
+    Assert.assertEquals(value.s, result.s);
+    Assert.assertEquals(value.i, result.i);
+    Assert.assertEquals(value.l, result.l);
+    Assert.assertEquals(value.f, result.f, 0.0001f);
+    Assert.assertEquals(value.d, result.d, 0.0001d);
+    Assert.assertEquals(value.boxedInt, result.boxedInt);
+    Assert.assertEquals(value.str, result.str);
+    Assert.assertNull(result.nullStr);
+    Assert.assertArrayEquals(value.bytes, result.bytes);
+    Assert.assertEquals(value.uuid, result.uuid);
+    Assert.assertEquals(value.uri, result.uri);
+    Assert.assertEquals(value.url, result.url);
+    Assert.assertEquals(value.color, result.color);
+    Assert.assertArrayEquals(value.ints, result.ints);
+    Assert.assertArrayEquals(value.strs, result.strs);
+    Assert.assertEquals(3, result.inners.length);
+    assertInner(value.inners[0][0], result.inners[0][0]);
+    Assert.assertEquals(0, result.inners[1].length);
+    assertInner(value.inners[2][0], result.inners[2][0]);
+    Assert.assertNull(result.inners[2][1]);
+    Assert.assertEquals(value.list, result.list);
+    Assert.assertEquals(value.set, result.set);
+    Assert.assertEquals(value.map.keySet(), result.map.keySet());
+    assertInner(value.map.get("k1"), result.map.get("k1"));
+    assertInner(value.map.get("k2"), result.map.get("k2"));
+    Assert.assertEquals(1, result.node.value);
+    Assert.assertEquals(2, result.node.next.value);
+    Assert.assertNull(result.node.next.next);
+  }
+
+  @Test
+  public void testSimpleTypes() throws Exception {
+    Assert.assertEquals(Integer.valueOf(12234234), roundTrip(TypeToken.of(Integer.class), 12234234));
+    Assert.assertEquals(Long.valueOf(123L), DATUM_READER_FACTORY.create(TypeToken.of(long.class),
+                                                                        getSchema(TypeToken.of(long.class)))
+      .read(createDecoder(encode(TypeToken.of(Long.class), 123L)), getSchema(TypeToken.of(Long.class))));
+    Assert.assertEquals(Short.valueOf((short) 3000), roundTrip(TypeToken.of(Short.class), (short) 3000));
+    Assert.assertEquals("Testing message", roundTrip(TypeToken.of(String.class), "Testing message"));
+    Assert.assertEquals(Color.GREEN, roundTrip(TypeToken.of(Color.class), Color.GREEN));
+    Assert.assertEquals(ImmutableList.of(URI.create("http://www.abc.com")),
+                        roundTrip(new TypeToken<List<URI>>() { }, ImmutableList.of(URI.create("http://www.abc.com"))));
+    Assert.assertEquals(ImmutableMap.of("a", 1L, "b", 2L),
+                        roundTrip(new TypeToken<Map<String, Long>>() { }, ImmutableMap.of("a", 1L, "b", 2L)));
+  }
+
+  private static final class SourceRecord {
+    private int i;
+    private int l;
+    private long f;
+    private float d;
+    private int str;
+    private Integer nullable;
+    private int[] numbers;
+    private List<String> set;
+    private Map<Integer, String> map;
+    private Color color;
+    private String url;
+    // Fields not in the target
+    private List<Inner> removedList;
+    private Map<String, Inner> removedMap;
+    private Inner removedRecord;
+    private String removedNullable;
+    private Color removedEnum;
+    private double removedDouble;
+    // Field after the removed fields
+    private String last;
+  }
+
+  private static final class TargetRecord {
+    private int i;
+    private long l;
+    private float f;
+    private double d;
+    private String str;
+    private long nullable;
+    private long[] numbers;
+    private Set<String> set;
+    private Map<String, String> map;
+    private Color color;
+    private URL url;
+    private String last;
+    // Field not in the source
+    private String added;
+  }
+
+  @Test
+  public void testSchemaEvolution() throws Exception {
+    SourceRecord source = new SourceRecord();
+    source.i = 1;
+    source.l = 2;
+    source.f = 3L;
+    source.d = 4.5f;
+    source.str = 5;
+    source.nullable = 6;
+    source.numbers = new int[] {7, 8, 9};
+    source.set = ImmutableList.of("a", "b", "a");
+    source.map = ImmutableMap.of(1, "one", 2, "two");
+    source.color = Color.GREEN;
+    source.url = "http://www.cask.co";
+    source.removedList = ImmutableList.of(createInner("x", 1L), createInner("y"));
+    source.removedMap = ImmutableMap.of("k1", createInner("z", 2L, 3L), "k2", createInner("w"));
+    source.removedRecord = createInner("v", 4L);
+    source.removedEnum = Color.BLUE;
+    source.removedDouble = 6.7d;
+    source.last = "last";
+
+    TypeToken<SourceRecord> sourceType = TypeToken.of(SourceRecord.class);
+    TypeToken<TargetRecord> targetType = TypeToken.of(TargetRecord.class);
+    Schema sourceSchema = getSchema(sourceType);
+    Schema targetSchema = getSchema(targetType);
+    byte[] encoded = encode(sourceType, source);
+
+    TargetRecord target = DATUM_READER_FACTORY.create(targetType, targetSchema)
+      .read(createDecoder(encoded), sourceSchema);
+
+    Assert.assertEquals(1, target.i);
+    Assert.assertEquals(2L, target.l);
+    Assert.assertEquals(3f, target.f, 0.0001f);
+    Assert.assertEquals(4.5d, target.d, 0.0001d);
+    Assert.assertEquals("5", target.str);
+    Assert.assertEquals(6L, target.nullable);
+    Assert.assertArrayEquals(new long[] {7L, 8L, 9L}, target.numbers);
+    Assert.assertEquals(ImmutableSet.of("a", "b"), target.set);
+    Assert.assertEquals(ImmutableMap.of("1", "one", "2", "two"), target.map);
+    Assert.assertEquals(Color.GREEN, target.color);
+    Assert.assertEquals(new URL("http://www.cask.co"), target.url);
+    Assert.assertEquals("last", target.last);
+    Assert.assertNull(target.added);
+
+    // A nullable source value that is null cannot be read into a primitive field
+    source.nullable = null;
+    try {
+      DATUM_READER_FACTORY.create(targetType, targetSchema).read(createDecoder(encode(sourceType, source)),
+                                                                 sourceSchema);
+      Assert.fail("Expected IOException");
+    } catch (IOException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testSameAsReflection() throws Exception {
+    TypeToken<AllTypes> type = TypeToken.of(AllTypes.class);
+    Schema schema = getSchema(type);
+
+    AllTypes value = new AllTypes();
+    value.str = "str";
+    value.strs = new String[] {"a", "b"};
+    value.list = ImmutableList.of("c");
+    value.map = ImmutableMap.of("k", createInner("v", 1L, 2L));
+    byte[] encoded = encode(type, value);
+
+    AllTypes asmResult = DATUM_READER_FACTORY.create(type, schema).read(createDecoder(encoded), schema);
+    AllTypes reflectionResult = new ReflectionDatumReader<>(schema, type).read(createDecoder(encoded), schema);
+
+    Assert.assertEquals(reflectionResult.str, asmResult.str);
+    Assert.assertArrayEquals(reflectionResult.strs, asmResult.strs);
+    Assert.assertEquals(reflectionResult.list, asmResult.list);
+    Assert.assertNull(reflectionResult.set);
+    Assert.assertNull(asmResult.set);
+    assertInner(reflectionResult.map.get("k"), asmResult.map.get("k"));
+  }
+
+  @Test
+  public void testMultipleSourceSchemas() throws Exception {
+    TypeToken<Long> longType = TypeToken.of(Long.class);
+    DatumReader<Long> reader = DATUM_READER_FACTORY.create(longType, getSchema(longType));
+
+    TypeToken<Integer> intType = TypeToken.of(Integer.class);
+    Assert.assertEquals(Long.valueOf(10L),
+                        reader.read(createDecoder(encode(intType, 10)), getSchema(intType)));
+    Assert.assertEquals(Long.valueOf(20L),
+                        reader.read(createDecoder(encode(longType, 20L)), getSchema(longType)));
+    Assert.assertEquals(Long.valueOf(30L),
+                        reader.read(createDecoder(encode(intType, 30)), getSchema(intType)));
+  }
+
+  @Test
+  public void testEnum() throws Exception {
+    TypeToken<Color> sourceType = TypeToken.of(Color.class);
+    TypeToken<LessColor> targetType = TypeToken.of(LessColor.class);
+    Schema sourceSchema = getSchema(sourceType);
+    DatumReader<LessColor> reader = DATUM_READER_FACTORY.create(targetType, getSchema(targetType));
+
+    Assert.assertEquals(LessColor.RED, reader.read(createDecoder(encode(sourceType, Color.RED)), sourceSchema));
+    Assert.assertEquals(LessColor.BLUE, reader.read(createDecoder(encode(sourceType, Color.BLUE)), sourceSchema));
+    try {
+      reader.read(createDecoder(encode(sourceType, Color.GREEN)), sourceSchema);
+      Assert.fail("Expected IOException");
+    } catch (IOException e) {
+      // Expected
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testIncompatibleSchema() throws Exception {
+    TypeToken<String> sourceType = TypeToken.of(String.class);
+    TypeToken<Integer> targetType = TypeToken.of(Integer.class);
+    DatumReader<Integer> reader = DATUM_READER_FACTORY.create(targetType, getSchema(targetType));
+    reader.read(createDecoder(encode(sourceType, "1")), getSchema(sourceType));
+  }
+
+  private Inner createInner(String name, Long...values) {
+    Inner inner = new Inner();
+    inner.name = name;
+    inner.values = ImmutableMap.<String, List<Long>>of(name, ImmutableList.copyOf(values));
+    return inner;
+  }
+
+  private void assertInner(Inner expected, Inner actual) {
+    Assert.assertEquals(expected.name, actual.name);
+    Assert.assertEquals(expected.values, actual.values);
+  }
+
+  private <T> T roundTrip(TypeToken<T> type, T value) throws Exception {
+    Schema schema = getSchema(type);
+    return DATUM_READER_FACTORY.create(type, schema).read(createDecoder(encode(type, value)), schema);
+  }
+
+  private <T> byte[] encode(TypeToken<T> type, T value) throws Exception {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    DATUM_WRITER_FACTORY.create(type, getSchema(type)).encode(value, new BinaryEncoder(os));
+    return os.toByteArray();
+  }
+
+  private BinaryDecoder createDecoder(byte[] bytes) {
+    return new BinaryDecoder(new ByteArrayInputStream(bytes));
+  }
+
+  private <T> Schema getSchema(TypeToken<T> type) throws UnsupportedTypeException {
+    return new ReflectionSchemaGenerator().generate(type.getType());
+  }
+}
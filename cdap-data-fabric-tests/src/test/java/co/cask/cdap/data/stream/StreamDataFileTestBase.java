@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2017 Cask Data, Inc.
+ * Copyright © 2014-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -994,6 +994,118 @@ public abstract class StreamDataFileTestBase {
     reader.close();
   }
 
+  @Test
+  public void testCompressedReadWrite() throws Exception {
+    for (StreamFileCompression compression : ImmutableList.of(StreamFileCompression.SNAPPY,
+                                                              StreamFileCompression.LZ4)) {
+      Location dir = StreamFileTestUtils.createTempDir(getLocationFactory());
+      Location eventFile = dir.getTempFile(".dat");
+      Location indexFile = dir.getTempFile(".idx");
+      Location rawEventFile = dir.getTempFile(".dat");
+      Location rawIndexFile = dir.getTempFile(".idx");
+
+      // Write the same 1000 events, 10 per timestamp, to a compressed and an uncompressed file.
+      StreamDataFileWriter writer = new StreamDataFileWriter(
+        Locations.newOutputSupplier(eventFile), Locations.newOutputSupplier(indexFile), 10L,
+        ImmutableMap.of(StreamDataFileConstants.Property.Key.COMPRESSION, compression.getName()));
+      StreamDataFileWriter rawWriter = new StreamDataFileWriter(Locations.newOutputSupplier(rawEventFile),
+                                                                Locations.newOutputSupplier(rawIndexFile), 10L);
+      for (int i = 0; i < 1000; i++) {
+        StreamEvent event = StreamFileTestUtils.createEvent(1000 + i / 10,
+                                                            "Compressed event " + Strings.repeat('x', i));
+        writer.append(event);
+        rawWriter.append(event);
+        // Flush periodically to have blocks of different sizes
+        if (i % 37 == 0) {
+          writer.flush();
+          rawWriter.flush();
+        }
+      }
+      writer.close();
+      rawWriter.close();
+
+      Assert.assertTrue(eventFile.length() < rawEventFile.length());
+
+      // Read all events back. Event positions must be strictly increasing.
+      StreamDataFileReader reader = StreamDataFileReader.create(Locations.newInputSupplier(eventFile));
+      List<PositionStreamEvent> events = Lists.newArrayList();
+      Assert.assertEquals(1000, reader.read(events, 1000, 0, TimeUnit.SECONDS));
+      Assert.assertEquals(-1, reader.read(events, 1, 0, TimeUnit.SECONDS));
+      reader.close();
+
+      long lastPosition = -1L;
+      for (int i = 0; i < 1000; i++) {
+        PositionStreamEvent event = events.get(i);
+        Assert.assertEquals(1000 + i / 10, event.getTimestamp());
+        Assert.assertEquals("Compressed event " + Strings.repeat('x', i),
+                            Charsets.UTF_8.decode(event.getBody().duplicate()).toString());
+        Assert.assertTrue(event.getStart() > lastPosition);
+        lastPosition = event.getStart();
+      }
+
+      // Reading by offset should land on the event at or after the offset.
+      for (int i = 0; i < 1000; i += 7) {
+        PositionStreamEvent event = events.get(i);
+        reader = StreamDataFileReader.createWithOffset(Locations.newInputSupplier(eventFile),
+                                                       Locations.newInputSupplier(indexFile), event.getStart());
+        List<PositionStreamEvent> result = Lists.newArrayList();
+        Assert.assertEquals(1, reader.read(result, 1, 0, TimeUnit.SECONDS));
+        reader.close();
+        Assert.assertEquals(event.getStart(), result.get(0).getStart());
+        Assert.assertEquals(event.getBody(), result.get(0).getBody());
+      }
+
+      // Reading by time should use the index and start from the first event of the given timestamp.
+      for (long ts : new long[] {1000, 1011, 1050, 1099}) {
+        reader = StreamDataFileReader.createByStartTime(Locations.newInputSupplier(eventFile),
+                                                        Locations.newInputSupplier(indexFile), ts);
+        List<PositionStreamEvent> result = Lists.newArrayList();
+        Assert.assertEquals(1, reader.read(result, 1, 0, TimeUnit.SECONDS));
+        reader.close();
+        Assert.assertEquals(events.get((int) (ts - 1000) * 10).getStart(), result.get(0).getStart());
+      }
+    }
+  }
+
+  @Test
+  public void testCompressedSmallEvents() throws Exception {
+    Location dir = StreamFileTestUtils.createTempDir(getLocationFactory());
+    Location eventFile = dir.getTempFile(".dat");
+    Location indexFile = dir.getTempFile(".idx");
+
+    // Write a single block of empty events, which compresses to less bytes than the number of events.
+    StreamDataFileWriter writer = new StreamDataFileWriter(
+      Locations.newOutputSupplier(eventFile), Locations.newOutputSupplier(indexFile), 10000L,
+      ImmutableMap.of(StreamDataFileConstants.Property.Key.COMPRESSION, StreamFileCompression.SNAPPY.getName()));
+    List<StreamEvent> input = Lists.newArrayList();
+    for (int i = 0; i < 10000; i++) {
+      input.add(StreamFileTestUtils.createEvent(1000, ""));
+    }
+    writer.appendAll(input.iterator());
+    writer.close();
+
+    StreamDataFileReader reader = StreamDataFileReader.create(Locations.newInputSupplier(eventFile));
+    List<PositionStreamEvent> events = Lists.newArrayList();
+    Assert.assertEquals(10000, reader.read(events, 10000, 0, TimeUnit.SECONDS));
+    Assert.assertEquals(-1, reader.read(events, 1, 0, TimeUnit.SECONDS));
+    reader.close();
+
+    // Positions are unique and fall before the end marker
+    for (int i = 1; i < events.size(); i++) {
+      Assert.assertEquals(events.get(i - 1).getStart() + 1, events.get(i).getStart());
+    }
+    Assert.assertTrue(events.get(events.size() - 1).getStart() < eventFile.length() - 8);
+
+    // Resume from a position in the middle of the block
+    reader = StreamDataFileReader.createWithOffset(Locations.newInputSupplier(eventFile),
+                                                   Locations.newInputSupplier(indexFile),
+                                                   events.get(5000).getStart());
+    List<PositionStreamEvent> result = Lists.newArrayList();
+    Assert.assertEquals(5000, reader.read(result, 10000, 0, TimeUnit.SECONDS));
+    reader.close();
+    Assert.assertEquals(events.get(5000).getStart(), result.get(0).getStart());
+  }
+
   private FileWriter<StreamEvent> createWriter(StreamConfig config, String prefix) {
     return new TimePartitionedStreamFileWriter(config.getLocation(), config.getPartitionDuration(),
                                                prefix, config.getIndexInterval(), config.getStreamId(),
@@ -109,6 +109,8 @@ public class DataSetsModules extends RuntimeModule {
         bind(MetadataStore.class).to(DefaultMetadataStore.class);
         expose(MetadataStore.class);
 
+        // Singleton, so that the dataset metadata cached by the RemoteDatasetFramework is shared within a process
+        bind(RemoteDatasetFramework.class).in(Scopes.SINGLETON);
         bind(DatasetFramework.class)
           .annotatedWith(Names.named(BASE_DATASET_FRAMEWORK))
           .to(RemoteDatasetFramework.class);
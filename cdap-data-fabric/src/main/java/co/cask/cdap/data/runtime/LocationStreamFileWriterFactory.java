@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2017 Cask Data, Inc.
+ * Copyright © 2014-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -20,6 +20,7 @@ import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.data.file.FileWriter;
+import co.cask.cdap.data.stream.StreamFileCompression;
 import co.cask.cdap.data.stream.StreamFileWriterFactory;
 import co.cask.cdap.data.stream.StreamUtils;
 import co.cask.cdap.data.stream.TimePartitionedStreamFileWriter;
@@ -40,11 +41,14 @@ import java.util.concurrent.Callable;
 public final class LocationStreamFileWriterFactory implements StreamFileWriterFactory {
 
   private final String filePrefix;
+  private final StreamFileCompression compression;
   private final Impersonator impersonator;
 
   @Inject
   public LocationStreamFileWriterFactory(CConfiguration cConf, Impersonator impersonator) {
     this.filePrefix = cConf.get(Constants.Stream.INSTANCE_FILE_PREFIX);
+    this.compression = StreamFileCompression.fromName(
+      cConf.get(Constants.Stream.FILE_COMPRESSION, StreamFileCompression.NONE.getName()));
     this.impersonator = impersonator;
   }
 
@@ -69,7 +73,7 @@ public final class LocationStreamFileWriterFactory implements StreamFileWriterFa
       });
 
       return new TimePartitionedStreamFileWriter(baseLocation, config.getPartitionDuration(),
-                                                 filePrefix, config.getIndexInterval(),
+                                                 filePrefix, config.getIndexInterval(), compression,
                                                  config.getStreamId(), impersonator);
     } catch (Exception e) {
       Throwables.propagateIfPossible(e, IOException.class);
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -67,6 +67,7 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
   private boolean eof;
   private Decoder decoder;
   private StreamEvent eventTemplate;
+  private StreamFileCompression compression;
 
   /**
    * Opens a new {@link StreamDataFileReader} with the given inputs.
@@ -118,6 +119,7 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
     this.offset = offset;
     this.timestampBuffer = new byte[8];
     this.timestamp = -1L;
+    this.compression = StreamFileCompression.NONE;
   }
 
   @Override
@@ -300,6 +302,10 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
 
     verifySchema(properties);
 
+    if (fileVersion >= 3) {
+      compression = getCompression(properties);
+    }
+
     // Create event template
     if (fileVersion >= 2) {
       eventTemplate = createEventTemplate(properties);
@@ -323,10 +329,14 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
     if (Arrays.equals(magic, StreamDataFileConstants.MAGIC_HEADER_V2)) {
       return 2;
     }
+    if (Arrays.equals(magic, StreamDataFileConstants.MAGIC_HEADER_V3)) {
+      return 3;
+    }
     throw new IOException(
-      String.format("Unsupported stream file format. First two bytes must be %s or %s",
+      String.format("Unsupported stream file format. First two bytes must be %s, %s or %s",
                     Bytes.toStringBinary(StreamDataFileConstants.MAGIC_HEADER_V1),
-                    Bytes.toStringBinary(StreamDataFileConstants.MAGIC_HEADER_V2))
+                    Bytes.toStringBinary(StreamDataFileConstants.MAGIC_HEADER_V2),
+                    Bytes.toStringBinary(StreamDataFileConstants.MAGIC_HEADER_V3))
     );
   }
 
@@ -464,6 +474,22 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
     }
   }
 
+  /**
+   * Returns the {@link StreamFileCompression} declared in the file properties.
+   */
+  private StreamFileCompression getCompression(Map<String, String> properties) throws IOException {
+    String compressionKey = StreamDataFileConstants.Property.Key.COMPRESSION;
+    String name = properties.get(compressionKey);
+    if (name == null) {
+      throw new IOException("Missing '" + compressionKey + "' property.");
+    }
+    try {
+      return StreamFileCompression.fromName(name);
+    } catch (IllegalArgumentException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
   private long readTimestamp() throws IOException {
     ByteStreams.readFully(eventInput, timestampBuffer);
     return Bytes.toLong(timestampBuffer);
@@ -485,7 +511,7 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
     // Use the template timestamp if available
     timestamp = eventTemplate.getTimestamp() >= 0 ? eventTemplate.getTimestamp() : timestamp;
     if (acceptTimestamp(filter, timestamp)) {
-      streamEventBuffer.fillBuffer(eventInput, readLength());
+      streamEventBuffer.fillBuffer(eventInput, readLength(), compression);
       this.timestamp = timestamp;
       return;
     }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -32,6 +32,7 @@ import com.google.common.io.OutputSupplier;
 import com.google.common.primitives.Longs;
 import org.apache.hadoop.fs.Syncable;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -59,6 +60,28 @@ import javax.annotation.concurrent.NotThreadSafe;
  * }
  * </pre>
  *
+ * If the {@link StreamDataFileConstants.Property.Key#COMPRESSION} property is set to a codec other than
+ * {@link StreamFileCompression#NONE}, the event file is written with header "E" "3" and each data block is
+ * compressed:
+ *
+ * <pre>
+ * {@code
+ *
+ * data = <timestamp> <length> <raw_length> <compressed_length> <compressed_events> <padding>
+ * length = Avro encoded int32 for size in bytes of everything after the length field in the data block
+ * raw_length = Avro encoded int32 for size in bytes of all <stream_event>s before compression
+ * compressed_length = Avro encoded int32 for size in bytes of <compressed_events>
+ * compressed_events = <stream_event>+ compressed with the codec declared in the file properties
+ * padding = zero bytes, present only if needed to make <length> no smaller than the number of events in the block
+ *
+ * }
+ * </pre>
+ *
+ * Since the byte offset of an event inside a compressed block is not addressable in the file, the position of
+ * the n-th event (zero based) in a compressed block is the offset of the <raw_length> field plus n. The padding
+ * guarantees that event positions are unique and always fall inside the data block they belong to, so that
+ * the index, input splits and consumer offsets work the same way for both formats.
+ *
  * Stream index file:
  *
  * <pre>
@@ -84,9 +107,14 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
   private final long indexInterval;
   private final BufferedEncoder encoder;
   private final BufferedEncoder lengthEncoder;
+  private final StreamFileCompression compression;
+  private final BlockOutputStream blockOutput;
+  private byte[] compressBuffer;
 
   // Timestamp for the current block
   private long currentTimestamp;
+  // Number of events in the current block
+  private int blockEvents;
   private long position;
   private long nextIndexTime;
   private boolean synced;
@@ -111,11 +139,13 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
    * @param indexOutputSupplier the provider of the {@link OutputStream} for writing the index
    * @param indexInterval the time interval in milliseconds for emitting a new index entry
    * @param properties the property set that will be stored as file properties
-   * @throws IOException if there is an error in preparing the output streams
+   * @throws IOException if there is an error in preparing the output streams or if the
+   *                     {@link StreamDataFileConstants.Property.Key#COMPRESSION} property is not a supported codec
    */
   public StreamDataFileWriter(OutputSupplier<? extends OutputStream> eventOutputSupplier,
                               OutputSupplier<? extends OutputStream> indexOutputSupplier,
                               long indexInterval, Map<String, String> properties) throws IOException {
+    this.compression = getCompression(properties);
     this.eventOutput = eventOutputSupplier.getOutput();
     try {
       this.indexOutput = indexOutputSupplier.getOutput();
@@ -125,6 +155,8 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
     }
     this.indexInterval = indexInterval;
     this.currentTimestamp = -1L;
+    this.blockOutput = compression == StreamFileCompression.NONE ? null : new BlockOutputStream();
+    this.compressBuffer = new byte[0];
     this.closeTimestamp = -1L;
 
     Function<OutputStream, Encoder> encoderFactory = createEncoderFactory();
@@ -222,6 +254,7 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
 
       // Encodes the event data into buffer.
       StreamEventDataCodec.encode(event, encoder);
+      blockEvents++;
 
       // Optionally flush if already filled up the buffer.
       if (encoder.size() >= flushLimit) {
@@ -235,10 +268,15 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
 
   private void init(Map<String, String> properties) throws IOException {
     // Writes the header for event file
-    encoder.writeRaw(StreamDataFileConstants.MAGIC_HEADER_V2);
-
     Map<String, String> headers = Maps.newHashMap(properties);
     headers.put(StreamDataFileConstants.Property.Key.SCHEMA, StreamEventDataCodec.STREAM_DATA_SCHEMA.toString());
+    if (compression == StreamFileCompression.NONE) {
+      encoder.writeRaw(StreamDataFileConstants.MAGIC_HEADER_V2);
+      headers.remove(StreamDataFileConstants.Property.Key.COMPRESSION);
+    } else {
+      encoder.writeRaw(StreamDataFileConstants.MAGIC_HEADER_V3);
+      headers.put(StreamDataFileConstants.Property.Key.COMPRESSION, compression.getName());
+    }
     StreamUtils.encodeMap(headers, encoder);
 
     long headerSize = encoder.size();
@@ -278,16 +316,11 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
       indexOffset = position - Bytes.SIZEOF_LONG;
     }
 
-    // Writes the size of the encoded event
-    lengthEncoder.writeInt(encoder.size());
-    int size = lengthEncoder.size();
-    lengthEncoder.writeTo(eventOutput);
-    position += size;
-
-    // Writes all encoded data from the buffer to the output.
-    size = encoder.size();
-    encoder.writeTo(eventOutput);
-    position += size;
+    if (compression == StreamFileCompression.NONE) {
+      writeBlock();
+    } else {
+      writeCompressedBlock();
+    }
     if (sync) {
       sync(eventOutput);
     }
@@ -307,9 +340,59 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
 
     // Reset the current timestamp so that a data block will start.
     currentTimestamp = -1L;
+    blockEvents = 0;
     synced = sync;
   }
 
+  /**
+   * Writes the length and the encoded events of the current data block.
+   */
+  private void writeBlock() throws IOException {
+    // Writes the size of the encoded event
+    lengthEncoder.writeInt(encoder.size());
+    int size = lengthEncoder.size();
+    lengthEncoder.writeTo(eventOutput);
+    position += size;
+
+    // Writes all encoded data from the buffer to the output.
+    size = encoder.size();
+    encoder.writeTo(eventOutput);
+    position += size;
+  }
+
+  /**
+   * Compresses the encoded events of the current data block and writes them with the block length.
+   */
+  private void writeCompressedBlock() throws IOException {
+    int rawLength = encoder.size();
+    encoder.writeTo(blockOutput);
+
+    int maxLength = compression.maxCompressedLength(rawLength);
+    if (compressBuffer.length < maxLength) {
+      compressBuffer = new byte[maxLength];
+    }
+    int compressedLength = compression.compress(blockOutput.getBuffer(), 0, rawLength, compressBuffer);
+    blockOutput.reset();
+
+    // The block must be at least as long as the number of events in it, so that every event gets a unique position.
+    lengthEncoder.writeInt(rawLength);
+    lengthEncoder.writeInt(compressedLength);
+    int contentLength = lengthEncoder.size() + compressedLength;
+    int padding = Math.max(0, blockEvents - contentLength);
+
+    // The encoder was drained above, hence it can be used for encoding the block length
+    encoder.writeInt(contentLength + padding);
+    position += encoder.size();
+    encoder.writeTo(eventOutput);
+
+    lengthEncoder.writeTo(eventOutput);
+    eventOutput.write(compressBuffer, 0, compressedLength);
+    if (padding > 0) {
+      eventOutput.write(new byte[padding]);
+    }
+    position += contentLength + padding;
+  }
+
   private void sync(OutputStream output) throws IOException {
     if (output instanceof Syncable) {
       ((Syncable) output).hsync();
@@ -329,6 +412,18 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
     throw ex;
   }
 
+  private static StreamFileCompression getCompression(Map<String, String> properties) throws IOException {
+    String name = properties.get(StreamDataFileConstants.Property.Key.COMPRESSION);
+    if (name == null) {
+      return StreamFileCompression.NONE;
+    }
+    try {
+      return StreamFileCompression.fromName(name);
+    } catch (IllegalArgumentException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
   private static Function<OutputStream, Encoder> createEncoderFactory() {
     return new Function<OutputStream, Encoder>() {
       @Override
@@ -337,4 +432,19 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
       }
     };
   }
+
+  /**
+   * A {@link ByteArrayOutputStream} that exposes its internal buffer to avoid copying a data block before
+   * compression.
+   */
+  private static final class BlockOutputStream extends ByteArrayOutputStream {
+
+    BlockOutputStream() {
+      super(BUFFER_SIZE);
+    }
+
+    byte[] getBuffer() {
+      return buf;
+    }
+  }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -32,7 +32,8 @@ import javax.annotation.concurrent.NotThreadSafe;
 
 /**
  * A buffer for holding encoded stream events. It is used by {@link StreamDataFileReader} for holding
- * encoded stream events in each data block.
+ * encoded stream events in each data block. For compressed data blocks, the buffer holds the decompressed events
+ * and event positions are computed as described in {@link StreamDataFileWriter}.
  */
 @NotThreadSafe
 final class StreamEventBuffer {
@@ -43,11 +44,18 @@ final class StreamEventBuffer {
   private ByteBuffer buffer;
   private long basePosition;
 
+  // Fields for compressed data block
+  private byte[] compressedBuffer;
+  private boolean compressed;
+  private int blockLength;
+  private int eventIndex;
+
   StreamEventBuffer() {
     this.buffer = ByteBuffers.EMPTY_BUFFER;
     this.bufferInput = new ByteBufferInputStream(buffer);
     this.decoder = new BinaryDecoder(bufferInput);
     this.basePosition = -1L;
+    this.compressedBuffer = new byte[0];
   }
 
   /**
@@ -63,15 +71,9 @@ final class StreamEventBuffer {
     buffer = ensureCapacity(buffer, size);
 
     try {
+      compressed = false;
       basePosition = input.getPos();
-      int bytesRead = 0;
-      while (bytesRead != size) {
-        int len = input.read(buffer.array(), bytesRead, size - bytesRead);
-        if (len < 0) {
-          throw new EOFException("Expected to read " + size + ", but only " + bytesRead + " was read");
-        }
-        bytesRead += len;
-      }
+      readFully(input, buffer.array(), size);
       buffer.limit(size);
       bufferInput.reset(buffer);
     } catch (IOException e) {
@@ -82,6 +84,54 @@ final class StreamEventBuffer {
     }
   }
 
+  /**
+   * Fills the internal buffer by reading a compressed data block from the given input stream.
+   *
+   * @param input input stream to read from
+   * @param size number of bytes in the data block
+   * @param compression the codec that the data block was compressed with
+   * @throws IOException if failed to read from the stream or to decompress the data block
+   * @throws EOFException if failed to read the given number of bytes from the input
+   */
+  void fillBuffer(SeekableInputStream input, int size, StreamFileCompression compression) throws IOException {
+    if (compression == StreamFileCompression.NONE) {
+      fillBuffer(input, size);
+      return;
+    }
+
+    buffer.clear();
+    if (compressedBuffer.length < size) {
+      compressedBuffer = new byte[size];
+    }
+
+    try {
+      compressed = true;
+      blockLength = size;
+      eventIndex = 0;
+      basePosition = input.getPos();
+      readFully(input, compressedBuffer, size);
+
+      // Block is <raw_length> <compressed_length> <compressed_events> <padding>
+      ByteBuffer block = ByteBuffer.wrap(compressedBuffer, 0, size);
+      bufferInput.reset(block);
+      int rawLength = decoder.readInt();
+      int compressedLength = decoder.readInt();
+      if (compressedLength > block.remaining()) {
+        throw new IOException("Invalid compressed block length " + compressedLength + " in block of size " + size);
+      }
+
+      buffer = ensureCapacity(buffer, rawLength);
+      compression.decompress(compressedBuffer, block.position(), compressedLength, buffer.array(), rawLength);
+      buffer.limit(rawLength);
+      bufferInput.reset(buffer);
+    } catch (IOException e) {
+      // Make the buffer has nothing to read
+      buffer.position(buffer.limit());
+      basePosition = -1L;
+      throw e;
+    }
+  }
+
   /**
    * Returns {@code true} if there are events in the buffer, {@code false} otherwise.
    */
@@ -94,7 +144,13 @@ final class StreamEventBuffer {
    * read from the stream.
    */
   long getPosition() {
-    return basePosition >= 0 ? basePosition + buffer.position() : -1L;
+    if (basePosition < 0) {
+      return -1L;
+    }
+    if (compressed) {
+      return hasEvent() ? basePosition + eventIndex : basePosition + blockLength;
+    }
+    return basePosition + buffer.position();
   }
 
   /**
@@ -102,7 +158,10 @@ final class StreamEventBuffer {
    * been read from the stream.
    */
   long getEndPosition() {
-    return basePosition >= 0 ? basePosition + buffer.limit() : -1L;
+    if (basePosition < 0) {
+      return -1L;
+    }
+    return basePosition + (compressed ? blockLength : buffer.limit());
   }
 
   /**
@@ -120,7 +179,8 @@ final class StreamEventBuffer {
       throw new IOException("No more event in the buffer");
     }
 
-    long eventPos = basePosition + buffer.position();
+    long eventPos = getPosition();
+    eventIndex++;
     if (filter.acceptOffset(eventPos)) {
       return new PositionStreamEvent(StreamEventDataCodec.decode(decoder, defaultHeaders), timestamp, eventPos);
     }
@@ -128,6 +188,20 @@ final class StreamEventBuffer {
     return null;
   }
 
+  /**
+   * Reads exactly the given number of bytes from the input into the beginning of the given array.
+   */
+  private void readFully(SeekableInputStream input, byte[] bytes, int size) throws IOException {
+    int bytesRead = 0;
+    while (bytesRead != size) {
+      int len = input.read(bytes, bytesRead, size - bytesRead);
+      if (len < 0) {
+        throw new EOFException("Expected to read " + size + ", but only " + bytesRead + " was read");
+      }
+      bytesRead += len;
+    }
+  }
+
   /**
    * Ensures that the given {@link ByteBuffer} is of sufficient size.
    *
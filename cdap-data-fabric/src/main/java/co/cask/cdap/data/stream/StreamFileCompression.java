@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.stream;
+
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+
+/**
+ * Compression codecs supported for the data blocks of a stream event file. The codec used by a file is
+ * declared by the {@link StreamDataFileConstants.Property.Key#COMPRESSION} file property.
+ */
+public enum StreamFileCompression {
+
+  NONE("none") {
+    @Override
+    int maxCompressedLength(int length) {
+      return length;
+    }
+
+    @Override
+    int compress(byte[] input, int offset, int length, byte[] output) {
+      System.arraycopy(input, offset, output, 0, length);
+      return length;
+    }
+
+    @Override
+    void decompress(byte[] input, int offset, int length, byte[] output, int outputLength) throws IOException {
+      if (length != outputLength) {
+        throw new IOException("Uncompressed block size mismatch. Expected " + outputLength + ", got " + length);
+      }
+      System.arraycopy(input, offset, output, 0, length);
+    }
+  },
+
+  SNAPPY("snappy") {
+    @Override
+    int maxCompressedLength(int length) {
+      return Snappy.maxCompressedLength(length);
+    }
+
+    @Override
+    int compress(byte[] input, int offset, int length, byte[] output) throws IOException {
+      return Snappy.compress(input, offset, length, output, 0);
+    }
+
+    @Override
+    void decompress(byte[] input, int offset, int length, byte[] output, int outputLength) throws IOException {
+      int size = Snappy.uncompress(input, offset, length, output, 0);
+      if (size != outputLength) {
+        throw new IOException("Uncompressed block size mismatch. Expected " + outputLength + ", got " + size);
+      }
+    }
+  },
+
+  LZ4("lz4") {
+    @Override
+    int maxCompressedLength(int length) {
+      return LZ4Factory.fastestInstance().fastCompressor().maxCompressedLength(length);
+    }
+
+    @Override
+    int compress(byte[] input, int offset, int length, byte[] output) {
+      return LZ4Factory.fastestInstance().fastCompressor().compress(input, offset, length, output, 0, output.length);
+    }
+
+    @Override
+    void decompress(byte[] input, int offset, int length, byte[] output, int outputLength) throws IOException {
+      int size;
+      try {
+        size = LZ4Factory.fastestInstance().fastDecompressor().decompress(input, offset, output, 0, outputLength);
+      } catch (LZ4Exception e) {
+        throw new IOException("Failed to decompress block", e);
+      }
+      if (size != length) {
+        throw new IOException("Compressed block size mismatch. Expected " + length + ", got " + size);
+      }
+    }
+  };
+
+  private final String name;
+
+  StreamFileCompression(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Returns the name of this codec as stored in the file properties.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the {@link StreamFileCompression} of the given name.
+   *
+   * @param name name of the codec, case insensitive
+   * @throws IllegalArgumentException if the name is not a supported codec
+   */
+  public static StreamFileCompression fromName(String name) {
+    for (StreamFileCompression compression : values()) {
+      if (compression.name.equalsIgnoreCase(name)) {
+        return compression;
+      }
+    }
+    throw new IllegalArgumentException("Unsupported stream file compression '" + name + "'");
+  }
+
+  /**
+   * Returns the maximum size in bytes of the compressed form of {@code length} bytes.
+   */
+  abstract int maxCompressedLength(int length);
+
+  /**
+   * Compresses the given bytes into the beginning of the output array.
+   *
+   * @return the compressed size in bytes
+   */
+  abstract int compress(byte[] input, int offset, int length, byte[] output) throws IOException;
+
+  /**
+   * Decompresses the given bytes into the beginning of the output array.
+   *
+   * @param outputLength the expected size of the decompressed data
+   * @throws IOException if the data is corrupted or doesn't decompress to the expected size
+   */
+  abstract void decompress(byte[] input, int offset, int length,
+                           byte[] output, int outputLength) throws IOException;
+}
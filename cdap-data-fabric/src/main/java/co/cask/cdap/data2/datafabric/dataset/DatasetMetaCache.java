@@ -0,0 +1,341 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.data2.datafabric.dataset;
+
+import co.cask.cdap.api.dataset.DatasetManagementException;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.api.messaging.TopicNotFoundException;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.messaging.MessageFetcher;
+import co.cask.cdap.messaging.MessagingService;
+import co.cask.cdap.messaging.data.RawMessage;
+import co.cask.cdap.proto.DatasetMeta;
+import co.cask.cdap.proto.DatasetTypeMeta;
+import co.cask.cdap.proto.audit.AuditMessage;
+import co.cask.cdap.proto.audit.AuditType;
+import co.cask.cdap.proto.codec.AuditMessageTypeAdapter;
+import co.cask.cdap.proto.codec.EntityIdTypeAdapter;
+import co.cask.cdap.proto.id.DatasetId;
+import co.cask.cdap.proto.id.DatasetTypeId;
+import co.cask.cdap.proto.id.EntityId;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.TopicId;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nullable;
+
+/**
+ * A bounded cache of the {@link DatasetMeta} and {@link DatasetTypeMeta} fetched from the dataset service by the
+ * {@link RemoteDatasetFramework}. Entries expire after a configurable time. Changes made through the framework
+ * invalidate the affected entries immediately. Changes made by other processes are picked up from the dataset
+ * audit messages in the messaging system, which are polled at most once per poll interval by a thread using the
+ * cache. Dataset types don't have audit messages, hence types changed by other processes are only seen after the
+ * entries expire.
+ */
+final class DatasetMetaCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DatasetMetaCache.class);
+  private static final Gson GSON = new GsonBuilder()
+    .registerTypeAdapter(AuditMessage.class, new AuditMessageTypeAdapter())
+    .registerTypeAdapter(EntityId.class, new EntityIdTypeAdapter())
+    .create();
+  private static final Set<AuditType> CHANGE_TYPES = EnumSet.of(AuditType.CREATE, AuditType.UPDATE, AuditType.DELETE);
+  private static final int FETCH_LIMIT = 1000;
+
+  private final boolean enabled;
+  private final Cache<InstanceKey, DatasetMeta> instances;
+  private final Cache<TypeKey, DatasetTypeMeta> types;
+  private final TopicId auditTopic;
+  private final long pollIntervalMillis;
+  // incremented on every invalidation, so that loads racing with an invalidation don't cache a stale value
+  private final AtomicLong generation;
+  private final Lock pollLock;
+
+  private volatile MessagingService messagingService;
+  private volatile long nextPollMillis;
+  // guarded by pollLock
+  private long pollStartMillis = -1L;
+  private byte[] lastMessageId;
+  private boolean pollFailed;
+
+  DatasetMetaCache(CConfiguration cConf) {
+    int maxSize = cConf.getInt(Constants.Dataset.CLIENT_CACHE_MAX_SIZE);
+    long expirySecs = cConf.getLong(Constants.Dataset.CLIENT_CACHE_EXPIRY_SECS);
+    this.enabled = maxSize > 0 && expirySecs > 0;
+    this.instances = CacheBuilder.newBuilder()
+      .maximumSize(Math.max(maxSize, 0)).expireAfterWrite(expirySecs, TimeUnit.SECONDS).build();
+    this.types = CacheBuilder.newBuilder()
+      .maximumSize(Math.max(maxSize, 0)).expireAfterWrite(expirySecs, TimeUnit.SECONDS).build();
+    this.auditTopic = NamespaceId.SYSTEM.topic(cConf.get(Constants.Audit.TOPIC));
+    this.pollIntervalMillis = cConf.getLong(Constants.Dataset.CLIENT_CACHE_POLL_INTERVAL_MS);
+    this.generation = new AtomicLong();
+    this.pollLock = new ReentrantLock();
+  }
+
+  /**
+   * Sets the {@link MessagingService} to fetch dataset changes from. Without it, changes made by other processes
+   * are only seen after the entries expire.
+   */
+  void setMessagingService(MessagingService messagingService) {
+    this.messagingService = messagingService;
+  }
+
+  /**
+   * Returns the {@link DatasetMeta} of a dataset instance from the cache, or from the given loader if it is
+   * not cached. Instances that don't exist are not cached.
+   *
+   * @param datasetId the dataset instance
+   * @param principal the name of the principal the meta is fetched for
+   * @param owners the owners of the dataset to register usage for, or {@code null} to not register usage
+   * @param loader the loader to fetch the meta from the dataset service
+   */
+  @Nullable
+  DatasetMeta getInstance(DatasetId datasetId, String principal, @Nullable Iterable<? extends EntityId> owners,
+                          Loader<DatasetMeta> loader) throws DatasetManagementException {
+    if (!enabled) {
+      return loader.load();
+    }
+    return get(instances, new InstanceKey(datasetId, principal, owners), loader);
+  }
+
+  /**
+   * Returns the {@link DatasetTypeMeta} of a dataset type from the cache, or from the given loader if it is
+   * not cached. Types that don't exist are not cached.
+   *
+   * @param typeId the dataset type
+   * @param principal the name of the principal the meta is fetched for
+   * @param loader the loader to fetch the meta from the dataset service
+   */
+  @Nullable
+  DatasetTypeMeta getType(DatasetTypeId typeId, String principal,
+                          Loader<DatasetTypeMeta> loader) throws DatasetManagementException {
+    if (!enabled) {
+      return loader.load();
+    }
+    return get(types, new TypeKey(typeId, principal), loader);
+  }
+
+  /**
+   * Invalidates all entries of the given dataset instance.
+   */
+  void invalidate(DatasetId datasetId) {
+    generation.incrementAndGet();
+    for (InstanceKey key : instances.asMap().keySet()) {
+      if (key.datasetId.equals(datasetId)) {
+        instances.invalidate(key);
+      }
+    }
+  }
+
+  /**
+   * Invalidates all dataset instance entries of the given namespace.
+   */
+  void invalidateInstances(NamespaceId namespaceId) {
+    generation.incrementAndGet();
+    for (InstanceKey key : instances.asMap().keySet()) {
+      if (key.datasetId.getParent().equals(namespaceId)) {
+        instances.invalidate(key);
+      }
+    }
+  }
+
+  /**
+   * Invalidates all entries. A dataset instance entry includes the meta of its type, hence changing a dataset
+   * module affects instances as well.
+   */
+  void invalidateAll() {
+    generation.incrementAndGet();
+    instances.invalidateAll();
+    types.invalidateAll();
+  }
+
+  @Nullable
+  private <K, V> V get(Cache<K, V> cache, K key, Loader<V> loader) throws DatasetManagementException {
+    pollChanges();
+    V value = cache.getIfPresent(key);
+    if (value != null) {
+      return value;
+    }
+
+    long loadGeneration = generation.get();
+    value = loader.load();
+    if (value != null && generation.get() == loadGeneration) {
+      cache.put(key, value);
+    }
+    return value;
+  }
+
+  /**
+   * Fetches the dataset audit messages published since the last poll and invalidates the changed instances.
+   * Only one thread polls, and only if the poll interval has passed since the last poll.
+   */
+  private void pollChanges() {
+    MessagingService messagingService = this.messagingService;
+    long now = System.currentTimeMillis();
+    if (messagingService == null || now < nextPollMillis || !pollLock.tryLock()) {
+      return;
+    }
+    try {
+      nextPollMillis = now + pollIntervalMillis;
+      int count;
+      do {
+        MessageFetcher fetcher = messagingService.prepareFetch(auditTopic).setLimit(FETCH_LIMIT);
+        if (lastMessageId == null) {
+          // Nothing was cached before the first poll. Start a poll interval earlier to allow for clock difference.
+          if (pollStartMillis < 0) {
+            pollStartMillis = Math.max(0L, now - pollIntervalMillis);
+          }
+          fetcher.setStartTime(pollStartMillis);
+        } else {
+          fetcher.setStartMessage(lastMessageId, false);
+        }
+        count = 0;
+        try (CloseableIterator<RawMessage> iterator = fetcher.fetch()) {
+          while (iterator.hasNext()) {
+            RawMessage message = iterator.next();
+            lastMessageId = message.getId();
+            count++;
+            processMessage(message);
+          }
+        }
+      } while (count == FETCH_LIMIT);
+      pollFailed = false;
+    } catch (TopicNotFoundException e) {
+      // Without the audit topic, there is nothing to poll
+      LOG.debug("Audit topic {} does not exist. Dataset changes from other processes are only seen after "
+                  + "cache entries expire.", auditTopic);
+      this.messagingService = null;
+    } catch (Exception e) {
+      // Keep the last message id, so that the changes are picked up by the next poll
+      if (!pollFailed) {
+        LOG.warn("Failed to fetch dataset changes from topic {}. Will be retried.", auditTopic, e);
+      }
+      pollFailed = true;
+    } finally {
+      pollLock.unlock();
+    }
+  }
+
+  private void processMessage(RawMessage message) {
+    AuditMessage auditMessage;
+    try {
+      auditMessage = GSON.fromJson(new String(message.getPayload(), StandardCharsets.UTF_8), AuditMessage.class);
+    } catch (JsonParseException e) {
+      LOG.trace("Ignoring audit message that cannot be decoded", e);
+      return;
+    }
+    if (auditMessage.getEntityId() instanceof DatasetId && CHANGE_TYPES.contains(auditMessage.getType())) {
+      invalidate((DatasetId) auditMessage.getEntityId());
+    }
+  }
+
+  /**
+   * Loads a value from the dataset service.
+   *
+   * @param <T> type of the value
+   */
+  interface Loader<T> {
+
+    /**
+     * Returns the value, or {@code null} if it doesn't exist.
+     */
+    @Nullable
+    T load() throws DatasetManagementException;
+  }
+
+  /**
+   * Cache key for a dataset instance. Instances fetched with owners are cached separately, so that the usage of
+   * each set of owners is registered by the dataset service once.
+   */
+  private static final class InstanceKey {
+    private final DatasetId datasetId;
+    private final String principal;
+    @Nullable
+    private final Set<EntityId> owners;
+
+    InstanceKey(DatasetId datasetId, String principal, @Nullable Iterable<? extends EntityId> owners) {
+      this.datasetId = datasetId;
+      this.principal = principal;
+      this.owners = owners == null ? null : ImmutableSet.<EntityId>copyOf(owners);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      InstanceKey other = (InstanceKey) o;
+      return datasetId.equals(other.datasetId) && principal.equals(other.principal)
+        && Objects.equal(owners, other.owners);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(datasetId, principal, owners);
+    }
+  }
+
+  /**
+   * Cache key for a dataset type.
+   */
+  private static final class TypeKey {
+    private final DatasetTypeId typeId;
+    private final String principal;
+
+    TypeKey(DatasetTypeId typeId, String principal) {
+      this.typeId = typeId;
+      this.principal = principal;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      TypeKey other = (TypeKey) o;
+      return typeId.equals(other.typeId) && principal.equals(other.principal);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(typeId, principal);
+    }
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2017 Cask Data, Inc.
+ * Copyright © 2014-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -35,6 +35,7 @@ import co.cask.cdap.data2.dataset2.DatasetDefinitionRegistryFactory;
 import co.cask.cdap.data2.dataset2.DatasetFramework;
 import co.cask.cdap.data2.dataset2.module.lib.DatasetModules;
 import co.cask.cdap.data2.metadata.lineage.AccessType;
+import co.cask.cdap.messaging.MessagingService;
 import co.cask.cdap.proto.DatasetMeta;
 import co.cask.cdap.proto.DatasetModuleMeta;
 import co.cask.cdap.proto.DatasetSpecificationSummary;
@@ -83,6 +84,8 @@ public class RemoteDatasetFramework implements DatasetFramework {
   private final CConfiguration cConf;
   private final LoadingCache<NamespaceId, DatasetServiceClient> clientCache;
   private final DatasetDefinitionRegistryFactory registryFactory;
+  private final AuthenticationContext authenticationContext;
+  private final DatasetMetaCache metaCache;
 
   @Inject
   public RemoteDatasetFramework(final CConfiguration cConf, final DiscoveryServiceClient discoveryClient,
@@ -96,6 +99,17 @@ public class RemoteDatasetFramework implements DatasetFramework {
       }
     });
     this.registryFactory = registryFactory;
+    this.authenticationContext = authenticationContext;
+    this.metaCache = new DatasetMetaCache(cConf);
+  }
+
+  /**
+   * Sets the {@link MessagingService} for fetching changes of cached dataset instances made by other processes.
+   */
+  @SuppressWarnings("unused")
+  @Inject(optional = true)
+  public void setMessagingService(MessagingService messagingService) {
+    metaCache.setMessagingService(messagingService);
   }
 
   @Override
@@ -107,6 +121,7 @@ public class RemoteDatasetFramework implements DatasetFramework {
         clientCache.getUnchecked(moduleId.getParent())
           .addModule(moduleId.getEntityName(), moduleClass.getName(), deploymentJar);
       } finally {
+        metaCache.invalidateAll();
         try {
           deploymentJar.delete();
         } catch (IOException e) {
@@ -125,18 +140,30 @@ public class RemoteDatasetFramework implements DatasetFramework {
   @Override
   public void addModule(DatasetModuleId moduleId, DatasetModule module,
                         Location jarLocation) throws DatasetManagementException {
-    clientCache.getUnchecked(moduleId.getParent())
-      .addModule(moduleId.getEntityName(), DatasetModules.getDatasetModuleClass(module).getName(), jarLocation);
+    try {
+      clientCache.getUnchecked(moduleId.getParent())
+        .addModule(moduleId.getEntityName(), DatasetModules.getDatasetModuleClass(module).getName(), jarLocation);
+    } finally {
+      metaCache.invalidateAll();
+    }
   }
 
   @Override
   public void deleteModule(DatasetModuleId moduleId) throws DatasetManagementException {
-    clientCache.getUnchecked(moduleId.getParent()).deleteModule(moduleId.getEntityName());
+    try {
+      clientCache.getUnchecked(moduleId.getParent()).deleteModule(moduleId.getEntityName());
+    } finally {
+      metaCache.invalidateAll();
+    }
   }
 
   @Override
   public void deleteAllModules(NamespaceId namespaceId) throws DatasetManagementException {
-    clientCache.getUnchecked(namespaceId).deleteModules();
+    try {
+      clientCache.getUnchecked(namespaceId).deleteModules();
+    } finally {
+      metaCache.invalidateAll();
+    }
   }
 
   @Override
@@ -149,15 +176,23 @@ public class RemoteDatasetFramework implements DatasetFramework {
   public void addInstance(String datasetType, DatasetId datasetInstanceId, DatasetProperties props,
                           @Nullable KerberosPrincipalId ownerPrincipal)
     throws DatasetManagementException {
-    clientCache.getUnchecked(datasetInstanceId.getParent())
-      .addInstance(datasetInstanceId.getEntityName(), datasetType, props, ownerPrincipal);
+    try {
+      clientCache.getUnchecked(datasetInstanceId.getParent())
+        .addInstance(datasetInstanceId.getEntityName(), datasetType, props, ownerPrincipal);
+    } finally {
+      metaCache.invalidate(datasetInstanceId);
+    }
   }
 
   @Override
   public void updateInstance(DatasetId datasetInstanceId, DatasetProperties props)
     throws DatasetManagementException {
-    clientCache.getUnchecked(datasetInstanceId.getParent())
-      .updateInstance(datasetInstanceId.getEntityName(), props);
+    try {
+      clientCache.getUnchecked(datasetInstanceId.getParent())
+        .updateInstance(datasetInstanceId.getEntityName(), props);
+    } finally {
+      metaCache.invalidate(datasetInstanceId);
+    }
   }
 
   @Override
@@ -175,15 +210,13 @@ public class RemoteDatasetFramework implements DatasetFramework {
   @Nullable
   @Override
   public DatasetSpecification getDatasetSpec(DatasetId datasetInstanceId) throws DatasetManagementException {
-    DatasetMeta meta = clientCache.getUnchecked(datasetInstanceId.getParent())
-      .getInstance(datasetInstanceId.getEntityName());
+    DatasetMeta meta = getInstance(datasetInstanceId, null);
     return meta == null ? null : meta.getSpec();
   }
 
   @Override
   public boolean hasInstance(DatasetId datasetInstanceId) throws DatasetManagementException {
-    return clientCache.getUnchecked(datasetInstanceId.getParent())
-      .getInstance(datasetInstanceId.getEntityName()) != null;
+    return getInstance(datasetInstanceId, null) != null;
   }
 
   @Override
@@ -193,12 +226,14 @@ public class RemoteDatasetFramework implements DatasetFramework {
 
   @Override
   public boolean hasType(DatasetTypeId datasetTypeId) throws DatasetManagementException {
-    return clientCache.getUnchecked(datasetTypeId.getParent()).getType(datasetTypeId.getEntityName()) != null;
+    return getTypeInfo(datasetTypeId) != null;
   }
 
   @Override
   public DatasetTypeMeta getTypeInfo(DatasetTypeId datasetTypeId) throws DatasetManagementException {
-    return clientCache.getUnchecked(datasetTypeId.getParent()).getType(datasetTypeId.getEntityName());
+    DatasetServiceClient client = clientCache.getUnchecked(datasetTypeId.getParent());
+    return metaCache.getType(datasetTypeId, authenticationContext.getPrincipal().getName(),
+                             () -> client.getType(datasetTypeId.getEntityName()));
   }
 
   @Override
@@ -208,12 +243,20 @@ public class RemoteDatasetFramework implements DatasetFramework {
 
   @Override
   public void deleteInstance(DatasetId datasetInstanceId) throws DatasetManagementException {
-    clientCache.getUnchecked(datasetInstanceId.getParent()).deleteInstance(datasetInstanceId.getEntityName());
+    try {
+      clientCache.getUnchecked(datasetInstanceId.getParent()).deleteInstance(datasetInstanceId.getEntityName());
+    } finally {
+      metaCache.invalidate(datasetInstanceId);
+    }
   }
 
   @Override
   public void deleteAllInstances(NamespaceId namespaceId) throws DatasetManagementException, IOException {
-    clientCache.getUnchecked(namespaceId).deleteInstances();
+    try {
+      clientCache.getUnchecked(namespaceId).deleteInstances();
+    } finally {
+      metaCache.invalidateInstances(namespaceId);
+    }
   }
 
   @Override
@@ -228,6 +271,7 @@ public class RemoteDatasetFramework implements DatasetFramework {
                                              @Nullable ClassLoader parentClassLoader,
                                              DatasetClassLoaderProvider classLoaderProvider)
     throws DatasetManagementException, IOException {
+    // Not cached, since admin operations need the current spec and are not frequent
     DatasetMeta instanceInfo = clientCache.getUnchecked(datasetInstanceId.getParent())
       .getInstance(datasetInstanceId.getEntityName());
     if (instanceInfo == null) {
@@ -255,7 +299,7 @@ public class RemoteDatasetFramework implements DatasetFramework {
                                           @Nullable Iterable<? extends EntityId> owners, AccessType accessType)
     throws DatasetManagementException, IOException {
 
-    DatasetMeta datasetMeta = clientCache.getUnchecked(id.getParent()).getInstance(id.getEntityName(), owners);
+    DatasetMeta datasetMeta = getInstance(id, owners);
     if (datasetMeta == null) {
       return null;
     }
@@ -269,6 +313,17 @@ public class RemoteDatasetFramework implements DatasetFramework {
     // no-op. The RemoteDatasetFramework doesn't need to do anything. The lineage should be recorded before this point.
   }
 
+  /**
+   * Returns the {@link DatasetMeta} of the given dataset instance, from the cache if possible.
+   */
+  @Nullable
+  private DatasetMeta getInstance(DatasetId datasetId,
+                                  @Nullable Iterable<? extends EntityId> owners) throws DatasetManagementException {
+    DatasetServiceClient client = clientCache.getUnchecked(datasetId.getParent());
+    return metaCache.getInstance(datasetId, authenticationContext.getPrincipal().getName(), owners,
+                                 () -> client.getInstance(datasetId.getEntityName(), owners));
+  }
+
   private Location createDeploymentJar(Class<?> clz) throws IOException {
     File tempDir = new File(cConf.get(Constants.CFG_LOCAL_DATA_DIR),
                             cConf.get(Constants.AppFabric.TEMP_DIR)).getAbsoluteFile();
@@ -1,5 +1,5 @@
 /*
- * Copyright 2015-2016 Cask Data, Inc.
+ * Copyright 2015-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -437,6 +437,15 @@ public class DefaultCube implements Cube, MeteredDataset {
     add(cubeFact);
   }
 
+  /**
+   * Writes all facts buffered by the underlying {@link FactTable}s.
+   */
+  public void flush() {
+    for (FactTable factTable : resolutionToFactTable.values()) {
+      factTable.flush();
+    }
+  }
+
   @Override
   public void close() throws IOException {
     for (FactTable factTable : resolutionToFactTable.values()) {
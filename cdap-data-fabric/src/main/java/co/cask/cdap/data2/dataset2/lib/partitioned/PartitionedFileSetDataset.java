@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015-2017 Cask Data, Inc.
+ * Copyright © 2015-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -50,14 +50,17 @@ import co.cask.cdap.api.dataset.lib.Partitioning.FieldType;
 import co.cask.cdap.api.dataset.lib.partitioned.PartitionKeyCodec;
 import co.cask.cdap.api.dataset.table.Put;
 import co.cask.cdap.api.dataset.table.Row;
+import co.cask.cdap.api.dataset.table.Scan;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.common.logging.LogSamplers;
 import co.cask.cdap.common.logging.Loggers;
+import co.cask.cdap.common.utils.ImmutablePair;
 import co.cask.cdap.data.RuntimeProgramContext;
 import co.cask.cdap.data.RuntimeProgramContextAware;
 import co.cask.cdap.data2.dataset2.lib.file.FileSetDataset;
+import co.cask.cdap.data2.dataset2.lib.table.FuzzyRowFilter;
 import co.cask.cdap.explore.client.ExploreFacade;
 import co.cask.cdap.proto.id.DatasetId;
 import com.google.common.annotations.VisibleForTesting;
@@ -81,6 +84,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -765,7 +769,9 @@ public class PartitionedFileSetDataset extends AbstractDataset
   private void getPartitions(@Nullable PartitionFilter filter, PartitionConsumer consumer, boolean decodeMetadata,
                              @Nullable byte[] startKey, @Nullable byte[] endKey, long limit) {
     long count = 0L;
-    try (Scanner scanner = partitionsTable.scan(startKey, endKey)) {
+    // the fuzzy filter lets the table skip over rows that cannot match; filter.match() below still applies
+    Scan scan = new Scan(startKey, endKey, filter == null ? null : generateFuzzyFilter(filter, partitioning));
+    try (Scanner scanner = partitionsTable.scan(scan)) {
       while (count < limit) {
         Row row = scanner.next();
         if (row == null) {
@@ -1306,6 +1312,66 @@ public class PartitionedFileSetDataset extends AbstractDataset
     return stopKey;
   }
 
+  /**
+   * Generates a {@link FuzzyRowFilter} for the fields of the partition filter that are at a fixed offset in the
+   * row key. This allows the scan to skip rows that do not match a single-value condition on a field that
+   * follows a field without condition, for example, an hour of any day. Because string fields have variable
+   * length, only the fields up to the first string field without single-value condition can be included.
+   *
+   * @return the filter, or null if it would not filter more than the start and stop key of the scan
+   */
+  @VisibleForTesting
+  @Nullable
+  static FuzzyRowFilter generateFuzzyFilter(PartitionFilter filter, Partitioning partitioning) {
+    // the row key and the fuzzy info, where 0 means the byte is fixed and 1 means it can be any value
+    List<byte[]> keyParts = new ArrayList<>();
+    List<byte[]> infoParts = new ArrayList<>();
+    boolean hasWildcard = false;
+    boolean filtersAfterWildcard = false;
+    int totalSize = 0;
+    for (Map.Entry<String, FieldType> entry : partitioning.getFields().entrySet()) {
+      FieldType fieldType = entry.getValue();
+      PartitionFilter.Condition<? extends Comparable> condition = filter.getCondition(entry.getKey());
+      byte[] keyPart;
+      byte[] infoPart;
+      if (condition != null && condition.isSingleValue()) {
+        try {
+          fieldType.validate(condition.getValue());
+        } catch (IllegalArgumentException e) {
+          // cannot match any row key; leave that to PartitionFilter.match()
+          return null;
+        }
+        keyPart = FieldTypes.toBytes(condition.getValue(), fieldType);
+        infoPart = new byte[keyPart.length];
+        filtersAfterWildcard = filtersAfterWildcard || hasWildcard;
+      } else if (fieldType == FieldType.INT || fieldType == FieldType.LONG) {
+        keyPart = new byte[fieldType == FieldType.INT ? Bytes.SIZEOF_INT : Bytes.SIZEOF_LONG];
+        infoPart = new byte[keyPart.length];
+        Arrays.fill(infoPart, (byte) 1);
+        hasWildcard = true;
+      } else {
+        // the length of this field is unknown, hence none of the following fields are at a fixed offset
+        break;
+      }
+      keyParts.add(keyPart);
+      infoParts.add(infoPart);
+      totalSize += keyPart.length + 1; // the \0 separator after the field is fixed
+    }
+    if (!filtersAfterWildcard) {
+      return null;
+    }
+
+    byte[] fuzzyKey = new byte[totalSize];
+    byte[] fuzzyInfo = new byte[totalSize];
+    int offset = 0;
+    for (int i = 0; i < keyParts.size(); i++) {
+      System.arraycopy(keyParts.get(i), 0, fuzzyKey, offset, keyParts.get(i).length);
+      System.arraycopy(infoParts.get(i), 0, fuzzyInfo, offset, infoParts.get(i).length);
+      offset += keyParts.get(i).length + 1;
+    }
+    return new FuzzyRowFilter(Collections.singletonList(ImmutablePair.of(fuzzyKey, fuzzyInfo)));
+  }
+
   @VisibleForTesting
   static PartitionKey parseRowKey(byte[] rowKey, Partitioning partitioning) {
     PartitionKey.Builder builder = PartitionKey.builder();
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2017 Cask Data, Inc.
+ * Copyright © 2014-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -53,6 +53,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import javax.annotation.Nullable;
 
@@ -73,8 +74,11 @@ import javax.annotation.Nullable;
  *       not in in-memory buffer twice, two times it will try to fetch it from persistent store.
  *       Given the snapshot isolation tx model, this can be improved in future implementations.
  * <p>
- * NOTE: current implementation persists changes only at the end of transaction. Beware of OOME. There should be better
- *       implementation for MapReduce case (YMMV though, for counters/aggregations this implementation looks sweet)
+ * NOTE: by default changes are persisted only at the end of transaction. Beware of OOME. To bound the memory used by
+ *       a long transaction, set {@link co.cask.cdap.api.dataset.table.Table#PROPERTY_WRITE_BUFFER_MAX_BYTES}: once the
+ *       buffer grows beyond that size it is persisted early, and only the keys of the persisted changes are kept in
+ *       memory to be able to undo them. Early persisting is not done when readless increments are enabled, since
+ *       two increments of the same cell in one transaction would be persisted with the same version.
  * <p>
  * NOTE: Using {@link #get(byte[], byte[], byte[], int)} is generally always not efficient since it always hits the
  *       persisted store even if all needed data is in-memory buffer. See more info at method javadoc
@@ -86,6 +90,11 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
   protected static final byte[] DELETE_MARKER = new byte[0];
 
+  // Rough per-entry overhead of the in-memory buffer (map entry, Update and byte array headers)
+  private static final int ENTRY_OVERHEAD = 64;
+  // Placeholder value for changes that were persisted before commit, only their keys are needed to undo them
+  private static final Update PERSISTED_MARKER = new PutValue(DELETE_MARKER);
+
   // name of the table
   private final String name;
   // conflict detection level
@@ -94,6 +103,8 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   private final byte[] nameAsTxChangePrefix;
   // Whether read-less increments should be used when increment() is called
   private final boolean enableReadlessIncrements;
+  // Size of the in-memory buffer above which it is persisted before the transaction commits, null if unbounded
+  private final Long writeBufferMaxBytes;
 
   // In-memory buffer that keeps not yet persisted data. It is row->(column->value) map. Value can be null which means
   // that the corresponded column was removed.
@@ -102,6 +113,9 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   // Keeps track of what was persisted so far
   private NavigableMap<byte[], NavigableMap<byte[], Update>> toUndo;
 
+  // Estimated size of the in-memory buffer, only tracked if writeBufferMaxBytes is set
+  private long bufferedBytes;
+
   // Report data ops metrics to
   private MetricsCollector metricsCollector;
 
@@ -145,6 +159,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     this.name = name;
     this.conflictLevel = TableProperties.getConflictDetection(properties, ConflictDetection.ROW);
     this.enableReadlessIncrements = enableReadlessIncrements;
+    this.writeBufferMaxBytes = TableProperties.getWriteBufferMaxBytes(properties);
     // TODO: having central dataset management service will allow us to use table ids instead of names, which will
     //       reduce changeset size transferred to/from server
     // we want it to be of format length+value to avoid conflicts like table="ab", row="cd" vs table="abc", row="d"
@@ -273,6 +288,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     }
     // starting with fresh buffer when tx starts
     buff.clear();
+    bufferedBytes = 0L;
     toUndo = null;
     this.tx = tx;
   }
@@ -306,10 +322,25 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     }
   }
 
+  /**
+   * Returns all changes made by the current transaction: the ones still in the in-memory buffer and,
+   * if the buffer was persisted before commit, the ones that were already persisted.
+   */
+  private NavigableMap<byte[], NavigableMap<byte[], Update>> getChanges() {
+    if (toUndo == null) {
+      return buff;
+    }
+    NavigableMap<byte[], NavigableMap<byte[], Update>> changes = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    mergeKeys(changes, toUndo);
+    mergeKeys(changes, buff);
+    return changes;
+  }
+
   private Collection<byte[]> getRowChanges() {
     // we resolve conflicts on row level of individual table
-    List<byte[]> changes = new ArrayList<>(buff.size());
-    for (byte[] changedRow : buff.keySet()) {
+    NavigableMap<byte[], NavigableMap<byte[], Update>> allChanges = getChanges();
+    List<byte[]> changes = new ArrayList<>(allChanges.size());
+    for (byte[] changedRow : allChanges.keySet()) {
       changes.add(Bytes.add(getNameAsTxChangePrefix(), changedRow));
     }
     return changes;
@@ -317,8 +348,9 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
   private Collection<byte[]> getColumnChanges() {
     // we resolve conflicts on row level of individual table
-    List<byte[]> changes = new ArrayList<>(buff.size());
-    for (Map.Entry<byte[], NavigableMap<byte[], Update>> rowChange : buff.entrySet()) {
+    NavigableMap<byte[], NavigableMap<byte[], Update>> allChanges = getChanges();
+    List<byte[]> changes = new ArrayList<>(allChanges.size());
+    for (Map.Entry<byte[], NavigableMap<byte[], Update>> rowChange : allChanges.entrySet()) {
       if (rowChange.getValue() == null) {
         // NOTE: as of now we cannot detect conflict between delete whole row and row's column value change.
         //       this is not a big problem as of now, as row deletion is now act as deletion of every column, but this
@@ -338,7 +370,17 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
   @Override
   public boolean commitTx() throws Exception {
-    if (!buff.isEmpty()) {
+    if (toUndo != null) {
+      // part of the changes were already persisted before commit, only the rest of the buffer is left to persist
+      if (buff.isEmpty()) {
+        return true;
+      }
+      NavigableMap<byte[], NavigableMap<byte[], Update>> toPersist = buff;
+      buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+      bufferedBytes = 0L;
+      mergeKeys(toUndo, toPersist);
+      persist(toPersist);
+    } else if (!buff.isEmpty()) {
       // We first assume that all data will be persisted. So that if exception happen during persist we try to
       // rollback everything we had in in-memory buffer.
       toUndo = buff;
@@ -346,6 +388,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
       // NOTE: we want to init map here so that if no changes are made we re-use same instance of the map in next tx
       // NOTE: we could cache two maps and swap them to avoid creation of map instances, but code would be ugly
       buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+      bufferedBytes = 0L;
       // TODO: tracking of persisted items can be optimized by returning a pair {succeededOrNot, persisted} which
       //       tells if persisting succeeded and what was persisted (i.e. what we will have to undo in case of rollback)
       persist(toUndo);
@@ -357,6 +400,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   public void postTxCommit() {
     // don't need buffer anymore: tx has been committed
     buff.clear();
+    bufferedBytes = 0L;
     toUndo = null;
     tx = null;
   }
@@ -364,6 +408,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   @Override
   public boolean rollbackTx() throws Exception {
     buff.clear();
+    bufferedBytes = 0L;
     if (toUndo != null) {
       undo(toUndo);
       toUndo = null;
@@ -497,6 +542,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     putInternal(row, columns, values);
     // report metrics _after_ write was performed
     reportWrite(1, getSize(row) + getSize(columns) + getSize(values));
+    persistIfBufferFull();
   }
 
   private void putInternal(byte[] row, byte[][] columns, byte[][] values) {
@@ -512,11 +558,61 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
       if (values[i] != null && values[i].length == 0) {
         warnAboutEmptyValue(columns[i]);
       }
-      colVals.put(copy(columns[i]), new PutValue(copy(values[i])));
+      Update previous = colVals.put(copy(columns[i]), new PutValue(copy(values[i])));
+      if (writeBufferMaxBytes != null) {
+        bufferedBytes += previous == null ? getSize(columns[i]) + getSize(values[i]) + ENTRY_OVERHEAD
+                                          : getSize(values[i]) - getSize(previous.getBytes());
+      }
     }
     if (newRow) {
       // NOTE: we copy passed row's byte arrays to protect buffer against possible changes of this array on client
       buff.put(copy(row), colVals);
+      if (writeBufferMaxBytes != null) {
+        bufferedBytes += getSize(row) + ENTRY_OVERHEAD;
+      }
+    }
+  }
+
+  /**
+   * Persists the in-memory buffer before the transaction commits if it has grown beyond
+   * {@link #writeBufferMaxBytes}. The keys of the persisted changes are remembered so that they can be undone
+   * on rollback and are included in the transaction change set.
+   */
+  private void persistIfBufferFull() {
+    if (writeBufferMaxBytes == null || enableReadlessIncrements || bufferedBytes < writeBufferMaxBytes) {
+      return;
+    }
+    NavigableMap<byte[], NavigableMap<byte[], Update>> toPersist = buff;
+    buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+    bufferedBytes = 0L;
+    // record what is going to be persisted before persisting, so that it is undone if persisting fails midway
+    if (toUndo == null) {
+      toUndo = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    }
+    mergeKeys(toUndo, toPersist);
+    try {
+      persist(toPersist);
+    } catch (Exception e) {
+      LOG.debug("persisting write buffer failed for table: " + getTransactionAwareName(), e);
+      throw new DataSetException("persisting write buffer failed", e);
+    }
+  }
+
+  /**
+   * Adds the rows and columns of the given changes to the target map, without their values. This is sufficient
+   * for undoing persisted changes, which only needs to know which cells were written.
+   */
+  private static void mergeKeys(NavigableMap<byte[], NavigableMap<byte[], Update>> target,
+                                NavigableMap<byte[], NavigableMap<byte[], Update>> changes) {
+    for (Map.Entry<byte[], NavigableMap<byte[], Update>> rowChange : changes.entrySet()) {
+      NavigableMap<byte[], Update> columns = target.get(rowChange.getKey());
+      if (columns == null) {
+        columns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        target.put(rowChange.getKey(), columns);
+      }
+      for (byte[] column : rowChange.getValue().keySet()) {
+        columns.put(column, PERSISTED_MARKER);
+      }
     }
   }
 
@@ -559,6 +655,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     putInternal(row, columns, new byte[columns.length][]);
     // "0" because we don't know what gets deleted
     reportWrite(1, 0);
+    persistIfBufferFull();
   }
 
   @ReadWrite
@@ -611,6 +708,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
     putInternal(row, columns, updatedValues);
     reportWrite(1, getSize(row) + getSize(columns) + getSize(amounts));
+    persistIfBufferFull();
 
     return new Result(row, result);
   }
@@ -650,6 +748,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
       if (Arrays.equals(expectedValue, currentValue)) {
         putInternal(row, columns, new byte[][]{newValue});
         reportWrite(1, getSize(row) + getSize(column) + getSize(newValue));
+        persistIfBufferFull();
         return true;
       }
     } catch (Exception e) {
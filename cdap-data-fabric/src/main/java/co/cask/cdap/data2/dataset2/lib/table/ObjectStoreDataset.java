@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2016 Cask Data, Inc.
+ * Copyright © 2014-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -34,10 +34,16 @@ import co.cask.cdap.api.dataset.lib.KeyValueTable;
 import co.cask.cdap.api.dataset.lib.ObjectStore;
 import co.cask.cdap.common.io.BinaryDecoder;
 import co.cask.cdap.common.io.BinaryEncoder;
-import co.cask.cdap.internal.io.ReflectionDatumReader;
+import co.cask.cdap.common.io.DatumReader;
+import co.cask.cdap.internal.io.ASMDatumReaderFactory;
+import co.cask.cdap.internal.io.ASMFieldAccessorFactory;
 import co.cask.cdap.internal.io.ReflectionDatumWriter;
 import co.cask.cdap.internal.io.TypeRepresentation;
+import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.reflect.TypeToken;
 
 import java.io.ByteArrayInputStream;
@@ -54,6 +60,17 @@ import javax.annotation.Nullable;
 @Beta
 public class ObjectStoreDataset<T> extends AbstractDataset implements ObjectStore<T> {
 
+  // One factory per ClassLoader of the stored type, so that the generated reader classes are shared by all instances.
+  // The factory references the types it generated classes for, so values are weak as well; a factory stays cached
+  // as long as a DatumReader created by it is in use.
+  private static final LoadingCache<ClassLoader, ASMDatumReaderFactory> DATUM_READER_FACTORIES =
+    CacheBuilder.newBuilder().weakKeys().weakValues().build(new CacheLoader<ClassLoader, ASMDatumReaderFactory>() {
+      @Override
+      public ASMDatumReaderFactory load(ClassLoader classLoader) {
+        return new ASMDatumReaderFactory(new ASMFieldAccessorFactory());
+      }
+    });
+
   private final KeyValueTable kvTable;
   private final TypeRepresentation typeRep;
   private final Schema schema;
@@ -62,7 +79,7 @@ public class ObjectStoreDataset<T> extends AbstractDataset implements ObjectStor
   // we get this lazily, since we may not have the actual Type when simply instantiating this class (for instance, when
   // datasets are instantiated in DatasetSystemMetadataWriter for checking RecordScannable/BatchWritable/etc.),
   // but we do expect to have it when using it in a program context
-  private ReflectionDatumReader<T> datumReader;
+  private DatumReader<T> datumReader;
 
   public ObjectStoreDataset(String name, KeyValueTable kvTable, TypeRepresentation typeRep,
                             Schema schema, @Nullable ClassLoader classLoader) {
@@ -150,9 +167,12 @@ public class ObjectStoreDataset<T> extends AbstractDataset implements ObjectStor
   }
 
   @SuppressWarnings("unchecked")
-  private ReflectionDatumReader<T> getReflectionDatumReader() {
+  private DatumReader<T> getDatumReader() {
     if (datumReader == null) {
-      datumReader = new ReflectionDatumReader<>(schema, (TypeToken<T>) TypeToken.of(this.typeRep.toType()));
+      TypeToken<T> type = (TypeToken<T>) TypeToken.of(this.typeRep.toType());
+      ClassLoader classLoader = Objects.firstNonNull(type.getRawType().getClassLoader(),
+                                                     ObjectStoreDataset.class.getClassLoader());
+      datumReader = DATUM_READER_FACTORIES.getUnchecked(classLoader).create(type, schema);
     }
     return datumReader;
   }
@@ -165,7 +185,7 @@ public class ObjectStoreDataset<T> extends AbstractDataset implements ObjectStor
     ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
     BinaryDecoder decoder = new BinaryDecoder(bis);
     try {
-      return getReflectionDatumReader().read(decoder, this.schema);
+      return getDatumReader().read(decoder, this.schema);
     } catch (IOException e) {
       // SHOULD NEVER happen
       throw new DataSetException("Failed to decode read object: " + e.getMessage(), e);
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -36,12 +36,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.concurrent.locks.Lock;
 import javax.annotation.Nullable;
 
 /**
@@ -92,53 +95,95 @@ public class LevelDBTableCore {
   }
 
 
-  public synchronized boolean swap(byte[] row, byte[] column, byte[] oldValue, byte[] newValue) throws IOException {
-    byte[] existing = getRow(row, new byte[][] { column }, null, null, -1, null).get(column);
-    // verify
-    if (oldValue == null && existing != null) {
-      return false;
-    }
-    if (oldValue != null && (existing == null || !Bytes.equals(oldValue, existing))) {
-      return false;
-    }
-    // write
-    if (newValue == null) {
-      // to-do
-      deleteColumn(row, column);
-    } else {
-      persist(Collections.singletonMap(row, Collections.singletonMap(column, newValue)), System.currentTimeMillis());
+  public boolean swap(byte[] row, byte[] column, byte[] oldValue, byte[] newValue) throws IOException {
+    Lock lock = service.getRowLock(tableName, row);
+    lock.lock();
+    try {
+      byte[] existing = getRow(row, new byte[][] { column }, null, null, -1, null).get(column);
+      // verify
+      if (oldValue == null && existing != null) {
+        return false;
+      }
+      if (oldValue != null && (existing == null || !Bytes.equals(oldValue, existing))) {
+        return false;
+      }
+      // write
+      if (newValue == null) {
+        // to-do
+        deleteColumn(row, column);
+      } else {
+        persist(Collections.singletonMap(row, Collections.singletonMap(column, newValue)),
+                System.currentTimeMillis());
+      }
+      return true;
+    } finally {
+      lock.unlock();
     }
-    return true;
   }
 
-  public synchronized Map<byte[], Long> increment(byte[] row, Map<byte[], Long> increments) throws IOException {
-    Map<byte[], Long> result = getResultMap(row, increments);
-    Map<byte[], byte[]> replacing = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-    for (Map.Entry<byte[], Long> entry : result.entrySet()) {
-      replacing.put(entry.getKey(), Bytes.toBytes(entry.getValue()));
+  public Map<byte[], Long> increment(byte[] row, Map<byte[], Long> increments) throws IOException {
+    Lock lock = service.getRowLock(tableName, row);
+    lock.lock();
+    try {
+      Map<byte[], Long> result = getResultMap(row, getRow(row, toColumns(increments), null, null, -1, null),
+                                              increments);
+      Map<byte[], byte[]> replacing = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      for (Map.Entry<byte[], Long> entry : result.entrySet()) {
+        replacing.put(entry.getKey(), Bytes.toBytes(entry.getValue()));
+      }
+      persist(ImmutableMap.of(row, replacing), System.currentTimeMillis());
+      service.getIncrementStats(tableName).record(increments.size());
+      return result;
+    } finally {
+      lock.unlock();
     }
-    persist(ImmutableMap.of(row, replacing), System.currentTimeMillis());
-    return result;
   }
 
+  /**
+   * Applies increments on multiple rows. Locks of all rows are acquired upfront, all existing values are read
+   * through a single iterator, and all new values are written in one {@link WriteBatch}.
+   */
+  public void increment(NavigableMap<byte[], NavigableMap<byte[], Long>> updates) throws IOException {
+    if (updates.isEmpty()) {
+      return;
+    }
 
-  public synchronized void increment(NavigableMap<byte[], NavigableMap<byte[], Long>> updates) throws IOException {
-    Map<byte[], Map<byte[], byte[]>> resultMap = Maps.newHashMap();
-    for (NavigableMap.Entry<byte[], NavigableMap<byte[], Long>> row : updates.entrySet()) {
-      NavigableMap<byte[], Long> increments = row.getValue();
-      Map<byte[], byte[]> replacing = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      Map<byte[], Long> result = getResultMap(row.getKey(), increments);
-      for (Map.Entry<byte[], Long> entry : result.entrySet()) {
-        replacing.put(entry.getKey(), Bytes.toBytes(entry.getValue()));
+    List<Lock> acquired = new ArrayList<>(updates.size());
+    try {
+      for (Lock lock : service.getRowLocks(tableName, updates.keySet())) {
+        lock.lock();
+        acquired.add(lock);
+      }
+
+      DB db = getDB();
+      WriteBatch batch = db.createWriteBatch();
+      long version = System.currentTimeMillis();
+      int columns = 0;
+      try (DBIterator iterator = db.iterator()) {
+        for (Map.Entry<byte[], NavigableMap<byte[], Long>> row : updates.entrySet()) {
+          NavigableMap<byte[], Long> increments = row.getValue();
+          NavigableMap<byte[], byte[]> existing = getRow(iterator, row.getKey(), toColumns(increments));
+          for (Map.Entry<byte[], Long> entry : getResultMap(row.getKey(), existing, increments).entrySet()) {
+            batch.put(createPutKey(row.getKey(), entry.getKey(), version), Bytes.toBytes(entry.getValue()));
+          }
+          columns += increments.size();
+        }
+      }
+      db.write(batch, service.getWriteOptions());
+      service.getIncrementStats(tableName).record(columns);
+    } finally {
+      for (Lock lock : acquired) {
+        lock.unlock();
       }
-      resultMap.put(row.getKey(), replacing);
     }
-    persist(resultMap, System.currentTimeMillis());
   }
 
-  private Map<byte[], Long> getResultMap(byte[] row, Map<byte[], Long> increments) throws IOException {
-    NavigableMap<byte[], byte[]> existing =
-      getRow(row, increments.keySet().toArray(new byte[increments.size()][]), null, null, -1, null);
+  private static byte[][] toColumns(Map<byte[], Long> increments) {
+    return increments.keySet().toArray(new byte[increments.size()][]);
+  }
+
+  private Map<byte[], Long> getResultMap(byte[] row, NavigableMap<byte[], byte[]> existing,
+                                         Map<byte[], Long> increments) {
     Map<byte[], Long> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     for (Map.Entry<byte[], Long> increment : increments.entrySet()) {
       long existingValue = 0L;
@@ -229,6 +274,21 @@ public class LevelDBTableCore {
     }
   }
 
+  /**
+   * Reads the latest value of the given columns of a row, using the given iterator.
+   */
+  private NavigableMap<byte[], byte[]> getRow(DBIterator iterator, byte[] row, byte[][] columns) throws IOException {
+    if (columns.length == 0) {
+      return EMPTY_ROW_MAP;
+    }
+    columns = Arrays.copyOf(columns, columns.length);
+    Arrays.sort(columns, Bytes.BYTES_COMPARATOR);
+
+    iterator.seek(createStartKey(row, columns[0]));
+    return getRow(iterator, createEndKey(row, upperBound(columns[columns.length - 1])),
+                  null, false, columns, columns.length).getSecond();
+  }
+
   private static Scanner createEmptyScanner() {
     return new Scanner() {
       @Override
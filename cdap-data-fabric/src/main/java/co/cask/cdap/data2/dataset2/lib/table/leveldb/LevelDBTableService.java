@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,6 +16,7 @@
 
 package co.cask.cdap.data2.dataset2.lib.table.leveldb;
 
+import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data2.transaction.stream.leveldb.LevelDBNameConverter;
@@ -26,6 +27,7 @@ import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Striped;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.iq80.leveldb.DB;
@@ -40,9 +42,13 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 
 import static org.iq80.leveldb.impl.Iq80DBFactory.factory;
 
@@ -59,7 +65,12 @@ public class LevelDBTableService {
   private String basePath;
   private WriteOptions writeOptions;
 
+  // Number of lock stripes used for serializing read-modify-write operations on the same row
+  private static final int ROW_LOCK_STRIPES = 1024;
+
   private final ConcurrentMap<String, DB> tables = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, IncrementStats> incrementStats = Maps.newConcurrentMap();
+  private final Striped<Lock> rowLocks = Striped.lock(ROW_LOCK_STRIPES);
 
   /**
    * To avoid database locking issues make sure that the single LevelDBTableService instance
@@ -129,7 +140,10 @@ public class LevelDBTableService {
       String tableName = getTableName(dir.getName());
       // NOTE: we are using recursion to traverse file tree as we know that leveldb table fs tree is couple levels deep.
       long size = getSize(dir);
-      builder.put(LevelDBNameConverter.from(tableName), new TableStats(size));
+      IncrementStats stats = incrementStats.get(tableName);
+      builder.put(LevelDBNameConverter.from(tableName),
+                  stats == null ? new TableStats(size) : new TableStats(size, stats.getIncrementedColumns(),
+                                                                        stats.getIncrementBatches()));
     }
     return builder.build();
   }
@@ -156,6 +170,43 @@ public class LevelDBTableService {
     return writeOptions;
   }
 
+  /**
+   * Returns the {@link Lock} for performing read-modify-write operation on the given row of the given table.
+   * The same lock is returned to all {@link LevelDBTableCore} instances of the same table.
+   */
+  Lock getRowLock(String tableName, byte[] row) {
+    return rowLocks.get(getRowLockKey(tableName, row));
+  }
+
+  /**
+   * Returns the {@link Lock}s for performing read-modify-write operation on the given rows of the given table.
+   * The locks are returned in an order such that acquiring them in the iteration order won't cause deadlock.
+   */
+  Iterable<Lock> getRowLocks(String tableName, Collection<byte[]> rows) {
+    List<Integer> keys = new ArrayList<>(rows.size());
+    for (byte[] row : rows) {
+      keys.add(getRowLockKey(tableName, row));
+    }
+    return rowLocks.bulkGet(keys);
+  }
+
+  /**
+   * Returns the {@link IncrementStats} for recording increment operations on the given table.
+   */
+  IncrementStats getIncrementStats(String tableName) {
+    IncrementStats stats = incrementStats.get(tableName);
+    if (stats != null) {
+      return stats;
+    }
+    stats = new IncrementStats();
+    IncrementStats existing = incrementStats.putIfAbsent(tableName, stats);
+    return existing == null ? stats : existing;
+  }
+
+  private static int getRowLockKey(String tableName, byte[] row) {
+    return 31 * tableName.hashCode() + Bytes.hashCode(row);
+  }
+
   public DB getTable(String tableName) throws IOException {
     DB db = tables.get(tableName);
     if (db == null) {
@@ -220,6 +271,7 @@ public class LevelDBTableService {
   }
 
   public void dropTable(String name) throws IOException {
+    incrementStats.remove(name);
     DB db = tables.remove(name);
     if (db != null) {
       db.close();
@@ -271,13 +323,57 @@ public class LevelDBTableService {
    */
   public static final class TableStats {
     private final long diskSizeBytes;
+    private final long incrementedColumns;
+    private final long incrementBatches;
 
     public TableStats(long sizeInBytes) {
+      this(sizeInBytes, 0L, 0L);
+    }
+
+    public TableStats(long sizeInBytes, long incrementedColumns, long incrementBatches) {
       this.diskSizeBytes = sizeInBytes;
+      this.incrementedColumns = incrementedColumns;
+      this.incrementBatches = incrementBatches;
     }
 
     public long getDiskSizeBytes() {
       return diskSizeBytes;
     }
+
+    /**
+     * Returns the number of columns incremented in the table since the process started.
+     */
+    public long getIncrementedColumns() {
+      return incrementedColumns;
+    }
+
+    /**
+     * Returns the number of write batches performed for increments in the table since the process started.
+     * Together with {@link #getIncrementedColumns()}, it gives the average number of columns per write.
+     */
+    public long getIncrementBatches() {
+      return incrementBatches;
+    }
+  }
+
+  /**
+   * Counters for increment operations on a table.
+   */
+  static final class IncrementStats {
+    private final AtomicLong incrementedColumns = new AtomicLong();
+    private final AtomicLong incrementBatches = new AtomicLong();
+
+    void record(int columns) {
+      incrementedColumns.addAndGet(columns);
+      incrementBatches.incrementAndGet();
+    }
+
+    long getIncrementedColumns() {
+      return incrementedColumns.get();
+    }
+
+    long getIncrementBatches() {
+      return incrementBatches.get();
+    }
   }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -52,6 +52,11 @@ import javax.annotation.Nullable;
  * Table for storing {@link Fact}s.
  *
  * Thread safe as long as the passed into the constructor datasets are thread safe (usually is not the case).
+ * <p>
+ * Optionally, writes can be coalesced in memory: facts added within a short window are merged per row and column,
+ * so that a hot counter results in one increment per flush instead of one per {@link #add(List)} call. Buffered
+ * writes are flushed when the buffer reaches its maximum number of cells, when it gets older than the flush
+ * interval, before any read, on {@link #flush()} and on {@link #close()}.
  */
 public final class FactTable implements Closeable {
   private static final Logger LOG = LoggerFactory.getLogger(FactTable.class);
@@ -86,6 +91,15 @@ public final class FactTable implements Closeable {
   private final String putCountMetric;
   private final String incrementCountMetric;
 
+  // maximum number of cells buffered before writing to the table, writes are not buffered if <= 0
+  private final int writeBufferSize;
+  // maximum time in milliseconds a write is buffered
+  private final long writeBufferFlushMillis;
+  private NavigableMap<byte[], NavigableMap<byte[], byte[]>> gaugesBuffer;
+  private NavigableMap<byte[], NavigableMap<byte[], byte[]>> incrementsBuffer;
+  private int bufferedCells;
+  private long bufferStartMillis;
+
   @Nullable
   private MetricsCollector metrics;
 
@@ -102,6 +116,24 @@ public final class FactTable implements Closeable {
    */
   public FactTable(MetricsTable timeSeriesTable,
                    EntityTable entityTable, int resolution, int rollTime) {
+    this(timeSeriesTable, entityTable, resolution, rollTime, 0, 0L);
+  }
+
+  /**
+   * Creates an instance of {@link FactTable} that coalesces writes in memory.
+   *
+   * @param timeSeriesTable A table for storing facts information.
+   * @param entityTable The table for storing dimension encoding mappings.
+   * @param resolution Resolution in seconds
+   * @param rollTime Number of resolution for writing to a new row with a new timebase.
+   *                 See {@link #FactTable(MetricsTable, EntityTable, int, int)}.
+   * @param writeBufferSize Maximum number of row and column cells to buffer before writing them to the table.
+   *                        Writes are not buffered if it is less than or equal to zero.
+   * @param writeBufferFlushMillis Maximum time in milliseconds a write can stay in the buffer. It is only checked
+   *                               when facts are added, the owner is expected to call {@link #flush()} periodically.
+   */
+  public FactTable(MetricsTable timeSeriesTable, EntityTable entityTable, int resolution, int rollTime,
+                   int writeBufferSize, long writeBufferFlushMillis) {
     // Two bytes for column name, which is a delta timestamp
     Preconditions.checkArgument(rollTime <= MAX_ROLL_TIME, "Rolltime should be <= " + MAX_ROLL_TIME);
 
@@ -112,6 +144,10 @@ public final class FactTable implements Closeable {
     this.rollTime = rollTime;
     this.putCountMetric = "factTable." + resolution + ".put.count";
     this.incrementCountMetric = "factTable." + resolution + ".increment.count";
+    this.writeBufferSize = writeBufferSize;
+    this.writeBufferFlushMillis = writeBufferFlushMillis;
+    this.gaugesBuffer = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    this.incrementsBuffer = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
   }
 
   public void setMetricsCollector(MetricsCollector metrics) {
@@ -119,22 +155,79 @@ public final class FactTable implements Closeable {
   }
 
   public void add(List<Fact> facts) {
+    if (writeBufferSize > 0) {
+      synchronized (this) {
+        long now = System.currentTimeMillis();
+        if (bufferedCells == 0) {
+          bufferStartMillis = now;
+        }
+        bufferedCells += collect(facts, gaugesBuffer, incrementsBuffer);
+        if (bufferedCells >= writeBufferSize || now - bufferStartMillis >= writeBufferFlushMillis) {
+          flush();
+        }
+      }
+      return;
+    }
+
     // Simply collecting all rows/cols/values that need to be put to the underlying table.
     NavigableMap<byte[], NavigableMap<byte[], byte[]>> gaugesTable = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     NavigableMap<byte[], NavigableMap<byte[], byte[]>> incrementsTable = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    collect(facts, gaugesTable, incrementsTable);
+    write(gaugesTable, incrementsTable);
+  }
+
+  /**
+   * Writes all buffered facts to the underlying table. Does nothing if writes are not buffered.
+   */
+  public void flush() {
+    if (writeBufferSize <= 0) {
+      return;
+    }
+    NavigableMap<byte[], NavigableMap<byte[], byte[]>> gaugesTable;
+    NavigableMap<byte[], NavigableMap<byte[], byte[]>> incrementsTable;
+    synchronized (this) {
+      if (bufferedCells == 0) {
+        return;
+      }
+      // swap the buffers first: if writing fails the facts are dropped, same as for an unbuffered add
+      gaugesTable = gaugesBuffer;
+      incrementsTable = incrementsBuffer;
+      gaugesBuffer = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      incrementsBuffer = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      bufferedCells = 0;
+      write(gaugesTable, incrementsTable);
+    }
+  }
+
+  /**
+   * Collects the given facts into the gauges and increments maps, keyed by row and column.
+   *
+   * @return number of row and column cells that were not present in the maps before
+   */
+  private int collect(List<Fact> facts, NavigableMap<byte[], NavigableMap<byte[], byte[]>> gaugesTable,
+                      NavigableMap<byte[], NavigableMap<byte[], byte[]>> incrementsTable) {
+    int newCells = 0;
     for (Fact fact : facts) {
       for (Measurement measurement : fact.getMeasurements()) {
         byte[] rowKey = codec.createRowKey(fact.getDimensionValues(), measurement.getName(), fact.getTimestamp());
         byte[] column = codec.createColumn(fact.getTimestamp());
 
+        boolean newCell;
         if (MeasureType.COUNTER == measurement.getType()) {
-          inc(incrementsTable, rowKey, column, measurement.getValue());
+          newCell = inc(incrementsTable, rowKey, column, measurement.getValue());
         } else {
-          set(gaugesTable, rowKey, column, Bytes.toBytes(measurement.getValue()));
+          newCell = set(gaugesTable, rowKey, column, Bytes.toBytes(measurement.getValue()));
+        }
+        if (newCell) {
+          newCells++;
         }
       }
     }
+    return newCells;
+  }
 
+  private void write(NavigableMap<byte[], NavigableMap<byte[], byte[]>> gaugesTable,
+                     NavigableMap<byte[], NavigableMap<byte[], byte[]>> incrementsTable) {
     NavigableMap<byte[], NavigableMap<byte[], Long>> convertedIncrementsTable =
       Maps.transformValues(incrementsTable, TRANSFORM_MAP_BYTE_ARRAY_TO_LONG);
 
@@ -181,6 +274,8 @@ public final class FactTable implements Closeable {
   }
 
   private Scanner getScanner(FactScan scan) {
+    // make buffered writes visible to the scan
+    flush();
 
     // sort the measures based on their entity ids and based on that get the start and end row key metric names
     List<String> measureNames = getSortedMeasures(scan.getMeasureNames());
@@ -264,6 +359,7 @@ public final class FactTable implements Closeable {
   public Set<DimensionValue> findSingleDimensionValue(List<String> allDimensionNames,
                                                       Map<String, String> dimensionSlice,
                                                       long startTs, long endTs) {
+    flush();
     // Algorithm, briefly:
     // We scan in the records which have given allDimensionNames. We use dimensionSlice as a criteria for scan.
     // If record from the scan has non-null values in the dimensions which are not specified in dimensionSlice,
@@ -374,6 +470,7 @@ public final class FactTable implements Closeable {
   // todo: pass a limit on number of measures returned
   public Set<String> findMeasureNames(List<String> allDimensionNames, Map<String, String> dimensionSlice,
                                       long startTs, long endTs) {
+    flush();
 
     List<DimensionValue> allDimensions = Lists.newArrayList();
     for (String dimensionName : allDimensionNames) {
@@ -417,6 +514,7 @@ public final class FactTable implements Closeable {
 
   @Override
   public void close() throws IOException {
+    flush();
     timeSeriesTable.close();
     entityTable.close();
   }
@@ -450,8 +548,8 @@ public final class FactTable implements Closeable {
 
   // todo: shouldn't we aggregate "before" writing to FactTable? We could do it really efficient outside
   //       also: the underlying datasets will do aggregation in memory anyways
-  private static void inc(NavigableMap<byte[], NavigableMap<byte[], byte[]>> incrementsTable,
-                   byte[] rowKey, byte[] column, long value) {
+  private static boolean inc(NavigableMap<byte[], NavigableMap<byte[], byte[]>> incrementsTable,
+                             byte[] rowKey, byte[] column, long value) {
     byte[] oldValue = get(incrementsTable, rowKey, column);
     long newValue = value;
     if (oldValue != null) {
@@ -468,7 +566,7 @@ public final class FactTable implements Closeable {
       }
 
     }
-    set(incrementsTable, rowKey, column, Bytes.toBytes(newValue));
+    return set(incrementsTable, rowKey, column, Bytes.toBytes(newValue));
   }
 
   private static byte[] get(NavigableMap<byte[], NavigableMap<byte[], byte[]>> table, byte[] row, byte[] column) {
@@ -476,15 +574,20 @@ public final class FactTable implements Closeable {
     return rowMap == null ? null : rowMap.get(column);
   }
 
-  private static void set(NavigableMap<byte[], NavigableMap<byte[], byte[]>> table,
-                          byte[] row, byte[] column, byte[] value) {
+  /**
+   * Sets the value of the given cell.
+   *
+   * @return {@code true} if the cell was not present in the table before
+   */
+  private static boolean set(NavigableMap<byte[], NavigableMap<byte[], byte[]>> table,
+                             byte[] row, byte[] column, byte[] value) {
     NavigableMap<byte[], byte[]> rowMap = table.get(row);
     if (rowMap == null) {
       rowMap = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
       table.put(row, rowMap);
     }
 
-    rowMap.put(column, value);
+    return rowMap.put(column, value) == null;
   }
 
   private String toPrettyLog(byte[] key) {
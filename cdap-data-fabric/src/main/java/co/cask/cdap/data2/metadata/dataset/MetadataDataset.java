@@ -1,5 +1,5 @@
 /*
- * Copyright 2015-2017 Cask Data, Inc.
+ * Copyright 2015-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -20,6 +20,7 @@ import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.lib.AbstractDataset;
 import co.cask.cdap.api.dataset.lib.IndexedTable;
 import co.cask.cdap.api.dataset.table.Delete;
+import co.cask.cdap.api.dataset.table.Get;
 import co.cask.cdap.api.dataset.table.Put;
 import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scan;
@@ -90,6 +91,8 @@ public class MetadataDataset extends AbstractDataset {
   private static final String HISTORY_COLUMN = "h"; // column for metadata history
   private static final String VALUE_COLUMN = "v";  // column for metadata value
   private static final String TAGS_SEPARATOR = ",";
+  // number of search hits to resolve with a single batch read
+  private static final int SEARCH_BATCH_SIZE = 1000;
 
   // Fuzzy key is of form <row key, key mask>. We want to compare row keys.
   private static final Comparator<ImmutablePair<byte[], byte[]>> FUZZY_KEY_COMPARATOR =
@@ -570,7 +573,7 @@ public class MetadataDataset extends AbstractDataset {
   private SearchResults searchByDefaultIndex(String namespaceId, String searchQuery,
                                              Set<EntityTypeSimpleName> types, boolean showHidden,
                                              Set<EntityScope> entityScope) {
-    List<MetadataEntry> results = new LinkedList<>();
+    List<MetadataEntry> results = new ArrayList<>();
     for (String searchTerm : getSearchTerms(namespaceId, searchQuery, entityScope)) {
       Scanner scanner;
       if (searchTerm.endsWith("*")) {
@@ -583,19 +586,28 @@ public class MetadataDataset extends AbstractDataset {
         scanner = indexedTable.readByIndex(Bytes.toBytes(DEFAULT_INDEX_COLUMN), value);
       }
       try {
+        // resolve the metadata of the hits in batches, instead of reading it for each hit
+        List<ImmutablePair<NamespacedEntityId, String>> hits = new ArrayList<>(SEARCH_BATCH_SIZE);
         Row next;
         while ((next = scanner.next()) != null) {
-          Optional<MetadataEntry> metadataEntry = parseRow(next, DEFAULT_INDEX_COLUMN, types, showHidden);
-          if (metadataEntry.isPresent()) {
-            results.add(metadataEntry.get());
+          Optional<ImmutablePair<NamespacedEntityId, String>> hit =
+            parseHit(next, DEFAULT_INDEX_COLUMN, types, showHidden);
+          if (!hit.isPresent()) {
+            continue;
+          }
+          hits.add(hit.get());
+          if (hits.size() >= SEARCH_BATCH_SIZE) {
+            results.addAll(getMetadata(hits));
+            hits.clear();
           }
         }
+        results.addAll(getMetadata(hits));
       } finally {
         scanner.close();
       }
     }
 
-    // cursors are currently not supported for default indexes
+    // cursors for default indexes are computed by the caller, since results are ranked after the search
     return new SearchResults(results, Collections.<String>emptyList());
   }
 
@@ -647,6 +659,20 @@ public class MetadataDataset extends AbstractDataset {
   // so return an Optional
   private Optional<MetadataEntry> parseRow(Row rowToProcess, String indexColumn,
                                            Set<EntityTypeSimpleName> entityFilter, boolean showHidden) {
+    Optional<ImmutablePair<NamespacedEntityId, String>> hit =
+      parseHit(rowToProcess, indexColumn, entityFilter, showHidden);
+    if (!hit.isPresent()) {
+      return Optional.absent();
+    }
+    MetadataEntry entry = getMetadata(hit.get().getFirst(), hit.get().getSecond());
+    return Optional.fromNullable(entry);
+  }
+
+  // returns the target id and metadata key of an index row, unless the row is for a different targetType
+  // (entityFilter) or for a hidden entity
+  private Optional<ImmutablePair<NamespacedEntityId, String>> parseHit(Row rowToProcess, String indexColumn,
+                                                                       Set<EntityTypeSimpleName> entityFilter,
+                                                                       boolean showHidden) {
     String rowValue = rowToProcess.getString(indexColumn);
     if (rowValue == null) {
       return Optional.absent();
@@ -668,8 +694,33 @@ public class MetadataDataset extends AbstractDataset {
       return Optional.absent();
     }
     String key = MdsKey.getMetadataKey(targetType, rowKey);
-    MetadataEntry entry = getMetadata(targetId, key);
-    return Optional.fromNullable(entry);
+    return Optional.of(ImmutablePair.of(targetId, key));
+  }
+
+  /**
+   * Returns the {@link MetadataEntry} for each of the given target id and metadata key pairs, in the same order,
+   * reading all of them with a single batch read. Pairs without metadata value are skipped.
+   */
+  private List<MetadataEntry> getMetadata(List<ImmutablePair<NamespacedEntityId, String>> targets) {
+    if (targets.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<Get> gets = new ArrayList<>(targets.size());
+    for (ImmutablePair<NamespacedEntityId, String> target : targets) {
+      gets.add(new Get(MdsKey.getMDSValueKey(target.getFirst(), target.getSecond()).getKey(),
+                       Bytes.toBytes(VALUE_COLUMN)));
+    }
+    List<Row> rows = indexedTable.get(gets);
+    List<MetadataEntry> entries = new ArrayList<>(targets.size());
+    for (int i = 0; i < targets.size(); i++) {
+      // the value can be null when all tags are moved one by one. The row still exists, but the value is null.
+      byte[] value = rows.get(i).get(VALUE_COLUMN);
+      if (value != null) {
+        ImmutablePair<NamespacedEntityId, String> target = targets.get(i);
+        entries.add(new MetadataEntry(target.getFirst(), target.getSecond(), Bytes.toString(value)));
+      }
+    }
+    return entries;
   }
 
   /**
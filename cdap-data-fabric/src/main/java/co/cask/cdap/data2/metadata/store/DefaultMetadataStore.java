@@ -1,5 +1,5 @@
 /*
- * Copyright 2015-2017 Cask Data, Inc.
+ * Copyright 2015-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -45,6 +45,8 @@ import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.proto.id.NamespacedEntityId;
 import co.cask.cdap.proto.metadata.MetadataSearchResponse;
 import co.cask.cdap.proto.metadata.MetadataSearchResultRecord;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -58,15 +60,17 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -86,12 +90,14 @@ public class DefaultMetadataStore implements MetadataStore {
   private static final String NEEDS_UPGRADE_TAG = "cdap.metadatadataset.needs_upgrade";
   private static final String VERSION_TAG_PREFIX = "cdap.version:";
 
-  private static final Comparator<Map.Entry<NamespacedEntityId, Integer>> SEARCH_RESULT_DESC_SCORE_COMPARATOR =
-    new Comparator<Map.Entry<NamespacedEntityId, Integer>>() {
+  // orders search results from the least relevant to the most relevant. Among results with the same score,
+  // results found later are less relevant.
+  private static final Comparator<ScoredEntity> SEARCH_RESULT_ASC_SCORE_COMPARATOR =
+    new Comparator<ScoredEntity>() {
       @Override
-      public int compare(Map.Entry<NamespacedEntityId, Integer> o1, Map.Entry<NamespacedEntityId, Integer> o2) {
-        // sort in descending order
-        return o2.getValue() - o1.getValue();
+      public int compare(ScoredEntity o1, ScoredEntity o2) {
+        int cmp = Integer.compare(o1.score, o2.score);
+        return cmp != 0 ? cmp : Integer.compare(o2.index, o1.index);
       }
     };
 
@@ -416,33 +422,59 @@ public class DefaultMetadataStore implements MetadataStore {
       throw new IllegalArgumentException("limit must not be negative");
     }
 
+    // for the default sort, the cursor is the index of the first result of a page, and offset is applied after it
+    boolean weighted = SortInfo.SortOrder.WEIGHTED == sortInfo.getSortOrder();
+    int startIndex = offset;
+    if (weighted && !Strings.isNullOrEmpty(cursor)) {
+      startIndex = (int) Math.min(Integer.MAX_VALUE, (long) parseOffsetCursor(cursor) + offset);
+    }
+
     List<MetadataEntry> results = new LinkedList<>();
     List<String> cursors = new LinkedList<>();
+    // scores of the results for the default sort, in the order the results are found
+    Map<NamespacedEntityId, Integer> scores = new LinkedHashMap<>();
     for (MetadataScope scope : scopes) {
       SearchResults searchResults =
         getSearchResults(scope, namespaceId, searchQuery, types, sortInfo, offset, limit, numCursors, cursor,
                          showHidden, entityScope);
-      results.addAll(searchResults.getResults());
-      cursors.addAll(searchResults.getCursors());
+      if (weighted) {
+        // score results as they are found, instead of keeping the results of all scopes
+        for (MetadataEntry metadataEntry : searchResults.getResults()) {
+          Integer score = scores.get(metadataEntry.getTargetId());
+          scores.put(metadataEntry.getTargetId(), score == null ? 1 : score + 1);
+        }
+      } else {
+        results.addAll(searchResults.getResults());
+        cursors.addAll(searchResults.getCursors());
+      }
     }
 
-    // sort if required
-    Set<NamespacedEntityId> sortedEntities = getSortedEntities(results, sortInfo);
-    int total = sortedEntities.size();
+    int endIndex = (int) Math.min(Integer.MAX_VALUE, (long) startIndex + limit); // Account for overflow
+    Set<NamespacedEntityId> sortedEntities;
+    int total;
+    if (weighted) {
+      // only the results up to the end index are ranked, instead of sorting all of them
+      total = scores.size();
+      sortedEntities = getTopEntities(scores, startIndex, endIndex);
+      cursors = getOffsetCursors(endIndex, limit, numCursors, total);
+    } else {
+      // the backing storage returns results in the expected order
+      sortedEntities = new LinkedHashSet<>(results.size());
+      for (MetadataEntry metadataEntry : results) {
+        sortedEntities.add(metadataEntry.getTargetId());
+      }
+      total = sortedEntities.size();
 
-    // pagination is not performed at the dataset level, because:
-    // 1. scoring is needed for DEFAULT sort info. So perform it here for now.
-    // 2. Even when using custom sorting, we need to remove elements from the beginning to the offset and the cursors
-    //    at the end
-    // TODO: Figure out how all of this can be done server (HBase) side
-    int startIndex = Math.min(offset, sortedEntities.size());
-    int endIndex = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit); // Account for overflow
-    endIndex = Math.min(endIndex, sortedEntities.size());
+      // pagination is not performed at the dataset level, because we need to remove elements from the beginning
+      // to the offset and the cursors at the end
+      // TODO: Figure out how all of this can be done server (HBase) side
+      startIndex = Math.min(startIndex, sortedEntities.size());
+      endIndex = Math.min(endIndex, sortedEntities.size());
 
-    // add 1 to maxIndex because end index is exclusive
-    sortedEntities = new LinkedHashSet<>(
-      ImmutableList.copyOf(sortedEntities).subList(startIndex, endIndex)
-    );
+      sortedEntities = new LinkedHashSet<>(
+        ImmutableList.copyOf(sortedEntities).subList(startIndex, endIndex)
+      );
+    }
 
     // Fetch metadata for entities in the result list
     // Note: since the fetch is happening in a different transaction, the metadata for entities may have been
@@ -472,35 +504,70 @@ public class DefaultMetadataStore implements MetadataStore {
       }, scope);
   }
 
-  private Set<NamespacedEntityId> getSortedEntities(List<MetadataEntry> results, SortInfo sortInfo) {
-    // if sort order is not weighted, return entities in the order received.
-    // in this case, the backing storage is expected to return results in the expected order.
-    if (SortInfo.SortOrder.WEIGHTED != sortInfo.getSortOrder()) {
-      Set<NamespacedEntityId> entities = new LinkedHashSet<>(results.size());
-      for (MetadataEntry metadataEntry : results) {
-        entities.add(metadataEntry.getTargetId());
-      }
-      return entities;
+  /**
+   * Returns the entities from the start index to the end index in descending order of score. Entities with the
+   * same score are returned in the order they were found.
+   */
+  @VisibleForTesting
+  static Set<NamespacedEntityId> getTopEntities(Map<NamespacedEntityId, Integer> scores,
+                                                int startIndex, int endIndex) {
+    int size = Math.min(endIndex, scores.size());
+    if (startIndex >= size) {
+      return new LinkedHashSet<>();
     }
-    // if sort order is weighted, score results by weight, and return in descending order of weights
-    // Score results
-    final Map<NamespacedEntityId, Integer> weightedResults = new HashMap<>();
-    for (MetadataEntry metadataEntry : results) {
-      Integer score = weightedResults.get(metadataEntry.getTargetId());
-      score = (score == null) ? 0 : score;
-      weightedResults.put(metadataEntry.getTargetId(), score + 1);
+
+    // keep the 'size' most relevant results, with the least relevant of them at the head of the queue
+    PriorityQueue<ScoredEntity> queue = new PriorityQueue<>(size, SEARCH_RESULT_ASC_SCORE_COMPARATOR);
+    int index = 0;
+    for (Map.Entry<NamespacedEntityId, Integer> entry : scores.entrySet()) {
+      ScoredEntity scoredEntity = new ScoredEntity(entry.getKey(), entry.getValue(), index++);
+      if (queue.size() < size) {
+        queue.add(scoredEntity);
+      } else if (SEARCH_RESULT_ASC_SCORE_COMPARATOR.compare(scoredEntity, queue.peek()) > 0) {
+        queue.poll();
+        queue.add(scoredEntity);
+      }
     }
 
-    // Sort the results by score
-    List<Map.Entry<NamespacedEntityId, Integer>> resultList = new ArrayList<>(weightedResults.entrySet());
-    Collections.sort(resultList, SEARCH_RESULT_DESC_SCORE_COMPARATOR);
-    Set<NamespacedEntityId> result = new LinkedHashSet<>(resultList.size());
-    for (Map.Entry<NamespacedEntityId, Integer> entry : resultList) {
-      result.add(entry.getKey());
+    NamespacedEntityId[] sorted = new NamespacedEntityId[size];
+    for (int i = size - 1; i >= 0; i--) {
+      sorted[i] = queue.poll().entity;
     }
+    Set<NamespacedEntityId> result = new LinkedHashSet<>(size - startIndex);
+    result.addAll(Arrays.asList(sorted).subList(startIndex, size));
     return result;
   }
 
+  /**
+   * Returns the cursors for the pages following the page that ends at the given end index, when results are sorted
+   * by the default sort. Each cursor is the index of the first result of a page.
+   */
+  private List<String> getOffsetCursors(int endIndex, int limit, int numCursors, int total) {
+    List<String> cursors = new ArrayList<>();
+    if (limit == 0) {
+      return cursors;
+    }
+    long pageStart = endIndex;
+    for (int i = 0; i < numCursors && pageStart < total; i++) {
+      cursors.add(Long.toString(pageStart));
+      pageStart += limit;
+    }
+    return cursors;
+  }
+
+  private int parseOffsetCursor(String cursor) throws BadRequestException {
+    try {
+      int index = Integer.parseInt(cursor);
+      if (index >= 0) {
+        return index;
+      }
+    } catch (NumberFormatException e) {
+      // fall through to throw BadRequestException
+    }
+    throw new BadRequestException(
+      String.format("Cursor must be a non-negative integer when sort info is not specified. Found %s.", cursor));
+  }
+
   private Map<NamespacedEntityId, Metadata> fetchMetadata(final Set<NamespacedEntityId> namespacedEntityIds,
                                                           MetadataScope scope) {
     Set<Metadata> metadataSet =
@@ -743,4 +810,19 @@ public class DefaultMetadataStore implements MetadataStore {
   private String getTagWithVersion(String version) {
     return new String (VERSION_TAG_PREFIX + version);
   }
+
+  /**
+   * A search result with its score, and the index in which it was found.
+   */
+  private static final class ScoredEntity {
+    private final NamespacedEntityId entity;
+    private final int score;
+    private final int index;
+
+    ScoredEntity(NamespacedEntityId entity, int score, int index) {
+      this.entity = entity;
+      this.score = score;
+      this.index = index;
+    }
+  }
 }
@@ -34,6 +34,7 @@ import com.google.inject.Inject;
 import org.apache.twill.common.Threads;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -50,6 +51,8 @@ public class LevelDBDatasetMetricsReporter extends AbstractScheduledService impl
   private final MetricsCollectionService metricsService;
   private final LevelDBTableService ldbService;
   private final DatasetFramework dsFramework;
+  // Increment counters of each table at the last report, for emitting the increase since then
+  private final Map<TableId, LevelDBTableService.TableStats> lastReportedStats;
   private ScheduledExecutorService executor;
 
   @Inject
@@ -60,6 +63,7 @@ public class LevelDBDatasetMetricsReporter extends AbstractScheduledService impl
     this.ldbService = ldbService;
     this.reportIntervalInSec = conf.getInt(Constants.Metrics.Dataset.LEVELDB_STATS_REPORT_INTERVAL);
     this.dsFramework = dsFramework;
+    this.lastReportedStats = new HashMap<>();
   }
 
   @Override
@@ -94,6 +98,8 @@ public class LevelDBDatasetMetricsReporter extends AbstractScheduledService impl
   }
 
   private void report(Map<TableId, LevelDBTableService.TableStats> datasetStat) throws DatasetManagementException {
+    // Forget about dropped tables
+    lastReportedStats.keySet().retainAll(datasetStat.keySet());
     for (Map.Entry<TableId, LevelDBTableService.TableStats> statEntry : datasetStat.entrySet()) {
       String namespace = statEntry.getKey().getNamespace();
       // emit metrics for only user datasets, tables in system namespace are ignored
@@ -101,6 +107,8 @@ public class LevelDBDatasetMetricsReporter extends AbstractScheduledService impl
         continue;
       }
       String tableName = statEntry.getKey().getTableName();
+      LevelDBTableService.TableStats stats = statEntry.getValue();
+      LevelDBTableService.TableStats lastStats = lastReportedStats.put(statEntry.getKey(), stats);
 
       Collection<DatasetSpecificationSummary> instances = dsFramework.getInstances(new NamespaceId(namespace));
       for (DatasetSpecificationSummary spec : instances) {
@@ -109,12 +117,25 @@ public class LevelDBDatasetMetricsReporter extends AbstractScheduledService impl
           MetricsContext collector =
             metricsService.getContext(ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, namespace,
                                                       Constants.Metrics.Tag.DATASET, spec.getName()));
-          int sizeInMb = (int) (statEntry.getValue().getDiskSizeBytes() / BYTES_IN_MB);
+          int sizeInMb = (int) (stats.getDiskSizeBytes() / BYTES_IN_MB);
           collector.gauge("dataset.size.mb", sizeInMb);
+          // The number of columns per batch shows how well increments are batched
+          collector.increment("dataset.store.increment.columns",
+                              getIncrease(stats.getIncrementedColumns(),
+                                          lastStats == null ? 0L : lastStats.getIncrementedColumns()));
+          collector.increment("dataset.store.increment.batches",
+                              getIncrease(stats.getIncrementBatches(),
+                                          lastStats == null ? 0L : lastStats.getIncrementBatches()));
           break;
         }
       }
     }
   }
 
+  /**
+   * Returns the increase of a counter since the last report. Counters restart from zero when a table is dropped.
+   */
+  private long getIncrease(long current, long last) {
+    return current >= last ? current - last : current;
+  }
 }
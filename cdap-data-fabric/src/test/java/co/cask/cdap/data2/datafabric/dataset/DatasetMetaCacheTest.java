@@ -0,0 +1,190 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.data2.datafabric.dataset;
+
+import co.cask.cdap.api.dataset.DatasetSpecification;
+import co.cask.cdap.api.metrics.MetricsCollectionService;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.guice.ConfigModule;
+import co.cask.cdap.common.guice.DiscoveryRuntimeModule;
+import co.cask.cdap.common.metrics.NoOpMetricsCollectionService;
+import co.cask.cdap.messaging.MessagingService;
+import co.cask.cdap.messaging.client.StoreRequestBuilder;
+import co.cask.cdap.messaging.guice.MessagingServerRuntimeModule;
+import co.cask.cdap.proto.DatasetMeta;
+import co.cask.cdap.proto.DatasetTypeMeta;
+import co.cask.cdap.proto.audit.AuditMessage;
+import co.cask.cdap.proto.audit.AuditPayload;
+import co.cask.cdap.proto.audit.AuditType;
+import co.cask.cdap.proto.audit.payload.access.AccessPayload;
+import co.cask.cdap.proto.audit.payload.access.AccessType;
+import co.cask.cdap.proto.id.DatasetId;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.ProgramId;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Service;
+import com.google.gson.Gson;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for {@link DatasetMetaCache}.
+ */
+public class DatasetMetaCacheTest {
+
+  @ClassRule
+  public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+  private static final Gson GSON = new Gson();
+  private static final DatasetId DATASET = NamespaceId.DEFAULT.dataset("ds");
+  private static final DatasetMeta META = new DatasetMeta(DatasetSpecification.builder("ds", "table").build(),
+                                                          new DatasetTypeMeta("table", ImmutableList.of()), null);
+
+  @Test
+  public void testCache() throws Exception {
+    DatasetMetaCache cache = new DatasetMetaCache(CConfiguration.create());
+    AtomicInteger loads = new AtomicInteger();
+    DatasetMetaCache.Loader<DatasetMeta> loader = () -> {
+      loads.incrementAndGet();
+      return META;
+    };
+
+    Assert.assertSame(META, cache.getInstance(DATASET, "alice", null, loader));
+    Assert.assertSame(META, cache.getInstance(DATASET, "alice", null, loader));
+    Assert.assertEquals(1, loads.get());
+
+    // Other principals and owners are cached separately
+    cache.getInstance(DATASET, "bob", null, loader);
+    cache.getInstance(DATASET, "alice", ImmutableList.of(NamespaceId.DEFAULT.app("app").flow("flow")), loader);
+    Assert.assertEquals(3, loads.get());
+
+    // Invalidating the dataset removes all of its entries
+    cache.invalidate(DATASET);
+    cache.getInstance(DATASET, "alice", null, loader);
+    cache.getInstance(DATASET, "bob", null, loader);
+    Assert.assertEquals(5, loads.get());
+
+    // Missing instances are not cached
+    DatasetId missing = NamespaceId.DEFAULT.dataset("missing");
+    cache.getInstance(missing, "alice", null, () -> {
+      loads.incrementAndGet();
+      return null;
+    });
+    cache.getInstance(missing, "alice", null, loader);
+    Assert.assertEquals(7, loads.get());
+  }
+
+  @Test
+  public void testInvalidateWhileLoading() throws Exception {
+    DatasetMetaCache cache = new DatasetMetaCache(CConfiguration.create());
+
+    // A value loaded concurrently with an invalidation may be stale, hence is not cached
+    cache.getInstance(DATASET, "alice", null, () -> {
+      cache.invalidate(DATASET);
+      return META;
+    });
+    AtomicInteger loads = new AtomicInteger();
+    cache.getInstance(DATASET, "alice", null, () -> {
+      loads.incrementAndGet();
+      return META;
+    });
+    Assert.assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    CConfiguration cConf = CConfiguration.create();
+    cConf.setInt(Constants.Dataset.CLIENT_CACHE_EXPIRY_SECS, 0);
+    DatasetMetaCache cache = new DatasetMetaCache(cConf);
+    AtomicInteger loads = new AtomicInteger();
+    for (int i = 0; i < 3; i++) {
+      cache.getInstance(DATASET, "alice", null, () -> {
+        loads.incrementAndGet();
+        return META;
+      });
+    }
+    Assert.assertEquals(3, loads.get());
+  }
+
+  @Test
+  public void testAuditInvalidation() throws Exception {
+    CConfiguration cConf = CConfiguration.create();
+    cConf.set(Constants.CFG_LOCAL_DATA_DIR, TEMP_FOLDER.newFolder().getAbsolutePath());
+    cConf.setLong(Constants.Dataset.CLIENT_CACHE_POLL_INTERVAL_MS, 0L);
+    Injector injector = Guice.createInjector(new ConfigModule(cConf),
+                                             new DiscoveryRuntimeModule().getInMemoryModules(),
+                                             new MessagingServerRuntimeModule().getInMemoryModules(),
+                                             new AbstractModule() {
+                                               @Override
+                                               protected void configure() {
+                                                 bind(MetricsCollectionService.class)
+                                                   .to(NoOpMetricsCollectionService.class);
+                                               }
+                                             });
+    MessagingService messagingService = injector.getInstance(MessagingService.class);
+    if (messagingService instanceof Service) {
+      ((Service) messagingService).startAndWait();
+    }
+    try {
+      DatasetMetaCache cache = new DatasetMetaCache(cConf);
+      cache.setMessagingService(messagingService);
+      AtomicInteger loads = new AtomicInteger();
+      DatasetMetaCache.Loader<DatasetMeta> loader = () -> {
+        loads.incrementAndGet();
+        return META;
+      };
+
+      cache.getInstance(DATASET, "alice", null, loader);
+      cache.getInstance(DATASET, "alice", null, loader);
+      Assert.assertEquals(1, loads.get());
+
+      // Access to the dataset and changes of other datasets don't invalidate the entry
+      ProgramId program = NamespaceId.DEFAULT.app("app").flow("flow");
+      publishAudit(messagingService, cConf, DATASET, AuditType.ACCESS, new AccessPayload(AccessType.READ, program));
+      publishAudit(messagingService, cConf, NamespaceId.DEFAULT.dataset("other"), AuditType.UPDATE,
+                   AuditPayload.EMPTY_PAYLOAD);
+      cache.getInstance(DATASET, "alice", null, loader);
+      Assert.assertEquals(1, loads.get());
+
+      // Changes of the dataset made by another process invalidate the entry
+      publishAudit(messagingService, cConf, DATASET, AuditType.UPDATE, AuditPayload.EMPTY_PAYLOAD);
+      cache.getInstance(DATASET, "alice", null, loader);
+      cache.getInstance(DATASET, "alice", null, loader);
+      Assert.assertEquals(2, loads.get());
+    } finally {
+      if (messagingService instanceof Service) {
+        ((Service) messagingService).stopAndWait();
+      }
+    }
+  }
+
+  private void publishAudit(MessagingService messagingService, CConfiguration cConf, DatasetId datasetId,
+                            AuditType auditType, AuditPayload payload) throws Exception {
+    AuditMessage message = new AuditMessage(System.currentTimeMillis(), datasetId, "user", auditType, payload);
+    messagingService.publish(StoreRequestBuilder.of(NamespaceId.SYSTEM.topic(cConf.get(Constants.Audit.TOPIC)))
+                               .addPayloads(GSON.toJson(message)).build());
+  }
+}
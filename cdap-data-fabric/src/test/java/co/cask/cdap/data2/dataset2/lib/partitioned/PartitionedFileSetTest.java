@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015-2017 Cask Data, Inc.
+ * Copyright © 2015-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -36,8 +36,10 @@ import co.cask.cdap.api.dataset.table.TableProperties;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.common.namespace.NamespacedLocationFactory;
 import co.cask.cdap.data2.dataset2.DatasetFrameworkTestUtil;
+import co.cask.cdap.data2.dataset2.lib.table.FuzzyRowFilter;
 import co.cask.cdap.proto.id.DatasetId;
 import co.cask.cdap.test.SlowTests;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
@@ -98,6 +100,11 @@ public class PartitionedFileSetTest {
     .addLongField("l")
     .addStringField("x")
     .build();
+  private static final Partitioning PARTITIONING_3 = Partitioning.builder()
+    .addIntField("i")
+    .addLongField("l")
+    .addStringField("s")
+    .build();
 
   // key can be in any order... partitioning dictates the order of fields in row key
   private static final PartitionKey PARTITION_KEY = PartitionKey.builder()
@@ -184,6 +191,70 @@ public class PartitionedFileSetTest {
     PartitionedFileSetDataset.parseRowKey(rowKey, PARTITIONING_2);
   }
 
+  @Test
+  public void testFuzzyFilter() {
+    // no condition after a field without condition, nothing to skip over
+    Assert.assertNull(PartitionedFileSetDataset.generateFuzzyFilter(
+      PartitionFilter.builder().addValueCondition("i", 1).build(), PARTITIONING_3));
+    // a range condition cannot be expressed as fuzzy key
+    Assert.assertNull(PartitionedFileSetDataset.generateFuzzyFilter(
+      PartitionFilter.builder().addRangeCondition("l", 1L, 5L).build(), PARTITIONING_3));
+    // the string field comes first, hence the offset of the other fields is unknown
+    Assert.assertNull(PartitionedFileSetDataset.generateFuzzyFilter(
+      PartitionFilter.builder().addValueCondition("l", 1L).build(), PARTITIONING_1));
+
+    FuzzyRowFilter filter = PartitionedFileSetDataset.generateFuzzyFilter(
+      PartitionFilter.builder().addValueCondition("l", 7L).addValueCondition("s", "x").build(), PARTITIONING_3);
+    Assert.assertNotNull(filter);
+    Assert.assertEquals(FuzzyRowFilter.ReturnCode.INCLUDE, filter.filterRow(generateRowKey(42, 7L, "x")));
+    Assert.assertEquals(FuzzyRowFilter.ReturnCode.INCLUDE, filter.filterRow(generateRowKey(-42, 7L, "x")));
+    Assert.assertNotEquals(FuzzyRowFilter.ReturnCode.INCLUDE, filter.filterRow(generateRowKey(42, 8L, "x")));
+    Assert.assertNotEquals(FuzzyRowFilter.ReturnCode.INCLUDE, filter.filterRow(generateRowKey(42, 7L, "y")));
+  }
+
+  private static byte[] generateRowKey(int i, long l, String s) {
+    PartitionKey key = PartitionKey.builder().addIntField("i", i).addLongField("l", l).addStringField("s", s).build();
+    return PartitionedFileSetDataset.generateRowKey(key, PARTITIONING_3);
+  }
+
+  @Test
+  public void testGetPartitionsWithFuzzyFilter() throws Exception {
+    DatasetId instance = DatasetFrameworkTestUtil.NAMESPACE_ID.dataset("fuzzy");
+    dsFrameworkUtil.createInstance("partitionedFileSet", instance, PartitionedFileSetProperties.builder()
+      .setPartitioning(PARTITIONING_3)
+      .build());
+    try {
+      final PartitionedFileSet dataset = dsFrameworkUtil.getInstance(instance);
+      final Set<BasicPartition> allPartitions = new HashSet<>();
+      dsFrameworkUtil.newTransactionExecutor((TransactionAware) dataset).execute(new TransactionExecutor.Subroutine() {
+        @Override
+        public void apply() throws Exception {
+          for (int i = -2; i < 3; i++) {
+            for (long l = -2; l < 3; l++) {
+              for (String s : new String[] { "a", "ab", "b" }) {
+                PartitionOutput output = dataset.getPartitionOutput(
+                  PartitionKey.builder().addIntField("i", i).addLongField("l", l).addStringField("s", s).build());
+                output.addPartition();
+                allPartitions.add(new BasicPartition((PartitionedFileSetDataset) dataset,
+                                                     output.getRelativePath(), output.getPartitionKey()));
+              }
+            }
+          }
+        }
+      });
+
+      testAllFilters(dataset, allPartitions, ImmutableList.of(
+        PartitionFilter.builder().addValueCondition("l", 1L).build(),
+        PartitionFilter.builder().addValueCondition("l", -2L).addValueCondition("s", "a").build(),
+        PartitionFilter.builder().addValueCondition("s", "a").build(),
+        PartitionFilter.builder().addRangeCondition("i", -1, 2).addValueCondition("l", 0L).build(),
+        PartitionFilter.builder().addRangeCondition("i", 0, null).addValueCondition("s", "ab").build(),
+        PartitionFilter.builder().addValueCondition("l", 5L).build()));
+    } finally {
+      dsFrameworkUtil.deleteInstance(instance);
+    }
+  }
+
   @Test
   public void testMetadataForNonexistentPartition() throws Exception {
     PartitionedFileSet pfs = dsFrameworkUtil.getInstance(pfsInstance);
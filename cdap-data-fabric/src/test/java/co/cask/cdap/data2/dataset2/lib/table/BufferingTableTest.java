@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2017 Cask Data, Inc.
+ * Copyright © 2014-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -30,6 +30,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.apache.tephra.Transaction;
 import org.apache.tephra.TransactionAware;
+import org.apache.tephra.TransactionConflictException;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -502,6 +503,99 @@ public abstract class BufferingTableTest<T extends BufferingTable> extends Table
     }
   }
 
+  @Test
+  public void testWriteBufferLimit() throws Exception {
+    // with a small write buffer, changes are persisted before commit and must still behave as if they were buffered
+    DatasetProperties props = TableProperties.builder().setWriteBufferMaxBytes(256).build();
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, MY_TABLE, props);
+    admin.create();
+    try {
+      int numRows = 100;
+      BufferingTable table = getTable(CONTEXT1, MY_TABLE, props);
+
+      // write more than the buffer can hold and verify it is all visible within the tx
+      Transaction tx1 = txClient.startShort();
+      table.startTx(tx1);
+      for (int i = 0; i < numRows; i++) {
+        table.put(Bytes.toBytes(i), C1, Bytes.toBytes((long) i));
+      }
+      Assert.assertEquals(numRows, countRows(table.scan(null, null)));
+      Assert.assertArrayEquals(Bytes.toBytes(1L), table.get(Bytes.toBytes(1), C1));
+      table.delete(Bytes.toBytes(0), C1);
+      Assert.assertNull(table.get(Bytes.toBytes(0), C1));
+      Assert.assertEquals(numRows, table.getTxChanges().size());
+
+      // rolling back must undo the changes that were already persisted
+      Assert.assertTrue(table.rollbackTx());
+      txClient.abort(tx1);
+
+      Transaction tx2 = txClient.startShort();
+      table.startTx(tx2);
+      Assert.assertEquals(0, countRows(table.scan(null, null)));
+      for (int i = 0; i < numRows; i++) {
+        table.put(Bytes.toBytes(i), C1, Bytes.toBytes((long) i));
+      }
+      // increment reads the persisted value written by this tx
+      Assert.assertArrayEquals(L5, table.incrementAndGet(Bytes.toBytes(1), a(C1), new long[] {4L}).get(C1));
+      Collection<byte[]> txChanges = table.getTxChanges();
+      Assert.assertEquals(numRows, txChanges.size());
+      txClient.canCommitOrThrow(tx2, txChanges);
+      Assert.assertTrue(table.commitTx());
+      txClient.commitOrThrow(tx2);
+      table.postTxCommit();
+
+      // verify everything was persisted
+      Transaction tx3 = txClient.startShort();
+      table.startTx(tx3);
+      Assert.assertEquals(numRows, countRows(table.scan(null, null)));
+      Assert.assertArrayEquals(L5, table.get(Bytes.toBytes(1), C1));
+      Assert.assertArrayEquals(Bytes.toBytes(99L), table.get(Bytes.toBytes(99), C1));
+      txClient.commitOrThrow(tx3);
+
+      // conflicts must be detected for changes persisted before commit
+      BufferingTable table2 = getTable(CONTEXT1, MY_TABLE, props);
+      Transaction tx4 = txClient.startShort();
+      Transaction tx5 = txClient.startShort();
+      table.startTx(tx4);
+      table2.startTx(tx5);
+      for (int i = 0; i < numRows; i++) {
+        table.put(Bytes.toBytes(i), C2, L1);
+      }
+      table2.put(Bytes.toBytes(0), C2, L2);
+      txClient.canCommitOrThrow(tx5, table2.getTxChanges());
+      Assert.assertTrue(table2.commitTx());
+      txClient.commitOrThrow(tx5);
+      try {
+        txClient.canCommitOrThrow(tx4, table.getTxChanges());
+        Assert.fail("Conflict not detected!");
+      } catch (TransactionConflictException e) {
+        // expected
+      }
+      Assert.assertTrue(table.rollbackTx());
+      txClient.abort(tx4);
+
+      Transaction tx6 = txClient.startShort();
+      table.startTx(tx6);
+      Assert.assertArrayEquals(L2, table.get(Bytes.toBytes(0), C2));
+      Assert.assertNull(table.get(Bytes.toBytes(1), C2));
+      txClient.commitOrThrow(tx6);
+    } finally {
+      admin.drop();
+    }
+  }
+
+  private int countRows(Scanner scanner) {
+    try {
+      int count = 0;
+      while (scanner.next() != null) {
+        count++;
+      }
+      return count;
+    } finally {
+      scanner.close();
+    }
+  }
+
   private void verify123(BufferingTable table) throws Exception {
     byte[] row = new byte[] {1};
     byte[] col = new byte[] {2};
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2016 Cask Data, Inc.
+ * Copyright © 2014-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -29,6 +29,7 @@ import co.cask.cdap.data2.util.TableId;
 import co.cask.cdap.security.auth.context.AuthenticationContextModules;
 import co.cask.cdap.security.authorization.AuthorizationEnforcementModule;
 import co.cask.cdap.security.authorization.AuthorizationTestModule;
+import com.google.common.collect.ImmutableMap;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import org.junit.Assert;
@@ -38,7 +39,15 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
 import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -112,6 +121,66 @@ public class LevelDBTableServiceTest {
     Assert.assertEquals(table2Size, service.getTableStats().get(tableId2).getDiskSizeBytes());
   }
 
+  @Test
+  public void testConcurrentIncrements() throws Exception {
+    final String tableName = "cdap_default.increments";
+    service.ensureTableExists(tableName);
+
+    final byte[][] rows = { Bytes.toBytes("r1"), Bytes.toBytes("r2"), Bytes.toBytes("r3") };
+    final byte[] column = Bytes.toBytes("c");
+    final int threads = 8;
+    final int iterations = 200;
+
+    // Each thread uses its own core instance, alternating between single row and batched increments
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            LevelDBTableCore table = new LevelDBTableCore(tableName, service);
+            for (int j = 0; j < iterations; j++) {
+              if (j % 2 == 0) {
+                table.increment(rows[j % rows.length], ImmutableMap.of(column, 1L));
+              } else {
+                NavigableMap<byte[], NavigableMap<byte[], Long>> updates = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+                for (byte[] row : rows) {
+                  NavigableMap<byte[], Long> increments = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+                  increments.put(column, 1L);
+                  updates.put(row, increments);
+                }
+                table.increment(updates);
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // Each row gets one increment per batch, plus the single row increments distributed among rows
+    LevelDBTableCore table = new LevelDBTableCore(tableName, service);
+    long total = 0L;
+    for (byte[] row : rows) {
+      total += Bytes.toLong(table.getRow(row, new byte[][] { column }, null, null, -1, null).get(column));
+    }
+    int batches = threads * iterations / 2;
+    int singles = threads * iterations / 2;
+    Assert.assertEquals(batches * rows.length + singles, total);
+
+    LevelDBTableService.TableStats stats = service.getTableStats().get(TableId.from("default", "increments"));
+    Assert.assertEquals(batches * rows.length + singles, stats.getIncrementedColumns());
+    Assert.assertEquals(batches + singles, stats.getIncrementBatches());
+
+    service.dropTable(tableName);
+  }
+
   private void writeSome(String tableName) throws IOException {
     LevelDBTableCore table = new LevelDBTableCore(tableName, service);
     Random r = new Random();
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -39,6 +39,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Test base for {@link co.cask.cdap.data2.dataset2.lib.timeseries.FactTable}.
@@ -510,6 +511,62 @@ public class FactTableTest {
     }
   }
 
+  @Test
+  public void testWriteBuffer() throws Exception {
+    InMemoryTableService.create("BufferedEntityTable");
+    InMemoryTableService.create("BufferedDataTable");
+    int resolution = 10;
+    int rollTimebaseInterval = 2;
+
+    InMemoryMetricsTable metricsTable = new InMemoryMetricsTable("BufferedDataTable");
+    // buffer up to 3 cells, without time based flushing during the test
+    FactTable table = new FactTable(metricsTable,
+                                    new EntityTable(new InMemoryMetricsTable("BufferedEntityTable")),
+                                    resolution, rollTimebaseInterval, 3, TimeUnit.HOURS.toMillis(1));
+
+    long ts = System.currentTimeMillis() / 1000;
+    List<DimensionValue> dims = dimValues("dim1", "value1");
+
+    // increments and gauges of the same cells are coalesced in the buffer
+    for (int i = 1; i <= 10; i++) {
+      writeInc(table, "counter", ts, i, "dim1", "value1");
+      table.add(ImmutableList.of(new Fact(ts, dims, new Measurement("gauge", MeasureType.GAUGE, i))));
+    }
+    Assert.assertEquals(0, countRows(metricsTable));
+
+    // scanning the fact table makes the buffered writes visible
+    Table<String, List<DimensionValue>, List<TimeValue>> expected = HashBasedTable.create();
+    expected.put("counter", dims, timeValues(ts, resolution, 55));
+    assertScan(table, expected, new FactScan(ts, ts, "counter", dims));
+    Assert.assertEquals(2, countRows(metricsTable));
+    expected.clear();
+    expected.put("gauge", dims, timeValues(ts, resolution, 10));
+    assertScan(table, expected, new FactScan(ts, ts, "gauge", dims));
+
+    // the buffer is flushed when reaching its maximum number of cells
+    writeInc(table, "counter", ts, 1, "dim1", "value1");
+    writeInc(table, "counter", ts, 1, "dim2", "value2");
+    Assert.assertEquals(2, countRows(metricsTable));
+    writeInc(table, "counter", ts, 1, "dim3", "value3");
+    Assert.assertEquals(4, countRows(metricsTable));
+
+    // closing the table flushes the buffer
+    writeInc(table, "counter", ts, 1, "dim4", "value4");
+    Assert.assertEquals(4, countRows(metricsTable));
+    table.close();
+    Assert.assertEquals(5, countRows(metricsTable));
+  }
+
+  private int countRows(InMemoryMetricsTable metricsTable) {
+    int count = 0;
+    try (Scanner scanner = metricsTable.scan(null, null, null)) {
+      while (scanner.next() != null) {
+        count++;
+      }
+    }
+    return count;
+  }
+
   @Test
   public void testPreSplits() throws Exception {
     InMemoryTableService.create("presplitEntityTable");
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015-2016 Cask Data, Inc.
+ * Copyright © 2015-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -66,6 +66,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -409,6 +410,85 @@ public class MetadataStoreTest {
       ImmutableList.of(streamSearchResult, flowSearchResult),
       ImmutableList.copyOf(stripMetadata(response.getResults()))
     );
+
+    // cursors point to the first result of the subsequent pages
+    response = search(ns.getNamespace(), "tag*", 0, 1, 3);
+    Assert.assertEquals(3, response.getTotal());
+    Assert.assertEquals(
+      ImmutableList.of(datasetSearchResult),
+      ImmutableList.copyOf(stripMetadata(response.getResults()))
+    );
+    Assert.assertEquals(ImmutableList.of("1", "2"), response.getCursors());
+
+    // offset is applied starting at the cursor
+    response = search(ns.getNamespace(), "tag*", 0, 1, 1, response.getCursors().get(0));
+    Assert.assertEquals(
+      ImmutableList.of(streamSearchResult),
+      ImmutableList.copyOf(stripMetadata(response.getResults()))
+    );
+    Assert.assertEquals(ImmutableList.of("2"), response.getCursors());
+    response = search(ns.getNamespace(), "tag*", 1, 1, 1, "1");
+    Assert.assertEquals(
+      ImmutableList.of(flowSearchResult),
+      ImmutableList.copyOf(stripMetadata(response.getResults()))
+    );
+    Assert.assertTrue(response.getCursors().isEmpty());
+
+    // cursor plus offset past Integer.MAX_VALUE should not overflow
+    response = search(ns.getNamespace(), "tag*", Integer.MAX_VALUE, Integer.MAX_VALUE, 1, "2");
+    Assert.assertEquals(3, response.getTotal());
+    Assert.assertTrue(response.getResults().isEmpty());
+    Assert.assertTrue(response.getCursors().isEmpty());
+
+    try {
+      search(ns.getNamespace(), "tag*", 0, 1, 1, "invalid");
+      Assert.fail("Expected BadRequestException for an invalid cursor");
+    } catch (BadRequestException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testTopEntities() {
+    NamespaceId ns = new NamespaceId("ns");
+    DatasetId a = ns.dataset("a");
+    DatasetId b = ns.dataset("b");
+    DatasetId c = ns.dataset("c");
+    DatasetId d = ns.dataset("d");
+    DatasetId e = ns.dataset("e");
+    DatasetId f = ns.dataset("f");
+
+    // scores in the order the results were found
+    Map<NamespacedEntityId, Integer> scores = new LinkedHashMap<>();
+    scores.put(a, 1);
+    scores.put(b, 3);
+    scores.put(c, 2);
+    scores.put(d, 3);
+    scores.put(e, 1);
+    scores.put(f, 2);
+
+    // entities with the same score are in the order they were found
+    List<NamespacedEntityId> expected = ImmutableList.<NamespacedEntityId>of(b, d, c, f, a, e);
+    Assert.assertEquals(expected, getTopEntities(scores, 0, Integer.MAX_VALUE));
+    Assert.assertEquals(expected.subList(0, 3), getTopEntities(scores, 0, 3));
+
+    // pages are disjoint, also when a page boundary falls between entities with the same score
+    Assert.assertEquals(ImmutableList.<NamespacedEntityId>of(d, c), getTopEntities(scores, 1, 3));
+    List<NamespacedEntityId> paged = new ArrayList<>();
+    for (int i = 0; i < scores.size(); i++) {
+      paged.addAll(getTopEntities(scores, i, i + 1));
+    }
+    Assert.assertEquals(expected, paged);
+
+    // start and end index near Integer.MAX_VALUE
+    Assert.assertEquals(expected.subList(4, 6), getTopEntities(scores, 4, Integer.MAX_VALUE));
+    Assert.assertTrue(getTopEntities(scores, Integer.MAX_VALUE - 1, Integer.MAX_VALUE).isEmpty());
+    Assert.assertTrue(getTopEntities(scores, Integer.MAX_VALUE, Integer.MAX_VALUE).isEmpty());
+
+    // fewer results than the start index
+    Assert.assertTrue(getTopEntities(scores, 6, 8).isEmpty());
+    Assert.assertTrue(getTopEntities(scores, 10, 12).isEmpty());
+    Assert.assertTrue(getTopEntities(new LinkedHashMap<NamespacedEntityId, Integer>(), 0, 1).isEmpty());
   }
 
   @AfterClass
@@ -416,6 +496,11 @@ public class MetadataStoreTest {
     txManager.stopAndWait();
   }
 
+  private List<NamespacedEntityId> getTopEntities(Map<NamespacedEntityId, Integer> scores,
+                                                  int startIndex, int endIndex) {
+    return new ArrayList<>(DefaultMetadataStore.getTopEntities(scores, startIndex, endIndex));
+  }
+
   private MetadataSearchResponse search(String ns, String searchQuery) throws BadRequestException {
     return search(ns, searchQuery, 0, Integer.MAX_VALUE, 0);
   }
@@ -431,6 +516,14 @@ public class MetadataStoreTest {
     return search(ns, searchQuery, offset, limit, numCursors, showHidden, SortInfo.DEFAULT);
   }
 
+  private MetadataSearchResponse search(String ns, String searchQuery,
+                                        int offset, int limit, int numCursors, String cursor)
+    throws BadRequestException {
+    return store.search(
+      ns, searchQuery, EnumSet.allOf(EntityTypeSimpleName.class),
+      SortInfo.DEFAULT, offset, limit, numCursors, cursor, false, EnumSet.allOf(EntityScope.class));
+  }
+
   private MetadataSearchResponse search(String ns, String searchQuery,
                                         int offset, int limit, int numCursors, boolean showHidden, SortInfo sortInfo)
     throws BadRequestException {
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016-2017 Cask Data, Inc.
+ * Copyright © 2016-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -22,6 +22,7 @@ import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.conf.SConfiguration;
 import co.cask.cdap.gateway.router.handlers.AuditLogHandler;
 import co.cask.cdap.gateway.router.handlers.AuthenticationHandler;
+import co.cask.cdap.gateway.router.handlers.BackendConnectionPool;
 import co.cask.cdap.gateway.router.handlers.HttpRequestRouter;
 import co.cask.cdap.gateway.router.handlers.HttpStatusRequestHandler;
 import co.cask.cdap.security.auth.AccessTokenTransformer;
@@ -84,6 +85,8 @@ public class NettyRouter extends AbstractIdleService {
   private final CConfiguration cConf;
   private final boolean sslEnabled;
   private final SSLHandlerFactory sslHandlerFactory;
+  private final BackendConnectionPool connectionPool;
+  private final long poolStatsLogIntervalSecs;
 
   private DiscoveryServiceClient discoveryServiceClient;
   private Cancellable serverCancellable;
@@ -105,6 +108,8 @@ public class NettyRouter extends AbstractIdleService {
     this.accessTokenTransformer = accessTokenTransformer;
     this.discoveryServiceClient = discoveryServiceClient;
     this.sslEnabled = cConf.getBoolean(Constants.Security.SSL.EXTERNAL_ENABLED);
+    this.connectionPool = new BackendConnectionPool(cConf);
+    this.poolStatsLogIntervalSecs = cConf.getLong(Constants.Router.CLIENT_POOL_STATS_LOG_INTERVAL_SECS);
     if (isSSLEnabled()) {
       this.serviceToPortMap.put(Constants.Router.GATEWAY_DISCOVERY_NAME,
                                 cConf.getInt(Constants.Router.ROUTER_SSL_PORT));
@@ -133,7 +138,14 @@ public class NettyRouter extends AbstractIdleService {
   protected void startUp() throws Exception {
     tokenValidator.startAndWait();
     ChannelGroup channelGroup = new DefaultChannelGroup(ImmediateEventExecutor.INSTANCE);
-    serverCancellable = startServer(createServerBootstrap(channelGroup), channelGroup);
+    ServerBootstrap serverBootstrap = createServerBootstrap(channelGroup);
+    serverCancellable = startServer(serverBootstrap, channelGroup);
+    if (poolStatsLogIntervalSecs > 0) {
+      // The task is cancelled when the worker group shuts down
+      serverBootstrap.config().childGroup().scheduleAtFixedRate(new ConnectionPoolStatsLogger(),
+                                                               poolStatsLogIntervalSecs, poolStatsLogIntervalSecs,
+                                                               TimeUnit.SECONDS);
+    }
   }
 
   @Override
@@ -143,7 +155,8 @@ public class NettyRouter extends AbstractIdleService {
     serverCancellable.cancel();
     tokenValidator.stopAndWait();
 
-    LOG.info("Stopped Netty Router.");
+    LOG.info("Stopped Netty Router. Requests on pooled connections: {}, new connections: {} in {} ms in total.",
+             connectionPool.getHitCount(), connectionPool.getConnectCount(), connectionPool.getConnectTimeMillis());
   }
 
   /** @noinspection NullableProblems */
@@ -197,7 +210,7 @@ public class NettyRouter extends AbstractIdleService {
           // Always let the client to continue sending the request body after the authentication passed
           pipeline.addLast("expect-continue", new HttpServerExpectContinueHandler());
           // for now there's only one hardcoded rule, but if there will be more, we may want it generic and configurable
-          pipeline.addLast("http-request-handler", new HttpRequestRouter(cConf, serviceLookup));
+          pipeline.addLast("http-request-handler", new HttpRequestRouter(cConf, serviceLookup, connectionPool));
         }
       });
   }
@@ -257,4 +270,26 @@ public class NettyRouter extends AbstractIdleService {
   private boolean isSSLEnabled() {
     return sslEnabled;
   }
+
+  /**
+   * Logs the backend connection pool counters, if they changed since the last time.
+   */
+  private final class ConnectionPoolStatsLogger implements Runnable {
+
+    private long lastHits;
+    private long lastConnects;
+
+    @Override
+    public void run() {
+      long hits = connectionPool.getHitCount();
+      long connects = connectionPool.getConnectCount();
+      if (hits == lastHits && connects == lastConnects) {
+        return;
+      }
+      LOG.info("Requests on pooled connections: {}, new connections: {} in {} ms, since the router started.",
+               hits, connects, connectionPool.getConnectTimeMillis());
+      lastHits = hits;
+      lastConnects = connects;
+    }
+  }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2016 Cask Data, Inc.
+ * Copyright © 2014-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -20,19 +20,21 @@ import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.service.ServiceDiscoverable;
 import co.cask.cdap.proto.ProgramType;
 import co.cask.http.AbstractHttpHandler;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpRequest;
-import org.apache.commons.lang.StringUtils;
+
+import java.util.Set;
 
 /**
- * Class to match the request path to corresponding service like app-fabric, or metrics service.
+ * Class to match the request path to corresponding service like app-fabric, or metrics service. The routes are
+ * compiled into a {@link RouterPathTrie} once, so that a request path is matched in a single pass.
  */
 public final class RouterPathLookup extends AbstractHttpHandler {
 
-  @SuppressWarnings("unused")
-  private enum AllowedMethod {
-    GET, PUT, POST, DELETE
-  }
-
   public static final RouteDestination APP_FABRIC_HTTP = new RouteDestination(Constants.Service.APP_FABRIC_HTTP);
   public static final RouteDestination METRICS = new RouteDestination(Constants.Service.METRICS);
   public static final RouteDestination DATASET_MANAGER = new RouteDestination(Constants.Service.DATASET_MANAGER);
@@ -48,6 +50,14 @@ public final class RouterPathLookup extends AbstractHttpHandler {
   public static final RouteDestination MESSAGING = new RouteDestination(Constants.Service.MESSAGING_SERVICE);
   public static final RouteDestination DONT_ROUTE = new RouteDestination(Constants.Router.DONT_ROUTE_SERVICE);
 
+  private static final Set<HttpMethod> ALLOWED_METHODS = ImmutableSet.of(HttpMethod.GET, HttpMethod.PUT,
+                                                                         HttpMethod.POST, HttpMethod.DELETE);
+  private static final String USER_SERVICE_TYPES = Joiner.on('|').join(
+    Iterables.transform(ServiceDiscoverable.getUserServiceTypes(), ProgramType::getCategoryName));
+  private static final String METADATA_TARGETS = "apps/*|apps/*/*/*|artifacts/*/versions/*|datasets/*|streams/*"
+    + "|streams/*/views/*";
+  private static final RouterPathTrie V3_ROUTES = createV3Routes();
+
   /**
    * Returns the CDAP service which will handle the HttpRequest
    *
@@ -57,184 +67,110 @@ public final class RouterPathLookup extends AbstractHttpHandler {
    * @return destination service
    */
   public RouteDestination getRoutingService(String fallbackService, String requestPath, HttpRequest httpRequest) {
-    try {
-      String method = httpRequest.method().name();
-      AllowedMethod requestMethod = AllowedMethod.valueOf(method);
-      String[] uriParts = StringUtils.split(requestPath, '/');
-
-      //Check if the call should go to webapp
-      //If service contains "$HOST" and if first split element is NOT the gateway version, then send it to WebApp
-      //WebApp serves only static files (HTML, CSS, JS) and so /<appname> calls should go to WebApp
-      //But stream calls issued by the UI should be routed to the appropriate CDAP service
-      if (fallbackService.contains("$HOST") && (uriParts.length >= 1)
-        && !("/" + uriParts[0]).equals(Constants.Gateway.API_VERSION_3)) {
-        return new RouteDestination(fallbackService);
-      }
-      if (uriParts[0].equals(Constants.Gateway.API_VERSION_3_TOKEN)) {
-        return getV3RoutingService(uriParts, requestMethod);
-      }
-    } catch (Exception e) {
-      // Ignore exception. Default routing to app-fabric.
+    HttpMethod method = httpRequest.method();
+    RouterPathTrie.PathSegments segments = new RouterPathTrie.PathSegments(requestPath);
+    if (!ALLOWED_METHODS.contains(method) || segments.size() == 0) {
+      return APP_FABRIC_HTTP;
     }
-    return APP_FABRIC_HTTP;
-  }
 
-  private boolean isUserServiceType(String uriPart) {
-    for (ProgramType type : ServiceDiscoverable.getUserServiceTypes()) {
-      if (type.getCategoryName().equals(uriPart)) {
-        return true;
+    boolean isV3 = segments.matches(0, Constants.Gateway.API_VERSION_3_TOKEN);
+    //Check if the call should go to webapp
+    //If service contains "$HOST" and if first split element is NOT the gateway version, then send it to WebApp
+    //WebApp serves only static files (HTML, CSS, JS) and so /<appname> calls should go to WebApp
+    //But stream calls issued by the UI should be routed to the appropriate CDAP service
+    if (fallbackService.contains("$HOST") && !isV3) {
+      return new RouteDestination(fallbackService);
+    }
+    if (isV3) {
+      RouterPathTrie.Route route = V3_ROUTES.find(segments, method);
+      if (route != null) {
+        return route.getDestination(segments);
       }
     }
-    return false;
+    return APP_FABRIC_HTTP;
   }
 
-  private RouteDestination getV3RoutingService(String [] uriParts, AllowedMethod requestMethod) {
-    if ((uriParts.length >= 2) && uriParts[1].equals("feeds")) {
+  /**
+   * Creates the routes for v3 paths, in the order they are matched.
+   */
+  private static RouterPathTrie createV3Routes() {
+    RouterPathTrie.Builder builder = RouterPathTrie.builder()
       // TODO find a better way to handle that - this looks hackish
-      return null;
-    } else if ((uriParts.length >= 11) && "versions".equals(uriParts[5]) && isUserServiceType(uriParts[7])
-      && "methods".equals(uriParts[9])) {
+      .add("v3/feeds", (RouteDestination) null)
       // User defined services (version specific) handle methods on them:
       //Path: "/v3/namespaces/{namespace-id}/apps/{app-id}/versions/{version-id}/services/{service-id}/methods/
       //       <user-defined-method-path>"
-      String serviceName = ServiceDiscoverable.getName(uriParts[2], uriParts[4],
-                                                       ProgramType.valueOfCategoryName(uriParts[7]), uriParts[8]);
-      String version = uriParts[6];
-      return new RouteDestination(serviceName, version);
-    } else if ((uriParts.length >= 9) && isUserServiceType(uriParts[5]) && "methods".equals(uriParts[7])) {
+      .add("v3/*/*/*/*/versions/*/" + USER_SERVICE_TYPES + "/*/methods/*",
+           segments -> new RouteDestination(
+             ServiceDiscoverable.getName(segments.get(2), segments.get(4),
+                                         ProgramType.valueOfCategoryName(segments.get(7)), segments.get(8)),
+             segments.get(6)))
       //User defined services handle methods on them:
       //Path: "/v3/namespaces/{namespace-id}/apps/{app-id}/services/{service-id}/methods/<user-defined-method-path>"
-      return new RouteDestination(ServiceDiscoverable.getName(uriParts[2], uriParts[4],
-                                                              ProgramType.valueOfCategoryName(uriParts[5]),
-                                                              uriParts[6]));
-    } else if (matches(uriParts, "v3", "system", "services", null, "logs")) {
+      .add("v3/*/*/*/*/" + USER_SERVICE_TYPES + "/*/methods/*",
+           segments -> new RouteDestination(
+             ServiceDiscoverable.getName(segments.get(2), segments.get(4),
+                                         ProgramType.valueOfCategoryName(segments.get(5)), segments.get(6))))
       //Log Handler Path /v3/system/services/<service-id>/logs
-      return METRICS;
-    } else if (matches(uriParts, "v3", "namespaces", null, "apps", null, "metadata") ||
-      matches(uriParts, "v3", "namespaces", null, "apps", null, null, null, "metadata") ||
-      matches(uriParts, "v3", "namespaces", null, "artifacts", null, "versions", null, "metadata") ||
-      matches(uriParts, "v3", "namespaces", null, "datasets", null, "metadata") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "metadata") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "views", null, "metadata") ||
+      .add("v3/system/services/*/logs", METRICS);
 
-      matches(uriParts, "v3", "namespaces", null, "apps", null, "metadata", "properties") ||
-      matches(uriParts, "v3", "namespaces", null, "artifacts", null, "versions", null, "metadata", "properties") ||
-      matches(uriParts, "v3", "namespaces", null, "apps", null, null, null, "metadata", "properties") ||
-      matches(uriParts, "v3", "namespaces", null, "datasets", null, "metadata", "properties") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "metadata", "properties") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "views", null, "metadata", "properties") ||
-
-      matches(uriParts, "v3", "namespaces", null, "apps", null, "metadata", "tags") ||
-      matches(uriParts, "v3", "namespaces", null, "artifacts", null, "versions", null, "metadata", "tags") ||
-      matches(uriParts, "v3", "namespaces", null, "apps", null, null, null, "metadata", "tags") ||
-      matches(uriParts, "v3", "namespaces", null, "datasets", null, "metadata", "tags") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "metadata", "tags") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "views", null, "metadata", "tags") ||
-
-      matches(uriParts, "v3", "namespaces", null, "metadata", "search") ||
-      matches(uriParts, "v3", "namespaces", null, "datasets", null, "lineage") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "lineage") ||
-      matches(uriParts, "v3", "namespaces", null, "apps", null, null, null, "runs", null, "metadata")) {
-      return METADATA_SERVICE;
-    } else if (matches(uriParts, "v3", "security", "authorization") ||
-      matches(uriParts, "v3", "namespaces", null, "securekeys")) {
+    for (String target : Splitter.on('|').split(METADATA_TARGETS)) {
+      builder.add("v3/namespaces/*/" + target + "/metadata", METADATA_SERVICE);
+    }
+    builder
+      .add("v3/namespaces/*/metadata/search", METADATA_SERVICE)
+      .add("v3/namespaces/*/datasets|streams/*/lineage", METADATA_SERVICE)
+      .add("v3/namespaces/*/apps/*/*/*/runs/*/metadata", METADATA_SERVICE)
       // Authorization and Secure Store Handlers currently run in App Fabric
-      return APP_FABRIC_HTTP;
-    } else if (matches(uriParts, "v3", "security", "store", "namespaces", null)) {
-      return APP_FABRIC_HTTP;
-    } else if ((matches(uriParts, "v3", "namespaces", null, "streams", null, "programs")
-      || matches(uriParts, "v3", "namespaces", null, "data", "datasets", null, "programs")) &&
-      requestMethod.equals(AllowedMethod.GET)) {
-      return APP_FABRIC_HTTP;
-    } else if (matches(uriParts, "v3", "namespaces", null, "previews")) {
-      return PREVIEW_HTTP;
-    } else if (matches(uriParts, "v3", "system", "serviceproviders")) {
-      return APP_FABRIC_HTTP;
-    } else if ((uriParts.length >= 4) && uriParts[1].equals("namespaces") && uriParts[3].equals("streams")) {
-      return STREAMS_SERVICE;
-    } else if ((uriParts.length >= 8 && uriParts[7].equals("logs")) ||
-      (uriParts.length >= 10 && uriParts[9].equals("logs")) ||
-      (uriParts.length >= 6 && uriParts[5].equals("logs"))) {
+      .add("v3/security/authorization", APP_FABRIC_HTTP)
+      .add("v3/namespaces/*/securekeys", APP_FABRIC_HTTP)
+      .add("v3/security/store/namespaces/*", APP_FABRIC_HTTP)
+      .add("v3/namespaces/*/streams/*/programs", HttpMethod.GET, APP_FABRIC_HTTP)
+      .add("v3/namespaces/*/data/datasets/*/programs", HttpMethod.GET, APP_FABRIC_HTTP)
+      .add("v3/namespaces/*/previews", PREVIEW_HTTP)
+      .add("v3/system/serviceproviders", APP_FABRIC_HTTP)
+      .add("v3/namespaces/*/streams", STREAMS_SERVICE)
       //Log Handler Paths:
       // /v3/namespaces/<namespaceid>/apps/<appid>/<programid-type>/<programid>/logs
       // /v3/namespaces/{namespace-id}/apps/{app-id}/{program-type}/{program-id}/runs/{run-id}/logs
-      return METRICS;
-    } else if (uriParts.length >= 2 && uriParts[1].equals("metrics")) {
+      .add("v3/*/*/*/*/*/*/logs", METRICS)
+      .add("v3/*/*/*/*/*/*/*/*/logs", METRICS)
+      .add("v3/*/*/*/*/logs", METRICS)
       //Metrics Search Handler Path /v3/metrics
-      return METRICS;
-    } else if (uriParts.length >= 5 && uriParts[1].equals("data") && uriParts[2].equals("explore") &&
-      (uriParts[3].equals("queries") || uriParts[3].equals("jdbc") || uriParts[3].equals("namespaces"))) {
+      .add("v3/metrics", METRICS)
       // non-namespaced explore operations. For example, /v3/data/explore/queries/{id}
-      return EXPLORE_HTTP_USER_SERVICE;
-    } else if (uriParts.length >= 6 && uriParts[3].equals("data") && uriParts[4].equals("explore") &&
-      (uriParts[5].equals("queries") || uriParts[5].equals("streams") || uriParts[5].equals("datasets")
-        || uriParts[5].equals("tables") || uriParts[5].equals("jdbc"))) {
+      .add("v3/data/explore/queries|jdbc|namespaces/*", EXPLORE_HTTP_USER_SERVICE)
       // namespaced explore operations. For example, /v3/namespaces/{namespace-id}/data/explore/streams/{stream}/enable
-      return EXPLORE_HTTP_USER_SERVICE;
-    } else if ((uriParts.length == 3) && uriParts[1].equals("explore") && uriParts[2].equals("status")) {
-      return EXPLORE_HTTP_USER_SERVICE;
-    } else if (matches(uriParts, "v3", "system", "services", null, "status")
-      || matches(uriParts, "v3", "system", "services", null, "stacks")) {
-      switch (uriParts[3]) {
-        case Constants.Service.LOGSAVER: return LOG_SAVER;
-        case Constants.Service.TRANSACTION: return TRANSACTION;
-        case Constants.Service.METRICS_PROCESSOR: return METRICS_PROCESSOR;
-        case Constants.Service.METRICS: return METRICS;
-        case Constants.Service.APP_FABRIC_HTTP: return APP_FABRIC_HTTP;
-        case Constants.Service.STREAMS: return STREAMS_SERVICE;
-        case Constants.Service.DATASET_EXECUTOR: return DATASET_EXECUTOR;
-        case Constants.Service.REMOTE_SYSTEM_OPERATION: return DATASET_EXECUTOR;
-        case Constants.Service.METADATA_SERVICE: return METADATA_SERVICE;
-        case Constants.Service.EXPLORE_HTTP_USER_SERVICE: return EXPLORE_HTTP_USER_SERVICE;
-        case Constants.Service.MESSAGING_SERVICE: return MESSAGING;
-        default: return null;
-      }
-    } else if (uriParts.length == 7 && uriParts[3].equals("data") && uriParts[4].equals("datasets") &&
-      (uriParts[6].equals("flows") || uriParts[6].equals("workers") || uriParts[6].equals("mapreduce"))) {
+      .add("v3/*/*/data/explore/queries|streams|datasets|tables|jdbc", EXPLORE_HTTP_USER_SERVICE)
+      .addExact("v3/explore/status", EXPLORE_HTTP_USER_SERVICE)
+      .add("v3/system/services/" + Constants.Service.LOGSAVER + "/status|stacks", LOG_SAVER)
+      .add("v3/system/services/" + Constants.Service.TRANSACTION + "/status|stacks", TRANSACTION)
+      .add("v3/system/services/" + Constants.Service.METRICS_PROCESSOR + "/status|stacks", METRICS_PROCESSOR)
+      .add("v3/system/services/" + Constants.Service.METRICS + "/status|stacks", METRICS)
+      .add("v3/system/services/" + Constants.Service.APP_FABRIC_HTTP + "/status|stacks", APP_FABRIC_HTTP)
+      .add("v3/system/services/" + Constants.Service.STREAMS + "/status|stacks", STREAMS_SERVICE)
+      .add("v3/system/services/" + Constants.Service.DATASET_EXECUTOR + "/status|stacks", DATASET_EXECUTOR)
+      .add("v3/system/services/" + Constants.Service.REMOTE_SYSTEM_OPERATION + "/status|stacks", DATASET_EXECUTOR)
+      .add("v3/system/services/" + Constants.Service.METADATA_SERVICE + "/status|stacks", METADATA_SERVICE)
+      .add("v3/system/services/" + Constants.Service.EXPLORE_HTTP_USER_SERVICE + "/status|stacks",
+           EXPLORE_HTTP_USER_SERVICE)
+      .add("v3/system/services/" + Constants.Service.MESSAGING_SERVICE + "/status|stacks", MESSAGING)
+      .add("v3/system/services/*/status|stacks", (RouteDestination) null)
       // namespaced app fabric data operations:
       // /v3/namespaces/{namespace-id}/data/datasets/{name}/flows
       // /v3/namespaces/{namespace-id}/data/datasets/{name}/workers
       // /v3/namespaces/{namespace-id}/data/datasets/{name}/mapreduce
-      return APP_FABRIC_HTTP;
-    } else if ((uriParts.length >= 4) && uriParts[3].equals("data")) {
+      .addExact("v3/*/*/data/datasets/*/flows|workers|mapreduce", APP_FABRIC_HTTP)
       // other data operations. For example:
       // /v3/namespaces/{namespace-id}/data/datasets
       // /v3/namespaces/{namespace-id}/data/datasets/{name}
       // /v3/namespaces/{namespace-id}/data/datasets/{name}/properties
       // /v3/namespaces/{namespace-id}/data/datasets/{name}/admin/{method}
-      return DATASET_MANAGER;
-    } else if ((uriParts.length >= 4) && uriParts[3].equals("artifact-internals")) {
+      .add("v3/*/*/data", DATASET_MANAGER)
       // we don't want to expose endpoints in artifact handler that are internal and can only by called by programs
       // /v3/namespaces/{namespace-id}/artifact-internals/list/artifacts
       // /v3/namespaces/{namespace-id}/artifact-internals/artifact/{artifact-name}
-      return DONT_ROUTE;
-    }
-    return APP_FABRIC_HTTP;
-  }
-
-  /**
-   * Determines if actual matches expected.
-   *
-   * - actual may be longer than expected, but we'll return true as long as expected was found
-   * - null in expected means "accept any string"
-   *
-   * @param actual actual string array to check
-   * @param expected expected string array format
-   * @return true if actual matches expected
-   */
-  private boolean matches(String[] actual, String... expected) {
-    if (actual.length < expected.length) {
-      return false;
-    }
-
-    for (int i = 0; i < expected.length; i++) {
-      if (expected[i] == null) {
-        continue;
-      }
-      if (!expected[i].equals(actual[i])) {
-        return false;
-      }
-    }
-    return true;
+      .add("v3/*/*/artifact-internals", DONT_ROUTE);
+    return builder.build();
   }
 }
@@ -0,0 +1,285 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.gateway.router;
+
+import com.google.common.base.Splitter;
+import io.netty.handler.codec.http.HttpMethod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * A trie of URI path patterns, built once, for finding the {@link RouteDestination} of a request path in a single
+ * pass over the path segments. A pattern is a {@code /} separated list of segments, where each segment is either a
+ * literal, a {@code |} separated list of literals, or {@code *} which matches any segment. A pattern matches paths
+ * that start with its segments, or only paths with exactly its segments if it is added with
+ * {@link Builder#addExact(String, RouteDestination)}. If multiple patterns match a path, the one added first is used.
+ */
+final class RouterPathTrie {
+
+  private final Node root;
+
+  private RouterPathTrie(Node root) {
+    this.root = root;
+  }
+
+  static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Finds the route for the given path.
+   *
+   * @param segments segments of the request path
+   * @param method method of the request
+   * @return the {@link Route} of the first added pattern that matches, or {@code null} if no pattern matches
+   */
+  @Nullable
+  Route find(PathSegments segments, HttpMethod method) {
+    Route[] best = new Route[1];
+    find(root, segments, 0, method, best);
+    return best[0];
+  }
+
+  private void find(Node node, PathSegments segments, int depth, HttpMethod method, Route[] best) {
+    // Routes in this subtree are all added after the best route found so far
+    if (best[0] != null && node.minOrder > best[0].order) {
+      return;
+    }
+    for (Route route : node.routes) {
+      if ((best[0] == null || route.order < best[0].order)
+        && (!route.exact || depth == segments.size())
+        && (route.method == null || route.method.equals(method))) {
+        best[0] = route;
+      }
+    }
+    if (depth == segments.size()) {
+      return;
+    }
+    for (int i = 0; i < node.literals.length; i++) {
+      if (segments.matches(depth, node.literals[i])) {
+        find(node.literalChildren[i], segments, depth + 1, method, best);
+      }
+    }
+    if (node.wildcardChild != null) {
+      find(node.wildcardChild, segments, depth + 1, method, best);
+    }
+  }
+
+  /**
+   * A route for the paths that match a pattern.
+   */
+  static final class Route {
+    private final int order;
+    private final boolean exact;
+    private final HttpMethod method;
+    private final Function<PathSegments, RouteDestination> destination;
+
+    private Route(int order, boolean exact, @Nullable HttpMethod method,
+                  Function<PathSegments, RouteDestination> destination) {
+      this.order = order;
+      this.exact = exact;
+      this.method = method;
+      this.destination = destination;
+    }
+
+    /**
+     * Returns the destination for a path matched by this route.
+     */
+    @Nullable
+    RouteDestination getDestination(PathSegments segments) {
+      return destination.apply(segments);
+    }
+  }
+
+  /**
+   * The non-empty segments of a path. Segments are located once, and only the segments used by a route destination
+   * are copied into strings.
+   */
+  static final class PathSegments {
+    private final String path;
+    private final int[] starts;
+    private final int[] ends;
+    private int size;
+
+    PathSegments(String path) {
+      this.path = path;
+      this.starts = new int[path.length() / 2 + 1];
+      this.ends = new int[starts.length];
+
+      int start = 0;
+      while (start < path.length()) {
+        int end = path.indexOf('/', start);
+        if (end < 0) {
+          end = path.length();
+        }
+        if (end > start) {
+          starts[size] = start;
+          ends[size] = end;
+          size++;
+        }
+        start = end + 1;
+      }
+    }
+
+    int size() {
+      return size;
+    }
+
+    String get(int index) {
+      return path.substring(starts[index], ends[index]);
+    }
+
+    boolean matches(int index, String literal) {
+      int length = ends[index] - starts[index];
+      return length == literal.length() && path.regionMatches(starts[index], literal, 0, length);
+    }
+  }
+
+  /**
+   * Builder for {@link RouterPathTrie}.
+   */
+  static final class Builder {
+    private final MutableNode root = new MutableNode();
+    private int order;
+
+    /**
+     * Adds a pattern that routes matching paths to the given destination.
+     */
+    Builder add(String pattern, @Nullable RouteDestination destination) {
+      return add(pattern, false, null, segments -> destination);
+    }
+
+    /**
+     * Adds a pattern that routes matching paths to the destination computed from the path segments.
+     */
+    Builder add(String pattern, Function<PathSegments, RouteDestination> destination) {
+      return add(pattern, false, null, destination);
+    }
+
+    /**
+     * Adds a pattern that routes matching paths of requests with the given method to the given destination.
+     */
+    Builder add(String pattern, HttpMethod method, @Nullable RouteDestination destination) {
+      return add(pattern, false, method, segments -> destination);
+    }
+
+    /**
+     * Adds a pattern that only routes paths with exactly the pattern segments to the given destination.
+     */
+    Builder addExact(String pattern, @Nullable RouteDestination destination) {
+      return add(pattern, true, null, segments -> destination);
+    }
+
+    RouterPathTrie build() {
+      return new RouterPathTrie(root.build());
+    }
+
+    private Builder add(String pattern, boolean exact, @Nullable HttpMethod method,
+                        Function<PathSegments, RouteDestination> destination) {
+      Route route = new Route(order++, exact, method, destination);
+      List<MutableNode> nodes = Arrays.asList(root);
+      for (String segment : Splitter.on('/').split(pattern)) {
+        List<MutableNode> children = new ArrayList<>();
+        for (MutableNode node : nodes) {
+          if ("*".equals(segment)) {
+            children.add(node.getWildcardChild());
+          } else {
+            for (String literal : Splitter.on('|').split(segment)) {
+              children.add(node.getLiteralChild(literal));
+            }
+          }
+        }
+        nodes = children;
+      }
+      for (MutableNode node : nodes) {
+        node.routes.add(route);
+      }
+      return this;
+    }
+  }
+
+  /**
+   * A trie node while building the trie.
+   */
+  private static final class MutableNode {
+    private final List<String> literals = new ArrayList<>();
+    private final List<MutableNode> literalChildren = new ArrayList<>();
+    private final List<Route> routes = new ArrayList<>();
+    private MutableNode wildcardChild;
+
+    MutableNode getLiteralChild(String literal) {
+      int index = literals.indexOf(literal);
+      if (index >= 0) {
+        return literalChildren.get(index);
+      }
+      MutableNode child = new MutableNode();
+      literals.add(literal);
+      literalChildren.add(child);
+      return child;
+    }
+
+    MutableNode getWildcardChild() {
+      if (wildcardChild == null) {
+        wildcardChild = new MutableNode();
+      }
+      return wildcardChild;
+    }
+
+    Node build() {
+      Node[] children = new Node[literalChildren.size()];
+      int minOrder = Integer.MAX_VALUE;
+      for (int i = 0; i < children.length; i++) {
+        children[i] = literalChildren.get(i).build();
+        minOrder = Math.min(minOrder, children[i].minOrder);
+      }
+      Node wildcard = wildcardChild == null ? null : wildcardChild.build();
+      if (wildcard != null) {
+        minOrder = Math.min(minOrder, wildcard.minOrder);
+      }
+      for (Route route : routes) {
+        minOrder = Math.min(minOrder, route.order);
+      }
+      return new Node(literals.toArray(new String[literals.size()]), children, wildcard,
+                      routes.toArray(new Route[routes.size()]), minOrder);
+    }
+  }
+
+  /**
+   * An immutable trie node.
+   */
+  private static final class Node {
+    private final String[] literals;
+    private final Node[] literalChildren;
+    private final Node wildcardChild;
+    private final Route[] routes;
+    // the smallest order of all routes in the subtree of this node
+    private final int minOrder;
+
+    Node(String[] literals, Node[] literalChildren, @Nullable Node wildcardChild, Route[] routes, int minOrder) {
+      this.literals = literals;
+      this.literalChildren = literalChildren;
+      this.wildcardChild = wildcardChild;
+      this.routes = routes;
+      this.minOrder = minOrder;
+    }
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -45,6 +45,7 @@ import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
 
 /**
  * Port -> service lookup.
@@ -131,7 +132,10 @@ public class RouterServiceLookup {
         return null;
       }
 
-      CacheKey cacheKey = new CacheKey(destService, host, path);
+      // The host and the first path part are only used for looking up webapp destinations
+      CacheKey cacheKey = destService.getServiceName().contains("$HOST")
+        ? new CacheKey(destService, host, path)
+        : new CacheKey(destService);
       LOG.trace("Request was routed from {} to: {}", path, cacheKey.getRouteDestination());
 
       return discoverableCache.get(cacheKey);
@@ -224,6 +228,13 @@ public class RouterServiceLookup {
     private final String firstPathPart;
     private final int hashCode;
 
+    private CacheKey(RouteDestination routeDestination) {
+      this.routeDestination = routeDestination;
+      this.host = null;
+      this.firstPathPart = null;
+      this.hashCode = routeDestination.hashCode();
+    }
+
     private CacheKey(RouteDestination routeDestination, String host, String path) {
       this.routeDestination = routeDestination;
       this.host = host;
@@ -236,10 +247,12 @@ public class RouterServiceLookup {
       return routeDestination;
     }
 
+    @Nullable
     public String getHost() {
       return host;
     }
 
+    @Nullable
     public String getFirstPathPart() {
       return firstPathPart;
     }
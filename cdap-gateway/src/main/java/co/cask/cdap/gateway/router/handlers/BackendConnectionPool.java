@@ -0,0 +1,172 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.gateway.router.handlers;
+
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import org.apache.twill.discovery.Discoverable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * A pool of idle keep-alive connections from the router to internal services, shared by all inbound connections.
+ * Connections are pooled per {@link EventLoop}, so that a connection is only used by inbound channels of the
+ * same event loop it was created on and all access to a pool is from a single thread. Idle connections are
+ * closed by the idle state handler of the connection, which removes them from the pool.
+ */
+public final class BackendConnectionPool {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BackendConnectionPool.class);
+
+  private final int maxIdleConnections;
+  private final ConcurrentMap<EventLoop, Map<Discoverable, Deque<Channel>>> idleChannels;
+  private final AtomicLong hits;
+  private final AtomicLong connects;
+  private final AtomicLong connectTimeNanos;
+
+  public BackendConnectionPool(CConfiguration cConf) {
+    this(cConf.getInt(Constants.Router.CLIENT_POOL_MAX_IDLE_CONNECTIONS));
+  }
+
+  /**
+   * Creates a pool.
+   *
+   * @param maxIdleConnections maximum number of idle connections to each internal service endpoint per event loop.
+   *                           If it is {@code 0}, connections are not pooled.
+   */
+  BackendConnectionPool(int maxIdleConnections) {
+    this.maxIdleConnections = maxIdleConnections;
+    this.idleChannels = new ConcurrentHashMap<>();
+    this.hits = new AtomicLong();
+    this.connects = new AtomicLong();
+    this.connectTimeNanos = new AtomicLong();
+  }
+
+  /**
+   * Returns an idle connection to the given endpoint that was created on the given event loop. This method must be
+   * called from the event loop.
+   *
+   * @return an active {@link Channel} or {@code null} if there is no idle connection
+   */
+  @Nullable
+  Channel acquire(EventLoop eventLoop, Discoverable discoverable) {
+    Deque<Channel> channels = getIdleChannels(eventLoop).get(discoverable);
+    if (channels == null) {
+      return null;
+    }
+    Channel channel = channels.pollFirst();
+    while (channel != null && !channel.isActive()) {
+      channel = channels.pollFirst();
+    }
+    if (channel != null) {
+      hits.incrementAndGet();
+      LOG.trace("Reuse connection {} to {}", channel, discoverable);
+    }
+    return channel;
+  }
+
+  /**
+   * Returns a connection that has no request in progress to the pool. The connection is closed if the pool for the
+   * endpoint is full. This method must be called from the event loop of the connection.
+   */
+  void release(Discoverable discoverable, Channel channel) {
+    if (!channel.isActive()) {
+      return;
+    }
+    if (maxIdleConnections <= 0) {
+      Channels.closeOnFlush(channel);
+      return;
+    }
+    Map<Discoverable, Deque<Channel>> channelsMap = getIdleChannels(channel.eventLoop());
+    Deque<Channel> channels = channelsMap.get(discoverable);
+    if (channels == null) {
+      channels = new ArrayDeque<>();
+      channelsMap.put(discoverable, channels);
+    }
+    if (channels.size() >= maxIdleConnections) {
+      Channels.closeOnFlush(channel);
+      return;
+    }
+    // Most recently used connections are reused first, so that the least used ones can time out
+    channels.addFirst(channel);
+  }
+
+  /**
+   * Removes a closed connection from the pool. This method must be called from the event loop of the connection.
+   */
+  void remove(Discoverable discoverable, Channel channel) {
+    Map<Discoverable, Deque<Channel>> channelsMap = getIdleChannels(channel.eventLoop());
+    Deque<Channel> channels = channelsMap.get(discoverable);
+    if (channels != null && channels.remove(channel) && channels.isEmpty()) {
+      channelsMap.remove(discoverable);
+    }
+  }
+
+  /**
+   * Records the time it took to establish a new connection, including the SSL handshake.
+   */
+  void connected(long nanos) {
+    connects.incrementAndGet();
+    connectTimeNanos.addAndGet(nanos);
+  }
+
+  /**
+   * Returns the number of requests that were sent over a pooled connection.
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * Returns the number of new connections made to internal services.
+   */
+  public long getConnectCount() {
+    return connects.get();
+  }
+
+  /**
+   * Returns the total time in milliseconds spent on making new connections to internal services.
+   */
+  public long getConnectTimeMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(connectTimeNanos.get());
+  }
+
+  private Map<Discoverable, Deque<Channel>> getIdleChannels(EventLoop eventLoop) {
+    Map<Discoverable, Deque<Channel>> channels = idleChannels.get(eventLoop);
+    if (channels == null) {
+      Map<Discoverable, Deque<Channel>> newChannels = new HashMap<>();
+      channels = idleChannels.putIfAbsent(eventLoop, newChannels);
+      if (channels == null) {
+        channels = newChannels;
+      }
+    }
+    return channels;
+  }
+}
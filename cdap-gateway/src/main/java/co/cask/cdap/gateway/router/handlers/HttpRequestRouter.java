@@ -21,8 +21,10 @@ import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.discovery.EndpointStrategy;
 import co.cask.cdap.gateway.router.RouterServiceLookup;
+import com.google.common.collect.ImmutableSet;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufHolder;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelFuture;
@@ -38,6 +40,7 @@ import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
@@ -59,11 +62,14 @@ import java.io.Flushable;
 import java.net.InetSocketAddress;
 import java.nio.channels.ClosedChannelException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import javax.annotation.Nullable;
 import javax.net.ssl.SSLException;
 
@@ -76,17 +82,25 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
 
   private static final Logger LOG = LoggerFactory.getLogger(HttpRequestRouter.class);
   private static final byte[] HTTPS_SCHEME_BYTES = Constants.Security.SSL_URI_SCHEME.getBytes();
+  // Requests with these methods can be sent again if a reused connection is closed before they get a response
+  private static final Set<HttpMethod> IDEMPOTENT_METHODS = ImmutableSet.of(
+    HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS, HttpMethod.TRACE, HttpMethod.PUT, HttpMethod.DELETE);
+  // Maximum size of the request body that is kept for sending a request again
+  private static final int MAX_RETRY_CONTENT_BYTES = 64 * 1024;
 
   private final CConfiguration cConf;
   private final RouterServiceLookup serviceLookup;
+  private final BackendConnectionPool connectionPool;
   private final Map<Discoverable, Queue<MessageSender>> messageSenders;
   private int inflightRequests;
   private MessageSender currentMessageSender;
   private ChannelFutureListener failureResponseListener;
 
-  public HttpRequestRouter(CConfiguration cConf, RouterServiceLookup serviceLookup) {
+  public HttpRequestRouter(CConfiguration cConf, RouterServiceLookup serviceLookup,
+                           BackendConnectionPool connectionPool) {
     this.cConf = cConf;
     this.serviceLookup = serviceLookup;
+    this.connectionPool = connectionPool;
     this.messageSenders = new HashMap<>();
   }
 
@@ -154,6 +168,7 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
 
       // Recycle the message sender
       if (currentMessageSender != null) {
+        currentMessageSender.discardRetry();
         messageSenders.get(currentMessageSender.getDiscoverable()).add(currentMessageSender);
       }
     }
@@ -170,12 +185,14 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
 
   @Override
   public void channelInactive(ChannelHandlerContext ctx) throws Exception {
-    if (currentMessageSender != null) {
+    // The connection of a request in progress cannot be reused
+    if (currentMessageSender != null && inflightRequests > 0) {
       currentMessageSender.close();
     }
+    // Connections without request in progress are returned to the pool for other inbound channels to use
     for (Map.Entry<Discoverable, Queue<MessageSender>> entry : messageSenders.entrySet()) {
       for (MessageSender sender : entry.getValue()) {
-        sender.close();
+        sender.release();
       }
     }
     ctx.fireChannelInactive();
@@ -235,7 +252,7 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
     }
 
     // Create new MessageSender
-    sender = new MessageSender(cConf, inboundChannel, discoverable);
+    sender = new MessageSender(cConf, inboundChannel, discoverable, connectionPool);
     LOG.trace("Create new message sender for {}", discoverable);
     return sender;
   }
@@ -267,24 +284,46 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
    */
   private static final class MessageSender implements Flushable, Closeable {
 
+    private final Channel inboundChannel;
     private final Discoverable discoverable;
+    private final BackendConnectionPool connectionPool;
     private final Queue<OutboundMessage> pendingMessages;
+    private final List<OutboundMessage> retryMessages;
+    private final ChannelFutureListener onCloseResetListener;
     private final Bootstrap clientBootstrap;
     private volatile SslContext sslContext;
     private Channel outboundChannel;
+    private Channel retryChannel;
+    private Channel retriedChannel;
+    private int retryContentBytes;
     private boolean closed;
     private boolean connecting;
 
-    private MessageSender(final CConfiguration cConf, final Channel inboundChannel, final Discoverable discoverable) {
+    private MessageSender(final CConfiguration cConf, final Channel inboundChannel, final Discoverable discoverable,
+                          final BackendConnectionPool connectionPool) {
+      this.inboundChannel = inboundChannel;
       this.discoverable = discoverable;
+      this.connectionPool = connectionPool;
       this.pendingMessages = new LinkedList<>();
+      this.retryMessages = new ArrayList<>();
 
-      // A channel listener for resetting the state of this message sender on closing of outbound channel
-      final ChannelFutureListener onCloseResetListener = new ChannelFutureListener() {
+      // A channel listener for resetting the state of this message sender on closing of outbound channel.
+      // If the request in progress can be retried, it is sent again on a new connection.
+      this.onCloseResetListener = new ChannelFutureListener() {
         @Override
         public void operationComplete(ChannelFuture future) throws Exception {
           outboundChannel = null;
           connecting = false;
+          if (future.channel() == retryChannel) {
+            retry(future.channel());
+          }
+        }
+      };
+      // A channel listener for removing the outbound channel from the connection pool when it is closed
+      final ChannelFutureListener onCloseRemoveListener = new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) throws Exception {
+          connectionPool.remove(discoverable, future.channel());
         }
       };
 
@@ -299,6 +338,7 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
           @Override
           protected void initChannel(SocketChannel ch) throws Exception {
             ch.closeFuture().addListener(onCloseResetListener);
+            ch.closeFuture().addListener(onCloseRemoveListener);
             ChannelPipeline pipeline = ch.pipeline();
 
             SslHandler sslHandler = getSslHandler(discoverable, ch.alloc());
@@ -320,8 +360,19 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
      * @param writeCompletedListener a {@link ChannelFutureListener} to be notified when the write completed
      */
     void send(Object msg, ChannelFutureListener writeCompletedListener) {
+      // Reuse an idle connection from the pool if there is one
+      if (outboundChannel == null && !connecting) {
+        outboundChannel = acquirePooledChannel();
+      }
+      if (msg instanceof HttpRequest) {
+        startRequest((HttpRequest) msg);
+      }
       if (outboundChannel != null) {
-        outboundChannel.write(msg).addListener(writeCompletedListener);
+        if (outboundChannel == retryChannel) {
+          writeRetryable(msg, writeCompletedListener);
+        } else {
+          outboundChannel.write(msg).addListener(writeCompletedListener);
+        }
         return;
       }
 
@@ -332,8 +383,14 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
       if (connecting) {
         return;
       }
+      connect();
+    }
 
-      // Make a new connection
+    /**
+     * Makes a new connection to the endpoint. The pending messages are sent when the connection is completed.
+     */
+    private void connect() {
+      final long connectStartNanos = System.nanoTime();
       ChannelFuture connectFuture = clientBootstrap.connect(discoverable.getSocketAddress());
       connectFuture.addListener(new ChannelFutureListener() {
         @Override
@@ -344,6 +401,14 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
           connecting = false;
 
           if (future.isSuccess()) {
+            SslHandler sslHandler = outboundChannel.pipeline().get(SslHandler.class);
+            if (sslHandler == null) {
+              connectionPool.connected(System.nanoTime() - connectStartNanos);
+            } else {
+              // Includes the SSL handshake time, which completes before any message is sent
+              sslHandler.handshakeFuture().addListener(
+                f -> connectionPool.connected(System.nanoTime() - connectStartNanos));
+            }
             // If this sender is closed (because inbound channel is closed), just close the outbound channel
             if (closed) {
               Channels.closeOnFlush(outboundChannel);
@@ -372,6 +437,7 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
 
     @Override
     public void close() {
+      discardRetry();
       if (!closed) {
         closed = true;
         if (outboundChannel != null) {
@@ -380,6 +446,131 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
       }
     }
 
+    /**
+     * Prepares for sending a new request. A connection that was used before may be closed by the internal service
+     * for being idle just as the request is sent over it. The pool only hands out active connections, but this can
+     * still happen before the close is noticed. An idempotent request sent over such a connection is retried once
+     * on a new connection if the connection fails or is closed before any response is received.
+     */
+    private void startRequest(HttpRequest request) {
+      discardRetry();
+      if (outboundChannel != null && outboundChannel.isActive() && IDEMPOTENT_METHODS.contains(request.method())) {
+        retryChannel = outboundChannel;
+      }
+    }
+
+    /**
+     * Writes a message of a request that can be retried, keeping a copy of the message to send it again.
+     */
+    private void writeRetryable(Object msg, final ChannelFutureListener writeCompletedListener) {
+      if (msg instanceof ByteBufHolder) {
+        retryContentBytes += ((ByteBufHolder) msg).content().readableBytes();
+      }
+      final Channel channel = outboundChannel;
+      if (retryContentBytes > MAX_RETRY_CONTENT_BYTES) {
+        // The request is too large to be kept for retrying
+        discardRetry();
+        channel.write(msg).addListener(writeCompletedListener);
+        return;
+      }
+
+      Object retryMsg = msg instanceof ByteBufHolder ? ((ByteBufHolder) msg).retainedDuplicate() : msg;
+      retryMessages.add(new OutboundMessage(retryMsg, writeCompletedListener));
+      channel.write(msg).addListener(new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) throws Exception {
+          if (future.isSuccess()) {
+            writeCompletedListener.operationComplete(future);
+          } else if (channel == retryChannel) {
+            // Closing the connection sends the request again on a new connection
+            channel.close();
+          } else if (channel != retriedChannel) {
+            writeCompletedListener.operationComplete(future);
+          }
+        }
+      });
+    }
+
+    /**
+     * Sends the request in progress again on a new connection, after the given connection was closed. The request
+     * is only sent again if nothing of its response was received.
+     */
+    private void retry(Channel channel) {
+      List<OutboundMessage> messages = new ArrayList<>(retryMessages);
+      retryMessages.clear();
+      retryChannel = null;
+      retryContentBytes = 0;
+
+      OutboundHandler handler = channel.pipeline().get(OutboundHandler.class);
+      if (closed || !handler.isAwaitingResponse()) {
+        for (OutboundMessage message : messages) {
+          ReferenceCountUtil.release(message.message);
+        }
+        return;
+      }
+
+      LOG.debug("Connection {} to {} closed before response, sending the request again on a new connection",
+                channel, discoverable);
+      // Detach the closed connection from the inbound channel, so that it does not close the inbound channel
+      handler.setInboundChannel(null);
+      retriedChannel = channel;
+      pendingMessages.addAll(messages);
+      connect();
+    }
+
+    /**
+     * Discards the copies of the messages kept for retrying the request in progress.
+     */
+    void discardRetry() {
+      for (OutboundMessage message : retryMessages) {
+        ReferenceCountUtil.release(message.message);
+      }
+      retryMessages.clear();
+      retryChannel = null;
+      retryContentBytes = 0;
+    }
+
+    /**
+     * Acquires an idle connection from the connection pool and attaches it to the inbound channel.
+     *
+     * @return the outbound channel or {@code null} if there is no idle connection
+     */
+    @Nullable
+    private Channel acquirePooledChannel() {
+      Channel channel = connectionPool.acquire(inboundChannel.eventLoop(), discoverable);
+      if (channel != null) {
+        channel.pipeline().get(OutboundHandler.class).setInboundChannel(inboundChannel);
+        channel.closeFuture().addListener(onCloseResetListener);
+      }
+      return channel;
+    }
+
+    /**
+     * Releases this sender when the inbound channel is closed. If the outbound channel has no request in progress,
+     * it is returned to the connection pool instead of being closed.
+     */
+    void release() {
+      discardRetry();
+      if (closed) {
+        return;
+      }
+      Channel channel = outboundChannel;
+      if (channel == null || connecting || !channel.isActive()) {
+        close();
+        return;
+      }
+      OutboundHandler handler = channel.pipeline().get(OutboundHandler.class);
+      if (handler == null || !handler.isReusable()) {
+        close();
+        return;
+      }
+      closed = true;
+      channel.closeFuture().removeListener(onCloseResetListener);
+      outboundChannel = null;
+      handler.setInboundChannel(null);
+      connectionPool.release(discoverable, channel);
+    }
+
     Discoverable getDiscoverable() {
       return discoverable;
     }
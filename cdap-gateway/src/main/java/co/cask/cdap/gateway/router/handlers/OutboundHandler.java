@@ -26,30 +26,66 @@ import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.ReferenceCountUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
 /**
  * A {@link ChannelDuplexHandler} for forwarding requests/responses between the router and the internal service.
- * It also handle idle state event for closing idled internal connections.
+ * It also handle idle state event for closing idled internal connections. A connection without request in progress
+ * can be detached from its inbound channel and later attached to another one through
+ * {@link #setInboundChannel(Channel)}, so that it can be reused through the {@link BackendConnectionPool}.
  */
 public class OutboundHandler extends ChannelDuplexHandler {
   private static final Logger LOG = LoggerFactory.getLogger(OutboundHandler.class);
 
-  private final Channel inboundChannel;
+  private Channel inboundChannel;
   private boolean requestInProgress;
+  private boolean responseStarted;
   private boolean keepAlive;
 
   public OutboundHandler(Channel inboundChannel) {
     this.inboundChannel = inboundChannel;
   }
 
+  /**
+   * Sets the inbound channel to forward responses to, or {@code null} to detach this handler from the inbound channel.
+   */
+  void setInboundChannel(@Nullable Channel inboundChannel) {
+    this.inboundChannel = inboundChannel;
+  }
+
+  /**
+   * Returns {@code true} if the last response is completed and the connection can be used for another request.
+   */
+  boolean isReusable() {
+    return !requestInProgress && keepAlive;
+  }
+
+  /**
+   * Returns {@code true} if a request was sent and nothing of its response has been received yet.
+   */
+  boolean isAwaitingResponse() {
+    return requestInProgress && !responseStarted;
+  }
+
   @Override
   public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (inboundChannel == null) {
+      // A connection without request in progress is not expected to receive anything
+      LOG.trace("Closing connection {} that received unexpected message while idle.", ctx.channel());
+      ReferenceCountUtil.release(msg);
+      ctx.close();
+      return;
+    }
+
     // One receiving messages from the internal service, forward it to the inbound channel
     inboundChannel.write(msg);
 
     if (msg instanceof HttpResponse) {
+      responseStarted = true;
       keepAlive = HttpUtil.isKeepAlive((HttpResponse) msg);
     }
 
@@ -61,7 +97,9 @@ public class OutboundHandler extends ChannelDuplexHandler {
 
   @Override
   public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
-    inboundChannel.flush();
+    if (inboundChannel != null) {
+      inboundChannel.flush();
+    }
   }
 
   @Override
@@ -69,6 +107,7 @@ public class OutboundHandler extends ChannelDuplexHandler {
     // A request starts with a HttpRequest
     if (msg instanceof HttpRequest) {
       requestInProgress = true;
+      responseStarted = false;
       keepAlive = HttpUtil.isKeepAlive((HttpRequest) msg);
     }
     ctx.write(msg, promise);
@@ -76,18 +115,19 @@ public class OutboundHandler extends ChannelDuplexHandler {
 
   @Override
   public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
-    if (requestInProgress) {
+    if (requestInProgress && inboundChannel != null) {
       final Channel channel = ctx.channel();
+      final Channel inbound = inboundChannel;
       ctx.executor().execute(() -> {
         // If outboundChannel is not saturated anymore, continue accepting
         // the incoming traffic from the inboundChannel.
         if (channel.isWritable()) {
           LOG.trace("Setting inboundChannel readable.");
-          inboundChannel.config().setAutoRead(true);
+          inbound.config().setAutoRead(true);
         } else {
           // If outboundChannel is saturated, do not read inboundChannel
           LOG.trace("Setting inboundChannel non-readable.");
-          inboundChannel.config().setAutoRead(false);
+          inbound.config().setAutoRead(false);
         }
       });
     }
@@ -97,7 +137,7 @@ public class OutboundHandler extends ChannelDuplexHandler {
   @Override
   public void channelInactive(ChannelHandlerContext ctx) throws Exception {
     // Close the inbound channel if there is request in progress, or the last request/response has keep-alive == false
-    if (requestInProgress || !keepAlive) {
+    if (inboundChannel != null && (requestInProgress || !keepAlive)) {
       Channels.closeOnFlush(inboundChannel);
     }
     ctx.fireChannelInactive();
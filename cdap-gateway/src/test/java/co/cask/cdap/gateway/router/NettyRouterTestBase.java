@@ -43,14 +43,17 @@ import com.ning.http.client.RequestBuilder;
 import com.ning.http.client.Response;
 import com.ning.http.client.providers.netty.NettyAsyncHttpProvider;
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.ReferenceCountUtil;
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpGet;
@@ -358,6 +361,54 @@ public abstract class NettyRouterTestBase {
     Assert.assertEquals(1, defaultServer1.getNumConnectionsClosed());
   }
 
+  @Test
+  public void testConnectionReuse() throws Exception {
+    // Only use server1
+    defaultServer2.cancelRegistration();
+
+    String path = "/v2/ping";
+    URI uri = new URI(resolveURI(Constants.Router.GATEWAY_DISCOVERY_NAME, path));
+
+    // Make requests on separate client connections. The server side connections are reused across them, with
+    // at most one connection per router worker thread.
+    int times = 20;
+    for (int i = 0; i < times; i++) {
+      try (Socket socket = getSocketFactory().createSocket(uri.getHost(), uri.getPort())) {
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        Assert.assertEquals("HTTP/1.1 200 OK", makeRequest(uri, out, socket.getInputStream()));
+      }
+    }
+
+    Assert.assertEquals(times, defaultServer1.getNumRequests());
+    Assert.assertTrue(defaultServer1.getNumConnectionsOpened() < times);
+  }
+
+  @Test
+  public void testRetryOnClosedIdleConnection() throws Exception {
+    // Only use server1
+    defaultServer2.cancelRegistration();
+
+    String path = "/v2/ping";
+    URI uri = new URI(resolveURI(Constants.Router.GATEWAY_DISCOVERY_NAME, path));
+
+    // The server closes a connection that served a request when it receives another request, without responding,
+    // as if it closed the idle connection just as the router reused it. Requests on reused connections are sent
+    // again on new connections.
+    defaultServer1.setCloseIdleConnections(true);
+    int times = 20;
+    for (int i = 0; i < times; i++) {
+      try (Socket socket = getSocketFactory().createSocket(uri.getHost(), uri.getPort())) {
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        Assert.assertEquals("HTTP/1.1 200 OK", makeRequest(uri, out, socket.getInputStream()));
+        // Also reuse the connection of the same client connection
+        Assert.assertEquals("HTTP/1.1 200 OK", makeRequest(uri, out, socket.getInputStream()));
+      }
+    }
+
+    Assert.assertEquals(times * 2, defaultServer1.getNumRequests());
+    Assert.assertTrue(defaultServer1.getNumIdleConnectionsClosed() >= times);
+  }
+
   private String makeRequest(URI uri, PrintWriter out, InputStream inputStream) throws IOException {
     //Send request
     out.print("GET " + uri.getPath() + " HTTP/1.1\r\n" +
@@ -613,6 +664,8 @@ public abstract class NettyRouterTestBase {
     private final AtomicInteger numRequests = new AtomicInteger(0);
     private final AtomicInteger numConnectionsOpened = new AtomicInteger(0);
     private final AtomicInteger numConnectionsClosed = new AtomicInteger(0);
+    private final AtomicInteger numIdleConnectionsClosed = new AtomicInteger(0);
+    private volatile boolean closeIdleConnections;
 
     private NettyHttpService httpService;
     private Cancellable cancelDiscovery;
@@ -632,6 +685,26 @@ public abstract class NettyRouterTestBase {
       builder.setChannelPipelineModifier(new ChannelPipelineModifier() {
         @Override
         public void modify(ChannelPipeline pipeline) {
+          pipeline.addFirst("idle-connection-closer", new ChannelDuplexHandler() {
+            private boolean responded;
+
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+              if (closeIdleConnections && responded) {
+                numIdleConnectionsClosed.incrementAndGet();
+                ReferenceCountUtil.release(msg);
+                ctx.close();
+                return;
+              }
+              ctx.fireChannelRead(msg);
+            }
+
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+              responded = true;
+              ctx.write(msg, promise);
+            }
+          });
           pipeline.addLast("connection-counter", new ChannelInboundHandlerAdapter() {
             @Override
             public void channelRegistered(ChannelHandlerContext ctx) throws Exception {
@@ -673,6 +746,18 @@ public abstract class NettyRouterTestBase {
       return numConnectionsClosed.get();
     }
 
+    public int getNumIdleConnectionsClosed() {
+      return numIdleConnectionsClosed.get();
+    }
+
+    /**
+     * Sets whether a connection that served a request is closed when it receives another request, without
+     * responding to it.
+     */
+    public void setCloseIdleConnections(boolean closeIdleConnections) {
+      this.closeIdleConnections = closeIdleConnections;
+    }
+
 
     public void registerServer() {
       // Register services of test server
@@ -0,0 +1,389 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.gateway.router;
+
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.service.ServiceDiscoverable;
+import co.cask.cdap.proto.ProgramType;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import javax.annotation.Nullable;
+
+/**
+ * Tests for {@link RouterPathTrie}, and for the {@link RouterPathLookup} routes built with it.
+ */
+public class RouterPathTrieTest {
+
+  private static final RouteDestination FIRST = new RouteDestination("first");
+  private static final RouteDestination SECOND = new RouteDestination("second");
+  private static final RouteDestination THIRD = new RouteDestination("third");
+
+  @Test
+  public void testPathSegments() {
+    RouterPathTrie.PathSegments segments = new RouterPathTrie.PathSegments("//v3///metrics/search/");
+    Assert.assertEquals(3, segments.size());
+    Assert.assertEquals("v3", segments.get(0));
+    Assert.assertEquals("metrics", segments.get(1));
+    Assert.assertEquals("search", segments.get(2));
+    Assert.assertTrue(segments.matches(1, "metrics"));
+    Assert.assertFalse(segments.matches(1, "metric"));
+    Assert.assertFalse(segments.matches(1, "metricsx"));
+
+    Assert.assertEquals(0, new RouterPathTrie.PathSegments("").size());
+    Assert.assertEquals(0, new RouterPathTrie.PathSegments("///").size());
+  }
+
+  @Test
+  public void testWildcardBeforeLiteral() {
+    RouterPathTrie trie = RouterPathTrie.builder()
+      .add("a/*/c", FIRST)
+      .add("a/b/c", SECOND)
+      .add("a/b", THIRD)
+      .build();
+
+    // the wildcard rule is added first, so it wins over the literal rules
+    Assert.assertEquals(FIRST, find(trie, "/a/b/c"));
+    Assert.assertEquals(FIRST, find(trie, "/a/b/c/d"));
+    Assert.assertEquals(FIRST, find(trie, "/a/x/c"));
+    Assert.assertEquals(THIRD, find(trie, "/a/b/x"));
+    Assert.assertEquals(THIRD, find(trie, "/a/b"));
+    assertNotFound(trie, "/a/x/d");
+    assertNotFound(trie, "/a");
+    assertNotFound(trie, "/b/b/c");
+  }
+
+  @Test
+  public void testLiteralBeforeWildcard() {
+    RouterPathTrie trie = RouterPathTrie.builder()
+      .add("a/b/c", FIRST)
+      .add("a/*/c", SECOND)
+      .add("a/*/*/d", THIRD)
+      .build();
+
+    Assert.assertEquals(FIRST, find(trie, "/a/b/c"));
+    Assert.assertEquals(FIRST, find(trie, "/a/b/c/d"));
+    Assert.assertEquals(SECOND, find(trie, "/a/x/c/d"));
+    Assert.assertEquals(THIRD, find(trie, "/a/x/y/d"));
+    Assert.assertEquals(THIRD, find(trie, "/a/b/y/d"));
+  }
+
+  @Test
+  public void testLaterRuleInEarlierBranch() {
+    // the literal branch is visited before the wildcard branch, but its routes are added later
+    RouterPathTrie trie = RouterPathTrie.builder()
+      .add("a/*/x", FIRST)
+      .add("a/b", SECOND)
+      .add("a/b/x", THIRD)
+      .build();
+
+    Assert.assertEquals(FIRST, find(trie, "/a/b/x"));
+    Assert.assertEquals(SECOND, find(trie, "/a/b/y"));
+    Assert.assertEquals(FIRST, find(trie, "/a/c/x"));
+  }
+
+  @Test
+  public void testAlternatives() {
+    RouterPathTrie trie = RouterPathTrie.builder()
+      .add("a/b|c/d", FIRST)
+      .add("a/*/d|e", SECOND)
+      .build();
+
+    Assert.assertEquals(FIRST, find(trie, "/a/b/d"));
+    Assert.assertEquals(FIRST, find(trie, "/a/c/d"));
+    Assert.assertEquals(SECOND, find(trie, "/a/b/e"));
+    Assert.assertEquals(SECOND, find(trie, "/a/x/d"));
+    assertNotFound(trie, "/a/b|c/x");
+    assertNotFound(trie, "/a/bc/f");
+  }
+
+  @Test
+  public void testExact() {
+    RouterPathTrie trie = RouterPathTrie.builder()
+      .addExact("a/b", FIRST)
+      .add("a", SECOND)
+      .build();
+
+    Assert.assertEquals(FIRST, find(trie, "/a/b"));
+    Assert.assertEquals(FIRST, find(trie, "/a/b/"));
+    Assert.assertEquals(SECOND, find(trie, "/a/b/c"));
+    Assert.assertEquals(SECOND, find(trie, "/a"));
+  }
+
+  @Test
+  public void testMethod() {
+    RouterPathTrie trie = RouterPathTrie.builder()
+      .add("a/b", HttpMethod.GET, FIRST)
+      .add("a", SECOND)
+      .build();
+
+    Assert.assertEquals(FIRST, find(trie, "/a/b/c", HttpMethod.GET));
+    Assert.assertEquals(SECOND, find(trie, "/a/b/c", HttpMethod.POST));
+    Assert.assertEquals(SECOND, find(trie, "/a/c", HttpMethod.GET));
+  }
+
+  @Test
+  public void testNullDestination() {
+    RouterPathTrie trie = RouterPathTrie.builder()
+      .add("a/b", (RouteDestination) null)
+      .add("a", FIRST)
+      .build();
+
+    // a route to a null destination still matches
+    RouterPathTrie.PathSegments segments = new RouterPathTrie.PathSegments("/a/b");
+    RouterPathTrie.Route route = trie.find(segments, HttpMethod.GET);
+    Assert.assertNotNull(route);
+    Assert.assertNull(route.getDestination(segments));
+  }
+
+  @Test
+  public void testComputedDestination() {
+    RouterPathTrie trie = RouterPathTrie.builder()
+      .add("a/*/c", segments -> new RouteDestination(segments.get(1), segments.get(3)))
+      .build();
+
+    Assert.assertEquals(new RouteDestination("b", "d"), find(trie, "/a/b/c/d"));
+  }
+
+  @Test
+  public void testCompareWithLegacyLookup() {
+    // segments of the routes, and segments that are close to them
+    List<String> vocabulary = new ArrayList<>(Arrays.asList(
+      "v3", "v2", "feeds", "namespaces", "apps", "versions", "methods", "system", "services", "logs", "metadata",
+      "properties", "tags", "artifacts", "datasets", "streams", "views", "search", "lineage", "runs", "security",
+      "authorization", "securekeys", "store", "programs", "data", "previews", "serviceproviders", "metrics",
+      "explore", "queries", "jdbc", "tables", "status", "stacks", "flows", "workers", "mapreduce",
+      "artifact-internals", "foo", "n1", "a1", "s1", "ns", "v", "1.0", "live-info", "ping"));
+    vocabulary.addAll(Arrays.asList(
+      Constants.Service.LOGSAVER, Constants.Service.TRANSACTION, Constants.Service.METRICS_PROCESSOR,
+      Constants.Service.METRICS, Constants.Service.APP_FABRIC_HTTP, Constants.Service.STREAMS,
+      Constants.Service.DATASET_EXECUTOR, Constants.Service.REMOTE_SYSTEM_OPERATION,
+      Constants.Service.METADATA_SERVICE, Constants.Service.EXPLORE_HTTP_USER_SERVICE,
+      Constants.Service.MESSAGING_SERVICE));
+    for (ProgramType type : ProgramType.values()) {
+      vocabulary.add(type.getCategoryName());
+    }
+    List<HttpMethod> methods = Arrays.asList(HttpMethod.GET, HttpMethod.PUT, HttpMethod.POST, HttpMethod.DELETE,
+                                             HttpMethod.HEAD, HttpMethod.OPTIONS);
+    List<String> fallbackServices = Arrays.asList("gateway", "$HOST");
+
+    RouterPathLookup lookup = new RouterPathLookup();
+    Random random = new Random(0);
+    for (int i = 0; i < 200000; i++) {
+      StringBuilder path = new StringBuilder();
+      int size = random.nextInt(13);
+      for (int j = 0; j < size; j++) {
+        path.append(random.nextInt(20) == 0 ? "//" : "/");
+        // most paths are v3 paths
+        String segment = j == 0 && random.nextInt(10) != 0 ? "v3" : vocabulary.get(random.nextInt(vocabulary.size()));
+        path.append(segment);
+      }
+      if (random.nextBoolean()) {
+        path.append('/');
+      }
+      HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, methods.get(random.nextInt(methods.size())),
+                                                   path.toString());
+      String fallbackService = fallbackServices.get(random.nextInt(fallbackServices.size()));
+
+      RouteDestination expected = LegacyRouterPathLookup.getRoutingService(fallbackService, path.toString(), request);
+      RouteDestination actual = lookup.getRoutingService(fallbackService, path.toString(), request);
+      if (!Objects.equals(expected, actual)) {
+        Assert.fail(String.format("Route of %s %s with fallback %s is %s, expected %s",
+                                  request.method(), path, fallbackService, actual, expected));
+      }
+    }
+  }
+
+  @Nullable
+  private RouteDestination find(RouterPathTrie trie, String path) {
+    return find(trie, path, HttpMethod.GET);
+  }
+
+  @Nullable
+  private RouteDestination find(RouterPathTrie trie, String path, HttpMethod method) {
+    RouterPathTrie.PathSegments segments = new RouterPathTrie.PathSegments(path);
+    RouterPathTrie.Route route = trie.find(segments, method);
+    Assert.assertNotNull("No route found for " + path, route);
+    return route.getDestination(segments);
+  }
+
+  private void assertNotFound(RouterPathTrie trie, String path) {
+    Assert.assertNull(trie.find(new RouterPathTrie.PathSegments(path), HttpMethod.GET));
+  }
+
+  /**
+   * The lookup of {@link RouterPathLookup} before the routes were compiled into a {@link RouterPathTrie}, which
+   * checks the rules one after the other.
+   */
+  private static final class LegacyRouterPathLookup {
+
+    private enum AllowedMethod {
+      GET, PUT, POST, DELETE
+    }
+
+    static RouteDestination getRoutingService(String fallbackService, String requestPath, HttpRequest httpRequest) {
+      try {
+        String method = httpRequest.method().name();
+        AllowedMethod requestMethod = AllowedMethod.valueOf(method);
+        String[] uriParts = StringUtils.split(requestPath, '/');
+
+        if (fallbackService.contains("$HOST") && (uriParts.length >= 1)
+          && !("/" + uriParts[0]).equals(Constants.Gateway.API_VERSION_3)) {
+          return new RouteDestination(fallbackService);
+        }
+        if (uriParts[0].equals(Constants.Gateway.API_VERSION_3_TOKEN)) {
+          return getV3RoutingService(uriParts, requestMethod);
+        }
+      } catch (Exception e) {
+        // Ignore exception. Default routing to app-fabric.
+      }
+      return RouterPathLookup.APP_FABRIC_HTTP;
+    }
+
+    private static boolean isUserServiceType(String uriPart) {
+      for (ProgramType type : ServiceDiscoverable.getUserServiceTypes()) {
+        if (type.getCategoryName().equals(uriPart)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static RouteDestination getV3RoutingService(String [] uriParts, AllowedMethod requestMethod) {
+      if ((uriParts.length >= 2) && uriParts[1].equals("feeds")) {
+        return null;
+      } else if ((uriParts.length >= 11) && "versions".equals(uriParts[5]) && isUserServiceType(uriParts[7])
+        && "methods".equals(uriParts[9])) {
+        String serviceName = ServiceDiscoverable.getName(uriParts[2], uriParts[4],
+                                                         ProgramType.valueOfCategoryName(uriParts[7]), uriParts[8]);
+        String version = uriParts[6];
+        return new RouteDestination(serviceName, version);
+      } else if ((uriParts.length >= 9) && isUserServiceType(uriParts[5]) && "methods".equals(uriParts[7])) {
+        return new RouteDestination(ServiceDiscoverable.getName(uriParts[2], uriParts[4],
+                                                                ProgramType.valueOfCategoryName(uriParts[5]),
+                                                                uriParts[6]));
+      } else if (matches(uriParts, "v3", "system", "services", null, "logs")) {
+        return RouterPathLookup.METRICS;
+      } else if (matches(uriParts, "v3", "namespaces", null, "apps", null, "metadata") ||
+        matches(uriParts, "v3", "namespaces", null, "apps", null, null, null, "metadata") ||
+        matches(uriParts, "v3", "namespaces", null, "artifacts", null, "versions", null, "metadata") ||
+        matches(uriParts, "v3", "namespaces", null, "datasets", null, "metadata") ||
+        matches(uriParts, "v3", "namespaces", null, "streams", null, "metadata") ||
+        matches(uriParts, "v3", "namespaces", null, "streams", null, "views", null, "metadata") ||
+
+        matches(uriParts, "v3", "namespaces", null, "apps", null, "metadata", "properties") ||
+        matches(uriParts, "v3", "namespaces", null, "artifacts", null, "versions", null, "metadata", "properties") ||
+        matches(uriParts, "v3", "namespaces", null, "apps", null, null, null, "metadata", "properties") ||
+        matches(uriParts, "v3", "namespaces", null, "datasets", null, "metadata", "properties") ||
+        matches(uriParts, "v3", "namespaces", null, "streams", null, "metadata", "properties") ||
+        matches(uriParts, "v3", "namespaces", null, "streams", null, "views", null, "metadata", "properties") ||
+
+        matches(uriParts, "v3", "namespaces", null, "apps", null, "metadata", "tags") ||
+        matches(uriParts, "v3", "namespaces", null, "artifacts", null, "versions", null, "metadata", "tags") ||
+        matches(uriParts, "v3", "namespaces", null, "apps", null, null, null, "metadata", "tags") ||
+        matches(uriParts, "v3", "namespaces", null, "datasets", null, "metadata", "tags") ||
+        matches(uriParts, "v3", "namespaces", null, "streams", null, "metadata", "tags") ||
+        matches(uriParts, "v3", "namespaces", null, "streams", null, "views", null, "metadata", "tags") ||
+
+        matches(uriParts, "v3", "namespaces", null, "metadata", "search") ||
+        matches(uriParts, "v3", "namespaces", null, "datasets", null, "lineage") ||
+        matches(uriParts, "v3", "namespaces", null, "streams", null, "lineage") ||
+        matches(uriParts, "v3", "namespaces", null, "apps", null, null, null, "runs", null, "metadata")) {
+        return RouterPathLookup.METADATA_SERVICE;
+      } else if (matches(uriParts, "v3", "security", "authorization") ||
+        matches(uriParts, "v3", "namespaces", null, "securekeys")) {
+        return RouterPathLookup.APP_FABRIC_HTTP;
+      } else if (matches(uriParts, "v3", "security", "store", "namespaces", null)) {
+        return RouterPathLookup.APP_FABRIC_HTTP;
+      } else if ((matches(uriParts, "v3", "namespaces", null, "streams", null, "programs")
+        || matches(uriParts, "v3", "namespaces", null, "data", "datasets", null, "programs")) &&
+        requestMethod.equals(AllowedMethod.GET)) {
+        return RouterPathLookup.APP_FABRIC_HTTP;
+      } else if (matches(uriParts, "v3", "namespaces", null, "previews")) {
+        return RouterPathLookup.PREVIEW_HTTP;
+      } else if (matches(uriParts, "v3", "system", "serviceproviders")) {
+        return RouterPathLookup.APP_FABRIC_HTTP;
+      } else if ((uriParts.length >= 4) && uriParts[1].equals("namespaces") && uriParts[3].equals("streams")) {
+        return RouterPathLookup.STREAMS_SERVICE;
+      } else if ((uriParts.length >= 8 && uriParts[7].equals("logs")) ||
+        (uriParts.length >= 10 && uriParts[9].equals("logs")) ||
+        (uriParts.length >= 6 && uriParts[5].equals("logs"))) {
+        return RouterPathLookup.METRICS;
+      } else if (uriParts.length >= 2 && uriParts[1].equals("metrics")) {
+        return RouterPathLookup.METRICS;
+      } else if (uriParts.length >= 5 && uriParts[1].equals("data") && uriParts[2].equals("explore") &&
+        (uriParts[3].equals("queries") || uriParts[3].equals("jdbc") || uriParts[3].equals("namespaces"))) {
+        return RouterPathLookup.EXPLORE_HTTP_USER_SERVICE;
+      } else if (uriParts.length >= 6 && uriParts[3].equals("data") && uriParts[4].equals("explore") &&
+        (uriParts[5].equals("queries") || uriParts[5].equals("streams") || uriParts[5].equals("datasets")
+          || uriParts[5].equals("tables") || uriParts[5].equals("jdbc"))) {
+        return RouterPathLookup.EXPLORE_HTTP_USER_SERVICE;
+      } else if ((uriParts.length == 3) && uriParts[1].equals("explore") && uriParts[2].equals("status")) {
+        return RouterPathLookup.EXPLORE_HTTP_USER_SERVICE;
+      } else if (matches(uriParts, "v3", "system", "services", null, "status")
+        || matches(uriParts, "v3", "system", "services", null, "stacks")) {
+        switch (uriParts[3]) {
+          case Constants.Service.LOGSAVER: return RouterPathLookup.LOG_SAVER;
+          case Constants.Service.TRANSACTION: return RouterPathLookup.TRANSACTION;
+          case Constants.Service.METRICS_PROCESSOR: return RouterPathLookup.METRICS_PROCESSOR;
+          case Constants.Service.METRICS: return RouterPathLookup.METRICS;
+          case Constants.Service.APP_FABRIC_HTTP: return RouterPathLookup.APP_FABRIC_HTTP;
+          case Constants.Service.STREAMS: return RouterPathLookup.STREAMS_SERVICE;
+          case Constants.Service.DATASET_EXECUTOR: return RouterPathLookup.DATASET_EXECUTOR;
+          case Constants.Service.REMOTE_SYSTEM_OPERATION: return RouterPathLookup.DATASET_EXECUTOR;
+          case Constants.Service.METADATA_SERVICE: return RouterPathLookup.METADATA_SERVICE;
+          case Constants.Service.EXPLORE_HTTP_USER_SERVICE: return RouterPathLookup.EXPLORE_HTTP_USER_SERVICE;
+          case Constants.Service.MESSAGING_SERVICE: return RouterPathLookup.MESSAGING;
+          default: return null;
+        }
+      } else if (uriParts.length == 7 && uriParts[3].equals("data") && uriParts[4].equals("datasets") &&
+        (uriParts[6].equals("flows") || uriParts[6].equals("workers") || uriParts[6].equals("mapreduce"))) {
+        return RouterPathLookup.APP_FABRIC_HTTP;
+      } else if ((uriParts.length >= 4) && uriParts[3].equals("data")) {
+        return RouterPathLookup.DATASET_MANAGER;
+      } else if ((uriParts.length >= 4) && uriParts[3].equals("artifact-internals")) {
+        return RouterPathLookup.DONT_ROUTE;
+      }
+      return RouterPathLookup.APP_FABRIC_HTTP;
+    }
+
+    private static boolean matches(String[] actual, String... expected) {
+      if (actual.length < expected.length) {
+        return false;
+      }
+      for (int i = 0; i < expected.length; i++) {
+        if (expected[i] == null) {
+          continue;
+        }
+        if (!expected[i].equals(actual[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -63,6 +63,14 @@ public final class Schemas {
      */
     public static final class ConsumeResponse {
       public static final Schema SCHEMA = loadSchema(ConsumeResponse.class);
+
+      /**
+       * Content type of the binary framed consume response, which is used instead of the avro encoding if the client
+       * accepts it. Each message is written as a 4-byte id length, the id, a 4-byte payload length and the payload.
+       * The end of the response is marked by an id length of {@link #END_OF_MESSAGES}.
+       */
+      public static final String BINARY_CONTENT_TYPE = "application/x-cdap-messages";
+      public static final int END_OF_MESSAGES = -1;
     }
   }
 
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2017 Cask Data, Inc.
+ * Copyright © 2017-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -23,18 +23,17 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.AbstractIterator;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.NavigableSet;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.annotation.Nullable;
 
 /**
@@ -44,6 +43,13 @@ import javax.annotation.Nullable;
  * - Single writer, concurrent fetchers
  * - Ordered, unique entry (row key)
  *
+ * Entries are stored in a list of fixed size segments, appended in publish order. Since entries are always appended
+ * in increasing order, each segment is sorted and fetchers can locate the starting entry with binary search.
+ * Weight reduction evicts from the oldest end by advancing the head of the oldest segment, and a segment is dropped
+ * only when it is full and all of its entries are evicted. Entries in a segment are never moved nor cleared,
+ * hence fetchers can scan from a snapshot of the segment list without acquiring any lock.
+ * Weight reduction and resizing are serialized among themselves, but never block fetchers.
+ *
  * This cache uses three memory limits to balance between publish and consume efficiency as well as
  * bounding the memory usage. It uses a provided {@link Weigher} to compute the weight of each entry
  * being stored inside the cache.
@@ -55,12 +61,15 @@ import javax.annotation.Nullable;
  *   by the consumer. On adding entries to the cache, the cache can keep growing without blocking as long as
  *   the hard limit is not hit so that the publisher doesn't need to be blocked.
  *   The room between the reduce trigger and hard limits is basically the buffer for non-blocking addition.
- *   - On addition, once the hard limit is reached, a blocking operation is needed to reduce the weight of the
- *     cache back to min retain.
+ *   - On addition, once the hard limit is reached, the publisher reduces the weight of the cache
+ *     back to min retain.
  *   - On fetching entries from the cache, the fetcher will check whether it needs to reduce the cache weight and reduce
- *     it if needed. This essentially is to amortize the cost of the blocking weight reduction operations among all
+ *     it if needed. This essentially is to amortize the cost of the weight reduction operations among all
  *     fetchers (which typically has multiple of them), without blocking the single publish as much as possible.
  *
+ * Since eviction happens at entry granularity but memory is released at segment granularity, up to one segment
+ * worth of evicted entries can remain referenced by the cache.
+ *
  * @param <T> type of entry stored in the cache
  */
 public class MessageCache<T> {
@@ -71,17 +80,25 @@ public class MessageCache<T> {
   private static final String METRICS_ADD_REQUESTS = "cache.add.requests";
   private static final String METRICS_ADD_REDUCE_WEIGHT = "cache.add.reduce.weight";
   private static final String METRICS_SCAN_REQUESTS = "cache.scan.requests";
+  private static final String METRICS_SCAN_HITS = "cache.scan.hits";
+  private static final String METRICS_SCAN_MISSES = "cache.scan.misses";
   private static final String METRICS_SCAN_REDUCE_WEIGHT = "cache.scan.reduce.weight";
 
-  private final NavigableSet<CacheEntry<T>> cache;
+  private static final int DEFAULT_SEGMENT_SIZE = 128;
+
+  private final int segmentSize;
+  private final AtomicReference<Segment<T>[]> segments;
   private final Comparator<T> comparator;
   private final AtomicReference<Limits> limits;
   private final MetricsContext metricsContext;
   private final AtomicLong currentWeight;
+  private final AtomicLong scanHits;
+  private final AtomicLong scanMisses;
+  private final AtomicLong missedWeight;
   private final AtomicBoolean needReduceWeight;
   private final AtomicBoolean adding;
   private final Weigher<T> weigher;
-  private final ReadWriteLock cacheLock;
+  private final Lock reduceLock;
 
   /**
    * Creates a new instance of the cache.
@@ -92,15 +109,27 @@ public class MessageCache<T> {
    * @param metricsContext a {@link MetricsContext} for emitting metrics about this cache.
    */
   public MessageCache(Comparator<T> comparator, Weigher<T> weigher, Limits limits, MetricsContext metricsContext) {
-    this.cache = new ConcurrentSkipListSet<>(new CacheEntryComparator<>(comparator));
+    this(comparator, weigher, limits, metricsContext, DEFAULT_SEGMENT_SIZE);
+  }
+
+  @VisibleForTesting
+  @SuppressWarnings("unchecked")
+  MessageCache(Comparator<T> comparator, Weigher<T> weigher, Limits limits,
+               MetricsContext metricsContext, int segmentSize) {
+    Preconditions.checkArgument(segmentSize > 0, "Segment size must be positive");
+    this.segmentSize = segmentSize;
+    this.segments = new AtomicReference<Segment<T>[]>(new Segment[0]);
     this.comparator = comparator;
     this.limits = new AtomicReference<>(limits);
     this.metricsContext = metricsContext;
     this.currentWeight = new AtomicLong();
+    this.scanHits = new AtomicLong();
+    this.scanMisses = new AtomicLong();
+    this.missedWeight = new AtomicLong();
     this.needReduceWeight = new AtomicBoolean();
     this.adding = new AtomicBoolean();
     this.weigher = weigher;
-    this.cacheLock = new ReentrantReadWriteLock();
+    this.reduceLock = new ReentrantLock();
   }
 
   /**
@@ -128,13 +157,13 @@ public class MessageCache<T> {
 
     try {
       long newWeight = 0L;
-      CacheEntry<T> largestCacheEntry = null;
+      T largestEntry = null;
 
       int entriesAdded = 0;
       while (entries.hasNext()) {
         T entry = entries.next();
-        CacheEntry<T> cacheEntry = new CacheEntry<>(entry, weigher.weight(entry));
-        newWeight = currentWeight.addAndGet(cacheEntry.getWeight());
+        int weight = weigher.weight(entry);
+        newWeight = currentWeight.addAndGet(weight);
         if (newWeight > limits.get().getHardLimit()) {
           reduceWeight();
           metricsContext.increment(METRICS_ADD_REDUCE_WEIGHT, 1L);
@@ -143,26 +172,25 @@ public class MessageCache<T> {
 
         // Make sure new entries are also in increasing order.
         // For the first entry from the provided iterator, it must be larger than everything in the cache, hence
-        // the ceiling call must be returning null.
+        // it must be larger than the last entry in the cache.
         // For sub-sequence entries in the iterator, they must be in strictly increasing order
-        largestCacheEntry = largestCacheEntry == null ? cache.ceiling(cacheEntry) : largestCacheEntry;
-        if (largestCacheEntry != null && comparator.compare(largestCacheEntry.getEntry(), cacheEntry.getEntry()) >= 0) {
+        largestEntry = largestEntry == null ? getLastEntry() : largestEntry;
+        if (largestEntry != null && comparator.compare(largestEntry, entry) >= 0) {
           // Entries must be in strictly increasing order
           // Clear the cache to reset state. This is just for precaution, as this shouldn't happen,
           // unless there is bug in the TMS system (from the caller side).
-          currentWeight.addAndGet(-1 * cacheEntry.getWeight());
+          currentWeight.addAndGet(-1 * weight);
           clear();
           throw new IllegalArgumentException("Cache entry must be in strictly increasing order. " +
-                                               "Entry " + entry + " is smaller than or equal to " +
-                                               largestCacheEntry.getEntry());
+                                               "Entry " + entry + " is smaller than or equal to " + largestEntry);
         }
 
         // It's ok to "leak" this to reader even if the new weight is larger than the hard limit
         // The entry will get removed eventually and the read/write operations as a whole still give valid
         // results
-        cache.add(cacheEntry);
+        getWritableSegment().append(entry, weight);
         entriesAdded++;
-        largestCacheEntry = cacheEntry;
+        largestEntry = entry;
       }
 
       metricsContext.increment(METRICS_ADD_REQUESTS, 1L);
@@ -190,32 +218,33 @@ public class MessageCache<T> {
    * @return a {@link Scanner} for accessing to the fetched entries
    */
   public Scanner<T> scan(T startEntry, boolean includeStart, int limit, MessageFilter<T> filter) {
-    List<T> entries = new LinkedList<>();
-
-    // Acquire the read lock and copy the entries. This is to guard against weight reduction while the caller
-    // is iterating using the returned Scanner.
-    cacheLock.readLock().lock();
-    T firstInCache;
-    try {
-      firstInCache = cache.isEmpty() ? null : cache.first().getEntry();
-      for (CacheEntry<T> cacheEntry : cache.tailSet(new CacheEntry<>(startEntry, 0), includeStart)) {
-        if (entries.size() >= limit) {
-          break;
-        }
-
-        MessageFilter.Result result = filter.apply(cacheEntry.getEntry());
-        if (result == MessageFilter.Result.ACCEPT) {
-          entries.add(cacheEntry.getEntry());
-        } else if (result == MessageFilter.Result.HOLD) {
-          // Hold means not to scan more, so just break
-          break;
-        }
+    List<T> entries = new ArrayList<>();
+
+    // Copy the entries from a snapshot of the segments. Entries are never removed from a segment, hence it is safe
+    // to read them without locking even if weight reduction happens concurrently.
+    Segment<T>[] segments = this.segments.get();
+    Position position = locate(segments, startEntry, includeStart);
+    T firstInCache = position.firstInCache;
+
+    SegmentIterator<T> iterator = new SegmentIterator<>(segments, position.segment, position.offset);
+    while (iterator.hasNext() && entries.size() < limit) {
+      T entry = iterator.next();
+      MessageFilter.Result result = filter.apply(entry);
+      if (result == MessageFilter.Result.ACCEPT) {
+        entries.add(entry);
+      } else if (result == MessageFilter.Result.HOLD) {
+        // Hold means not to scan more, so just break
+        break;
       }
-    } finally {
-      cacheLock.readLock().unlock();
     }
 
     metricsContext.increment(METRICS_SCAN_REQUESTS, 1L);
+    // A scan that starts before the cache is only a miss if the backing store has entries that the cache doesn't,
+    // which only the caller can tell. See recordMiss.
+    if (firstInCache != null && comparator.compare(firstInCache, startEntry) <= 0) {
+      scanHits.incrementAndGet();
+      metricsContext.increment(METRICS_SCAN_HITS, 1L);
+    }
 
     return new AbstractScanner<T>(entries.iterator(), firstInCache) {
       @Override
@@ -232,27 +261,27 @@ public class MessageCache<T> {
 
   /**
    * Updates entries in the cache. Update to each entry shouldn't change the ordering of the entry based on the
-   * {@link Comparator} provided to this cache.
+   * {@link Comparator} provided to this cache. Since fetchers don't lock the cache, the {@link EntryUpdater}
+   * should make the update visible to other threads atomically.
    *
    * @param startEntry the starting entry for the update to start (inclusive)
    * @param endEntry the ending entry for the update to end (inclusive)
    * @param updater a {@link EntryUpdater} to update the content of a entry
    */
   public void updateEntries(T startEntry, T endEntry, EntryUpdater<T> updater) {
-    CacheEntry<T> startCacheEntry = new CacheEntry<>(startEntry, 0);
-
-    cacheLock.writeLock().lock();
+    reduceLock.lock();
     try {
-      CacheEntry<T> lower = cache.lower(startCacheEntry);
-      Iterator<CacheEntry<T>> iterator = cache.subSet(startCacheEntry, true,
-                                                      new CacheEntry<>(endEntry, 0), true).iterator();
-      CacheEntry<T> cacheEntry = iterator.hasNext() ? iterator.next() : null;
-      while (cacheEntry != null) {
-        CacheEntry<T> nextCacheEntry = iterator.hasNext() ? iterator.next() : null;
-        CacheEntry<T> higher = nextCacheEntry == null ? cache.higher(cacheEntry) : nextCacheEntry;
+      Segment<T>[] segments = this.segments.get();
+      Position position = locate(segments, startEntry, true);
+      T lower = position.lower;
+
+      SegmentIterator<T> iterator = new SegmentIterator<>(segments, position.segment, position.offset);
+      while (iterator.hasNext() && comparator.compare(iterator.peek(), endEntry) <= 0) {
+        T entry = iterator.next();
+        T higher = iterator.hasNext() ? iterator.peek() : null;
 
         try {
-          updater.updateEntry(cacheEntry.getEntry());
+          updater.updateEntry(entry);
         } catch (RuntimeException e) {
           clear();
           throw e;
@@ -260,19 +289,17 @@ public class MessageCache<T> {
 
         // A quick check that the ordering hasn't been altered.
         // It doesn't cover all possible case though. This is just a quick catch for bug in the caller.
-        if ((lower != null && comparator.compare(lower.getEntry(), cacheEntry.getEntry()) >= 0)
-            || (higher != null && comparator.compare(higher.getEntry(), cacheEntry.getEntry()) <= 0)) {
+        if ((lower != null && comparator.compare(lower, entry) >= 0)
+          || (higher != null && comparator.compare(higher, entry) <= 0)) {
           // This shouldn't happen, unless there is bug in the caller.
           clear();
           throw new IllegalStateException("Entry order should not be altered after update.");
         }
 
-        lower = cacheEntry;
-        cacheEntry = nextCacheEntry;
+        lower = entry;
       }
-
     } finally {
-      cacheLock.writeLock().unlock();
+      reduceLock.unlock();
     }
   }
 
@@ -281,10 +308,15 @@ public class MessageCache<T> {
    * {@link #addAll(Iterator)} method.
    */
   public void clear() {
-    // To clear the cache, first set the limit to 0, the reset it back to proper limit
-    Limits oldLimits = limits.get();
-    resize(new Limits(0, 0, 0));
-    resize(oldLimits);
+    reduceLock.lock();
+    try {
+      // To clear the cache, first set the limit to 0, the reset it back to proper limit
+      Limits oldLimits = limits.get();
+      resize(new Limits(0, 0, 0));
+      resize(oldLimits);
+    } finally {
+      reduceLock.unlock();
+    }
   }
 
   /**
@@ -293,12 +325,12 @@ public class MessageCache<T> {
    * @param limits the new limits for this cache.
    */
   public void resize(Limits limits) {
-    cacheLock.writeLock().lock();
+    reduceLock.lock();
     try {
       this.limits.set(limits);
       reduceWeight();
     } finally {
-      cacheLock.writeLock().unlock();
+      reduceLock.unlock();
     }
   }
 
@@ -309,6 +341,38 @@ public class MessageCache<T> {
     return limits.get();
   }
 
+  /**
+   * Returns the number of scans since this cache was created that had the starting entry covered by the cache.
+   */
+  public long getScanHits() {
+    return scanHits.get();
+  }
+
+  /**
+   * Records a scan that had to read entries from the backing store because they were not in the cache.
+   *
+   * @param weight total weight of the entries read from the backing store
+   */
+  public void recordMiss(long weight) {
+    scanMisses.incrementAndGet();
+    missedWeight.addAndGet(weight);
+    metricsContext.increment(METRICS_SCAN_MISSES, 1L);
+  }
+
+  /**
+   * Returns the number of scans recorded by {@link #recordMiss(long)} since this cache was created.
+   */
+  public long getScanMisses() {
+    return scanMisses.get();
+  }
+
+  /**
+   * Returns the total weight of entries recorded by {@link #recordMiss(long)} since this cache was created.
+   */
+  public long getMissedWeight() {
+    return missedWeight.get();
+  }
+
   /**
    * Returns the current cache weight.
    */
@@ -317,31 +381,144 @@ public class MessageCache<T> {
     return currentWeight.get();
   }
 
+  /**
+   * Returns the number of segments currently in the cache.
+   */
+  @VisibleForTesting
+  int getSegmentCount() {
+    return segments.get().length;
+  }
+
   /**
    * Reduces the cache weight. Cached entries will be removed until the cache weight is smaller than the soft limit.
    */
   private void reduceWeight() {
     int entriesRemoved = 0;
-    cacheLock.writeLock().lock();
+    reduceLock.lock();
     try {
+      long minRetain = limits.get().getMinRetain();
       long newWeight = currentWeight.get();
-      Iterator<CacheEntry<T>> iterator = cache.iterator();
-      while (iterator.hasNext()) {
-        CacheEntry<T> cacheEntry = iterator.next();
+      int segmentsRemoved = 0;
+
+      for (Segment<T> segment : segments.get()) {
+        int head = segment.head;
+        int size = segment.size;
         // If removing the next entry is smaller than the min weight, we are done with the reduce logic
-        if (newWeight - cacheEntry.getWeight() < limits.get().getMinRetain()) {
+        while (head < size && newWeight - segment.weights[head] >= minRetain) {
+          newWeight = currentWeight.addAndGet(-1 * segment.weights[head]);
+          head++;
+          entriesRemoved++;
+        }
+        segment.head = head;
+
+        // Only a full segment can be dropped, since the writer may still be appending to the last one
+        if (head < size || size < segmentSize) {
           break;
         }
-        iterator.remove();
-        entriesRemoved++;
-        newWeight = currentWeight.addAndGet(-1 * cacheEntry.getWeight());
+        segmentsRemoved++;
+      }
+
+      if (segmentsRemoved > 0) {
+        removeSegments(segmentsRemoved);
       }
     } finally {
-      cacheLock.writeLock().unlock();
+      reduceLock.unlock();
     }
     metricsContext.increment(METRICS_ENTRIES_REMOVED, entriesRemoved);
   }
 
+  /**
+   * Returns the last entry in the cache or {@code null} if the cache is empty.
+   */
+  @Nullable
+  private T getLastEntry() {
+    Segment<T>[] segments = this.segments.get();
+    for (int i = segments.length - 1; i >= 0; i--) {
+      Segment<T> segment = segments[i];
+      int size = segment.size;
+      if (segment.head < size) {
+        return segment.get(size - 1);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the {@link Segment} for appending new entry. A new segment will be added if the last one is full.
+   * This method should only be called from the {@link #addAll(Iterator)} method.
+   */
+  @SuppressWarnings("unchecked")
+  private Segment<T> getWritableSegment() {
+    Segment<T>[] current = segments.get();
+    if (current.length > 0 && current[current.length - 1].size < segmentSize) {
+      return current[current.length - 1];
+    }
+
+    Segment<T> segment = new Segment<>(segmentSize);
+    // Only the weight reduction can concurrently remove segments from the head, hence just retry on CAS failure.
+    Segment<T>[] newSegments;
+    do {
+      current = segments.get();
+      newSegments = Arrays.copyOf(current, current.length + 1);
+      newSegments[current.length] = segment;
+    } while (!segments.compareAndSet(current, newSegments));
+    return segment;
+  }
+
+  /**
+   * Removes the given number of segments from the head. This method must be called with the reduce lock held.
+   */
+  private void removeSegments(int count) {
+    Segment<T>[] current;
+    Segment<T>[] newSegments;
+    do {
+      current = segments.get();
+      newSegments = Arrays.copyOfRange(current, count, current.length);
+    } while (!segments.compareAndSet(current, newSegments));
+  }
+
+  /**
+   * Locates the position of the first entry that is larger than (or equal to if {@code inclusive} is {@code true})
+   * the given entry in the given segments.
+   */
+  private Position locate(Segment<T>[] segments, T startEntry, boolean inclusive) {
+    Position position = new Position(segments.length);
+    for (int i = 0; i < segments.length; i++) {
+      Segment<T> segment = segments[i];
+      int head = segment.head;
+      int size = segment.size;
+      if (head >= size) {
+        continue;
+      }
+      if (position.firstInCache == null) {
+        position.firstInCache = segment.get(head);
+      }
+
+      // Find the first entry that is not before the start entry in this segment
+      int low = head;
+      int high = size;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        int cmp = comparator.compare(segment.get(mid), startEntry);
+        if (cmp < 0 || (cmp == 0 && !inclusive)) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+
+      if (low > head) {
+        position.lower = segment.get(low - 1);
+      }
+      if (low < size) {
+        position.segment = i;
+        position.offset = low;
+        break;
+      }
+    }
+    return position;
+  }
+
   /**
    * Carries the limits for the {@link MessageCache}.
    */
@@ -461,53 +638,78 @@ public class MessageCache<T> {
   }
 
   /**
-   * A private class that wraps a user provided entry of type {@code T} with an associated weight.
+   * A fixed size block of entries and their weights. Entries are appended by the single writer and published to
+   * readers through the volatile {@code size} field. The volatile {@code head} field marks the first entry that is
+   * not yet evicted.
    *
    * @param <T> type of the entry
    */
-  private static class CacheEntry<T> {
-    private final T entry;
-    private final int weight;
-
-    private CacheEntry(T entry, int weight) {
-      this.entry = entry;
-      this.weight = weight;
-    }
-
-    T getEntry() {
-      return entry;
+  private static final class Segment<T> {
+    private final Object[] entries;
+    private final int[] weights;
+    private volatile int head;
+    private volatile int size;
+
+    private Segment(int capacity) {
+      this.entries = new Object[capacity];
+      this.weights = new int[capacity];
     }
 
-    int getWeight() {
-      return weight;
+    @SuppressWarnings("unchecked")
+    T get(int idx) {
+      return (T) entries[idx];
     }
 
-    @Override
-    public String toString() {
-      return "CacheEntry{" +
-        "entry=" + entry +
-        ", weight=" + weight +
-        '}';
+    void append(T entry, int weight) {
+      int idx = size;
+      entries[idx] = entry;
+      weights[idx] = weight;
+      size = idx + 1;
     }
   }
 
   /**
-   * A {@link Comparator} for {@link CacheEntry} that only compares with the user entry of type {@code T},
-   * using the provided {@link Comparator}.
+   * An {@link Iterator} over entries of a snapshot of segments, starting from a given position.
+   * Entries appended to the segments after the iterator was created may or may not be visible to the iterator.
    *
-   * @param <T> type of the user entry
+   * @param <T> type of the entry
    */
-  private static final class CacheEntryComparator<T> implements Comparator<CacheEntry<T>> {
+  private static final class SegmentIterator<T> extends AbstractIterator<T> {
 
-    private final Comparator<T> comparator;
+    private final Segment<T>[] segments;
+    private int segment;
+    private int offset;
 
-    private CacheEntryComparator(Comparator<T> comparator) {
-      this.comparator = comparator;
+    private SegmentIterator(Segment<T>[] segments, int segment, int offset) {
+      this.segments = segments;
+      this.segment = segment;
+      this.offset = offset;
     }
 
     @Override
-    public int compare(CacheEntry<T> entry1, CacheEntry<T> entry2) {
-      return comparator.compare(entry1.getEntry(), entry2.getEntry());
+    protected T computeNext() {
+      while (segment < segments.length) {
+        if (offset < segments[segment].size) {
+          return segments[segment].get(offset++);
+        }
+        segment++;
+        offset = 0;
+      }
+      return endOfData();
+    }
+  }
+
+  /**
+   * Result of the {@link #locate(Segment[], Object, boolean)} method.
+   */
+  private final class Position {
+    private int segment;
+    private int offset;
+    private T firstInCache;
+    private T lower;
+
+    private Position(int segment) {
+      this.segment = segment;
     }
   }
 }
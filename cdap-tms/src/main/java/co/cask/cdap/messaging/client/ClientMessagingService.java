@@ -62,7 +62,9 @@ import org.apache.avro.io.EncoderFactory;
 import org.apache.tephra.TransactionCodec;
 import org.apache.twill.discovery.DiscoveryServiceClient;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Type;
@@ -93,12 +95,26 @@ public final class ClientMessagingService implements MessagingService {
   private static final Type TOPIC_LIST_TYPE = new TypeToken<List<String>>() { }.getType();
 
   private final RemoteClient remoteClient;
+  private final boolean binaryFetchResponse;
 
   @VisibleForTesting
   @Inject
   public ClientMessagingService(final DiscoveryServiceClient discoveryServiceClient) {
+    this(discoveryServiceClient, true);
+  }
+
+  /**
+   * Creates an instance with the option to request the binary framed fetch response.
+   *
+   * @param discoveryServiceClient the {@link DiscoveryServiceClient} for discovering the messaging service
+   * @param binaryFetchResponse {@code true} to accept the binary framed fetch response; {@code false} to always
+   *                            have the fetch response encoded in avro
+   */
+  @VisibleForTesting
+  public ClientMessagingService(DiscoveryServiceClient discoveryServiceClient, boolean binaryFetchResponse) {
     this.remoteClient = new RemoteClient(discoveryServiceClient, Constants.Service.MESSAGING_SERVICE,
                                          HTTP_REQUEST_CONFIG, "/v1/namespaces/");
+    this.binaryFetchResponse = binaryFetchResponse;
   }
 
   @Override
@@ -342,18 +358,24 @@ public final class ClientMessagingService implements MessagingService {
    * Verifies the content-type in the header matches with the required type.
    */
   private void verifyContentType(Map<String, ? extends Collection<String>> headers, String requiredContentType) {
+    if (!requiredContentType.equalsIgnoreCase(getContentType(headers))) {
+      throw new IllegalArgumentException("Only " + requiredContentType + " content type is support.");
+    }
+  }
+
+  /**
+   * Returns the content-type in the header or {@code null} if it is absent.
+   */
+  @Nullable
+  private String getContentType(Map<String, ? extends Collection<String>> headers) {
     // Netty 4.1 has all headers set with lower case name
     // However, the cdap-http library doesn't handle it well, hence we iterate all headers instead of lookup in here
-    boolean passed = false;
     for (Map.Entry<String, ? extends Collection<String>> entry : headers.entrySet()) {
       if (HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(entry.getKey())) {
-        passed = requiredContentType.equalsIgnoreCase(Iterables.getFirst(entry.getValue(), null));
-        break;
+        return Iterables.getFirst(entry.getValue(), null);
       }
     }
-    if (!passed) {
-      throw new IllegalArgumentException("Only " + requiredContentType + " content type is support.");
-    }
+    return null;
   }
 
   /**
@@ -411,6 +433,11 @@ public final class ClientMessagingService implements MessagingService {
       urlConn.setReadTimeout(HTTP_REQUEST_CONFIG.getReadTimeout());
       urlConn.setRequestMethod("POST");
       urlConn.setRequestProperty(HttpHeaders.CONTENT_TYPE, "avro/binary");
+      // Prefer the binary framed response, which is cheaper to decode. Older servers ignore it and respond in avro.
+      if (binaryFetchResponse) {
+        urlConn.setRequestProperty(HttpHeaders.ACCEPT,
+                                   Schemas.V1.ConsumeResponse.BINARY_CONTENT_TYPE + ", avro/binary");
+      }
       urlConn.setDoInput(true);
       urlConn.setDoOutput(true);
 
@@ -438,6 +465,10 @@ public final class ClientMessagingService implements MessagingService {
           }
         }
       }, "Failed to update topic " + topicId);
+
+      if (Schemas.V1.ConsumeResponse.BINARY_CONTENT_TYPE.equalsIgnoreCase(getContentType(urlConn.getHeaderFields()))) {
+        return decodeBinaryResponse(urlConn);
+      }
       verifyContentType(urlConn.getHeaderFields(), "avro/binary");
 
       // Decode the avro array manually instead of using DatumReader in order to support streaming decode.
@@ -484,5 +515,38 @@ public final class ClientMessagingService implements MessagingService {
         }
       };
     }
+
+    /**
+     * Decodes a response in the binary framing described in {@link Schemas.V1.ConsumeResponse#BINARY_CONTENT_TYPE}.
+     */
+    private CloseableIterator<RawMessage> decodeBinaryResponse(final HttpURLConnection urlConn) throws IOException {
+      final DataInputStream input = new DataInputStream(new BufferedInputStream(urlConn.getInputStream()));
+      return new AbstractCloseableIterator<RawMessage>() {
+
+        @Override
+        protected RawMessage computeNext() {
+          try {
+            int idLength = input.readInt();
+            if (idLength == Schemas.V1.ConsumeResponse.END_OF_MESSAGES) {
+              return endOfData();
+            }
+            byte[] id = new byte[idLength];
+            input.readFully(id);
+            byte[] payload = new byte[input.readInt()];
+            input.readFully(payload);
+            return new RawMessage(id, payload);
+          } catch (IOException e) {
+            // An EOFException is raised if the response ended without the end marker
+            throw Throwables.propagate(e);
+          }
+        }
+
+        @Override
+        public void close() {
+          Closeables.closeQuietly(input);
+          urlConn.disconnect();
+        }
+      };
+    }
   }
 }
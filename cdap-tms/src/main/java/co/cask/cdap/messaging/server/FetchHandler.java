@@ -39,6 +39,7 @@ import com.google.inject.Inject;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
 import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.FullHttpRequest;
@@ -111,11 +112,21 @@ public final class FetchHandler extends AbstractHttpHandler {
     Decoder decoder = DecoderFactory.get().directBinaryDecoder(new ByteBufInputStream(request.content()), null);
     DatumReader<GenericRecord> datumReader = new GenericDatumReader<>(Schemas.V1.ConsumeRequest.SCHEMA);
 
+    // Use the binary framing for the response if the client accepts it; otherwise fallback to avro
+    String accept = request.headers().get(HttpHeaderNames.ACCEPT);
+    boolean binary = accept != null && accept.contains(Schemas.V1.ConsumeResponse.BINARY_CONTENT_TYPE);
+
     // Fetch the messages
     CloseableIterator<RawMessage> iterator = fetchMessages(datumReader.read(null, decoder), topicId);
     try {
-      responder.sendContent(HttpResponseStatus.OK, new MessagesBodyProducer(iterator, messageChunkSize),
-                            new DefaultHttpHeaders().set(HttpHeaderNames.CONTENT_TYPE, "avro/binary"));
+      if (binary) {
+        responder.sendContent(HttpResponseStatus.OK, new BinaryMessagesBodyProducer(iterator, messageChunkSize),
+                              new DefaultHttpHeaders().set(HttpHeaderNames.CONTENT_TYPE,
+                                                           Schemas.V1.ConsumeResponse.BINARY_CONTENT_TYPE));
+      } else {
+        responder.sendContent(HttpResponseStatus.OK, new MessagesBodyProducer(iterator, messageChunkSize),
+                              new DefaultHttpHeaders().set(HttpHeaderNames.CONTENT_TYPE, "avro/binary"));
+      }
     } catch (Throwable t) {
       iterator.close();
       throw t;
@@ -156,14 +167,47 @@ public final class FetchHandler extends AbstractHttpHandler {
     return fetcher.fetch();
   }
 
+  /**
+   * Base class for {@link BodyProducer} that sends back messages from a {@link CloseableIterator}.
+   */
+  private abstract static class AbstractMessagesBodyProducer extends BodyProducer {
+
+    protected final CloseableIterator<RawMessage> iterator;
+
+    AbstractMessagesBodyProducer(CloseableIterator<RawMessage> iterator) {
+      this.iterator = iterator;
+    }
+
+    @Override
+    public void finished() throws Exception {
+      iterator.close();
+    }
+
+    @Override
+    public void handleError(@Nullable Throwable cause) {
+      iterator.close();
+      // Since response header is already sent, there is nothing we can send back to client. Simply log the failure
+      if (cause instanceof SocketException
+        || cause instanceof ClosedChannelException
+        || (cause instanceof IOException && KNOWN_IO_EXCEPTION_MESSAGES.contains(cause.getMessage()))) {
+        // This can easily caused by client close connection prematurely. Don't want to flood the log.
+        LOG.trace("Connection closed by client prematurely while sending messages back to client", cause);
+      } else {
+        // Use sampling logger to log to avoid flooding the log if there is any systematic failure
+        SAMPLING_LOG.warn("Exception raised when sending messages back to client", cause);
+        // Also log a trace to provide a way to see every error if needed
+        LOG.trace("Exception raised when sending messages back to client", cause);
+      }
+    }
+  }
+
   /**
    * A {@link BodyProducer} to encode and send back messages.
    * Instead of using GenericDatumWriter, we perform the array encoding manually so that we don't have to buffer
    * all messages in memory before sending out.
    */
-  private static class MessagesBodyProducer extends BodyProducer {
+  private static final class MessagesBodyProducer extends AbstractMessagesBodyProducer {
 
-    private final CloseableIterator<RawMessage> iterator;
     private final List<RawMessage> messages;
     private final int messageChunkSize;
     private final ByteBuf chunk;
@@ -174,7 +218,7 @@ public final class FetchHandler extends AbstractHttpHandler {
     private boolean arrayEnded;
 
     MessagesBodyProducer(CloseableIterator<RawMessage> iterator, int messageChunkSize) {
-      this.iterator = iterator;
+      super(iterator);
       this.messages = new ArrayList<>();
       this.messageChunkSize = messageChunkSize;
       this.chunk = Unpooled.buffer(messageChunkSize);
@@ -243,25 +287,62 @@ public final class FetchHandler extends AbstractHttpHandler {
 
     @Override
     public void finished() throws Exception {
-      iterator.close();
-      chunk.release();
+      try {
+        super.finished();
+      } finally {
+        chunk.release();
+      }
+    }
+  }
+
+  /**
+   * A {@link BodyProducer} that writes the id and payload of each message directly to a pooled {@link ByteBuf}
+   * using the framing described in {@link Schemas.V1.ConsumeResponse#BINARY_CONTENT_TYPE}.
+   * Each chunk is allocated with the exact size needed and ownership is passed to the http library,
+   * hence no intermediate buffer or copy is needed.
+   */
+  private static final class BinaryMessagesBodyProducer extends AbstractMessagesBodyProducer {
+
+    private final List<RawMessage> messages;
+    private final int messageChunkSize;
+    private boolean ended;
+
+    BinaryMessagesBodyProducer(CloseableIterator<RawMessage> iterator, int messageChunkSize) {
+      super(iterator);
+      this.messages = new ArrayList<>();
+      this.messageChunkSize = messageChunkSize;
     }
 
     @Override
-    public void handleError(@Nullable Throwable cause) {
-      iterator.close();
-      // Since response header is already sent, there is nothing we can send back to client. Simply log the failure
-      if (cause instanceof SocketException
-        || cause instanceof ClosedChannelException
-        || (cause instanceof IOException && KNOWN_IO_EXCEPTION_MESSAGES.contains(cause.getMessage()))) {
-        // This can easily caused by client close connection prematurely. Don't want to flood the log.
-        LOG.trace("Connection closed by client prematurely while sending messages back to client", cause);
-      } else {
-        // Use sampling logger to log to avoid flooding the log if there is any systematic failure
-        SAMPLING_LOG.warn("Exception raised when sending messages back to client", cause);
-        // Also log a trace to provide a way to see every error if needed
-        LOG.trace("Exception raised when sending messages back to client", cause);
+    public ByteBuf nextChunk() throws Exception {
+      // Already sent all messages, return empty to signal the end of response
+      if (ended) {
+        return Unpooled.EMPTY_BUFFER;
+      }
+
+      // Try to buffer up to buffer size. Each message has two 4-byte lengths in addition to the id and payload.
+      int size = 0;
+      messages.clear();
+      while (iterator.hasNext() && size < messageChunkSize) {
+        RawMessage message = iterator.next();
+        messages.add(message);
+        size += message.getId().length + message.getPayload().length + 8;
+      }
+
+      if (!iterator.hasNext()) {
+        ended = true;
+        size += 4;
+      }
+
+      ByteBuf chunk = PooledByteBufAllocator.DEFAULT.buffer(size);
+      for (RawMessage message : messages) {
+        chunk.writeInt(message.getId().length).writeBytes(message.getId());
+        chunk.writeInt(message.getPayload().length).writeBytes(message.getPayload());
+      }
+      if (ended) {
+        chunk.writeInt(Schemas.V1.ConsumeResponse.END_OF_MESSAGES);
       }
+      return chunk;
     }
   }
 }
@@ -31,7 +31,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
@@ -58,6 +61,12 @@ import javax.annotation.concurrent.ThreadSafe;
  *
  * The spin lock between step 2 to step 8 is necessary as it guarantees events enqueued by all threads would eventually
  * get written and flushed.
+ *
+ * When group commit is enabled, threads that fail to acquire the writer flag in step 3 park instead of spinning.
+ * They are unparked either when their request is completed, or by the writer when it releases the writer flag while
+ * there are still requests in the queue, in which case the thread owning the request at the head of the queue takes
+ * over as the writer. The writer also waits up to a configurable delay for a batch to fill up before writing, and
+ * writes at most a configurable number of requests per batch.
  */
 @ThreadSafe
 final class ConcurrentMessageWriter implements Closeable {
@@ -67,6 +76,10 @@ final class ConcurrentMessageWriter implements Closeable {
   private final PendingStoreQueue pendingStoreQueue;
   private final AtomicBoolean writerFlag;
   private final AtomicBoolean closed;
+  private final boolean groupCommit;
+  private final int maxBatchSize;
+  private final long maxDelayNanos;
+  private volatile Thread writerThread;
 
   /**
    * Constructor with a {@link NoopMetricsContext}. This constructor should only be used in unit-testing.
@@ -83,11 +96,37 @@ final class ConcurrentMessageWriter implements Closeable {
    * @param metricsCollector the {@link MetricsCollector} for collecting metrics emitted by this class.
    */
   ConcurrentMessageWriter(StoreRequestWriter<?> messagesWriter, MetricsCollector metricsCollector) {
+    this(messagesWriter, metricsCollector, false, Integer.MAX_VALUE, 0L);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param messagesWriter the {@link StoreRequestWriter} for persisting {@link StoreRequest}.
+   * @param metricsCollector the {@link MetricsCollector} for collecting metrics emitted by this class.
+   * @param groupCommit {@code true} to have threads waiting for their requests to be persisted parked instead of
+   *                    spinning
+   * @param maxBatchSize maximum number of {@link StoreRequest} to be persisted in one batch when group commit
+   *                     is enabled
+   * @param maxDelayMillis maximum number of milliseconds to wait for a batch to fill up before persisting it when
+   *                       group commit is enabled
+   */
+  ConcurrentMessageWriter(StoreRequestWriter<?> messagesWriter, MetricsCollector metricsCollector,
+                          boolean groupCommit, int maxBatchSize, long maxDelayMillis) {
+    if (maxBatchSize <= 0) {
+      throw new IllegalArgumentException("Maximum batch size must be > 0");
+    }
+    if (maxDelayMillis < 0) {
+      throw new IllegalArgumentException("Maximum batch delay must be >= 0");
+    }
     this.messagesWriter = messagesWriter;
     this.metricsCollector = metricsCollector;
     this.pendingStoreQueue = new PendingStoreQueue(metricsCollector);
     this.writerFlag = new AtomicBoolean();
     this.closed = new AtomicBoolean();
+    this.groupCommit = groupCommit;
+    this.maxBatchSize = groupCommit ? maxBatchSize : Integer.MAX_VALUE;
+    this.maxDelayNanos = groupCommit ? TimeUnit.MILLISECONDS.toNanos(maxDelayMillis) : 0L;
   }
 
   /**
@@ -107,13 +146,25 @@ final class ConcurrentMessageWriter implements Closeable {
     }
 
     PendingStoreRequest pendingStoreRequest = new PendingStoreRequest(storeRequest, metadata);
-    pendingStoreQueue.enqueue(pendingStoreRequest);
+    if (pendingStoreQueue.enqueue(pendingStoreRequest) >= maxBatchSize) {
+      // Wake up the writer that is waiting for the batch to fill up
+      Thread writer = writerThread;
+      if (writer != null) {
+        LockSupport.unpark(writer);
+      }
+    }
 
     metricsCollector.increment("persist.requested", 1L);
 
     while (!pendingStoreRequest.isCompleted()) {
       if (!tryWrite()) {
-        Thread.yield();
+        if (groupCommit) {
+          // Will be unparked when the request is completed, or when the current writer wants this thread to
+          // take over the writer role. Spurious wakeup is fine since it is handled by the loop.
+          LockSupport.park(this);
+        } else {
+          Thread.yield();
+        }
       }
     }
 
@@ -144,13 +195,44 @@ final class ConcurrentMessageWriter implements Closeable {
       return false;
     }
     try {
-      pendingStoreQueue.persist(messagesWriter);
+      if (maxDelayNanos > 0) {
+        awaitBatch();
+      }
+      pendingStoreQueue.persist(messagesWriter, maxBatchSize);
     } finally {
       writerFlag.set(false);
     }
+
+    if (groupCommit) {
+      // If there are requests left in the queue, wake up the thread owning the first one so that it can become the
+      // writer. This must happen after the writer flag is released, otherwise there is a race with a thread that
+      // enqueued a request, failed to acquire the writer flag and is about to park.
+      PendingStoreRequest nextRequest = pendingStoreQueue.peek();
+      if (nextRequest != null) {
+        LockSupport.unpark(nextRequest.getCallerThread());
+      }
+    }
     return true;
   }
 
+  /**
+   * Waits until there are enough requests in the queue to fill up a batch, or until the max delay has passed.
+   * This method must be called while holding the writer flag.
+   */
+  private void awaitBatch() {
+    writerThread = Thread.currentThread();
+    try {
+      long deadline = System.nanoTime() + maxDelayNanos;
+      long remaining = maxDelayNanos;
+      while (remaining > 0 && pendingStoreQueue.size() < maxBatchSize && !closed.get()) {
+        LockSupport.parkNanos(this, remaining);
+        remaining = deadline - System.nanoTime();
+      }
+    } finally {
+      writerThread = null;
+    }
+  }
+
   @Override
   public void close() throws IOException {
     if (!closed.compareAndSet(false, true)) {
@@ -159,7 +241,7 @@ final class ConcurrentMessageWriter implements Closeable {
     // Flush everything in the queue.
     // When this thread can grab the writer flag, all pending write requests must be completed since the closed
     // flag was already set to false.
-    while (!tryWrite()) {
+    while (!tryWrite() || pendingStoreQueue.size() > 0) {
       Thread.yield();
     }
     messagesWriter.close();
@@ -174,25 +256,45 @@ final class ConcurrentMessageWriter implements Closeable {
 
     private final MetricsCollector metricsCollector;
     private final Queue<PendingStoreRequest> writeQueue;
+    private final AtomicInteger queueSize;
     private final List<PendingStoreRequest> inflightRequests;
 
     private PendingStoreQueue(MetricsCollector metricsCollector) {
       this.metricsCollector = metricsCollector;
       this.writeQueue = new ConcurrentLinkedQueue<>();
+      this.queueSize = new AtomicInteger();
       this.inflightRequests = new ArrayList<>(100);
     }
 
     /**
      * Puts the given {@link PendingStoreRequest} to the concurrent queue.
+     *
+     * @return the number of requests in the queue after the enqueue
      */
-    void enqueue(PendingStoreRequest storeRequest) {
+    int enqueue(PendingStoreRequest storeRequest) {
       writeQueue.add(storeRequest);
+      return queueSize.incrementAndGet();
+    }
+
+    /**
+     * Returns the {@link PendingStoreRequest} at the head of the queue or {@code null} if the queue is empty.
+     */
+    @Nullable
+    PendingStoreRequest peek() {
+      return writeQueue.peek();
+    }
+
+    /**
+     * Returns the number of requests in the queue.
+     */
+    int size() {
+      return queueSize.get();
     }
 
     /**
-     * Persists all {@link PendingStoreRequest} currently in the queue with the given writer.
+     * Persists up to {@code maxBatchSize} {@link PendingStoreRequest} currently in the queue with the given writer.
      */
-    void persist(StoreRequestWriter<?> writer) {
+    void persist(StoreRequestWriter<?> writer, int maxBatchSize) {
       // Capture all current events.
       // The reason for capturing instead of using a live iterator is to avoid the possible case of infinite write
       // time. E.g. while generating the entry to write to the storage table, a new store request get enqueued.
@@ -200,20 +302,24 @@ final class ConcurrentMessageWriter implements Closeable {
       // Since this method is expected to be called (indirectly) from a http handler thread, that is bounded by
       // the thread pool size used by the http service.
       inflightRequests.clear();
-      PendingStoreRequest request = writeQueue.poll();
+      PendingStoreRequest request = inflightRequests.size() < maxBatchSize ? writeQueue.poll() : null;
       while (request != null) {
         inflightRequests.add(request);
-        request = writeQueue.poll();
+        request = inflightRequests.size() < maxBatchSize ? writeQueue.poll() : null;
       }
+      queueSize.addAndGet(-inflightRequests.size());
 
       metricsCollector.gauge("persist.queue.size", inflightRequests.size());
 
+      long startTime = System.nanoTime();
       try {
         writer.write(inflightRequests.iterator());
         completeAll(null);
       } catch (Throwable t) {
         completeAll(t);
       }
+      metricsCollector.increment("persist.batch.count", 1L);
+      metricsCollector.gauge("persist.batch.latency.ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
     }
 
     /**
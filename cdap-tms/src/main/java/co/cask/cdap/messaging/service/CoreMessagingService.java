@@ -373,7 +373,11 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
             Constants.Metrics.Tag.TABLE, messageTable ? "message" : "payload"
           ));
 
-          return new ConcurrentMessageWriter(messagesWriter, metricsContext);
+          return new ConcurrentMessageWriter(
+            messagesWriter, metricsContext,
+            cConf.getBoolean(Constants.MessagingSystem.GROUP_COMMIT_ENABLED),
+            cConf.getInt(Constants.MessagingSystem.GROUP_COMMIT_MAX_BATCH_SIZE),
+            cConf.getLong(Constants.MessagingSystem.GROUP_COMMIT_MAX_DELAY_MS));
         }
       });
   }
@@ -19,6 +19,7 @@ package co.cask.cdap.messaging.service;
 import co.cask.cdap.messaging.StoreRequest;
 import co.cask.cdap.messaging.TopicMetadata;
 
+import java.util.concurrent.locks.LockSupport;
 import javax.annotation.Nullable;
 
 /**
@@ -28,8 +29,9 @@ final class PendingStoreRequest extends StoreRequest {
 
   private final StoreRequest originalRequest;
   private final TopicMetadata metadata;
+  private final Thread callerThread;
 
-  private boolean completed;
+  private volatile boolean completed;
   private long startTimestamp;
   private long endTimestamp;
   private int startSequenceId;
@@ -41,12 +43,20 @@ final class PendingStoreRequest extends StoreRequest {
           originalRequest.getTransactionWritePointer());
     this.originalRequest = originalRequest;
     this.metadata = topicMetadata;
+    this.callerThread = Thread.currentThread();
   }
 
   TopicMetadata getTopicMetadata() {
     return metadata;
   }
 
+  /**
+   * Returns the {@link Thread} that created this request, which is the thread waiting for the request to complete.
+   */
+  Thread getCallerThread() {
+    return callerThread;
+  }
+
   boolean isCompleted() {
     return completed;
   }
@@ -64,8 +74,10 @@ final class PendingStoreRequest extends StoreRequest {
   }
 
   void completed(@Nullable Throwable failureCause) {
-    completed = true;
     this.failureCause = failureCause;
+    completed = true;
+    // Wake up the caller thread in case it is parked waiting for the completion
+    LockSupport.unpark(callerThread);
   }
 
   void setStartTimestamp(long startTimestamp) {
@@ -149,10 +149,14 @@ public abstract class AbstractMessageTable implements MessageTable {
              continue;
            }
         }
-        MessageFilter.Result status = accept(tableEntry.getTxPtr());
+        // Only materialize the payload for accepted entries. The tx write pointer is read directly from the raw entry.
+        boolean transactional = tableEntry.isTransactional();
+        long txWritePtr = transactional ? tableEntry.getTxWritePointer() : -1L;
+        MessageFilter.Result status = accept(transactional, txWritePtr);
         if (status == MessageFilter.Result.ACCEPT) {
           maxLimit--;
-          return new ImmutableMessageTableEntry(tableEntry.getKey(), tableEntry.getPayload(), tableEntry.getTxPtr());
+          return new ImmutableMessageTableEntry(tableEntry.getKey(), tableEntry.getPayload(),
+                                                transactional, txWritePtr);
         }
 
         if (status == MessageFilter.Result.HOLD) {
@@ -172,13 +176,13 @@ public abstract class AbstractMessageTable implements MessageTable {
       }
     }
 
-    private MessageFilter.Result accept(@Nullable byte[] txPtr) {
+    private MessageFilter.Result accept(boolean transactional, long txWritePtr) {
       // No transaction info available, so accept this message (it must have been published non-transactionally)
-      if (filter == null || txPtr == null) {
+      if (filter == null || !transactional) {
         return MessageFilter.Result.ACCEPT;
       }
 
-      return filter.filter(Bytes.toLong(txPtr));
+      return filter.filter(txWritePtr);
     }
   }
 
@@ -35,6 +35,20 @@ public final class ImmutableMessageTableEntry implements MessageTable.Entry {
   private final short sequenceId;
 
   public ImmutableMessageTableEntry(byte[] row, @Nullable byte[] payload, @Nullable byte[] txPtr) {
+    this(row, payload, txPtr != null, txPtr == null ? -1L : Bytes.toLong(txPtr));
+  }
+
+  /**
+   * Creates an instance with the transaction write pointer as stored in the table.
+   *
+   * @param row the row key of the entry
+   * @param payload the message payload or {@code null} if the payload is stored in the payload table
+   * @param transactional {@code true} if the entry was written transactionally
+   * @param storedTxWritePointer the transaction write pointer as stored in the table, which is negative if the
+   *                             transaction was rolled back. It is ignored if {@code transactional} is {@code false}.
+   */
+  public ImmutableMessageTableEntry(byte[] row, @Nullable byte[] payload,
+                                    boolean transactional, long storedTxWritePointer) {
     this.topicId = MessagingUtils.toTopicId(row, 0,
                                             row.length - Bytes.SIZEOF_SHORT - Bytes.SIZEOF_LONG - Bytes.SIZEOF_INT);
     this.generation = Bytes.toInt(row, row.length - Bytes.SIZEOF_SHORT - Bytes.SIZEOF_LONG - Bytes.SIZEOF_INT);
@@ -42,9 +56,9 @@ public final class ImmutableMessageTableEntry implements MessageTable.Entry {
     int topicLength = MessagingUtils.getTopicLengthMessageEntry(row.length);
     this.publishTimestamp = Bytes.toLong(row, topicLength);
     this.sequenceId = Bytes.toShort(row, topicLength + Bytes.SIZEOF_LONG);
-    this.transactional = (txPtr != null);
+    this.transactional = transactional;
     // since we mark tx as negative when tx is rolled back, we return the absolute value of tx
-    this.transactionWritePointer = txPtr == null ? -1 : Math.abs(Bytes.toLong(txPtr));
+    this.transactionWritePointer = transactional ? Math.abs(storedTxWritePointer) : -1;
     this.payload = payload;
   }
 
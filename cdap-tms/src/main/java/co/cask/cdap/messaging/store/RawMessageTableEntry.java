@@ -16,20 +16,47 @@
 
 package co.cask.cdap.messaging.store;
 
+import co.cask.cdap.api.common.Bytes;
+
+import java.util.Arrays;
 import javax.annotation.Nullable;
 
 /**
  * Container class that contains raw bytes corresponding to an entry in the Message Table.
+ * The transaction write pointer and the payload can either be set as individual byte arrays, or as
+ * offset and length views over a shared byte array, which avoids copying when decoding table values.
  */
 public class RawMessageTableEntry {
   private byte[] key;
   private byte[] txPtr;
+  private int txPtrOffset;
   private byte[] payload;
+  private int payloadOffset;
+  private int payloadLength;
 
   public RawMessageTableEntry set(byte[] key, @Nullable byte[] txPtr, @Nullable byte[] payload) {
+    return set(key, txPtr, 0, payload, 0, payload == null ? 0 : payload.length);
+  }
+
+  /**
+   * Sets the content of this entry with the transaction write pointer and payload as views over byte arrays.
+   *
+   * @param key the row key
+   * @param txPtr the byte array containing the transaction write pointer or {@code null} for non-transactional entry
+   * @param txPtrOffset the offset in {@code txPtr} that the transaction write pointer starts
+   * @param payload the byte array containing the payload or {@code null} if there is no payload
+   * @param payloadOffset the offset in {@code payload} that the payload starts
+   * @param payloadLength the length of the payload
+   * @return this instance
+   */
+  public RawMessageTableEntry set(byte[] key, @Nullable byte[] txPtr, int txPtrOffset,
+                                  @Nullable byte[] payload, int payloadOffset, int payloadLength) {
     this.key = key;
     this.txPtr = txPtr;
+    this.txPtrOffset = txPtrOffset;
     this.payload = payload;
+    this.payloadOffset = payloadOffset;
+    this.payloadLength = payloadLength;
     return this;
   }
 
@@ -37,13 +64,42 @@ public class RawMessageTableEntry {
     return key;
   }
 
+  /**
+   * Returns {@code true} if this entry has transaction write pointer.
+   */
+  public boolean isTransactional() {
+    return txPtr != null;
+  }
+
+  /**
+   * Returns the transaction write pointer without copying. This method should only be called
+   * if {@link #isTransactional()} returns {@code true}.
+   */
+  public long getTxWritePointer() {
+    return Bytes.toLong(txPtr, txPtrOffset);
+  }
+
+  /**
+   * Returns the transaction write pointer as a byte array. A new array will be created if the transaction write
+   * pointer was set as a view over a larger byte array.
+   */
   @Nullable
   public byte[] getTxPtr() {
-    return txPtr;
+    if (txPtr == null || (txPtrOffset == 0 && txPtr.length == Bytes.SIZEOF_LONG)) {
+      return txPtr;
+    }
+    return Arrays.copyOfRange(txPtr, txPtrOffset, txPtrOffset + Bytes.SIZEOF_LONG);
   }
 
+  /**
+   * Returns the payload as a byte array. A new array will be created if the payload was set as a view
+   * over a larger byte array.
+   */
   @Nullable
   public byte[] getPayload() {
-    return payload;
+    if (payload == null || (payloadOffset == 0 && payload.length == payloadLength)) {
+      return payload;
+    }
+    return Arrays.copyOfRange(payload, payloadOffset, payloadOffset + payloadLength);
   }
 }
@@ -49,6 +49,7 @@ final class CachingMessageTable implements MessageTable {
   // Copied from TxConstants in Tephra because TMS doesn't depends on tephra-core.
   @VisibleForTesting
   static final String PRUNE_GRACE_PERIOD = "data.tx.grace.period";
+  private static final MessageTableEntryWeigher WEIGHER = new MessageTableEntryWeigher();
 
   private final long gracePeriod;
   private final MessageTable messageTable;
@@ -93,7 +94,7 @@ final class CachingMessageTable implements MessageTable {
 
     // Otherwise scan the table and return a combine result.
     CloseableIterator<Entry> tableIterator = messageTable.fetch(metadata, startTime, limit, transaction);
-    return new CombineMessageEntryIterator(tableIterator, scanner, messageCache.getComparator(), limit);
+    return new CombineMessageEntryIterator(tableIterator, scanner, messageCache, limit);
   }
 
   @Override
@@ -122,7 +123,7 @@ final class CachingMessageTable implements MessageTable {
 
     // Otherwise scan the table and return a combine result.
     CloseableIterator<Entry> tableIterator = messageTable.fetch(metadata, messageId, inclusive, limit, transaction);
-    return new CombineMessageEntryIterator(tableIterator, scanner, messageCache.getComparator(), limit);
+    return new CombineMessageEntryIterator(tableIterator, scanner, messageCache, limit);
   }
 
   @Override
@@ -241,18 +242,21 @@ final class CachingMessageTable implements MessageTable {
 
     private final CloseableIterator<Entry> tableIterator;
     private final MessageCache.Scanner<Entry> scanner;
+    private final MessageCache<Entry> messageCache;
     private final Comparator<Entry> comparator;
     private boolean iterateCache;
     private Entry firstCachedEntry;
     private int count;
+    private long missedWeight;
 
     private CombineMessageEntryIterator(CloseableIterator<Entry> tableIterator,
                                         MessageCache.Scanner<Entry> scanner,
-                                        Comparator<Entry> comparator,
+                                        MessageCache<Entry> messageCache,
                                         int limit) {
       this.tableIterator = tableIterator;
       this.scanner = scanner;
-      this.comparator = comparator;
+      this.messageCache = messageCache;
+      this.comparator = messageCache.getComparator();
       this.firstCachedEntry = scanner.hasNext() ? scanner.next() : null;
       this.count = limit;
     }
@@ -281,6 +285,9 @@ final class CachingMessageTable implements MessageTable {
         entry = firstCachedEntry;
         firstCachedEntry = null;
         iterateCache = true;
+      } else {
+        // The entry is only served by the table
+        missedWeight += WEIGHER.weight(entry);
       }
 
       return entry;
@@ -292,6 +299,11 @@ final class CachingMessageTable implements MessageTable {
         tableIterator.close();
       } finally {
         scanner.close();
+        // Only count a miss if the table had entries that the cache doesn't
+        if (missedWeight > 0) {
+          messageCache.recordMiss(missedWeight);
+          missedWeight = 0;
+        }
       }
     }
   }
@@ -344,7 +356,7 @@ final class CachingMessageTable implements MessageTable {
     private final long publishTimestamp;
     private final short sequenceId;
     private long transactionWritePointer;
-    private boolean rollback;
+    private volatile boolean rollback;
 
     CacheMessageTableEntry(TopicMetadata topicMetadata, long publishTimestamp, short sequenceId) {
       this.lookupOnly = true;
@@ -24,23 +24,39 @@ import co.cask.cdap.messaging.MessagingServiceUtils;
 import co.cask.cdap.messaging.cache.MessageCache;
 import co.cask.cdap.messaging.store.MessageTable;
 import co.cask.cdap.proto.id.TopicId;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nullable;
 
 /**
  * The default implementation of {@link MessageTableCacheProvider}.
+ *
+ * The cache memory is initially split evenly among all system topics. If resizing is enabled, the memory is
+ * periodically redistributed based on the number of cache misses of each topic since the last resize,
+ * so that topics with fetchers falling outside of the cache get a larger share.
  */
 public class DefaultMessageTableCacheProvider implements MessageTableCacheProvider {
 
+  private static final Logger LOG = LoggerFactory.getLogger(DefaultMessageTableCacheProvider.class);
+
   private final CConfiguration cConf;
   private final MetricsCollectionService metricsCollectionService;
+  private final long resizeIntervalMillis;
+  private final AtomicBoolean resizing;
+  private final Map<TopicId, Long> lastMissedWeights;
   private Map<TopicId, MessageCache<MessageTable.Entry>> topicMessageCaches;
+  private volatile long nextResizeTime;
   private volatile boolean initialized;
 
   @Inject
@@ -49,6 +65,10 @@ public class DefaultMessageTableCacheProvider implements MessageTableCacheProvid
     // constructor, hence delay the cache initialization to later time.
     this.cConf = cConf;
     this.metricsCollectionService = metricsCollectionService;
+    this.resizeIntervalMillis = TimeUnit.SECONDS.toMillis(
+      cConf.getLong(Constants.MessagingSystem.CACHE_RESIZE_INTERVAL_SECONDS, 0L));
+    this.resizing = new AtomicBoolean();
+    this.lastMissedWeights = new ConcurrentHashMap<>();
   }
 
 
@@ -60,21 +80,17 @@ public class DefaultMessageTableCacheProvider implements MessageTableCacheProvid
         if (!initialized) {
           Map<TopicId, MessageCache<MessageTable.Entry>> caches = new HashMap<>();
 
-          long cacheSize = cConf.getInt(Constants.MessagingSystem.CACHE_SIZE_MB) * 1024 * 1024;
+          long cacheSize = getCacheSize();
           Set<TopicId> systemTopics = MessagingServiceUtils.getSystemTopics(cConf, true);
           if (cacheSize > 0 && !systemTopics.isEmpty()) {
             MessageTableEntryWeigher weigher = new MessageTableEntryWeigher();
             MessageTableEntryComparator comparator = new MessageTableEntryComparator();
 
-            // Just evenly distributed the cache among all system topics.
-            // More sophisticated logic can be employed at runtime to monitor the metrics from MessageCache
-            // for each topic and adjust the soft/hard limit accordingly to maximize efficiency in
-            // memory usage and performance
+            // Start with evenly distributed the cache among all system topics.
+            // The limits are adjusted periodically based on the entries read from the table if resizing is enabled.
             long hardLimit = cacheSize / systemTopics.size();
             if (hardLimit > 0) {
-              // Have reduce trigger as 70% of the hard limit and min retain as 50% of the hard limit
-              // In future, it can be adjusted dynamically based on metrics
-              MessageCache.Limits limits = new MessageCache.Limits(hardLimit / 2, hardLimit * 7 / 10, hardLimit);
+              MessageCache.Limits limits = createLimits(hardLimit);
               for (TopicId topic : systemTopics) {
                 caches.put(topic, new MessageCache<>(comparator, weigher, limits,
                                                      createMetricsContext(cConf, topic, metricsCollectionService)));
@@ -83,12 +99,16 @@ public class DefaultMessageTableCacheProvider implements MessageTableCacheProvid
           }
 
           topicMessageCaches = caches;
+          lastMissedWeights.clear();
+          nextResizeTime = System.currentTimeMillis() + resizeIntervalMillis;
           initialized = true;
         }
       }
     }
 
-    return topicMessageCaches.get(topicId);
+    Map<TopicId, MessageCache<MessageTable.Entry>> caches = topicMessageCaches;
+    maybeResize(caches);
+    return caches.get(topicId);
   }
 
   @Override
@@ -108,6 +128,100 @@ public class DefaultMessageTableCacheProvider implements MessageTableCacheProvid
     }
   }
 
+  /**
+   * Redistributes the cache memory among topics if the resize interval has passed since the last resize.
+   * Only one caller will perform the resize and the others return immediately.
+   */
+  private void maybeResize(Map<TopicId, MessageCache<MessageTable.Entry>> caches) {
+    if (resizeIntervalMillis <= 0 || caches.size() < 2) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    if (now < nextResizeTime || !resizing.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      nextResizeTime = now + resizeIntervalMillis;
+
+      Map<TopicId, Long> hardLimits = new HashMap<>();
+      Map<TopicId, Long> missedWeights = new HashMap<>();
+      for (Map.Entry<TopicId, MessageCache<MessageTable.Entry>> entry : caches.entrySet()) {
+        long missedWeight = entry.getValue().getMissedWeight();
+        Long lastMissedWeight = lastMissedWeights.put(entry.getKey(), missedWeight);
+        hardLimits.put(entry.getKey(), entry.getValue().getLimits().getHardLimit());
+        missedWeights.put(entry.getKey(),
+                          Math.max(0L, missedWeight - (lastMissedWeight == null ? 0L : lastMissedWeight)));
+      }
+
+      Map<TopicId, Long> newHardLimits = computeHardLimits(getCacheSize(), hardLimits, missedWeights);
+      for (Map.Entry<TopicId, Long> entry : newHardLimits.entrySet()) {
+        MessageCache<MessageTable.Entry> cache = caches.get(entry.getKey());
+        if (entry.getValue() != cache.getLimits().getHardLimit()) {
+          LOG.debug("Resize message cache for topic {} from {} to {} bytes with {} misses ({} bytes read from "
+                      + "the table) and {} hits in total",
+                    entry.getKey(), cache.getLimits().getHardLimit(), entry.getValue(),
+                    cache.getScanMisses(), cache.getMissedWeight(), cache.getScanHits());
+          cache.resize(createLimits(entry.getValue()));
+        }
+      }
+    } catch (Exception e) {
+      // Resizing is only an optimization, hence never fail the caller
+      LOG.warn("Failed to resize message caches", e);
+    } finally {
+      resizing.set(false);
+    }
+  }
+
+  /**
+   * Returns the total cache size in bytes.
+   */
+  private long getCacheSize() {
+    return cConf.getInt(Constants.MessagingSystem.CACHE_SIZE_MB) * 1024L * 1024L;
+  }
+
+  /**
+   * Computes new hard limits for each topic based on the weight of entries that were read from the table because
+   * they were not in the cache. Topics that are polled without new messages don't read anything from the table,
+   * hence don't take memory from the others. Each topic is guaranteed to have at least a quarter of the even share.
+   * The rest is distributed proportional to the missed weight (with add-one smoothing, so that no miss at all
+   * results in an even split). To avoid oscillation, the new limit is the average of the current limit and the
+   * proportional target.
+   *
+   * @param cacheSize total cache size to distribute
+   * @param hardLimits the current hard limit of each topic
+   * @param missedWeights weight of the entries of each topic read from the table since the last resize
+   * @return the new hard limit of each topic
+   */
+  @VisibleForTesting
+  static Map<TopicId, Long> computeHardLimits(long cacheSize, Map<TopicId, Long> hardLimits,
+                                              Map<TopicId, Long> missedWeights) {
+    int topics = hardLimits.size();
+    long minLimit = cacheSize / topics / 4;
+    long distributable = cacheSize - minLimit * topics;
+
+    long totalMissedWeight = topics;
+    for (TopicId topicId : hardLimits.keySet()) {
+      totalMissedWeight += missedWeights.get(topicId);
+    }
+
+    Map<TopicId, Long> result = new HashMap<>();
+    for (Map.Entry<TopicId, Long> entry : hardLimits.entrySet()) {
+      double ratio = (double) (missedWeights.get(entry.getKey()) + 1) / totalMissedWeight;
+      long target = minLimit + (long) (distributable * ratio);
+      result.put(entry.getKey(), (entry.getValue() + target) / 2);
+    }
+    return result;
+  }
+
+  /**
+   * Creates the {@link MessageCache.Limits} based on the given hard limit.
+   */
+  private MessageCache.Limits createLimits(long hardLimit) {
+    // Have reduce trigger as 70% of the hard limit and min retain as 50% of the hard limit
+    return new MessageCache.Limits(hardLimit / 2, hardLimit * 7 / 10, hardLimit);
+  }
+
   /**
    * Creates a {@link MetricsContext} for {@link MessageCache} to use for the given topic.
    */
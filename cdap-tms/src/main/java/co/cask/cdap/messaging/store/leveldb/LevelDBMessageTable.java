@@ -34,7 +34,6 @@ import org.iq80.leveldb.WriteOptions;
 
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -45,8 +44,6 @@ import javax.annotation.Nullable;
  */
 final class LevelDBMessageTable extends AbstractMessageTable {
   private static final WriteOptions WRITE_OPTIONS = new WriteOptions().sync(true);
-  private static final String PAYLOAD_COL = "p";
-  private static final String TX_COL = "t";
 
   private enum EncodeType {
     NON_TRANSACTIONAL(0),
@@ -84,8 +81,7 @@ final class LevelDBMessageTable extends AbstractMessageTable {
         }
 
         Map.Entry<byte[], byte[]> row = iterator.next();
-        Map<String, byte[]> columns = decodeValue(row.getValue());
-        return tableEntry.set(row.getKey(), columns.get(TX_COL), columns.get(PAYLOAD_COL));
+        return decodeValue(row.getKey(), row.getValue(), tableEntry);
       }
 
       @Override
@@ -122,8 +118,13 @@ final class LevelDBMessageTable extends AbstractMessageTable {
       while (rowIterator.hasNext()) {
         Map.Entry<byte[], byte[]> rowValue = rowIterator.next();
         byte[] value = rowValue.getValue();
-        Map<String, byte[]> columns = decodeValue(value);
-        writeBatch.put(rowValue.getKey(), encodeValue(txWritePtr, columns.get(PAYLOAD_COL)));
+        if (value[0] == EncodeType.NON_TRANSACTIONAL.getType()) {
+          writeBatch.put(rowValue.getKey(), encodeValue(txWritePtr, Arrays.copyOfRange(value, 1, value.length)));
+        } else {
+          // The value array is owned by this method, hence the tx write pointer can be replaced in place
+          Bytes.putBytes(value, 1, txWritePtr, 0, Bytes.SIZEOF_LONG);
+          writeBatch.put(rowValue.getKey(), value);
+        }
       }
     }
 
@@ -213,19 +214,19 @@ final class LevelDBMessageTable extends AbstractMessageTable {
     return result;
   }
 
-  private Map<String, byte[]> decodeValue(byte[] value) {
-    Map<String, byte[]> data = new HashMap<>();
-
+  /**
+   * Decodes the given value into the given {@link RawMessageTableEntry} without copying. The tx write pointer and
+   * payload in the entry are set as views over the value byte array.
+   */
+  private RawMessageTableEntry decodeValue(byte[] key, byte[] value, RawMessageTableEntry tableEntry) {
     if (value[0] == EncodeType.NON_TRANSACTIONAL.getType()) {
-      data.put(PAYLOAD_COL, Arrays.copyOfRange(value, 1, value.length));
-    } else {
-      data.put(TX_COL, Arrays.copyOfRange(value, 1, 1 + Bytes.SIZEOF_LONG));
+      return tableEntry.set(key, null, 0, value, 1, value.length - 1);
+    }
 
-      // Only transactional type has payload, otherwise payload should be null.
-      if (value[0] == EncodeType.TRANSACTIONAL.getType()) {
-        data.put(PAYLOAD_COL, Arrays.copyOfRange(value, 1 + Bytes.SIZEOF_LONG, value.length));
-      }
+    // Only transactional type has payload, otherwise payload should be null.
+    if (value[0] == EncodeType.TRANSACTIONAL.getType()) {
+      return tableEntry.set(key, value, 1, value, 1 + Bytes.SIZEOF_LONG, value.length - 1 - Bytes.SIZEOF_LONG);
     }
-    return data;
+    return tableEntry.set(key, value, 1, null, 0, 0);
   }
 }
@@ -266,6 +266,121 @@ public class MessageCacheTest {
     }
   }
 
+  @Test
+  public void testSegments() {
+    // Use a small segment size so that entries span across multiple segments
+    MessageCache<Integer> cache = new MessageCache<>(new IntComparator(), new UnitWeigher<Integer>(),
+                                                     new MessageCache.Limits(8, 8, 10), NOOP_METRICS, 3);
+
+    MessageFilter<Integer> filter = MessageFilter.alwaysAccept();
+
+    cache.addAll(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8).iterator());
+    Assert.assertEquals(3, cache.getSegmentCount());
+
+    // Scan with start keys at segment boundaries and in between segments
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(3, true, 3, filter)) {
+      Assert.assertEquals(Integer.valueOf(1), scanner.getFirstInCache());
+      Assert.assertEquals(Arrays.asList(3, 4, 5), Lists.newArrayList(scanner));
+    }
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(3, false, 10, filter)) {
+      Assert.assertEquals(Arrays.asList(4, 5, 6, 7, 8), Lists.newArrayList(scanner));
+    }
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(8, false, 10, filter)) {
+      Assert.assertFalse(scanner.hasNext());
+    }
+
+    // Reduces the cache to the last 5 entries, which drops the first segment
+    cache.resize(new MessageCache.Limits(5, 7, 10));
+    Assert.assertEquals(2, cache.getSegmentCount());
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 10, filter)) {
+      Assert.assertEquals(Integer.valueOf(4), scanner.getFirstInCache());
+      Assert.assertEquals(Arrays.asList(4, 5, 6, 7, 8), Lists.newArrayList(scanner));
+    }
+
+    // Scan with a start key that was evicted should get everything in the cache and is neither counted as a hit
+    // nor as a miss, since only the caller knows whether the backing store has the missing entries
+    long hits = cache.getScanHits();
+    long misses = cache.getScanMisses();
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(2, true, 10, filter)) {
+      Assert.assertEquals(Arrays.asList(4, 5, 6, 7, 8), Lists.newArrayList(scanner));
+    }
+    Assert.assertEquals(hits, cache.getScanHits());
+    Assert.assertEquals(misses, cache.getScanMisses());
+    cache.recordMiss(2);
+    Assert.assertEquals(misses + 1, cache.getScanMisses());
+    Assert.assertEquals(2L, cache.getMissedWeight());
+
+    // Adding after eviction should continue with the partially filled segment
+    cache.addAll(Arrays.asList(9, 10).iterator());
+    Assert.assertEquals(3, cache.getSegmentCount());
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(5, true, 10, filter)) {
+      Assert.assertEquals(Arrays.asList(5, 6, 7, 8, 9, 10), Lists.newArrayList(scanner));
+    }
+    Assert.assertEquals(misses + 1, cache.getScanMisses());
+
+    // Clearing drops all full segments
+    cache.clear();
+    Assert.assertEquals(0, cache.getCurrentWeight());
+    Assert.assertEquals(1, cache.getSegmentCount());
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 10, filter)) {
+      Assert.assertNull(scanner.getFirstInCache());
+      Assert.assertFalse(scanner.hasNext());
+    }
+  }
+
+  @Test
+  public void testConcurrentScan() throws Exception {
+    // Scans should always see contiguous entries while the writer keeps adding and evicting entries
+    final MessageCache<Integer> cache = new MessageCache<>(new IntComparator(), new UnitWeigher<Integer>(),
+                                                           new MessageCache.Limits(50, 70, 100), NOOP_METRICS, 16);
+    final int total = 100000;
+    final MessageFilter<Integer> filter = MessageFilter.alwaysAccept();
+    final BlockingQueue<Throwable> failures = new ArrayBlockingQueue<>(10);
+    final CountDownLatch writerDone = new CountDownLatch(1);
+
+    List<Thread> readers = Lists.newArrayList();
+    for (int i = 0; i < 4; i++) {
+      Thread reader = new Thread() {
+        @Override
+        public void run() {
+          try {
+            while (writerDone.getCount() > 0) {
+              try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 30, filter)) {
+                Integer expected = scanner.getFirstInCache();
+                while (scanner.hasNext()) {
+                  Assert.assertEquals(expected, scanner.next());
+                  expected++;
+                }
+              }
+            }
+          } catch (Throwable t) {
+            failures.offer(t);
+          }
+        }
+      };
+      reader.start();
+      readers.add(reader);
+    }
+
+    for (int i = 0; i < total; i += 10) {
+      List<Integer> entries = Lists.newArrayList();
+      for (int j = i; j < i + 10; j++) {
+        entries.add(j);
+      }
+      cache.addAll(entries.iterator());
+    }
+    writerDone.countDown();
+    for (Thread reader : readers) {
+      reader.join();
+    }
+
+    Assert.assertTrue("Unexpected failure: " + failures, failures.isEmpty());
+    Assert.assertTrue(cache.getCurrentWeight() <= 100);
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(total - 1, true, 10, filter)) {
+      Assert.assertEquals(Collections.singletonList(total - 1), Lists.newArrayList(scanner));
+    }
+  }
+
   @Test
   public void testAddError() throws Exception {
     // Test to verify various error situations are being safeguarded
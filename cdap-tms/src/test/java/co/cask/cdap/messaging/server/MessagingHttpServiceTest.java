@@ -26,6 +26,7 @@ import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.guice.ConfigModule;
 import co.cask.cdap.common.guice.DiscoveryRuntimeModule;
 import co.cask.cdap.common.metrics.NoOpMetricsCollectionService;
+import co.cask.cdap.messaging.MessageFetcher;
 import co.cask.cdap.messaging.MessagingService;
 import co.cask.cdap.messaging.RollbackDetail;
 import co.cask.cdap.messaging.TopicMetadata;
@@ -69,6 +70,7 @@ public class MessagingHttpServiceTest {
   private static CConfiguration cConf;
   private static MessagingHttpService httpService;
   private static MessagingService client;
+  private static MessagingService avroClient;
 
   @BeforeClass
   public static void init() throws IOException {
@@ -94,6 +96,7 @@ public class MessagingHttpServiceTest {
     httpService.startAndWait();
 
     client = new ClientMessagingService(injector.getInstance(DiscoveryServiceClient.class));
+    avroClient = new ClientMessagingService(injector.getInstance(DiscoveryServiceClient.class), false);
   }
 
   @AfterClass
@@ -421,18 +424,39 @@ public class MessagingHttpServiceTest {
       client.publish(StoreRequestBuilder.of(topicId).addPayloads(payload).build());
     }
 
-    // Fetch messages. All of them should be fetched correctly
-    List<RawMessage> messages = new ArrayList<>();
-    try (CloseableIterator<RawMessage> iterator = client.prepareFetch(topicId).fetch()) {
-      Iterators.addAll(messages, iterator);
+    // Fetch messages with both the binary and avro response. All of them should be fetched correctly
+    for (MessagingService fetchClient : Arrays.asList(client, avroClient)) {
+      List<RawMessage> messages = new ArrayList<>();
+      try (CloseableIterator<RawMessage> iterator = fetchClient.prepareFetch(topicId).fetch()) {
+        Iterators.addAll(messages, iterator);
+      }
+      Assert.assertEquals(10, messages.size());
+      for (int i = 0; i < 10; i++) {
+        RawMessage message = messages.get(i);
+        Assert.assertEquals(payloadSize, message.getPayload().length);
+        String payload = Strings.repeat(Integer.toString(i), payloadSize);
+        Assert.assertEquals(payload, Bytes.toString(message.getPayload()));
+      }
+
+      // Fetch with a limit that ends in the middle of a chunk
+      messages.clear();
+      MessageFetcher fetcher = fetchClient.prepareFetch(topicId);
+      fetcher.setLimit(3);
+      try (CloseableIterator<RawMessage> iterator = fetcher.fetch()) {
+        Iterators.addAll(messages, iterator);
+      }
+      Assert.assertEquals(3, messages.size());
     }
-    Assert.assertEquals(10, messages.size());
-    for (int i = 0; i < 10; i++) {
-      RawMessage message = messages.get(i);
-      Assert.assertEquals(payloadSize, message.getPayload().length);
-      String payload = Strings.repeat(Integer.toString(i), payloadSize);
-      Assert.assertEquals(payload, Bytes.toString(message.getPayload()));
+
+    // Fetching from an empty topic should get nothing
+    TopicId emptyTopicId = new NamespaceId("ns1").topic("testChunkConsumeEmpty");
+    client.createTopic(new TopicMetadata(emptyTopicId));
+    for (MessagingService fetchClient : Arrays.asList(client, avroClient)) {
+      try (CloseableIterator<RawMessage> iterator = fetchClient.prepareFetch(emptyTopicId).fetch()) {
+        Assert.assertFalse(iterator.hasNext());
+      }
     }
+    client.deleteTopic(emptyTopicId);
 
     client.deleteTopic(topicId);
   }
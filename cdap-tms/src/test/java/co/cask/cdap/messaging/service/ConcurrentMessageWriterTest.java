@@ -18,6 +18,7 @@ package co.cask.cdap.messaging.service;
 
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.metrics.MetricsCollector;
+import co.cask.cdap.api.metrics.NoopMetricsContext;
 import co.cask.cdap.common.utils.TimeProvider;
 import co.cask.cdap.messaging.StoreRequest;
 import co.cask.cdap.messaging.TopicMetadata;
@@ -46,6 +47,7 @@ import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 
 /**
@@ -207,16 +209,74 @@ public class ConcurrentMessageWriterTest {
 
   @Test
   public void testConcurrentWrites() throws InterruptedException, BrokenBarrierException {
+    TestStoreRequestWriter testWriter = new TestStoreRequestWriter(new TimeProvider.IncrementalTimeProvider(), 50L);
+    testConcurrentWrites(testWriter, new ConcurrentMessageWriter(testWriter));
+  }
+
+  @Test
+  public void testGroupCommitConcurrentWrites() throws InterruptedException, BrokenBarrierException {
+    final int maxBatchSize = 5;
+    final AtomicInteger maxQueueSize = new AtomicInteger();
+    final AtomicInteger batchCount = new AtomicInteger();
+    TestStoreRequestWriter testWriter = new TestStoreRequestWriter(new TimeProvider.IncrementalTimeProvider(), 50L);
+    ConcurrentMessageWriter writer = new ConcurrentMessageWriter(testWriter, new MetricsCollector() {
+      @Override
+      public void increment(String metricName, long value) {
+        if ("persist.batch.count".equals(metricName)) {
+          batchCount.addAndGet((int) value);
+        }
+      }
+
+      @Override
+      public void gauge(String metricName, long value) {
+        if ("persist.queue.size".equals(metricName)) {
+          int current = maxQueueSize.get();
+          while (value > current && !maxQueueSize.compareAndSet(current, (int) value)) {
+            current = maxQueueSize.get();
+          }
+        }
+      }
+    }, true, maxBatchSize, 10L);
+
+    testConcurrentWrites(testWriter, writer);
+
+    // No batch should be larger than the max batch size
+    Assert.assertTrue(maxQueueSize.get() <= maxBatchSize);
+    Assert.assertTrue(batchCount.get() > 0);
+  }
+
+  @Test
+  public void testGroupCommit() throws IOException {
+    TopicId topicId = new NamespaceId("ns1").topic("t1");
+    TopicMetadata metadata = new TopicMetadata(topicId, new HashMap<String, String>(), 1);
+
+    TestStoreRequestWriter testWriter = new TestStoreRequestWriter(new TimeProvider.IncrementalTimeProvider());
+    ConcurrentMessageWriter writer = new ConcurrentMessageWriter(testWriter, new NoopMetricsContext(),
+                                                                 true, 1, 1000L);
+    // With a single thread, the batch is full after one request, hence it shouldn't wait for the max delay
+    Stopwatch stopwatch = new Stopwatch().start();
+    writer.persist(new TestStoreRequest(topicId, Arrays.asList("1", "2", "3")), metadata);
+    Assert.assertTrue(stopwatch.elapsedMillis() < 1000L);
+    Assert.assertEquals(3, testWriter.getMessages().get(topicId).size());
+
+    writer.close();
+    try {
+      writer.persist(new TestStoreRequest(topicId, Arrays.asList("4")), metadata);
+      Assert.fail("Expected failure when persisting to a closed writer");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  private void testConcurrentWrites(TestStoreRequestWriter testWriter,
+                                    final ConcurrentMessageWriter writer) throws InterruptedException,
+                                                                                 BrokenBarrierException {
     int payloadsPerRequest = 200;
     int threadCount = 20;
     final int requestPerThread = 20;
-    long writeLatencyMillis = 50L;
 
     final TopicId topicId = NamespaceId.DEFAULT.topic("t");
     final TopicMetadata metadata = new TopicMetadata(topicId, new HashMap<String, String>(), 1);
-    TestStoreRequestWriter testWriter = new TestStoreRequestWriter(new TimeProvider.IncrementalTimeProvider(),
-                                                                   writeLatencyMillis);
-    final ConcurrentMessageWriter writer = new ConcurrentMessageWriter(testWriter);
 
     final List<String> payload = new ArrayList<>(payloadsPerRequest);
     for (int i = 0; i < payloadsPerRequest; i++) {
@@ -239,6 +239,23 @@ public abstract class MessageTableTest {
       Assert.assertEquals(2L, entry.getTransactionWritePointer());
       Assert.assertNull(entry.getPayload());
       Assert.assertTrue(entry.isPayloadReference());
+
+      // Rollback the payload reference entry. It should still be a payload reference, but invisible to transactions.
+      table.rollback(metadata, new TestRollbackDetail(2L, 1L, (short) 0, 1L, (short) 0));
+      entries.clear();
+      try (CloseableIterator<MessageTable.Entry> iterator = table.fetch(metadata, 0L, Integer.MAX_VALUE, null)) {
+        Iterators.addAll(entries, iterator);
+      }
+      Assert.assertEquals(1, entries.size());
+      entry = entries.get(0);
+      Assert.assertTrue(entry.isTransactional());
+      Assert.assertEquals(2L, entry.getTransactionWritePointer());
+      Assert.assertTrue(entry.isPayloadReference());
+
+      Transaction tx = new Transaction(200, 200, new long[0], new long[0], -1);
+      try (CloseableIterator<MessageTable.Entry> iterator = table.fetch(metadata, 0L, Integer.MAX_VALUE, tx)) {
+        Assert.assertFalse(iterator.hasNext());
+      }
     }
   }
 
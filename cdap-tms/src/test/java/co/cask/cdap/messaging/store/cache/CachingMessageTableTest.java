@@ -171,4 +171,51 @@ public class CachingMessageTableTest extends LevelDBMessageTableTest {
       Assert.assertTrue(iterator.next() instanceof CachingMessageTable.CacheMessageTableEntry);
     }
   }
+
+  @Test
+  public void testMissRecording() throws Exception {
+    MessageTable messageTable = getMessageTable();
+    TopicMetadata metadata = new TopicMetadata(NamespaceId.DEFAULT.topic("missed"),
+                                               TopicMetadata.GENERATION_KEY, 1,
+                                               TopicMetadata.TTL_KEY, 86400);
+    MessageCache<MessageTable.Entry> cache = cacheProvider.getMessageCache(metadata.getTopicId());
+
+    // Polling an empty topic reads nothing from the table, hence is not a miss
+    try (CloseableIterator<MessageTable.Entry> iter = messageTable.fetch(metadata, 0, 100, null)) {
+      Assert.assertFalse(iter.hasNext());
+    }
+    Assert.assertEquals(0L, cache.getScanMisses());
+    Assert.assertEquals(0L, cache.getMissedWeight());
+
+    long weight = 0L;
+    MessageTableEntryWeigher weigher = new MessageTableEntryWeigher();
+    for (int i = 0; i < 3; i++) {
+      byte[] key = Bytes.concat(MessagingUtils.toDataKeyPrefix(metadata.getTopicId(), metadata.getGeneration()),
+                                Bytes.toBytes((long) i), Bytes.toBytes((short) 0));
+      MessageTable.Entry entry = new ImmutableMessageTableEntry(key, Bytes.toBytes("Payload " + i), null);
+      weight += weigher.weight(entry);
+      messageTable.store(Collections.singleton(entry).iterator());
+    }
+
+    // Entries in the cache are hits
+    try (CloseableIterator<MessageTable.Entry> iter = messageTable.fetch(metadata, 0, 100, null)) {
+      Assert.assertEquals(3, Lists.newArrayList(iter).size());
+    }
+    Assert.assertEquals(0L, cache.getScanMisses());
+
+    // Entries only in the table are misses, weighted by the entries read from the table
+    cache.clear();
+    try (CloseableIterator<MessageTable.Entry> iter = messageTable.fetch(metadata, 0, 100, null)) {
+      Assert.assertEquals(3, Lists.newArrayList(iter).size());
+    }
+    Assert.assertEquals(1L, cache.getScanMisses());
+    Assert.assertEquals(weight, cache.getMissedWeight());
+
+    // Polling past the last entry reads nothing from the table, hence is not a miss
+    try (CloseableIterator<MessageTable.Entry> iter = messageTable.fetch(metadata, 3, 100, null)) {
+      Assert.assertFalse(iter.hasNext());
+    }
+    Assert.assertEquals(1L, cache.getScanMisses());
+    Assert.assertEquals(weight, cache.getMissedWeight());
+  }
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.store.cache;
+
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.TopicId;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+/**
+ * Unit test for {@link DefaultMessageTableCacheProvider}.
+ */
+public class DefaultMessageTableCacheProviderTest {
+
+  private static final TopicId TOPIC1 = NamespaceId.SYSTEM.topic("topic1");
+  private static final TopicId TOPIC2 = NamespaceId.SYSTEM.topic("topic2");
+  private static final TopicId TOPIC3 = NamespaceId.SYSTEM.topic("topic3");
+
+  @Test
+  public void testComputeHardLimits() {
+    Map<TopicId, Long> limits = ImmutableMap.of(TOPIC1, 1000L, TOPIC2, 1000L, TOPIC3, 1000L);
+
+    // No miss should keep the even split
+    Map<TopicId, Long> newLimits = DefaultMessageTableCacheProvider.computeHardLimits(
+      3000L, limits, ImmutableMap.of(TOPIC1, 0L, TOPIC2, 0L, TOPIC3, 0L));
+    Assert.assertEquals(limits, newLimits);
+
+    // Topic with misses should grow, while the others shrink, without going over the total size
+    Map<TopicId, Long> misses = ImmutableMap.of(TOPIC1, 1000L, TOPIC2, 0L, TOPIC3, 0L);
+    for (int i = 0; i < 20; i++) {
+      Map<TopicId, Long> nextLimits = DefaultMessageTableCacheProvider.computeHardLimits(3000L, newLimits, misses);
+      Assert.assertTrue(nextLimits.get(TOPIC1) >= newLimits.get(TOPIC1));
+      Assert.assertTrue(nextLimits.get(TOPIC2) <= newLimits.get(TOPIC2));
+      Assert.assertTrue(nextLimits.get(TOPIC3) <= newLimits.get(TOPIC3));
+      newLimits = nextLimits;
+    }
+    Assert.assertTrue(newLimits.get(TOPIC1) + newLimits.get(TOPIC2) + newLimits.get(TOPIC3) <= 3000L);
+
+    // Each topic should still have at least a quarter of the even share
+    Assert.assertTrue(newLimits.get(TOPIC2) >= 250L);
+    Assert.assertTrue(newLimits.get(TOPIC3) >= 250L);
+    Assert.assertTrue(newLimits.get(TOPIC1) > 2000L);
+
+    // When misses stop, it should move back toward the even split
+    Map<TopicId, Long> nextLimits = DefaultMessageTableCacheProvider.computeHardLimits(
+      3000L, newLimits, ImmutableMap.of(TOPIC1, 0L, TOPIC2, 0L, TOPIC3, 0L));
+    Assert.assertTrue(nextLimits.get(TOPIC1) < newLimits.get(TOPIC1));
+    Assert.assertTrue(nextLimits.get(TOPIC2) > newLimits.get(TOPIC2));
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 Cask Data, Inc.
+ * Copyright 2015-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -44,6 +44,13 @@ public interface MetricStore {
    */
   void add(Collection<? extends MetricValues> metricValues) throws Exception;
 
+  /**
+   * Persists the {@link MetricValues} added to the store that are still buffered in memory.
+   * Once this method returns, all metric values added before the call are persisted.
+   * @throws Exception
+   */
+  void flush() throws Exception;
+
   /**
    * Queries metrics data.
    * @param query query to execute
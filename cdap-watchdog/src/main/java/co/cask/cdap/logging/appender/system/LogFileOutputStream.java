@@ -1,5 +1,5 @@
 /*
- * Copyright © 2017 Cask Data, Inc.
+ * Copyright © 2017-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -21,6 +21,7 @@ import co.cask.cdap.common.io.ByteBuffers;
 import co.cask.cdap.common.io.Syncable;
 import co.cask.cdap.logging.serialize.LoggingEvent;
 import co.cask.cdap.logging.serialize.LoggingEventSerializer;
+import co.cask.cdap.logging.write.LogFileIndex;
 import com.google.common.io.Closeables;
 import org.apache.avro.Schema;
 import org.apache.avro.file.DataFileWriter;
@@ -41,6 +42,9 @@ import java.nio.ByteBuffer;
  *
  * Since there is no way to check the state of the underlying file on an exception,
  * all methods of this class assume that the file state is bad on any exception and close the file.
+ *
+ * Alongside the log file, a {@link LogFileIndex} is written with an entry on every {@link #flush()}.
+ * The index is only an optimization for reading, hence failure to write it is logged and the index is abandoned.
  */
 
 class LogFileOutputStream implements Closeable, Flushable, Syncable {
@@ -54,6 +58,8 @@ class LogFileOutputStream implements Closeable, Flushable, Syncable {
   private OutputStream outputStream;
   private DataFileWriter<GenericRecord> dataFileWriter;
   private long fileSize;
+  private LogFileIndex.Writer indexWriter;
+  private long maxEventTime;
 
   LogFileOutputStream(Location location, String filePermissions,
                       int syncIntervalBytes, long createTime, Closeable closeable) throws IOException {
@@ -70,11 +76,18 @@ class LogFileOutputStream implements Closeable, Flushable, Syncable {
       this.dataFileWriter.setSyncInterval(syncIntervalBytes);
       this.createTime = createTime;
       this.fileSize = 0;
+      this.maxEventTime = Long.MIN_VALUE;
     } catch (IOException e) {
       Closeables.closeQuietly(outputStream);
       Closeables.closeQuietly(dataFileWriter);
       throw e;
     }
+
+    try {
+      this.indexWriter = new LogFileIndex.Writer(location, filePermissions);
+    } catch (IOException e) {
+      LOG.warn("Failed to create index for log file {}. Log file is written without index.", location, e);
+    }
   }
 
   Location getLocation() {
@@ -82,6 +95,8 @@ class LogFileOutputStream implements Closeable, Flushable, Syncable {
   }
 
   void append(ILoggingEvent event) throws IOException {
+    maxEventTime = Math.max(maxEventTime, event.getTimeStamp());
+
     // If the event is already a LoggingEvent, we don't need to re-encode.
     if (event instanceof LoggingEvent) {
       ByteBuffer encoded = ((LoggingEvent) event).getEncoded();
@@ -115,6 +130,14 @@ class LogFileOutputStream implements Closeable, Flushable, Syncable {
   @Override
   public void flush() throws IOException {
     fileSize = dataFileWriter.sync();
+    if (indexWriter != null) {
+      try {
+        indexWriter.append(maxEventTime, fileSize);
+        indexWriter.flush();
+      } catch (IOException e) {
+        abandonIndex(e);
+      }
+    }
   }
 
   @Override
@@ -125,6 +148,13 @@ class LogFileOutputStream implements Closeable, Flushable, Syncable {
     } else {
       outputStream.flush();
     }
+    if (indexWriter != null) {
+      try {
+        indexWriter.sync();
+      } catch (IOException e) {
+        abandonIndex(e);
+      }
+    }
   }
 
   @Override
@@ -133,7 +163,22 @@ class LogFileOutputStream implements Closeable, Flushable, Syncable {
     try {
       dataFileWriter.close();
     } finally {
-      closeable.close();
+      try {
+        if (indexWriter != null) {
+          Closeables.closeQuietly(indexWriter);
+        }
+      } finally {
+        closeable.close();
+      }
     }
   }
+
+  /**
+   * Stops writing the index after a failure. The partially written index stays valid for the data before it.
+   */
+  private void abandonIndex(IOException e) {
+    LOG.warn("Failed to write index for log file {}. Stop writing index.", location, e);
+    Closeables.closeQuietly(indexWriter);
+    indexWriter = null;
+  }
 }
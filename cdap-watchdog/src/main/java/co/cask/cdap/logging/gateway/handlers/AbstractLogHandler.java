@@ -29,11 +29,14 @@ import co.cask.cdap.logging.read.LogOffset;
 import co.cask.cdap.logging.read.LogReader;
 import co.cask.cdap.logging.read.ReadRange;
 import co.cask.http.AbstractHttpHandler;
+import co.cask.http.HandlerContext;
 import co.cask.http.HttpResponder;
+import com.google.common.io.Closeables;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
@@ -53,6 +56,14 @@ public class AbstractLogHandler extends AbstractHttpHandler {
     this.logPattern = cConfig.get(LoggingConfiguration.LOG_PATTERN, LoggingConfiguration.DEFAULT_LOG_PATTERN);
   }
 
+  @Override
+  public void destroy(HandlerContext context) {
+    // Stops the read-ahead threads of the log reader
+    if (logReader instanceof Closeable) {
+      Closeables.closeQuietly((Closeable) logReader);
+    }
+  }
+
   protected void doGetLogs(HttpResponder responder, LoggingContext loggingContext,
                            long fromTimeSecsParam, long toTimeSecsParam, boolean escape, String filterStr,
                            @Nullable RunRecordMeta runRecord, String format, List<String> fieldsToSuppress) {
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016-2017 Cask Data, Inc.
+ * Copyright © 2016-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -36,6 +36,7 @@ public final class LogReaderRuntimeModules extends RuntimeModule {
     return new AbstractModule() {
       @Override
       protected void configure() {
+        bind(FileLogReader.class).in(Scopes.SINGLETON);
         bind(LogReader.class).to(FileLogReader.class);
       }
     };
@@ -46,6 +47,7 @@ public final class LogReaderRuntimeModules extends RuntimeModule {
     return new AbstractModule() {
       @Override
       protected void configure() {
+        bind(FileLogReader.class).in(Scopes.SINGLETON);
         bind(LogReader.class).to(FileLogReader.class);
       }
     };
@@ -56,6 +58,7 @@ public final class LogReaderRuntimeModules extends RuntimeModule {
     return new AbstractModule() {
       @Override
       protected void configure() {
+        bind(FileLogReader.class).in(Scopes.SINGLETON);
         bind(LogReader.class).to(DistributedLogReader.class);
         bind(UGIProvider.class).to(RemoteUGIProvider.class).in(Scopes.SINGLETON);
       }
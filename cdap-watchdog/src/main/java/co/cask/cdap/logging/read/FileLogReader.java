@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2017 Cask Data, Inc.
+ * Copyright © 2014-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -18,6 +18,8 @@ package co.cask.cdap.logging.read;
 
 import co.cask.cdap.api.dataset.lib.AbstractCloseableIterator;
 import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.logging.LoggingContext;
 import co.cask.cdap.logging.context.LoggingContextHelper;
 import co.cask.cdap.logging.filter.AndFilter;
@@ -30,26 +32,48 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.inject.Inject;
+import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Reads log events from a file.
  */
-public class FileLogReader implements LogReader {
+public class FileLogReader implements LogReader, Closeable {
   private static final Logger LOG = LoggerFactory.getLogger(FileLogReader.class);
 
+  // Number of events decoded from a file by each read-ahead task
+  private static final int PREFETCH_CHUNK_SIZE = 1000;
+
   private final FileMetaDataReader fileMetadataReader;
+  private final int prefetchFiles;
+  private final ExecutorService prefetchExecutor;
 
   @Inject
-  public FileLogReader(FileMetaDataReader fileMetadataReader) {
+  public FileLogReader(CConfiguration cConf, FileMetaDataReader fileMetadataReader) {
     this.fileMetadataReader = fileMetadataReader;
+    this.prefetchFiles = cConf.getInt(Constants.Logging.READER_PREFETCH_FILES);
+    Preconditions.checkArgument(prefetchFiles > 0, "Configuration %s must be positive",
+                                Constants.Logging.READER_PREFETCH_FILES);
+
+    int threads = cConf.getInt(Constants.Logging.READER_THREADS);
+    Preconditions.checkArgument(threads > 0, "Configuration %s must be positive", Constants.Logging.READER_THREADS);
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                                         new LinkedBlockingQueue<Runnable>(),
+                                                         Threads.createDaemonThreadFactory("log-reader-%d"));
+    executor.allowCoreThreadTimeOut(true);
+    this.prefetchExecutor = executor;
   }
 
   @Override
@@ -134,11 +158,10 @@ public class FileLogReader implements LogReader {
   }
 
   @Override
-  public CloseableIterator<LogEvent> getLog(LoggingContext loggingContext, final long fromTimeMs, final long toTimeMs,
+  public CloseableIterator<LogEvent> getLog(LoggingContext loggingContext, long fromTimeMs, long toTimeMs,
                                             Filter filter) {
     try {
-      final Filter logFilter = new AndFilter(ImmutableList.of(LoggingContextHelper.createFilter(loggingContext),
-                                                              filter));
+      Filter logFilter = new AndFilter(ImmutableList.of(LoggingContextHelper.createFilter(loggingContext), filter));
 
       LOG.trace("Using fromTimeMs={}, toTimeMs={}", fromTimeMs, toTimeMs);
       List<LogLocation> sortedFilesInRange =
@@ -159,48 +182,23 @@ public class FileLogReader implements LogReader {
         };
       }
 
-      final Iterator<LogLocation> filesIter = sortedFilesInRange.iterator();
-
-      CloseableIterator<CloseableIterator<LogEvent>> closeableIterator =
-        new CloseableIterator<CloseableIterator<LogEvent>>() {
-          private CloseableIterator<LogEvent> curr = null;
-
-          @Override
-          public void close() {
-            if (curr != null) {
-              curr.close();
-            }
-          }
-
-          @Override
-          public boolean hasNext() {
-            return filesIter.hasNext();
-          }
-
-          @Override
-          public CloseableIterator<LogEvent> next() {
-            if (curr != null) {
-              curr.close();
-            }
-            LogLocation file = filesIter.next();
-            LOG.trace("Reading file {}", file);
-            curr = file.readLog(logFilter, fromTimeMs, toTimeMs, Integer.MAX_VALUE);
-            return curr;
-          }
-
-          @Override
-          public void remove() {
-            throw new UnsupportedOperationException("Remove not supported");
-          }
-        };
-
-      return concat(closeableIterator);
+      return new PrefetchLogEventIterator(sortedFilesInRange, logFilter, fromTimeMs, toTimeMs,
+                                          prefetchExecutor, prefetchFiles, PREFETCH_CHUNK_SIZE);
     } catch (Throwable e) {
       LOG.error("Got exception: ", e);
       throw Throwables.propagate(e);
     }
   }
 
+  /**
+   * Stops the read-ahead threads. Iterators returned by {@link #getLog} after that read files in the consumer thread.
+   */
+  @Override
+  public void close() {
+    // Read-ahead tasks already submitted still run, so that open iterators can complete
+    prefetchExecutor.shutdown();
+  }
+
   /**
    * See {@link com.google.common.collect.Iterators#concat(Iterator)}. The difference is that the input types and return
    * type are CloseableIterator, which closes the inputs that it has opened.
@@ -0,0 +1,239 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.read;
+
+import co.cask.cdap.api.dataset.lib.AbstractCloseableIterator;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.write.LogLocation;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A {@link CloseableIterator} of {@link LogEvent} that reads a list of log files with read-ahead.
+ *
+ * Up to {@code prefetchFiles} files are open at the same time. For each of them, the next chunk of events
+ * is decoded by the given executor while the current chunk is being consumed. Events from the open files
+ * are merged by timestamp, with ties resolved by the file order. Since files are opened in the given order,
+ * the result is in time order as long as events in a file don't overlap with files more than
+ * {@code prefetchFiles} positions later in the list.
+ *
+ * Tasks submitted to the executor never block on the consumer, hence the executor can be shared by concurrent
+ * readers and an abandoned iterator doesn't hold any thread.
+ */
+@NotThreadSafe
+final class PrefetchLogEventIterator extends AbstractCloseableIterator<LogEvent> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PrefetchLogEventIterator.class);
+
+  private final Iterator<LogLocation> files;
+  private final Filter logFilter;
+  private final long fromTimeMs;
+  private final long toTimeMs;
+  private final ExecutorService executor;
+  private final int prefetchFiles;
+  private final int chunkSize;
+  private final List<FileReader> openReaders;
+
+  PrefetchLogEventIterator(List<LogLocation> files, Filter logFilter, long fromTimeMs, long toTimeMs,
+                           ExecutorService executor, int prefetchFiles, int chunkSize) {
+    this.files = files.iterator();
+    this.logFilter = logFilter;
+    this.fromTimeMs = fromTimeMs;
+    this.toTimeMs = toTimeMs;
+    this.executor = executor;
+    this.prefetchFiles = Math.max(1, prefetchFiles);
+    this.chunkSize = chunkSize;
+    this.openReaders = new ArrayList<>(this.prefetchFiles);
+    openFiles();
+  }
+
+  @Override
+  protected LogEvent computeNext() {
+    while (true) {
+      // Replace exhausted files right away, so that there are always prefetchFiles files being read ahead
+      openFiles();
+      if (openReaders.isEmpty()) {
+        return endOfData();
+      }
+
+      // Pick the earliest event among the open files. Readers are in file order, so earlier files win ties.
+      FileReader minReader = null;
+      LogEvent minEvent = null;
+      boolean removed = false;
+      Iterator<FileReader> iterator = openReaders.iterator();
+      while (iterator.hasNext()) {
+        FileReader reader = iterator.next();
+        LogEvent event = reader.peek();
+        if (event == null) {
+          reader.close();
+          iterator.remove();
+          removed = true;
+          continue;
+        }
+        if (minEvent == null || event.getLoggingEvent().getTimeStamp() < minEvent.getLoggingEvent().getTimeStamp()) {
+          minReader = reader;
+          minEvent = event;
+        }
+      }
+
+      // If a file got exhausted, the files opened to replace it may have earlier events
+      if (!removed && minReader != null) {
+        minReader.poll();
+        return minEvent;
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    for (FileReader reader : openReaders) {
+      reader.close();
+    }
+    openReaders.clear();
+  }
+
+  /**
+   * Opens files until there are {@code prefetchFiles} open files or no more file.
+   */
+  private void openFiles() {
+    while (openReaders.size() < prefetchFiles && files.hasNext()) {
+      openReaders.add(new FileReader(files.next()));
+    }
+  }
+
+  /**
+   * Reads events from a single log file in chunks. Each chunk is read by the executor, with the next chunk
+   * requested as soon as the current one becomes available.
+   *
+   * The file iterator is only used by the fetch task, and a fetch is only requested after the previous one
+   * completed. When the reader is closed during a fetch, the fetch task closes the iterator when it completes.
+   */
+  private final class FileReader {
+
+    private final LogLocation file;
+    private final Deque<LogEvent> chunk;
+    private Future<List<LogEvent>> pending;
+    private CloseableIterator<LogEvent> iterator;
+    private boolean exhausted;
+    private volatile boolean closed;
+    private volatile boolean fetching;
+
+    FileReader(LogLocation file) {
+      this.file = file;
+      this.chunk = new ArrayDeque<>();
+      this.pending = fetch();
+    }
+
+    /**
+     * Returns the next event without consuming it, or {@code null} if there is no more event.
+     */
+    @Nullable
+    LogEvent peek() {
+      if (chunk.isEmpty() && !exhausted) {
+        List<LogEvent> events = waitFor(pending);
+        pending = null;
+        chunk.addAll(events);
+        // A short chunk means the end of the file is reached
+        exhausted = events.size() < chunkSize;
+        if (!exhausted) {
+          pending = fetch();
+        }
+      }
+      return chunk.peek();
+    }
+
+    void poll() {
+      chunk.poll();
+    }
+
+    void close() {
+      closed = true;
+      // A running fetch sees the closed flag when it completes, and closes the iterator itself
+      if (!fetching) {
+        closeIterator();
+      }
+    }
+
+    private Future<List<LogEvent>> fetch() {
+      fetching = true;
+      FutureTask<List<LogEvent>> task = new FutureTask<>(new Callable<List<LogEvent>>() {
+        @Override
+        public List<LogEvent> call() throws Exception {
+          List<LogEvent> events = new ArrayList<>(chunkSize);
+          try {
+            if (!closed) {
+              if (iterator == null) {
+                LOG.trace("Reading file {}", file);
+                iterator = file.readLog(logFilter, fromTimeMs, toTimeMs, Integer.MAX_VALUE);
+              }
+              while (!closed && events.size() < chunkSize && iterator.hasNext()) {
+                events.add(iterator.next());
+              }
+            }
+          } finally {
+            // Clear the fetching flag before checking the closed flag, which close() sets and checks in the
+            // opposite order, so that at least one of them closes the iterator
+            fetching = false;
+            if (closed || events.size() < chunkSize) {
+              closeIterator();
+            }
+          }
+          return events;
+        }
+      });
+      try {
+        executor.execute(task);
+      } catch (RejectedExecutionException e) {
+        // The log reader is closed. Read the chunk in the current thread instead.
+        task.run();
+      }
+      return task;
+    }
+
+    private synchronized void closeIterator() {
+      if (iterator != null) {
+        iterator.close();
+        iterator = null;
+      }
+    }
+
+    private List<LogEvent> waitFor(Future<List<LogEvent>> future) {
+      try {
+        return Uninterruptibles.getUninterruptibly(future);
+      } catch (ExecutionException e) {
+        throw Throwables.propagate(e.getCause());
+      }
+    }
+  }
+}
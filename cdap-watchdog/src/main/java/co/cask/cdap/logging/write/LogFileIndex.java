@@ -0,0 +1,237 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.write;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.common.io.Locations;
+import co.cask.cdap.common.io.Syncable;
+import com.google.common.io.ByteStreams;
+import org.apache.twill.filesystem.Location;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * A time index for an Avro log file. The index is stored in a sidecar file next to the log file and
+ * is used by {@link LogLocation} to find the block to start reading from without scanning the log file.
+ *
+ * <pre>
+ * {@code
+ *
+ * index_file = <header> <entry>*
+ * header = "T" "1"
+ * entry = <max_timestamp> <position>
+ * max_timestamp = 8 bytes int64 for the largest event timestamp in milliseconds of all events before <position>
+ * position = 8 bytes int64 for the position of a data block in the log file, as returned by DataFileWriter.sync()
+ *
+ * }
+ * </pre>
+ *
+ * Entries are appended in increasing order of both fields. A partially written trailing entry is ignored.
+ */
+public final class LogFileIndex {
+
+  public static final String SUFFIX = ".idx";
+
+  private static final byte[] MAGIC_HEADER = {'T', '1'};
+  private static final int ENTRY_SIZE = 16;
+
+  private final long[] timestamps;
+  private final long[] positions;
+  private final int size;
+
+  private LogFileIndex(long[] timestamps, long[] positions, int size) {
+    this.timestamps = timestamps;
+    this.positions = positions;
+    this.size = size;
+  }
+
+  /**
+   * Returns the {@link Location} of the index file for the given log file.
+   */
+  public static Location getIndexLocation(Location logFile) throws IOException {
+    Location parent = Locations.getParent(logFile);
+    if (parent == null) {
+      throw new IOException("Log file " + logFile + " has no parent directory");
+    }
+    return parent.append(logFile.getName() + SUFFIX);
+  }
+
+  /**
+   * Reads the index of the given log file.
+   *
+   * @param logFile location of the log file
+   * @param logFileLength length of the log file. Entries pointing beyond it are ignored.
+   * @return the {@link LogFileIndex} or {@code null} if the log file has no index
+   * @throws IOException if failed to read the index file
+   */
+  @Nullable
+  public static LogFileIndex read(Location logFile, long logFileLength) throws IOException {
+    InputStream is;
+    try {
+      is = getIndexLocation(logFile).getInputStream();
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+
+    try (DataInputStream input = new DataInputStream(is)) {
+      byte[] magic = new byte[MAGIC_HEADER.length];
+      try {
+        ByteStreams.readFully(input, magic);
+      } catch (EOFException e) {
+        // Index file created, but nothing written yet
+        return null;
+      }
+      if (!Arrays.equals(MAGIC_HEADER, magic)) {
+        throw new IOException("Invalid log file index header for " + logFile);
+      }
+
+      long[] timestamps = new long[64];
+      long[] positions = new long[64];
+      int size = 0;
+      byte[] entry = new byte[ENTRY_SIZE];
+      while (true) {
+        try {
+          ByteStreams.readFully(input, entry);
+        } catch (EOFException e) {
+          break;
+        }
+        long position = Bytes.toLong(entry, 8);
+        if (position > logFileLength) {
+          break;
+        }
+        if (size == timestamps.length) {
+          timestamps = Arrays.copyOf(timestamps, size * 2);
+          positions = Arrays.copyOf(positions, size * 2);
+        }
+        timestamps[size] = Bytes.toLong(entry, 0);
+        positions[size] = position;
+        size++;
+      }
+      return new LogFileIndex(timestamps, positions, size);
+    }
+  }
+
+  /**
+   * Returns the position of the last block such that all events before it are older than the given time,
+   * or {@code 0} if there is no such block.
+   */
+  public long floorPosition(long timeMs) {
+    // Find the first entry with max timestamp >= timeMs. The entry before it is the answer.
+    int idx = search(timeMs);
+    return idx == 0 ? 0L : positions[idx - 1];
+  }
+
+  /**
+   * Returns the position of the first block such that some event before it is newer than the given time,
+   * or {@code -1} if there is no such block.
+   */
+  public long ceilingPosition(long timeMs) {
+    // Find the first entry with max timestamp > timeMs.
+    int idx = timeMs == Long.MAX_VALUE ? size : search(timeMs + 1);
+    return idx == size ? -1L : positions[idx];
+  }
+
+  /**
+   * Returns the index of the first entry with max timestamp >= timeMs, or {@code size} if there is none.
+   */
+  private int search(long timeMs) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (timestamps[mid] < timeMs) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Writer for appending entries to the index file of a log file.
+   */
+  public static final class Writer implements Closeable, Flushable, Syncable {
+
+    private final OutputStream outputStream;
+    private final DataOutputStream output;
+    private long lastTimestamp;
+
+    /**
+     * Creates the index file for the given log file.
+     *
+     * @param logFile location of the log file
+     * @param filePermissions permissions for the index file, or empty string to use the default
+     */
+    public Writer(Location logFile, String filePermissions) throws IOException {
+      Location location = getIndexLocation(logFile);
+      this.outputStream = filePermissions.isEmpty() ? location.getOutputStream()
+                                                    : location.getOutputStream(filePermissions);
+      this.output = new DataOutputStream(outputStream);
+      this.lastTimestamp = Long.MIN_VALUE;
+      try {
+        output.write(MAGIC_HEADER);
+      } catch (IOException e) {
+        output.close();
+        throw e;
+      }
+    }
+
+    /**
+     * Appends an entry if there are events newer than the last entry.
+     *
+     * @param maxTimestamp the largest timestamp of all events before the given position
+     * @param position position of a data block in the log file
+     */
+    public void append(long maxTimestamp, long position) throws IOException {
+      if (maxTimestamp <= lastTimestamp) {
+        return;
+      }
+      output.writeLong(maxTimestamp);
+      output.writeLong(position);
+      lastTimestamp = maxTimestamp;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      output.flush();
+    }
+
+    @Override
+    public void sync() throws IOException {
+      output.flush();
+      if (outputStream instanceof org.apache.hadoop.fs.Syncable) {
+        ((org.apache.hadoop.fs.Syncable) outputStream).hsync();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      output.close();
+    }
+  }
+}
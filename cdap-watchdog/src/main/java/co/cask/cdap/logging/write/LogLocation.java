@@ -1,5 +1,5 @@
 /*
- * Copyright © 2017 Cask Data, Inc.
+ * Copyright © 2017-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -50,9 +50,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
 
 /**
  * LogLocation representing a log file and methods to read the file's contents.
+ * If the log file has a {@link LogFileIndex}, it is used to find the position to start reading from,
+ * otherwise the file is scanned.
  */
 public class LogLocation {
   private static final Logger LOG = LoggerFactory.getLogger(LogLocation.class);
@@ -167,20 +170,34 @@ public class LogLocation {
           skipLen = DEFAULT_SKIP_LEN;
         }
 
-        // For open file, endPosition sync marker is unknown so start from file length and read up to the actual EOF
-        dataFileReader.sync(length);
-        long finalSync = dataFileReader.previousSync();
-        List<LogEvent> logSegment = readToEndSyncPosition(dataFileReader, logFilter, fromTimeMs, -1);
+        long startPosition;
+        long endPosition;
+        List<LogEvent> logSegment;
+
+        // Events after the first indexed block that has some event newer than fromTimeMs before it are all newer,
+        // hence the read can start from there.
+        LogFileIndex index = readIndex(length);
+        long indexPosition = index == null ? -1L : index.ceilingPosition(fromTimeMs);
+        if (indexPosition > 0) {
+          LOG.trace("Read log events backward from indexed position {}", indexPosition);
+          startPosition = indexPosition;
+          endPosition = indexPosition;
+        } else {
+          // For open file, endPosition sync marker is unknown so start from file length and read up to the actual EOF
+          dataFileReader.sync(length);
+          long finalSync = dataFileReader.previousSync();
+          logSegment = readToEndSyncPosition(dataFileReader, logFilter, fromTimeMs, -1);
 
-        if (!logSegment.isEmpty()) {
-          logSegments.addFirst(logSegment);
-          count = count + logSegment.size();
-        }
+          if (!logSegment.isEmpty()) {
+            logSegments.addFirst(logSegment);
+            count = count + logSegment.size();
+          }
 
-        LOG.trace("Read log events {} from position {}", count, finalSync);
+          LOG.trace("Read log events {} from position {}", count, finalSync);
 
-        long startPosition = finalSync;
-        long endPosition = startPosition;
+          startPosition = finalSync;
+          endPosition = startPosition;
+        }
         long currentSync;
 
         while (startPosition > 0 && count < maxEvents) {
@@ -276,7 +293,15 @@ public class LogLocation {
 
       try {
         dataFileReader = createReader();
-        if (dataFileReader.hasNext()) {
+        LogFileIndex index = readIndex(location.length());
+        if (index != null) {
+          // Seek to the last block that all events before it are older than fromTimeMs
+          long position = index.floorPosition(fromTimeMs);
+          if (position > 0) {
+            dataFileReader.seek(position);
+          }
+          LOG.trace("Seek to indexed pos {}", position);
+        } else if (dataFileReader.hasNext()) {
           datum = dataFileReader.next();
           loggingEvent = new LoggingEvent(datum);
           loggingEvent.prepareForDeferredProcessing();
@@ -371,6 +396,26 @@ public class LogLocation {
     }
   }
 
+  /**
+   * Reads the {@link LogFileIndex} of this log file.
+   *
+   * @param length length of the log file
+   * @return the index or {@code null} if the log file doesn't have a usable index
+   */
+  @Nullable
+  private LogFileIndex readIndex(long length) {
+    // Index is only written for the new log file format
+    if (!VERSION_1.equals(getFrameworkVersion())) {
+      return null;
+    }
+    try {
+      return LogFileIndex.read(location, length);
+    } catch (IOException e) {
+      LOG.debug("Failed to read index of log file {}. Reading without index.", location, e);
+      return null;
+    }
+  }
+
   private DataFileReader<GenericRecord> createReader() throws IOException {
     boolean shouldImpersonate = this.getFrameworkVersion().equals(VERSION_0);
     return new DataFileReader<>(new LocationSeekableInput(location, namespaceId, impersonator, shouldImpersonate),
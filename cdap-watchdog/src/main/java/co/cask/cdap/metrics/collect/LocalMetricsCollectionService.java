@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -59,6 +59,7 @@ public final class LocalMetricsCollectionService extends AggregatedMetricsCollec
       MetricValues metric = metrics.next();
       metricStore.add(metric);
     }
+    metricStore.flush();
   }
 
   @Override
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2017 Cask Data, Inc.
+ * Copyright © 2017-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -51,21 +51,25 @@ import com.google.common.base.Throwables;
 import com.google.common.reflect.TypeToken;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.name.Named;
+import com.google.inject.util.Providers;
 import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Deque;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.ConcurrentHashMap;
@@ -75,10 +79,15 @@ import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
 
 /**
  * Process metrics by consuming metrics being published to TMS.
+ * <p>
+ * Each topic is fetched and decoded by its own thread. Topics are grouped into
+ * {@link Constants.Metrics#PROCESSOR_PERSIST_PARTITIONS} partitions, each of them having its own queue,
+ * {@link MetricStore} and meta table, so that metrics of different partitions are aggregated and persisted in parallel.
  */
 public class MessagingMetricsProcessorService extends AbstractExecutionThreadService {
   private static final Logger LOG = LoggerFactory.getLogger(MessagingMetricsProcessorService.class);
@@ -90,14 +99,13 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
   private final MessagingService messagingService;
   private final DatumReader<MetricValues> metricReader;
   private final Schema metricSchema;
-  private final MetricStore metricStore;
   private final Map<String, String> metricsContextMap;
   private final int fetcherLimit;
   private final long maxDelayMillis;
   private final int queueSize;
-  private final BlockingDeque<MetricValues> metricsFromAllTopics;
-  private final ConcurrentMap<TopicIdMetaKey, TopicProcessMeta> topicProcessMetaMap;
-  private final AtomicBoolean persistingFlag;
+  private final List<PersistPartition> persistPartitions;
+  // how often to flush metrics buffered by the metric store, zero if the metric store doesn't buffer writes
+  private final long metricsFlushIntervalMillis;
   // maximum number of milliseconds to sleep between each run of fetching & processing new metrics
   private final int metricsProcessIntervalMillis;
   private final List<ProcessMetricsThread> processMetricsThreads;
@@ -107,9 +115,8 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
   private final boolean skipMigration;
   private final DatasetFramework datasetFramework;
   private final String metricsPrefixForDelayMetrics;
-  private long metricsProcessedCount;
+  private final AtomicLong metricsProcessedCount;
 
-  private MetricsConsumerMetaTable metaTable;
   private ScheduledExecutorService metricsTableDeleterExecutor;
   private DataMigrator metricsDataMigrator;
 
@@ -121,14 +128,14 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
                                           MessagingService messagingService,
                                           SchemaGenerator schemaGenerator,
                                           DatumReaderFactory readerFactory,
-                                          MetricStore metricStore,
+                                          Provider<MetricStore> metricStoreProvider,
                                           @Named(Constants.Metrics.PROCESSOR_MAX_DELAY_MS) long maxDelayMillis,
                                           @Named(Constants.Metrics.QUEUE_SIZE) int queueSize,
                                           @Assisted Set<Integer> topicNumbers,
                                           @Assisted MetricsContext metricsContext,
                                           @Assisted Integer instanceId, DatasetFramework datasetFramework,
                                           CConfiguration cConf) {
-    this(metricDatasetFactory, topicPrefix, messagingService, schemaGenerator, readerFactory, metricStore,
+    this(metricDatasetFactory, topicPrefix, messagingService, schemaGenerator, readerFactory, metricStoreProvider,
          maxDelayMillis, queueSize, topicNumbers, metricsContext, 1000, instanceId,
          datasetFramework, cConf,
          cConf.getBoolean(Constants.MetricsProcessor.METRICS_DATA_MIGRATION_SKIP, false));
@@ -148,6 +155,24 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
                                    int metricsProcessIntervalMillis,
                                    int instanceId, DatasetFramework datasetFramework, CConfiguration cConf,
                                    boolean skipMigration) {
+    this(metricDatasetFactory, topicPrefix, messagingService, schemaGenerator, readerFactory,
+         Providers.of(metricStore), maxDelayMillis, queueSize, topicNumbers, metricsContext,
+         metricsProcessIntervalMillis, instanceId, datasetFramework, cConf, skipMigration);
+  }
+
+  private MessagingMetricsProcessorService(MetricDatasetFactory metricDatasetFactory,
+                                           String topicPrefix,
+                                           MessagingService messagingService,
+                                           SchemaGenerator schemaGenerator,
+                                           DatumReaderFactory readerFactory,
+                                           Provider<MetricStore> metricStoreProvider,
+                                           long maxDelayMillis,
+                                           int queueSize,
+                                           Set<Integer> topicNumbers,
+                                           MetricsContext metricsContext,
+                                           int metricsProcessIntervalMillis,
+                                           int instanceId, DatasetFramework datasetFramework, CConfiguration cConf,
+                                           boolean skipMigration) {
     this.metricDatasetFactory = metricDatasetFactory;
     this.metricsTopics = new ArrayList<>();
     this.metricsPrefixForDelayMetrics = String.format("metrics.processor.%s", instanceId);
@@ -163,16 +188,24 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
       // This should never happen
       throw Throwables.propagate(e);
     }
-    this.metricStore = metricStore;
-    this.metricStore.setMetricsContext(metricsContext);
     this.fetcherLimit = Math.max(1, queueSize / topicNumbers.size()); // fetcherLimit is at least one
     this.maxDelayMillis = maxDelayMillis;
-    this.queueSize = queueSize;
     this.metricsContextMap = metricsContext.getTags();
     this.processMetricsThreads = new ArrayList<>();
-    this.metricsFromAllTopics = new LinkedBlockingDeque<>(queueSize);
-    this.topicProcessMetaMap = new ConcurrentHashMap<>();
-    this.persistingFlag = new AtomicBoolean();
+    // Each partition persists with its own MetricStore, since a MetricStore and the tables underneath it
+    // are not meant to be written by multiple threads concurrently
+    int numPartitions = Math.max(1, Math.min(cConf.getInt(Constants.Metrics.PROCESSOR_PERSIST_PARTITIONS, 1),
+                                             metricsTopics.size()));
+    this.queueSize = Math.max(1, queueSize / numPartitions);
+    this.persistPartitions = new ArrayList<>(numPartitions);
+    for (int i = 0; i < numPartitions; i++) {
+      MetricStore metricStore = metricStoreProvider.get();
+      metricStore.setMetricsContext(metricsContext);
+      persistPartitions.add(new PersistPartition(metricStore));
+    }
+    this.metricsProcessedCount = new AtomicLong();
+    this.metricsFlushIntervalMillis = cConf.getInt(Constants.Metrics.METRICS_TABLE_WRITE_BUFFER_SIZE, 0) > 0
+      ? cConf.getLong(Constants.Metrics.METRICS_TABLE_WRITE_BUFFER_FLUSH_INTERVAL_MS, 1000L) : 0L;
     this.metricsProcessIntervalMillis = metricsProcessIntervalMillis;
     this.instanceId = instanceId;
     this.cConfiguration = cConf;
@@ -213,8 +246,9 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
     }, RetryStrategies.fixDelay(1, TimeUnit.SECONDS));
   }
 
-  private MetricsConsumerMetaTable getMetaTable() {
-
+  @Nullable
+  private MetricsConsumerMetaTable createMetaTable() {
+    MetricsConsumerMetaTable metaTable = null;
     while (metaTable == null) {
       if (stopping) {
         LOG.info("We are shutting down, giving up on acquiring consumer metaTable.");
@@ -241,21 +275,25 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
   @Override
   protected void run() {
     LOG.info("Start running MessagingMetricsProcessorService");
-    MetricsConsumerMetaTable metaTable = getMetaTable();
-    if (metaTable == null) {
-      LOG.info("Could not get MetricsConsumerMetaTable, seems like we are being shut down");
-      return;
+    for (PersistPartition partition : persistPartitions) {
+      partition.metaTable = createMetaTable();
+      if (partition.metaTable == null) {
+        LOG.info("Could not get MetricsConsumerMetaTable, seems like we are being shut down");
+        return;
+      }
     }
 
-    for (TopicId topic : metricsTopics) {
+    for (int i = 0; i < metricsTopics.size(); i++) {
+      TopicId topic = metricsTopics.get(i);
+      PersistPartition partition = persistPartitions.get(i % persistPartitions.size());
       TopicProcessMeta topicProcessMeta = null;
       TopicIdMetaKey topicRowKey = new TopicIdMetaKey(topic);
       try {
-        topicProcessMeta = metaTable.getTopicProcessMeta(topicRowKey);
+        topicProcessMeta = partition.metaTable.getTopicProcessMeta(topicRowKey);
       } catch (Exception e) {
         LOG.warn("Cannot retrieve last processed MessageId for topic: {}", topic, e);
       }
-      processMetricsThreads.add(new ProcessMetricsThread(topicRowKey, topicProcessMeta));
+      processMetricsThreads.add(new ProcessMetricsThread(topicRowKey, topicProcessMeta, partition));
     }
 
     if (!isRunning()) {
@@ -315,9 +353,11 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
       Thread.currentThread().interrupt();
     }
 
-    // Persist metricsFromAllTopics and messageId's after all ProcessMetricsThread's complete.
-    // No need to make a copy of metricsFromAllTopics and topicProcessMetaMap because no thread is writing to them
-    persistMetricsAndTopicProcessMeta(metricsFromAllTopics, topicProcessMetaMap);
+    // Persist metrics and messageId's of each partition after all ProcessMetricsThread's complete.
+    // No need to make a copy of the metrics and topicProcessMetaMap because no thread is writing to them
+    for (PersistPartition partition : persistPartitions) {
+      partition.persistMetricsAndTopicProcessMeta(partition.metrics, partition.topicProcessMetaMap, true);
+    }
   }
 
   @Override
@@ -342,79 +382,218 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
   }
 
   /**
-   * Persist metrics from all topics into metric store and messageId's of the last persisted metrics of each topic
-   * into metrics meta table
+   * Aggregates the given {@link MetricValues} that have identical tags and timestamp into a single
+   * {@link MetricValues}, summing up counters and keeping the last value of gauges with the same name.
+   * This reduces the number of facts written to the metric store without changing what gets stored.
    *
-   * @param metricValues a deque of {@link MetricValues}
-   * @param topicProcessMetaMap a map with each key {@link TopicIdMetaKey} representing a topic
-   *                            and {@link TopicProcessMeta} which has info on messageId and processing stats
+   * @param metricValues metrics in the order they were emitted
+   * @return the aggregated metrics
    */
-  private void persistMetricsAndTopicProcessMeta(Deque<MetricValues> metricValues,
-                                                 Map<TopicIdMetaKey, TopicProcessMeta> topicProcessMetaMap) {
-    try {
-      if (!metricValues.isEmpty()) {
-        persistMetrics(metricValues, topicProcessMetaMap);
+  @VisibleForTesting
+  static List<MetricValues> aggregate(Collection<MetricValues> metricValues) {
+    Map<AggregationKey, Map<String, MetricValue>> counters = new LinkedHashMap<>();
+    Map<AggregationKey, Map<String, MetricValue>> gauges = new HashMap<>();
+    for (MetricValues values : metricValues) {
+      AggregationKey key = new AggregationKey(values.getTags(), values.getTimestamp());
+      Map<String, MetricValue> keyCounters = counters.get(key);
+      Map<String, MetricValue> keyGauges = gauges.get(key);
+      if (keyCounters == null) {
+        keyCounters = new LinkedHashMap<>();
+        keyGauges = new LinkedHashMap<>();
+        counters.put(key, keyCounters);
+        gauges.put(key, keyGauges);
       }
-      persistTopicProcessMeta(topicProcessMetaMap);
-    } catch (Exception e) {
-      LOG.warn("Failed to persist metrics.", e);
+      for (MetricValue metric : values.getMetrics()) {
+        if (metric.getType() == MetricType.COUNTER) {
+          MetricValue existing = keyCounters.get(metric.getName());
+          if (existing != null) {
+            metric = new MetricValue(metric.getName(), MetricType.COUNTER, existing.getValue() + metric.getValue());
+          }
+          keyCounters.put(metric.getName(), metric);
+        } else {
+          keyGauges.put(metric.getName(), metric);
+        }
+      }
+    }
+
+    List<MetricValues> result = new ArrayList<>(counters.size());
+    for (Map.Entry<AggregationKey, Map<String, MetricValue>> entry : counters.entrySet()) {
+      AggregationKey key = entry.getKey();
+      List<MetricValue> metrics = new ArrayList<>(gauges.get(key).values());
+      metrics.addAll(entry.getValue().values());
+      result.add(new MetricValues(key.tags, key.timestamp, metrics));
     }
+    return result;
   }
 
-  private void persistTopicProcessMeta(Map<TopicIdMetaKey, TopicProcessMeta> messageIds) {
-    try {
-      // messageIds can be empty if the current thread fetches nothing while other threads keep fetching new metrics
-      // and haven't updated messageId's of the corresponding topics
-      if (!messageIds.isEmpty()) {
-        metaTable.saveMetricsProcessorStats(messageIds);
+  /**
+   * Tags and timestamp shared by the {@link MetricValues} that can be aggregated together.
+   */
+  private static final class AggregationKey {
+    private final Map<String, String> tags;
+    private final long timestamp;
+
+    AggregationKey(Map<String, String> tags, long timestamp) {
+      this.tags = tags;
+      this.timestamp = timestamp;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
       }
-    } catch (Exception e) {
-      LOG.warn("Failed to update processing stats of consumed messages.", e);
+      AggregationKey that = (AggregationKey) o;
+      return timestamp == that.timestamp && Objects.equals(tags, that.tags);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(tags, timestamp);
     }
   }
 
   /**
-   * Persist metrics into metric store
-   *
-   * @param metricValues a non-empty deque of {@link MetricValues}
+   * A group of topics whose metrics are queued, aggregated and persisted together, independently of other partitions.
    */
-  private void persistMetrics(Deque<MetricValues> metricValues,
-                              Map<TopicIdMetaKey, TopicProcessMeta> topicProcessMetaMap) throws Exception {
-    long now = System.currentTimeMillis();
-    long lastMetricTime = metricValues.peekLast().getTimestamp();
-    List<MetricValue> topicLevelDelays = new ArrayList<>();
-
-    //add topic level delay metrics
-    for (Map.Entry<TopicIdMetaKey, TopicProcessMeta> entry : topicProcessMetaMap.entrySet()) {
-      TopicProcessMeta topicProcessMeta = entry.getValue();
-      long delay = now - TimeUnit.SECONDS.toMillis(topicProcessMeta.getOldestMetricsTimestamp());
-      topicLevelDelays.add(new MetricValue(topicProcessMeta.getOldestMetricsTimestampMetricName(),
-                                           MetricType.GAUGE, delay));
-      delay = now - TimeUnit.SECONDS.toMillis(topicProcessMeta.getLatestMetricsTimestamp());
-      topicLevelDelays.add(new MetricValue(topicProcessMeta.getLatestMetricsTimestampMetricName(),
-                                           MetricType.GAUGE, delay));
+  private final class PersistPartition {
+    private final MetricStore metricStore;
+    private final BlockingDeque<MetricValues> metrics;
+    private final ConcurrentMap<TopicIdMetaKey, TopicProcessMeta> topicProcessMetaMap;
+    private final AtomicBoolean persistingFlag;
+    private MetricsConsumerMetaTable metaTable;
+    private long lastFlushMillis;
+
+    PersistPartition(MetricStore metricStore) {
+      this.metricStore = metricStore;
+      this.metrics = new LinkedBlockingDeque<>(queueSize);
+      this.topicProcessMetaMap = new ConcurrentHashMap<>();
+      this.persistingFlag = new AtomicBoolean();
+    }
+
+    /**
+     * Persist metrics and messageId's of the last metrics to be persisted if no other thread is persisting
+     */
+    private void tryPersist() {
+      // Ensure there's only one thread can persist metrics and messageId's of this partition.
+      // If persistingFlag is false, set it to true and start persisting. Otherwise, log and return.
+      if (!persistingFlag.compareAndSet(false, true)) {
+        LOG.trace("There is another thread performing persisting. No need to persist in this thread.");
+        return;
+      }
+      try {
+        // Make a copy of topicProcessMetaMap before copying metrics from the queue to ensure that
+        // topicMessageIdsCopy will not contain new MessageId's in the queue but not in metricsCopy.
+        // This guarantees the metrics corresponding to last persisted MessageId's of each topic are persisted.
+        Map<TopicIdMetaKey, TopicProcessMeta> topicProcessMetaMapCopy = new HashMap<>(topicProcessMetaMap);
+        // Remove at most queueSize of metrics from the queue and put into metricsCopy to limit
+        // the number of metrics being persisted each time
+        Deque<MetricValues> metricsCopy = new ArrayDeque<>(metrics.size());
+        metrics.drainTo(metricsCopy, queueSize);
+        // Persist the copy of metrics and MessageId's
+        persistMetricsAndTopicProcessMeta(metricsCopy, topicProcessMetaMapCopy, false);
+      } catch (Exception e) {
+        LOG.warn("Failed to persist metrics. Will be retried in next iteration.", e);
+      } finally {
+        // Set persistingFlag back to false after persisting completes.
+        persistingFlag.set(false);
+      }
+    }
+
+    /**
+     * Persist metrics of the topics of this partition into metric store and messageId's of the last persisted
+     * metrics of each topic into metrics meta table. If the metric store buffers writes, messageId's are only
+     * persisted after the metric store is flushed, which happens at most once per {@link #metricsFlushIntervalMillis}
+     * unless forced.
+     *
+     * @param metricValues a deque of {@link MetricValues}
+     * @param topicProcessMetaMap a map with each key {@link TopicIdMetaKey} representing a topic
+     *                            and {@link TopicProcessMeta} which has info on messageId and processing stats
+     * @param forceFlush whether to flush the metric store regardless of the time since last flush
+     */
+    private void persistMetricsAndTopicProcessMeta(Deque<MetricValues> metricValues,
+                                                   Map<TopicIdMetaKey, TopicProcessMeta> topicProcessMetaMap,
+                                                   boolean forceFlush) {
+      try {
+        if (!metricValues.isEmpty()) {
+          persistMetrics(metricValues, topicProcessMetaMap);
+        }
+        long now = System.currentTimeMillis();
+        if (!forceFlush && now - lastFlushMillis < metricsFlushIntervalMillis) {
+          // topicProcessMetaMap is a snapshot of all topics of this partition, so skipping it is fine: a later
+          // snapshot will be persisted after the next flush
+          return;
+        }
+        metricStore.flush();
+        lastFlushMillis = now;
+        persistTopicProcessMeta(topicProcessMetaMap);
+      } catch (Exception e) {
+        LOG.warn("Failed to persist metrics.", e);
+      }
+    }
+
+    private void persistTopicProcessMeta(Map<TopicIdMetaKey, TopicProcessMeta> messageIds) {
+      try {
+        // messageIds can be empty if the current thread fetches nothing while other threads keep fetching new metrics
+        // and haven't updated messageId's of the corresponding topics
+        if (!messageIds.isEmpty()) {
+          metaTable.saveMetricsProcessorStats(messageIds);
+        }
+      } catch (Exception e) {
+        LOG.warn("Failed to update processing stats of consumed messages.", e);
+      }
+    }
+
+    /**
+     * Persist metrics into metric store
+     *
+     * @param metricValues a non-empty deque of {@link MetricValues}
+     */
+    private void persistMetrics(Deque<MetricValues> metricValues,
+                                Map<TopicIdMetaKey, TopicProcessMeta> topicProcessMetaMap) throws Exception {
+      long now = System.currentTimeMillis();
+      long lastMetricTime = metricValues.peekLast().getTimestamp();
+      List<MetricValue> topicLevelDelays = new ArrayList<>();
+
+      //add topic level delay metrics
+      for (Map.Entry<TopicIdMetaKey, TopicProcessMeta> entry : topicProcessMetaMap.entrySet()) {
+        TopicProcessMeta topicProcessMeta = entry.getValue();
+        long delay = now - TimeUnit.SECONDS.toMillis(topicProcessMeta.getOldestMetricsTimestamp());
+        topicLevelDelays.add(new MetricValue(topicProcessMeta.getOldestMetricsTimestampMetricName(),
+                                             MetricType.GAUGE, delay));
+        delay = now - TimeUnit.SECONDS.toMillis(topicProcessMeta.getLatestMetricsTimestamp());
+        topicLevelDelays.add(new MetricValue(topicProcessMeta.getLatestMetricsTimestampMetricName(),
+                                             MetricType.GAUGE, delay));
+      }
+      List<MetricValue> processorMetrics = new ArrayList<>(topicLevelDelays);
+      processorMetrics.add(new MetricValue(processMetricName, MetricType.COUNTER, metricValues.size()));
+
+      metricValues.add(new MetricValues(metricsContextMap, TimeUnit.MILLISECONDS.toSeconds(now), processorMetrics));
+      metricStore.add(aggregate(metricValues));
+      long processedCount = metricsProcessedCount.addAndGet(metricValues.size());
+      PROGRESS_LOG.debug("{} metrics persisted. Last metric's timestamp: {}", processedCount, lastMetricTime);
     }
-    List<MetricValue> processorMetrics = new ArrayList<>(topicLevelDelays);
-    processorMetrics.add(new MetricValue(processMetricName, MetricType.COUNTER, metricValues.size()));
-
-    metricValues.add(new MetricValues(metricsContextMap, TimeUnit.MILLISECONDS.toSeconds(now), processorMetrics));
-    metricStore.add(metricValues);
-    metricsProcessedCount += metricValues.size();
-    PROGRESS_LOG.debug("{} metrics persisted. Last metric's timestamp: {}",
-                       metricsProcessedCount, lastMetricTime);
   }
 
   private class ProcessMetricsThread extends Thread {
     private final TopicIdMetaKey topicIdMetaKey;
+    private final PersistPartition partition;
+    private final ConcurrentMap<TopicIdMetaKey, TopicProcessMeta> topicProcessMetaMap;
     private final PayloadInputStream payloadInput;
     private final BinaryDecoder decoder;
     private final String oldestTsMetricName;
     private final String latestTsMetricName;
     private long lastMetricTimeSecs;
 
-    ProcessMetricsThread(TopicIdMetaKey topicIdMetaKey, @Nullable TopicProcessMeta topicProcessMeta) {
+    ProcessMetricsThread(TopicIdMetaKey topicIdMetaKey, @Nullable TopicProcessMeta topicProcessMeta,
+                         PersistPartition partition) {
       super(String.format("ProcessMetricsThread-%s", topicIdMetaKey.getTopicId()));
       setDaemon(true);
+      this.partition = partition;
+      this.topicProcessMetaMap = partition.topicProcessMetaMap;
       oldestTsMetricName = String.format("%s.topic.%s.oldest.delay.ms",
                                                 metricsPrefixForDelayMetrics, topicIdMetaKey.getTopicId().getTopic());
       latestTsMetricName = String.format("%s.topic.%s.latest.delay.ms",
@@ -492,7 +671,7 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
             try {
               payloadInput.reset(input.getPayload());
               MetricValues metricValues = metricReader.read(decoder, metricSchema);
-              if (!metricsFromAllTopics.offer(metricValues)) {
+              if (!partition.metrics.offer(metricValues)) {
                 break;
               }
               lastMetricTimeSecs = metricValues.getTimestamp();
@@ -514,7 +693,7 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
           topicProcessMetaMap.put(topicIdMetaKey, localTopicProcessMeta);
         }
         // Try to persist metrics and messageId's of the last metrics to be persisted if no other thread is persisting
-        tryPersist();
+        partition.tryPersist();
 
         long endTime = System.currentTimeMillis();
         // use currentMessageId != null to ensure that the current fetching is not empty and
@@ -531,39 +710,6 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
       }
       return metricsProcessIntervalMillis;
     }
-
-    /**
-     * Persist metrics and messageId's of the last metrics to be persisted if no other thread is persisting
-     */
-    private void tryPersist() {
-      // Ensure there's only one thread can persist metricsFromAllTopics and messageId's.
-      // If persistingFlag is false, set it to true and start persisting. Otherwise, log and return.
-      if (!persistingFlag.compareAndSet(false, true)) {
-        LOG.trace("There is another thread performing persisting. No need to persist in this thread.");
-        return;
-      }
-      try {
-        // Make a copy of topicProcessMetaMap before copying metrics from metricsFromAllTopics to ensure that
-        // topicMessageIdsCopy will not contain new MessageId's in metricsFromAllTopics but not in metricsCopy.
-        // This guarantees the metrics corresponding to last persisted MessageId's of each topic are persisted.
-        Map<TopicIdMetaKey, TopicProcessMeta> topicProcessMetaMapCopy = new HashMap<>(topicProcessMetaMap);
-        // Remove at most queueSize of metrics from metricsFromAllTopics and put into metricsCopy to limit
-        // the number of metrics being persisted each time
-        Deque<MetricValues> metricsCopy = new LinkedList<>();
-        Iterator<MetricValues> iterator = metricsFromAllTopics.iterator();
-        while (iterator.hasNext() && metricsCopy.size() < queueSize) {
-          metricsCopy.add(iterator.next());
-          iterator.remove();
-        }
-        // Persist the copy of metrics and MessageId's
-        persistMetricsAndTopicProcessMeta(metricsCopy, topicProcessMetaMapCopy);
-      } catch (Exception e) {
-        LOG.warn("Failed to persist metrics. Will be retried in next iteration.", e);
-      } finally {
-        // Set persistingFlag back to false after persisting completes.
-        persistingFlag.set(false);
-      }
-    }
   }
 
   private class PayloadInputStream extends ByteArrayInputStream {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2015-2017 Cask Data, Inc.
+ * Copyright 2015-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -92,7 +92,9 @@ public class DefaultMetricDatasetFactory implements MetricDatasetFactory {
               cConf.get(Constants.Metrics.METRICS_TABLE_HBASE_SPLIT_POLICY));
 
     MetricsTable table = getOrCreateResolutionMetricsTable(v3TableName, props, resolution);
-    return new FactTable(table, entityTable.get(), resolution, getRollTime(resolution));
+    return new FactTable(table, entityTable.get(), resolution, getRollTime(resolution),
+                         cConf.getInt(Constants.Metrics.METRICS_TABLE_WRITE_BUFFER_SIZE, 0),
+                         cConf.getLong(Constants.Metrics.METRICS_TABLE_WRITE_BUFFER_FLUSH_INTERVAL_MS, 1000L));
   }
 
   @Override
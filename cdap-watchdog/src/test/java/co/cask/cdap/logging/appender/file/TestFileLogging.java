@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2017 Cask Data, Inc.
+ * Copyright © 2014-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,6 +16,7 @@
 
 package co.cask.cdap.logging.appender.file;
 
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
 import co.cask.cdap.api.metrics.MetricsCollectionService;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
@@ -35,6 +36,7 @@ import co.cask.cdap.logging.context.FlowletLoggingContext;
 import co.cask.cdap.logging.filter.Filter;
 import co.cask.cdap.logging.framework.local.LocalLogAppender;
 import co.cask.cdap.logging.guice.LoggingModules;
+import co.cask.cdap.logging.meta.FileMetaDataReader;
 import co.cask.cdap.logging.read.FileLogReader;
 import co.cask.cdap.logging.read.LogEvent;
 import co.cask.cdap.logging.read.ReadRange;
@@ -72,13 +74,14 @@ public class TestFileLogging {
   @ClassRule
   public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
 
+  private static CConfiguration cConf;
   private static Injector injector;
   private static TransactionManager txManager;
 
   @BeforeClass
   public static void setUpContext() throws Exception {
     Configuration hConf = HBaseConfiguration.create();
-    final CConfiguration cConf = CConfiguration.create();
+    cConf = CConfiguration.create();
     cConf.set(Constants.CFG_LOCAL_DATA_DIR, TMP_FOLDER.newFolder().getAbsolutePath());
     cConf.setInt(LoggingConfiguration.LOG_MAX_FILE_SIZE_BYTES, 20 * 1024);
     String logBaseDir = cConf.get(LoggingConfiguration.LOG_BASE_DIR) + "/" + TestFileLogging.class.getSimpleName();
@@ -203,4 +206,47 @@ public class TestFileLogging {
       Lists.newArrayList(logTail.getLog(loggingContext1, 0, Long.MAX_VALUE, Filter.EMPTY_FILTER));
     Assert.assertEquals(100, events.size());
   }
+
+  @Test
+  public void testGetLogPrefetch() throws Exception {
+    LoggingContext loggingContext = new FlowletLoggingContext("TFL_NS_1", "APP_1", "FLOW_1", "", null, "INSTANCE1");
+    FileMetaDataReader metaDataReader = injector.getInstance(FileMetaDataReader.class);
+
+    // Read the logs one file at a time
+    CConfiguration sequentialConf = CConfiguration.copy(cConf);
+    sequentialConf.setInt(Constants.Logging.READER_PREFETCH_FILES, 1);
+    FileLogReader sequentialReader = new FileLogReader(sequentialConf, metaDataReader);
+    List<LogEvent> expected = Lists.newArrayList(
+      sequentialReader.getLog(loggingContext, 0, Long.MAX_VALUE, Filter.EMPTY_FILTER));
+    Assert.assertEquals(100, expected.size());
+    sequentialReader.close();
+
+    // Read the logs with more files read ahead than there are files, which should give the same result
+    CConfiguration prefetchConf = CConfiguration.copy(cConf);
+    prefetchConf.setInt(Constants.Logging.READER_PREFETCH_FILES, 100);
+    prefetchConf.setInt(Constants.Logging.READER_THREADS, 2);
+    FileLogReader logReader = new FileLogReader(prefetchConf, metaDataReader);
+    List<LogEvent> events = Lists.newArrayList(logReader.getLog(loggingContext, 0, Long.MAX_VALUE,
+                                                                Filter.EMPTY_FILTER));
+    Assert.assertEquals(expected.size(), events.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertEquals(expected.get(i).getLoggingEvent().getFormattedMessage(),
+                          events.get(i).getLoggingEvent().getFormattedMessage());
+    }
+
+    // Closing an iterator before consuming all events shouldn't affect other reads
+    try (CloseableIterator<LogEvent> iterator = logReader.getLog(loggingContext, 0, Long.MAX_VALUE,
+                                                                 Filter.EMPTY_FILTER)) {
+      Assert.assertTrue(iterator.hasNext());
+      Assert.assertEquals(expected.get(0).getLoggingEvent().getFormattedMessage(),
+                          iterator.next().getLoggingEvent().getFormattedMessage());
+    }
+    Assert.assertEquals(expected.size(), Lists.newArrayList(
+      logReader.getLog(loggingContext, 0, Long.MAX_VALUE, Filter.EMPTY_FILTER)).size());
+
+    // Once the reader is closed, files are read without read-ahead
+    logReader.close();
+    events = Lists.newArrayList(logReader.getLog(loggingContext, 0, Long.MAX_VALUE, Filter.EMPTY_FILTER));
+    Assert.assertEquals(expected.size(), events.size());
+  }
 }
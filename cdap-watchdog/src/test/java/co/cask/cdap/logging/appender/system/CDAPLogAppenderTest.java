@@ -1,5 +1,5 @@
 /*
- * Copyright © 2017 Cask Data, Inc.
+ * Copyright © 2017-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -41,6 +41,7 @@ import co.cask.cdap.logging.framework.LocalAppenderContext;
 import co.cask.cdap.logging.guice.LoggingModules;
 import co.cask.cdap.logging.meta.FileMetaDataReader;
 import co.cask.cdap.logging.read.LogEvent;
+import co.cask.cdap.logging.write.LogFileIndex;
 import co.cask.cdap.logging.write.LogLocation;
 import co.cask.cdap.security.auth.context.AuthenticationContextModules;
 import co.cask.cdap.security.authorization.AuthorizationEnforcementModule;
@@ -68,6 +69,7 @@ import org.junit.rules.TemporaryFolder;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -321,6 +323,88 @@ public class CDAPLogAppenderTest {
     }
   }
 
+  @Test
+  public void testCDAPLogAppenderIndex() throws Exception {
+    CDAPLogAppender cdapLogAppender = new CDAPLogAppender();
+    cdapLogAppender.setSyncIntervalBytes(1024 * 1024);
+    cdapLogAppender.setMaxFileLifetimeMs(TimeUnit.DAYS.toMillis(1));
+    cdapLogAppender.setMaxFileSizeInBytes(104857600);
+    cdapLogAppender.setDirPermissions("");
+    cdapLogAppender.setFilePermissions("");
+    cdapLogAppender.setFileRetentionDurationDays(1);
+    cdapLogAppender.setLogCleanupIntervalMins(10);
+    cdapLogAppender.setFileCleanupTransactionTimeout(30);
+    AppenderContext context = new LocalAppenderContext(injector.getInstance(DatasetFramework.class),
+                                                       injector.getInstance(TransactionSystemClient.class),
+                                                       injector.getInstance(LocationFactory.class),
+                                                       new NoOpMetricsCollectionService());
+    context.start();
+    cdapLogAppender.setContext(context);
+    cdapLogAppender.start();
+
+    Map<String, String> properties = new HashMap<>();
+    properties.put(NamespaceLoggingContext.TAG_NAMESPACE_ID, "default");
+    properties.put(ApplicationLoggingContext.TAG_APPLICATION_ID, "testIndexApp");
+    properties.put(FlowletLoggingContext.TAG_FLOW_ID, "testFlow");
+    properties.put(FlowletLoggingContext.TAG_FLOWLET_ID, "testFlowlet");
+
+    // Write 100 events, one second apart, and flush every 10 events to produce an index entry
+    long baseTime = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+    Logger logger = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    for (int i = 0; i < 100; i++) {
+      LoggingEvent event = getLoggingEvent("co.cask.Test", logger, Level.INFO, "message " + i, properties);
+      event.setTimeStamp(baseTime + TimeUnit.SECONDS.toMillis(i));
+      cdapLogAppender.doAppend(event);
+      if (i % 10 == 9) {
+        cdapLogAppender.flush();
+      }
+    }
+    cdapLogAppender.stop();
+    context.stop();
+
+    FileMetaDataReader fileMetaDataReader = injector.getInstance(FileMetaDataReader.class);
+    List<LogLocation> files = fileMetaDataReader.listFiles(cdapLogAppender.getLoggingPath(properties),
+                                                           0, Long.MAX_VALUE);
+    Assert.assertEquals(1, files.size());
+    LogLocation logLocation = files.get(0);
+    Location logFile = logLocation.getLocation();
+
+    LogFileIndex index = LogFileIndex.read(logFile, logFile.length());
+    Assert.assertNotNull(index);
+    Assert.assertEquals(0L, index.floorPosition(baseTime));
+    Assert.assertTrue(index.floorPosition(baseTime + TimeUnit.SECONDS.toMillis(55)) > 0);
+    Assert.assertEquals(-1L, index.ceilingPosition(baseTime + TimeUnit.SECONDS.toMillis(100)));
+
+    // Reads with the index, then without it. Both should give the same result.
+    assertIndexedRead(logLocation, baseTime);
+    Assert.assertTrue(LogFileIndex.getIndexLocation(logFile).delete());
+    Assert.assertNull(LogFileIndex.read(logFile, logFile.length()));
+    assertIndexedRead(logLocation, baseTime);
+  }
+
+  private void assertIndexedRead(LogLocation logLocation, long baseTime) throws IOException {
+    List<String> messages = new ArrayList<>();
+    try (CloseableIterator<LogEvent> iterator =
+           logLocation.readLog(Filter.EMPTY_FILTER, baseTime + TimeUnit.SECONDS.toMillis(55),
+                               baseTime + TimeUnit.SECONDS.toMillis(75), Integer.MAX_VALUE)) {
+      while (iterator.hasNext()) {
+        messages.add(iterator.next().getLoggingEvent().getFormattedMessage());
+      }
+    }
+    Assert.assertEquals(20, messages.size());
+    Assert.assertEquals("message 55", messages.get(0));
+    Assert.assertEquals("message 74", messages.get(19));
+
+    messages.clear();
+    for (LogEvent event : logLocation.readLogPrev(Filter.EMPTY_FILTER,
+                                                  baseTime + TimeUnit.SECONDS.toMillis(35), 10)) {
+      messages.add(event.getLoggingEvent().getFormattedMessage());
+    }
+    Assert.assertEquals(10, messages.size());
+    Assert.assertEquals("message 26", messages.get(0));
+    Assert.assertEquals("message 35", messages.get(9));
+  }
+
   private void assertLogEventDetails(LoggingEvent expectedLoggingEvent, LogLocation logLocation) throws IOException {
     Assert.assertEquals(LogLocation.VERSION_1, logLocation.getFrameworkVersion());
     Assert.assertTrue(logLocation.getLocation().exists());
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2017 Cask Data, Inc.
+ * Copyright © 2017-2018 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -28,6 +28,8 @@ import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.api.metrics.MetricsProcessorStatus;
 import co.cask.cdap.api.metrics.NoopMetricsContext;
 import co.cask.cdap.api.metrics.TagValue;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.utils.Tasks;
 import co.cask.cdap.data2.datafabric.dataset.service.DatasetService;
 import co.cask.cdap.data2.datafabric.dataset.service.executor.DatasetOpExecutor;
@@ -35,6 +37,8 @@ import co.cask.cdap.data2.dataset2.DatasetFramework;
 import co.cask.cdap.internal.io.DatumReaderFactory;
 import co.cask.cdap.internal.io.SchemaGenerator;
 import co.cask.cdap.metrics.store.MetricDatasetFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import org.apache.tephra.TransactionManager;
 import org.junit.Assert;
 import org.junit.Test;
@@ -43,6 +47,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
@@ -58,6 +63,51 @@ public class MessagingMetricsProcessorServiceTest extends MetricsProcessorServic
   @Test
   public void persistMetricsTests()
     throws Exception {
+    persistMetrics(cConf, 50);
+  }
+
+  @Test
+  public void persistMetricsPartitionedTests() throws Exception {
+    CConfiguration partitionedConf = CConfiguration.copy(cConf);
+    partitionedConf.setInt(Constants.Metrics.PROCESSOR_PERSIST_PARTITIONS, PARTITION_SIZE);
+    persistMetrics(partitionedConf, 10);
+  }
+
+  @Test
+  public void testAggregate() {
+    Map<String, String> otherContext = ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, "NS_2");
+    List<MetricValues> metrics = ImmutableList.of(
+      new MetricValues(METRICS_CONTEXT, "counter", 1L, 1L, MetricType.COUNTER),
+      new MetricValues(METRICS_CONTEXT, "gauge", 1L, 5L, MetricType.GAUGE),
+      new MetricValues(METRICS_CONTEXT, "counter", 1L, 2L, MetricType.COUNTER),
+      new MetricValues(METRICS_CONTEXT, "gauge", 1L, 3L, MetricType.GAUGE),
+      new MetricValues(METRICS_CONTEXT, "counter", 2L, 4L, MetricType.COUNTER),
+      new MetricValues(otherContext, "counter", 1L, 8L, MetricType.COUNTER));
+
+    List<MetricValues> aggregated = MessagingMetricsProcessorService.aggregate(metrics);
+    Assert.assertEquals(3, aggregated.size());
+
+    // metrics with the same tags and timestamp are merged
+    Assert.assertEquals(METRICS_CONTEXT, aggregated.get(0).getTags());
+    Assert.assertEquals(1L, aggregated.get(0).getTimestamp());
+    Map<String, MetricValue> values = new HashMap<>();
+    for (MetricValue value : aggregated.get(0).getMetrics()) {
+      values.put(value.getName(), value);
+    }
+    Assert.assertEquals(2, values.size());
+    Assert.assertEquals(3L, values.get("counter").getValue());
+    Assert.assertEquals(MetricType.COUNTER, values.get("counter").getType());
+    Assert.assertEquals(3L, values.get("gauge").getValue());
+    Assert.assertEquals(MetricType.GAUGE, values.get("gauge").getType());
+
+    // different timestamp or tags are kept separate
+    Assert.assertEquals(2L, aggregated.get(1).getTimestamp());
+    Assert.assertEquals(4L, aggregated.get(1).getMetrics().iterator().next().getValue());
+    Assert.assertEquals(otherContext, aggregated.get(2).getTags());
+    Assert.assertEquals(8L, aggregated.get(2).getMetrics().iterator().next().getValue());
+  }
+
+  private void persistMetrics(CConfiguration processorConf, int iterations) throws Exception {
 
     injector.getInstance(TransactionManager.class).startAndWait();
     injector.getInstance(DatasetOpExecutor.class).startAndWait();
@@ -70,7 +120,7 @@ public class MessagingMetricsProcessorServiceTest extends MetricsProcessorServic
 
     long startTime = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
 
-    for (int iteration = 0; iteration < 50; iteration++) {
+    for (int iteration = 0; iteration < iterations; iteration++) {
       // First publish all metrics before MessagingMetricsProcessorService starts, so that fetchers of different topics
       // will fetch metrics concurrently.
       for (int i = 0; i < 50; i++) {
@@ -90,7 +140,7 @@ public class MessagingMetricsProcessorServiceTest extends MetricsProcessorServic
                                              messagingService, injector.getInstance(SchemaGenerator.class),
                                              injector.getInstance(DatumReaderFactory.class), metricStore,
                                              1000L, 5, partitions, new NoopMetricsContext(), 50, 0,
-                                             injector.getInstance(DatasetFramework.class), cConf, true);
+                                             injector.getInstance(DatasetFramework.class), processorConf, true);
       messagingMetricsProcessorService.startAndWait();
 
       // Wait for the 1 aggregated counter metric (with value 50) and 50 gauge metrics to be stored in the metricStore
@@ -142,7 +192,12 @@ public class MessagingMetricsProcessorServiceTest extends MetricsProcessorServic
     }
 
     @Override
-    public void add(Collection<? extends MetricValues> metricValues) throws Exception {
+    public void flush() throws Exception {
+
+    }
+
+    @Override
+    public synchronized void add(Collection<? extends MetricValues> metricValues) throws Exception {
       for (MetricValues metric : metricValues) {
         for (MetricValue metricValue : metric.getMetrics()) {
           // metrics generated by MessagingMetricsProcessorService
@@ -176,11 +231,11 @@ public class MessagingMetricsProcessorServiceTest extends MetricsProcessorServic
       }
     }
 
-    public long getMetricsProcessedByMetricsProcessor() {
+    public synchronized long getMetricsProcessedByMetricsProcessor() {
       return systemMetricsMap.get("metrics.0.process.count");
     }
 
-    public boolean isMetricsProcessorDelayEmitted() {
+    public synchronized boolean isMetricsProcessorDelayEmitted() {
       for (int i = 0; i < PARTITION_SIZE; i++) {
         if (!systemMetricsMap.containsKey(
           String.format(
@@ -210,7 +265,7 @@ public class MessagingMetricsProcessorServiceTest extends MetricsProcessorServic
     }
 
     @Override
-    public void deleteAll() throws Exception {
+    public synchronized void deleteAll() throws Exception {
       userMetricsMap.clear();
       systemMetricsMap.clear();
     }
@@ -230,8 +285,8 @@ public class MessagingMetricsProcessorServiceTest extends MetricsProcessorServic
       return Collections.EMPTY_MAP;
     }
 
-    Map<String, Long> getAllMetrics() {
-      return userMetricsMap;
+    synchronized Map<String, Long> getAllMetrics() {
+      return new HashMap<>(userMetricsMap);
     }
   }
 }